@@ -0,0 +1,27 @@
+package mediaplayer;
+
+import javafx.application.Application;
+
+/**
+ * Starts the application from the runnable jar. The JavaFX launcher refuses
+ * to start a main class extending Application from the class path, so the
+ * jar's main class is this one.
+ *
+ * @author Alex Hage
+ *
+ */
+public final class Launcher
+{
+	/**
+	 * Not instantiable.
+	 */
+	private Launcher()
+	{
+
+	} //end ctor
+
+	public static void main(String[] args)
+	{
+		Application.launch(Main.class, args);
+	}
+}
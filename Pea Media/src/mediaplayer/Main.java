@@ -1,33 +1,66 @@
 package mediaplayer;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 
-import mediaplayer.model.MediaItem;
+import mediaplayer.io.DirectoryWatcher;
+import mediaplayer.io.MediaImporter;
+import mediaplayer.io.MetadataService;
+import mediaplayer.io.ReadAheadPrefetcher;
+import mediaplayer.io.ResumeStore;
+import mediaplayer.io.SessionFile;
+import mediaplayer.io.WaveformAnalyzer;
+import mediaplayer.model.CompactPlayList;
+import mediaplayer.model.TrigramIndex;
+import mediaplayer.playback.PlayOrder;
+import mediaplayer.util.Log;
+import mediaplayer.util.StartupProfiler;
 import mediaplayer.view.MediaPlayerViewController;
 import mediaplayer.view.PlayListViewController;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.BorderPane;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 /**
  * Loads, initializes and displays the application and its corresponding views.
- * Assigns controller access. Stores and returns the
- * {@code ObservableList<MediaItem>} playList and the observable IntegerProperty
- * current.
+ * Assigns controller access. Stores and returns the CompactPlayList playList,
+ * its search index and the observable IntegerProperty current.
  * 
  * @author Alex Hage
  *
  */
 public class Main extends Application 
 {
+	/**
+	 * The number of media opened at the same time to read metadata.
+	 */
+	private static final int METADATA_THREADS = 2;
+	
+	/**
+	 * The folders to watch from startup on, separated by the path separator.
+	 */
+	public static final String WATCH_PROPERTY = "peamedia.watch";
+	
+	/**
+	 * The number of upcoming files read ahead and the bytes read for them.
+	 */
+	public static final String PREFETCH_COUNT_PROPERTY = "peamedia.prefetchCount";
+	public static final String PREFETCH_BUDGET_PROPERTY = "peamedia.prefetchBudget";
+	
+	/**
+	 * The seconds consecutive entries overlap by, 0 for none.
+	 */
+	public static final String CROSSFADE_PROPERTY = "peamedia.crossfade";
+	
 	/**
 	 * The main stage of the application.
 	 */
@@ -41,22 +74,243 @@ public class Main extends Application
     /**
      * The observable list of MediaItem objects. Effectively, this is the media playlist.
      */
-    private ObservableList<MediaItem> playList = FXCollections.observableArrayList();
+    private CompactPlayList playList = new CompactPlayList();
+    
+    /**
+     * The search index following the playlist.
+     */
+    private TrigramIndex searchIndex = new TrigramIndex(playList);
     
     /**
      * The currently playing media Integer-flag.
      */
     private IntegerProperty current;
+    
+    /**
+     * The order the playlist is played in, keeping current on its entry.
+     */
+    private PlayOrder playOrder;
+    
+    /**
+     * The background importer filling the playlist.
+     */
+    private MediaImporter importer;
+    
+    /**
+     * The background reader of titles and durations.
+     */
+    private MetadataService metadataService;
+    
+    /**
+     * The watcher keeping the playlist in sync with watched folders, or
+     * <i>null</i> if watching is not available.
+     */
+    private DirectoryWatcher watcher;
+    
+    /**
+     * The reader warming the page cache for upcoming files.
+     */
+    private ReadAheadPrefetcher prefetcher;
+    
+    /**
+     * The positions long media were left off at.
+     */
+    private ResumeStore resumeStore;
+    
+    /**
+     * The analyzer making waveform overviews of audio files.
+     */
+    private WaveformAnalyzer waveformAnalyzer;
+    
+    /**
+     * The controller of the media player view.
+     */
+    private MediaPlayerViewController playerController;
+    
+    /**
+     * The playlist window, built once and reused.
+     */
+    private Stage playListStage;
+    
+    /**
+     * The controller of the playlist window.
+     */
+    private PlayListViewController playListController;
 	
 	@Override
 	public void start(Stage primaryStage) 
 	{
+		StartupProfiler.mark("start");
 		this.current = new SimpleIntegerProperty(0);
+		this.playOrder = new PlayOrder(playList, current);
+		this.importer = new MediaImporter(playList);
+		this.metadataService = new MetadataService(
+				new File(getDataDirectory(), "metadata.cache"), METADATA_THREADS);
+		this.prefetcher = new ReadAheadPrefetcher(
+				Integer.getInteger(PREFETCH_COUNT_PROPERTY, ReadAheadPrefetcher.DEFAULT_COUNT),
+				Long.getLong(PREFETCH_BUDGET_PROPERTY, ReadAheadPrefetcher.DEFAULT_BUDGET));
+		this.resumeStore = new ResumeStore(new File(getDataDirectory(), "resume.journal"));
+		this.waveformAnalyzer = new WaveformAnalyzer(new File(getDataDirectory(), "waveforms"));
         this.primaryStage = primaryStage;
         this.primaryStage.setTitle("Pea Media Player v0.75");
 
         initRootLayout();
         showMediaPlayerView();
+        StartupProfiler.awaitFirstFrame();
+        restoreSession();
+        startWatching();
+        
+        // Build the playlist window once the main window is up.
+        Platform.runLater(this::preparePlayListView);
+	}
+	
+	/**
+	 * Persists the session and the caches on exit.
+	 */
+	@Override
+	public void stop()
+	{
+		//Without the player view nothing was restored or played.
+		if(playerController != null)
+		{
+			saveSession();
+			playerController.savePosition();
+		}
+		resumeStore.close();
+		waveformAnalyzer.close();
+		metadataService.save();
+		prefetcher.close();
+		Log.info(prefetcher.report());
+		if(watcher != null)
+		{
+			watcher.close();
+		}
+		Log.flush();
+	}
+	
+	/**
+	 * Starts the directory watcher and registers the folders given by the
+	 * <i>peamedia.watch</i> property. Their content is expected to be in the
+	 * restored playlist already.
+	 */
+	private void startWatching()
+	{
+		try
+		{
+			watcher = new DirectoryWatcher(playList, importer);
+		}
+		catch(IOException e)
+		{
+			Log.warn("Watching folders is not available: {}", e.getMessage());
+			return;
+		}
+		String folders = System.getProperty(WATCH_PROPERTY, "");
+		for(String folder : folders.split(File.pathSeparator))
+		{
+			if(!folder.isEmpty())
+			{
+				registerWatch(new File(folder));
+			}
+		}
+	}
+	
+	/**
+	 * Imports a folder and keeps the playlist in sync with it from then on.
+	 * 
+	 * @param folder
+	 *            the folder to watch.
+	 */
+	public void watchFolder(File folder)
+	{
+		importer.importFiles(Collections.singletonList(folder), null);
+		registerWatch(folder);
+	}
+	
+	/**
+	 * Registers a folder tree with the watcher in the background.
+	 * 
+	 * @param folder
+	 *            the root of the tree.
+	 */
+	private void registerWatch(File folder)
+	{
+		if(watcher == null)
+		{
+			return;
+		}
+		Thread register = new Thread(() -> 
+		{
+			try
+			{
+				watcher.watch(folder.toPath());
+				Log.info("Watching {} ({} folders)", folder, watcher.getWatchedCount());
+			}
+			catch(IOException e)
+			{
+				Log.warn("Could not watch {}: {}", folder, e.getMessage());
+			}
+		}, "directory-watch-register");
+		register.setDaemon(true);
+		register.start();
+	}
+	
+	/**
+	 * Restores the playlist, current index and playback position of the last
+	 * session. The session file is read in the background; its entries are
+	 * added in batches and playback resumes once all are in.
+	 */
+	private void restoreSession()
+	{
+		File file = getSessionFile();
+		if(!file.isFile())
+		{
+			return;
+		}
+		Thread restore = new Thread(() -> 
+		{
+			try
+			{
+				SessionFile session = SessionFile.read(file, batch -> Platform.runLater(() -> playList.addAll(batch)));
+				if(session.getCount() > 0)
+				{
+					Platform.runLater(() -> playerController.resume(
+							Math.min(session.getCurrent(), playList.size() - 1), 
+							Duration.millis(session.getPosition())));
+				}
+			}
+			catch(IOException e)
+			{
+				Log.warn("Could not restore session: {}", e.getMessage());
+			}
+		}, "session-restore");
+		restore.setDaemon(true);
+		restore.start();
+	}
+	
+	/**
+	 * Writes the playlist, current index and playback position.
+	 */
+	private void saveSession()
+	{
+		try
+		{
+			SessionFile.write(getSessionFile(), playList, current.get(), 
+					(long)playerController.getPosition().toMillis());
+		}
+		catch(IOException e)
+		{
+			Log.warn("Could not save session: {}", e.getMessage());
+		}
+	}
+	
+	/**
+	 * Returns the file the session is kept in.
+	 * 
+	 * @return the session File.
+	 */
+	private static File getSessionFile()
+	{
+		return new File(getDataDirectory(), "session.bin");
 	}
 
     /**
@@ -70,6 +324,7 @@ public class Main extends Application
             FXMLLoader loader = new FXMLLoader();
             loader.setLocation(Main.class.getResource("view/RootLayout.fxml"));
             rootLayout = (BorderPane) loader.load();
+            StartupProfiler.mark("RootLayout.fxml");
 
             // Show the scene containing the root layout.
             Scene scene = new Scene(rootLayout);
@@ -78,7 +333,7 @@ public class Main extends Application
         } 
         catch (IOException e) 
         {
-            e.printStackTrace();
+            Log.error("Could not load the root layout: {}", e.getMessage(), e);
         }
     }
     
@@ -93,25 +348,48 @@ public class Main extends Application
             FXMLLoader loader = new FXMLLoader();
             loader.setLocation(Main.class.getResource("view/MediaPlayerView.fxml"));
             AnchorPane personOverview = (AnchorPane) loader.load();
+            StartupProfiler.mark("MediaPlayerView.fxml");
 
             // Set person overview into the center of root layout.
             rootLayout.setCenter(personOverview);
             
             // Give the controller access to the main app.
-            MediaPlayerViewController controller = loader.getController();
-            controller.setMain(this);
+            playerController = loader.getController();
+            playerController.setMain(this);
+            StartupProfiler.mark("controller init");
         } 
         catch (IOException e) 
         {
-            e.printStackTrace();
+            Log.error("Could not load the media player view: {}", e.getMessage(), e);
         }
     }
     
 	/**
-	 * Opens the playlist view in a new modal popup window.
+	 * Opens the playlist view in a modal popup window. The window is built
+	 * once and then only shown and hidden.
 	 */
 	public void showPlayListView() 
 	{
+		if(preparePlayListView())
+		{
+			playListController.showCurrent();
+			playListStage.show();
+			playListStage.toFront();
+		}
+	}
+	
+	/**
+	 * Builds the playlist window unless already built. Called after startup
+	 * so that the first open does not pay for the fxml load.
+	 * 
+	 * @return true if the playlist window is available.
+	 */
+	private boolean preparePlayListView()
+	{
+		if(playListStage != null)
+		{
+			return true;
+		}
 	    try 
 	    {
 	        // Load the fxml file and create a new stage for the playlist popup.
@@ -120,25 +398,24 @@ public class Main extends Application
 	        AnchorPane page = (AnchorPane) loader.load();
 
 	        // Create the dialog Stage.
-	        Stage playListStage = new Stage();
-	        playListStage.setTitle("Pea Media Player v0.75 >>> Playlist");
-	        playListStage.initModality(Modality.WINDOW_MODAL);
-	        playListStage.initOwner(primaryStage);
+	        Stage stage = new Stage();
+	        stage.setTitle("Pea Media Player v0.75 >>> Playlist");
+	        stage.initModality(Modality.WINDOW_MODAL);
+	        stage.initOwner(primaryStage);
 	        Scene scene = new Scene(page);
-	        playListStage.setScene(scene);
+	        stage.setScene(scene);
 
 	        // Set the person into the controller.
-	        PlayListViewController controller = loader.getController();
-	        controller.setMain(this);
-	        controller.setDialogStage(playListStage);
-
-	        // Show the dialog and wait until the user closes it
-	        playListStage.showAndWait();
-
+	        playListController = loader.getController();
+	        playListController.setMain(this);
+	        playListController.setDialogStage(stage);
+	        playListStage = stage;
+	        return true;
 	    } 
 	    catch (IOException e) 
 	    {
-	        e.printStackTrace();
+	        Log.error("Could not load the playlist view: {}", e.getMessage(), e);
+	        return false;
 	    }
 	}
     
@@ -176,13 +453,115 @@ public class Main extends Application
 	/**
 	 * Returns the playlist as an observable list of MediaItems.
 	 * 
-	 * @return playList the {@code ObservableList<MediaItem>} to return.
+	 * @return playList the CompactPlayList to return.
 	 */
-	public ObservableList<MediaItem> getPlayList()
+	public CompactPlayList getPlayList()
 	{
 		return playList;
 	}
 	
+	/**
+	 * Returns the play order: shuffle, the "play next" queue and the history.
+	 * 
+	 * @return playOrder the PlayOrder to return.
+	 */
+	public PlayOrder getPlayOrder()
+	{
+		return playOrder;
+	}
+	
+	/**
+	 * Returns the prefetcher reading upcoming files ahead.
+	 * 
+	 * @return prefetcher the ReadAheadPrefetcher to return.
+	 */
+	public ReadAheadPrefetcher getPrefetcher()
+	{
+		return prefetcher;
+	}
+	
+	/**
+	 * Returns the store of positions to resume long media at.
+	 * 
+	 * @return resumeStore the ResumeStore to return.
+	 */
+	public ResumeStore getResumeStore()
+	{
+		return resumeStore;
+	}
+	
+	/**
+	 * Returns the analyzer making waveform overviews of audio files.
+	 * 
+	 * @return waveformAnalyzer the WaveformAnalyzer to return.
+	 */
+	public WaveformAnalyzer getWaveformAnalyzer()
+	{
+		return waveformAnalyzer;
+	}
+	
+	/**
+	 * Returns the search index over the titles, file names and folders of the
+	 * playlist.
+	 * 
+	 * @return searchIndex the TrigramIndex to return.
+	 */
+	public TrigramIndex getSearchIndex()
+	{
+		return searchIndex;
+	}
+	
+	/**
+	 * Returns the importer adding files and folders to the playlist.
+	 * 
+	 * @return importer the MediaImporter to return.
+	 */
+	public MediaImporter getImporter()
+	{
+		return importer;
+	}
+	
+	/**
+	 * Returns the metadata service filling in titles and durations.
+	 * 
+	 * @return metadataService the MetadataService to return.
+	 */
+	public MetadataService getMetadataService()
+	{
+		return metadataService;
+	}
+	
+	/**
+	 * Returns the crossfade between consecutive entries, set in seconds with
+	 * the <i>peamedia.crossfade</i> property.
+	 * 
+	 * @return the crossfade as Duration, ZERO if unset or invalid.
+	 */
+	public Duration getCrossfade()
+	{
+		try
+		{
+			double seconds = Double.parseDouble(System.getProperty(CROSSFADE_PROPERTY, "0"));
+			return seconds > 0 ? Duration.seconds(seconds) : Duration.ZERO;
+		}
+		catch(NumberFormatException e)
+		{
+			Log.warn("Ignoring invalid crossfade: {}", System.getProperty(CROSSFADE_PROPERTY));
+			return Duration.ZERO;
+		}
+	}
+	
+	/**
+	 * Returns the directory the application keeps its data in,
+	 * <i>.peamedia</i> in the user's home directory.
+	 * 
+	 * @return the data directory as File.
+	 */
+	public static File getDataDirectory()
+	{
+		return new File(System.getProperty("user.home"), ".peamedia");
+	}
+	
 	/**
 	 * The main method. Ignored on proper deployment.
 	 * 
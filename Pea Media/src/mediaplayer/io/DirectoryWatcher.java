@@ -0,0 +1,559 @@
+package mediaplayer.io;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javafx.application.Platform;
+import mediaplayer.model.CompactPlayList;
+import mediaplayer.model.MediaItem;
+import mediaplayer.util.ConversionUtils;
+import mediaplayer.util.Log;
+
+/**
+ * Keeps the playlist in sync with watched folders. A single daemon thread
+ * takes create and delete events from a {@link WatchService} registered on
+ * every folder below the watched roots, collects them until the folders have
+ * been quiet for a moment and hands each batch to the FX thread, where it is
+ * applied with one removal and one insertion.
+ * <p>
+ * Only the files named by the events are looked at. The size and
+ * modification time of every media file below the watched roots are kept from
+ * the registration walk and the create events, since a deleted file can no
+ * longer be read. A delete and a create of files with the same size and
+ * modification time within one batch are taken as a rename or move and
+ * applied to the existing entry, so it keeps its position and stays current
+ * if it is playing. Any other delete and create are a removal and an
+ * insertion, so a file replaced by a different one gets a new entry. Created
+ * folders are registered and imported, deleted ones drop all entries below
+ * them. Only when the event queue of a folder overflows is that one folder
+ * listed again.
+ * </p>
+ *
+ * @author Alex Hage
+ *
+ */
+public class DirectoryWatcher
+{
+	/**
+	 * The quiet time after the last event before a batch is applied.
+	 */
+	public static final long DEBOUNCE_MILLIS = 300;
+
+	/**
+	 * The longest time events are held back while folders keep changing.
+	 */
+	public static final long MAX_DELAY_MILLIS = 2000;
+
+	private final CompactPlayList playList;
+	private final MediaImporter importer;
+	private final WatchService watchService;
+
+	/**
+	 * The watched folder of each registered key.
+	 */
+	private final Map<WatchKey, Path> folders = new ConcurrentHashMap<WatchKey, Path>();
+
+	/**
+	 * The watched folders, to tell deleted folders from deleted files.
+	 */
+	private final Set<Path> watched = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+
+	/**
+	 * The last known stamp of each media file below the watched folders.
+	 */
+	private final Map<Path, FileStamp> stamps = new ConcurrentHashMap<Path, FileStamp>();
+
+	private final Thread thread;
+
+	/**
+	 * Constructs a watcher applying changes to the playlist. Created folders
+	 * are imported through the importer.
+	 *
+	 * @param playList
+	 *            the CompactPlayList to keep in sync.
+	 * @param importer
+	 *            the MediaImporter importing created folders.
+	 * @throws IOException
+	 *             if no WatchService is available.
+	 */
+	public DirectoryWatcher(CompactPlayList playList, MediaImporter importer) throws IOException
+	{
+		this.playList = playList;
+		this.importer = importer;
+		this.watchService = FileSystems.getDefault().newWatchService();
+		this.thread = new Thread(this::run, "directory-watch");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	} //end ctor
+
+	/**
+	 * Starts watching a folder and every folder below it. The registration
+	 * walks the folder tree once and notes the stamps of its media files; the
+	 * files are not imported here.
+	 *
+	 * @param root
+	 *            the folder to watch.
+	 * @throws IOException
+	 *             if the folder cannot be walked.
+	 */
+	public void watch(Path root) throws IOException
+	{
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException
+			{
+				register(dir);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+			{
+				if(MediaImporter.isSupported(file) && attrs.isRegularFile())
+				{
+					stamps.put(file, new FileStamp(attrs));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e)
+			{
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Returns the number of watched folders.
+	 *
+	 * @return the count of registered folders.
+	 */
+	public int getWatchedCount()
+	{
+		return watched.size();
+	}
+
+	/**
+	 * Stops watching all folders.
+	 */
+	public void close()
+	{
+		thread.interrupt();
+		try
+		{
+			watchService.close();
+		}
+		catch(IOException e)
+		{
+			Log.warn("Could not close watch service: {}", e.getMessage());
+		}
+	}
+
+	private void register(Path dir) throws IOException
+	{
+		if(watched.add(dir))
+		{
+			folders.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE), dir);
+		}
+	}
+
+	/**
+	 * Collects events into batches and hands each to the FX thread.
+	 */
+	private void run()
+	{
+		try
+		{
+			while(!Thread.currentThread().isInterrupted())
+			{
+				Batch batch = new Batch();
+				collect(watchService.take(), batch);
+				long deadline = System.currentTimeMillis() + MAX_DELAY_MILLIS;
+				WatchKey key;
+				while(System.currentTimeMillis() < deadline
+						&& (key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null)
+				{
+					collect(key, batch);
+				}
+				batch.prepare();
+				Platform.runLater(() -> apply(batch));
+			}
+		}
+		catch(InterruptedException | ClosedWatchServiceException e)
+		{
+			//Closed.
+		}
+	}
+
+	/**
+	 * Adds the pending events of a key to a batch and re-arms the key.
+	 */
+	private void collect(WatchKey key, Batch batch)
+	{
+		Path dir = folders.get(key);
+		for(WatchEvent<?> event : key.pollEvents())
+		{
+			if(dir == null)
+			{
+				continue;
+			}
+			if(event.kind() == OVERFLOW)
+			{
+				batch.overflowed.add(dir);
+				continue;
+			}
+			Path path = dir.resolve((Path)event.context());
+			if(event.kind() == ENTRY_CREATE)
+			{
+				batch.created(path);
+			}
+			else if(event.kind() == ENTRY_DELETE)
+			{
+				batch.deleted(path);
+			}
+		}
+		if(!key.reset() && dir != null)
+		{
+			//The folder itself is gone; it may be a root without a watched parent.
+			folders.remove(key);
+			batch.deleted.put(dir, Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * Applies a prepared batch to the playlist. Runs on the FX thread.
+	 */
+	void apply(Batch batch)
+	{
+		//Renames: move the existing entries to their new URIs.
+		int[] renamed = playList.indicesOf(batch.renames.keySet());
+		for(int index : renamed)
+		{
+			MediaItem item = playList.get(index);
+			URI uri = batch.renames.get(item.getURI());
+			boolean derivedTitle = item.getTitle().equals(ConversionUtils.convertToFileName(item.getURI()));
+			item.setURI(uri);
+			if(derivedTitle)
+			{
+				item.setTitle(ConversionUtils.convertToFileName(uri));
+			}
+		}
+
+		//Removals: one pass for files, one per deleted folder.
+		Set<Integer> removed = new HashSet<Integer>();
+		for(int index : playList.indicesOf(batch.removedFiles))
+		{
+			removed.add(index);
+		}
+		for(URI folder : batch.removedFolders)
+		{
+			for(int index : playList.indicesUnder(folder))
+			{
+				removed.add(index);
+			}
+		}
+		for(Map.Entry<URI, Set<URI>> listed : batch.listedFolders.entrySet())
+		{
+			String folder = listed.getKey().toString();
+			for(int index : playList.indicesUnder(listed.getKey()))
+			{
+				//Entries directly in the listed folder whose file is gone.
+				String uri = playList.uriStringAt(index);
+				if(uri.lastIndexOf('/') + 1 == folder.length() && !listed.getValue().contains(URI.create(uri)))
+				{
+					removed.add(index);
+				}
+			}
+		}
+		if(!removed.isEmpty())
+		{
+			List<MediaItem> items = new ArrayList<MediaItem>(removed.size());
+			for(int index : removed)
+			{
+				items.add(playList.get(index));
+			}
+			playList.removeAll(items);
+		}
+
+		//Insertions: skip files already in the playlist.
+		if(!batch.addedFiles.isEmpty())
+		{
+			Set<URI> known = new HashSet<URI>();
+			for(int index : playList.indicesOf(batch.addedFiles))
+			{
+				known.add(playList.get(index).getURI());
+			}
+			List<MediaItem> items = new ArrayList<MediaItem>(batch.addedFiles.size());
+			for(URI uri : batch.addedFiles)
+			{
+				if(known.add(uri))
+				{
+					items.add(MediaImporter.createItem(Paths.get(uri)));
+				}
+			}
+			playList.addAll(items);
+		}
+		if(!batch.addedFolders.isEmpty())
+		{
+			List<File> files = new ArrayList<File>();
+			for(Path folder : batch.addedFolders)
+			{
+				files.add(folder.toFile());
+			}
+			importer.importFiles(files, null);
+		}
+	}
+
+	/**
+	 * The events of one batch, sorted into what to apply. Prepared on the
+	 * watch thread.
+	 */
+	class Batch
+	{
+		private final Map<Path, Boolean> created = new LinkedHashMap<Path, Boolean>();
+		private final Map<Path, Boolean> deleted = new LinkedHashMap<Path, Boolean>();
+		private final Set<Path> overflowed = new HashSet<Path>();
+
+		/**
+		 * The media files found in each folder listed after an overflow.
+		 */
+		private final Map<URI, Set<URI>> listedFolders = new LinkedHashMap<URI, Set<URI>>();
+
+		private final Map<URI, URI> renames = new LinkedHashMap<URI, URI>();
+		private final List<URI> removedFiles = new ArrayList<URI>();
+		private final List<URI> removedFolders = new ArrayList<URI>();
+		private final List<URI> addedFiles = new ArrayList<URI>();
+		private final List<Path> addedFolders = new ArrayList<Path>();
+
+		/**
+		 * Records a created path. A create after a delete of the same path
+		 * cancels the delete.
+		 *
+		 * @param path
+		 *            the created file or folder.
+		 */
+		void created(Path path)
+		{
+			deleted.remove(path);
+			created.put(path, Boolean.TRUE);
+		}
+
+		/**
+		 * Records a deleted path. A delete after a create of the same path
+		 * cancels the create.
+		 *
+		 * @param path
+		 *            the deleted file or folder.
+		 */
+		void deleted(Path path)
+		{
+			if(created.remove(path) == null)
+			{
+				deleted.put(path, Boolean.TRUE);
+			}
+		}
+
+		/**
+		 * Sorts the collected events. Looks at the created paths only, and
+		 * lists a folder only if its events overflowed.
+		 */
+		void prepare()
+		{
+			for(Path path : overflowed)
+			{
+				reconcile(path);
+			}
+
+			//Deleted files left unpaired, by their last stamp, for rename detection.
+			Map<FileStamp, List<Path>> unpaired = new HashMap<FileStamp, List<Path>>();
+			for(Path path : deleted.keySet())
+			{
+				if(watched.remove(path))
+				{
+					removedFolders.add(path.toUri());
+					removeKeysUnder(path);
+				}
+				else if(MediaImporter.isSupported(path))
+				{
+					FileStamp stamp = stamps.remove(path);
+					if(stamp == null)
+					{
+						removedFiles.add(path.toUri());
+						continue;
+					}
+					List<Path> files = unpaired.get(stamp);
+					if(files == null)
+					{
+						files = new ArrayList<Path>();
+						unpaired.put(stamp, files);
+					}
+					files.add(path);
+				}
+			}
+
+			for(Path path : created.keySet())
+			{
+				if(Files.isDirectory(path))
+				{
+					try
+					{
+						watch(path);
+						addedFolders.add(path);
+					}
+					catch(IOException e)
+					{
+						Log.warn("Could not watch {}: {}", path, e.getMessage());
+					}
+				}
+				else if(MediaImporter.isSupported(path))
+				{
+					FileStamp stamp = FileStamp.of(path);
+					if(stamp == null)
+					{
+						//Gone again; its delete comes with a later batch.
+						continue;
+					}
+					stamps.put(path, stamp);
+					List<Path> files = unpaired.get(stamp);
+					if(files != null && !files.isEmpty())
+					{
+						renames.put(files.remove(0).toUri(), path.toUri());
+					}
+					else
+					{
+						addedFiles.add(path.toUri());
+					}
+				}
+			}
+
+			for(List<Path> files : unpaired.values())
+			{
+				for(Path path : files)
+				{
+					removedFiles.add(path.toUri());
+				}
+			}
+		}
+
+		/**
+		 * Lists a folder whose events were lost and queues its media files.
+		 * Entries of files no longer listed are removed when applied.
+		 */
+		private void reconcile(Path dir)
+		{
+			Set<URI> present = new HashSet<URI>();
+			try(DirectoryStream<Path> stream = Files.newDirectoryStream(dir))
+			{
+				for(Path path : stream)
+				{
+					if(MediaImporter.isSupported(path) && !Files.isDirectory(path))
+					{
+						present.add(path.toUri());
+						created.put(path, Boolean.TRUE);
+					}
+				}
+			}
+			catch(IOException e)
+			{
+				Log.warn("Could not list {}: {}", dir, e.getMessage());
+				return;
+			}
+			listedFolders.put(dir.toUri(), present);
+			stamps.keySet().removeIf(path -> dir.equals(path.getParent()) && !present.contains(path.toUri()));
+		}
+
+		/**
+		 * Drops the keys of a deleted folder and the folders below it.
+		 */
+		private void removeKeysUnder(Path dir)
+		{
+			Iterator<Map.Entry<WatchKey, Path>> entries = folders.entrySet().iterator();
+			while(entries.hasNext())
+			{
+				Map.Entry<WatchKey, Path> entry = entries.next();
+				if(entry.getValue().startsWith(dir))
+				{
+					entry.getKey().cancel();
+					watched.remove(entry.getValue());
+					entries.remove();
+				}
+			}
+			stamps.keySet().removeIf(path -> path.startsWith(dir));
+		}
+	}
+
+	/**
+	 * The size and modification time of a file, which a rename or move keeps.
+	 */
+	private static final class FileStamp
+	{
+		private final long size;
+		private final long modified;
+
+		private FileStamp(BasicFileAttributes attrs)
+		{
+			this.size = attrs.size();
+			this.modified = attrs.lastModifiedTime().toMillis();
+		} //end ctor
+
+		/**
+		 * Reads the stamp of a regular file, or returns null if it cannot be
+		 * read or is not a regular file.
+		 */
+		private static FileStamp of(Path path)
+		{
+			try
+			{
+				BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+				return attrs.isRegularFile() ? new FileStamp(attrs) : null;
+			}
+			catch(IOException e)
+			{
+				return null;
+			}
+		}
+
+		@Override
+		public boolean equals(Object other)
+		{
+			return other instanceof FileStamp && ((FileStamp)other).size == size
+					&& ((FileStamp)other).modified == modified;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Long.hashCode(size) * 31 + Long.hashCode(modified);
+		}
+	}
+}
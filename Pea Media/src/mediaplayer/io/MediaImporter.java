@@ -0,0 +1,471 @@
+package mediaplayer.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import mediaplayer.model.MediaItem;
+import mediaplayer.util.ConversionUtils;
+import mediaplayer.util.Log;
+
+/**
+ * Imports files and folders into the playlist. Dropped directories are walked
+ * recursively on background threads, one task per directory, and only files
+ * with a supported extension are kept. Each directory is walked once per
+ * import, however many links lead to it. M3U, M3U8 and PLS playlists are read
+ * as a stream and contribute their entries. Found items are handed to the FX
+ * thread in batches and inserted with one {@code addAll} per place, so that
+ * importing a large share neither blocks the UI nor floods the playlist with
+ * one change event per file.
+ * <p>
+ * Though directories are listed in parallel, the items of an import end up
+ * in walk order: files in name order, each folder's content in place of the
+ * folder. Every batch carries its position in the walk and is inserted after
+ * the batches of the same import that precede it.
+ * </p>
+ * 
+ * @author Alex Hage
+ *
+ */
+public class MediaImporter 
+{
+	/**
+	 * The file extensions JavaFX media can play, in lower case.
+	 */
+	public static final String[] SUPPORTED = {".mp3", ".wav", ".aif", ".aiff", ".aac", ".m4a", ".mp4", ".m4v", ".flv", ".fxm"};
+	
+	/**
+	 * The number of items collected before a batch is handed to the FX thread.
+	 */
+	private static final int BATCH_SIZE = 1000;
+	
+	/**
+	 * The playlist to import into.
+	 */
+	private final ObservableList<MediaItem> playList;
+	
+	/**
+	 * The worker threads walking directories.
+	 */
+	private final ExecutorService workers;
+	
+	/**
+	 * The batches waiting for insertion on the FX thread.
+	 */
+	private final ConcurrentLinkedQueue<Batch> batches = new ConcurrentLinkedQueue<Batch>();
+	
+	/**
+	 * Set while an insertion is scheduled on the FX thread.
+	 */
+	private final AtomicBoolean insertScheduled = new AtomicBoolean();
+	
+	/**
+	 * Runs the insertions, on the FX thread in the application.
+	 */
+	private final Executor fxThread;
+	
+	/**
+	 * Constructs a new importer for the given playlist.
+	 * 
+	 * @param playList
+	 *            the {@code ObservableList<MediaItem>} to import into.
+	 */
+	public MediaImporter(ObservableList<MediaItem> playList)
+	{
+		this(playList, Platform::runLater);
+	} //end ctor
+	
+	/**
+	 * Constructs a new importer inserting through the given executor.
+	 * 
+	 * @param playList
+	 *            the {@code ObservableList<MediaItem>} to import into.
+	 * @param fxThread
+	 *            the Executor running the insertions in order.
+	 */
+	MediaImporter(ObservableList<MediaItem> playList, Executor fxThread)
+	{
+		this.playList = playList;
+		this.fxThread = fxThread;
+		this.workers = Executors.newFixedThreadPool(
+				Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> 
+				{
+					Thread thread = new Thread(runnable, "media-import");
+					thread.setDaemon(true);
+					return thread;
+				});
+	} //end ctor
+	
+	/**
+	 * Returns whether a file has a supported media extension.
+	 * 
+	 * @param path
+	 *            the Path of the file.
+	 * @return true if the file can be played.
+	 */
+	public static boolean isSupported(Path path)
+	{
+		Path name = path.getFileName();
+		if(name == null)
+		{
+			return false;
+		}
+		String fileName = name.toString().toLowerCase(Locale.ROOT);
+		for(String extension : SUPPORTED)
+		{
+			if(fileName.endsWith(extension))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Creates a MediaItem titled after its file name.
+	 * 
+	 * @param path
+	 *            the Path of the media file.
+	 * @return item the new MediaItem.
+	 */
+	public static MediaItem createItem(Path path)
+	{
+		MediaItem item = new MediaItem(path.toUri());
+		item.setTitle(ConversionUtils.convertToFileName(item.getURI()));
+		return item;
+	}
+	
+	/**
+	 * Imports files and folders in the background. Plain files are added as
+	 * given, folders are walked recursively. Returns immediately.
+	 * 
+	 * @param files
+	 *            the files and folders to import.
+	 * @param onAdded
+	 *            run on the FX thread after each insertion of items of this
+	 *            import, or <i>null</i>.
+	 */
+	public void importFiles(List<File> files, Runnable onAdded)
+	{
+		Import job = new Import(onAdded);
+		List<Path> roots = new ArrayList<Path>(files.size());
+		for(File file : files)
+		{
+			roots.add(file.toPath());
+		}
+		workers.execute(() -> importPaths(roots, new int[0], job));
+	}
+	
+	/**
+	 * Adds the supported files among the given paths and submits a task for
+	 * each directory. Every batch and directory takes the next part of the
+	 * walk key, so that the items can be put in walk order.
+	 * 
+	 * @param paths
+	 *            the files and directories to import.
+	 * @param key
+	 *            the walk key of the paths.
+	 * @param job
+	 *            the import the paths belong to.
+	 */
+	private void importPaths(List<Path> paths, int[] key, Import job)
+	{
+		try
+		{
+			int part = 0;
+			List<MediaItem> batch = new ArrayList<MediaItem>();
+			for(Path path : paths)
+			{
+				if(Files.isDirectory(path))
+				{
+					//Links may lead back to a directory already taken; each is walked once.
+					if(job.visited.add(realPath(path)))
+					{
+						submit(batch, child(key, part++), job);
+						batch = new ArrayList<MediaItem>();
+						int[] directoryKey = child(key, part++);
+						job.pending.incrementAndGet();
+						workers.execute(() -> importDirectory(path, directoryKey, job));
+					}
+				}
+				else if(PlayListFiles.isPlayList(path))
+				{
+					submit(batch, child(key, part++), job);
+					batch = new ArrayList<MediaItem>();
+					readPlayList(path, child(key, part++), job);
+				}
+				else if(isSupported(path))
+				{
+					batch.add(createItem(path));
+					if(batch.size() == BATCH_SIZE)
+					{
+						submit(batch, child(key, part++), job);
+						batch = new ArrayList<MediaItem>();
+					}
+				}
+			}
+			submit(batch, child(key, part), job);
+		}
+		finally
+		{
+			finish(job);
+		}
+	}
+	
+	/**
+	 * Lists a directory in file name order and imports its entries.
+	 * 
+	 * @param directory
+	 *            the directory to import.
+	 * @param key
+	 *            the walk key of the directory.
+	 * @param job
+	 *            the import the directory belongs to.
+	 */
+	private void importDirectory(Path directory, int[] key, Import job)
+	{
+		List<Path> entries = new ArrayList<Path>();
+		try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory))
+		{
+			for(Path entry : stream)
+			{
+				entries.add(entry);
+			}
+		}
+		catch(IOException e)
+		{
+			Log.warn("Could not read {}: {}", directory, e.getMessage());
+		}
+		Collections.sort(entries);
+		importPaths(entries, key, job);
+	}
+	
+	/**
+	 * Returns the walk key of a part of the paths with the given key.
+	 */
+	private static int[] child(int[] key, int part)
+	{
+		int[] child = Arrays.copyOf(key, key.length + 1);
+		child[key.length] = part;
+		return child;
+	}
+	
+	/**
+	 * Returns the real path of a directory, with links resolved.
+	 * 
+	 * @param directory
+	 *            the directory.
+	 * @return the real Path, or the absolute path if it cannot be resolved.
+	 */
+	private static Path realPath(Path directory)
+	{
+		try
+		{
+			return directory.toRealPath();
+		}
+		catch(IOException e)
+		{
+			return directory.toAbsolutePath().normalize();
+		}
+	}
+	
+	/**
+	 * Streams the entries of a playlist file into the playlist.
+	 * 
+	 * @param file
+	 *            the playlist file.
+	 * @param key
+	 *            the walk key of the file.
+	 * @param job
+	 *            the import the file belongs to.
+	 */
+	private void readPlayList(Path file, int[] key, Import job)
+	{
+		AtomicInteger part = new AtomicInteger();
+		try
+		{
+			PlayListFiles.read(file, batch -> submit(batch, child(key, part.getAndIncrement()), job));
+		}
+		catch(IOException e)
+		{
+			Log.warn("Could not read {}: {}", file, e.getMessage());
+		}
+	}
+	
+	/**
+	 * Queues a batch for insertion and schedules the insertion on the FX
+	 * thread unless one is already scheduled.
+	 * 
+	 * @param items
+	 *            the items to insert.
+	 * @param key
+	 *            the walk key of the batch.
+	 * @param job
+	 *            the import the batch belongs to.
+	 */
+	private void submit(List<MediaItem> items, int[] key, Import job)
+	{
+		if(items.isEmpty())
+		{
+			return;
+		}
+		job.imported.addAndGet(items.size());
+		batches.add(new Batch(job, key, items));
+		if(insertScheduled.compareAndSet(false, true))
+		{
+			fxThread.execute(() -> insertBatches());
+		}
+	}
+	
+	/**
+	 * Inserts the queued batches and runs the callback of every import they
+	 * belong to. The batches of an import are put in walk order, each after
+	 * the last inserted batch preceding it; batches meeting in one place are
+	 * inserted with one {@code addAll}.
+	 */
+	private void insertBatches()
+	{
+		insertScheduled.set(false);
+		Map<Import, List<Batch>> byImport = new LinkedHashMap<Import, List<Batch>>();
+		Batch next;
+		while((next = batches.poll()) != null)
+		{
+			byImport.computeIfAbsent(next.job, job -> new ArrayList<Batch>()).add(next);
+		}
+		for(Map.Entry<Import, List<Batch>> entry : byImport.entrySet())
+		{
+			Import job = entry.getKey();
+			List<Batch> queued = entry.getValue();
+			queued.sort((a, b) -> Arrays.compare(a.key, b.key));
+			int from = 0;
+			while(from < queued.size())
+			{
+				//Extends the run while no inserted batch lies in between.
+				int to = from + 1;
+				while(to < queued.size()
+						&& job.placed.subMap(queued.get(to - 1).key, false, queued.get(to).key, false).isEmpty())
+				{
+					to++;
+				}
+				List<MediaItem> items = new ArrayList<MediaItem>();
+				for(Batch batch : queued.subList(from, to))
+				{
+					items.addAll(batch.items);
+					job.placed.put(batch.key, new MediaItem[] {batch.items.get(0), batch.items.get(batch.items.size() - 1)});
+				}
+				playList.addAll(positionOf(job, queued.get(from).key), items);
+				from = to;
+			}
+		}
+		for(Import job : byImport.keySet())
+		{
+			if(job.onAdded != null)
+			{
+				job.onAdded.run();
+			}
+		}
+	}
+	
+	/**
+	 * Returns where a batch of an import goes: after the last item of the
+	 * nearest preceding batch still in the playlist, otherwise before the
+	 * first item of the nearest following one, otherwise at the end.
+	 */
+	private int positionOf(Import job, int[] key)
+	{
+		for(Map.Entry<int[], MediaItem[]> placed = job.placed.lowerEntry(key); placed != null; 
+				placed = job.placed.lowerEntry(placed.getKey()))
+		{
+			int index = playList.indexOf(placed.getValue()[1]);
+			if(index >= 0)
+			{
+				return index + 1;
+			}
+		}
+		for(Map.Entry<int[], MediaItem[]> placed = job.placed.higherEntry(key); placed != null; 
+				placed = job.placed.higherEntry(placed.getKey()))
+		{
+			int index = playList.indexOf(placed.getValue()[0]);
+			if(index >= 0)
+			{
+				return index;
+			}
+		}
+		return playList.size();
+	}
+	
+	/**
+	 * Marks a task of an import as finished and reports the import once all
+	 * of its tasks are done.
+	 * 
+	 * @param job
+	 *            the import the task belongs to.
+	 */
+	private void finish(Import job)
+	{
+		if(job.pending.decrementAndGet() == 0)
+		{
+			Log.info("Added {} files to playlist", job.imported.get());
+		}
+	}
+	
+	/**
+	 * The state of one import: the directories it has taken, its unfinished
+	 * tasks and found items, and the first and last item of each batch it has
+	 * inserted, by walk key.
+	 */
+	private static final class Import
+	{
+		final Set<Path> visited = ConcurrentHashMap.newKeySet();
+		final AtomicInteger pending = new AtomicInteger(1);
+		final AtomicInteger imported = new AtomicInteger();
+		final Runnable onAdded;
+		
+		/**
+		 * Used on the FX thread only.
+		 */
+		final TreeMap<int[], MediaItem[]> placed = new TreeMap<int[], MediaItem[]>(Arrays::compare);
+		
+		Import(Runnable onAdded)
+		{
+			this.onAdded = onAdded;
+		} //end ctor
+	}
+	
+	/**
+	 * Items of an import waiting for insertion.
+	 */
+	private static final class Batch
+	{
+		final Import job;
+		final int[] key;
+		final List<MediaItem> items;
+		
+		Batch(Import job, int[] key, List<MediaItem> items)
+		{
+			this.job = job;
+			this.key = key;
+			this.items = items;
+		} //end ctor
+	}
+}
@@ -0,0 +1,487 @@
+package mediaplayer.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.collections.ObservableMap;
+import javafx.scene.media.Media;
+import javafx.scene.media.MediaPlayer;
+import javafx.util.Duration;
+import mediaplayer.model.MediaItem;
+import mediaplayer.util.Log;
+
+/**
+ * Reads titles and durations of MediaItems off the FX thread. Items are
+ * requested lazily, typically when their playlist row becomes visible. At most
+ * a bounded number of media are opened at the same time. Results are kept in a
+ * cache keyed by path, size and modification time, which is persisted to disk
+ * so that a restart does not probe unchanged files again.
+ * 
+ * @author Alex Hage
+ *
+ */
+public class MetadataService 
+{
+	/**
+	 * The version of the cache file format.
+	 */
+	private static final int CACHE_VERSION = 2;
+	
+	/**
+	 * The longest a media may take to get ready before it is given up.
+	 */
+	private static final Duration PROBE_TIMEOUT = Duration.seconds(10);
+	
+	/**
+	 * The file the cache is persisted to.
+	 */
+	private final File cacheFile;
+	
+	/**
+	 * The cached metadata by path.
+	 */
+	private final Map<String, Entry> cache = new ConcurrentHashMap<String, Entry>();
+	
+	/**
+	 * The items currently being resolved. Accessed on the FX thread only.
+	 */
+	private final Set<MediaItem> inFlight = Collections.newSetFromMap(new IdentityHashMap<MediaItem, Boolean>());
+	
+	/**
+	 * Limits the number of simultaneously opened media.
+	 */
+	private final Semaphore openPermits;
+	
+	/**
+	 * The worker threads resolving items.
+	 */
+	private final ExecutorService workers;
+	
+	/**
+	 * Released once the persisted cache has been read.
+	 */
+	private final CountDownLatch loaded = new CountDownLatch(1);
+	
+	/**
+	 * Set when the cache holds entries not yet persisted.
+	 */
+	private volatile boolean dirty;
+	
+	/**
+	 * Constructs a new service and starts reading the persisted cache.
+	 * 
+	 * @param cacheFile
+	 *            the File the cache is persisted to.
+	 * @param maxOpen
+	 *            the maximum number of media opened at the same time.
+	 */
+	public MetadataService(File cacheFile, int maxOpen)
+	{
+		this.cacheFile = cacheFile;
+		this.openPermits = new Semaphore(maxOpen);
+		this.workers = Executors.newFixedThreadPool(maxOpen, runnable -> 
+		{
+			Thread thread = new Thread(runnable, "media-metadata");
+			thread.setDaemon(true);
+			return thread;
+		});
+		workers.execute(() -> 
+		{
+			try
+			{
+				load();
+			}
+			finally
+			{
+				loaded.countDown();
+			}
+		});
+	} //end ctor
+	
+	/**
+	 * Requests the metadata of an item. Does nothing if the duration is
+	 * already known or the item is being resolved. Must be called on the FX
+	 * thread; the item is updated on the FX thread.
+	 * 
+	 * @param item
+	 *            the MediaItem to resolve.
+	 */
+	public void request(MediaItem item)
+	{
+		if(item.getDuration() != null || item.getURI() == null || !inFlight.add(item))
+		{
+			return;
+		}
+		URI uri = item.getURI();
+		workers.execute(() -> resolve(item, uri));
+	}
+	
+	/**
+	 * Resolves an item from the cache or by opening its media.
+	 * 
+	 * @param item
+	 *            the MediaItem to resolve.
+	 * @param uri
+	 *            the URI of the item.
+	 */
+	private void resolve(MediaItem item, URI uri)
+	{
+		try
+		{
+			loaded.await();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return;
+		}
+		
+		String path = null;
+		long size = -1;
+		long modified = -1;
+		if("file".equals(uri.getScheme()))
+		{
+			try
+			{
+				Path file = Paths.get(uri);
+				BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				path = file.toString();
+				size = attributes.size();
+				modified = attributes.lastModifiedTime().toMillis();
+				
+				Entry entry = cache.get(path);
+				if(entry != null && entry.size == size && entry.modified == modified)
+				{
+					publish(item, entry.title, entry.duration);
+					return;
+				}
+			}
+			catch(IOException | RuntimeException e)
+			{
+				path = null;
+			}
+		}
+		probe(item, uri, path, size, modified);
+	}
+	
+	/**
+	 * Opens the media of an item and reads its metadata once it is ready.
+	 * Holds an open permit until the media is released, at the latest after
+	 * {@link #PROBE_TIMEOUT}.
+	 * 
+	 * @param item
+	 *            the MediaItem to resolve.
+	 * @param uri
+	 *            the URI of the item.
+	 * @param path
+	 *            the cache key or <i>null</i> if the result is not cached.
+	 * @param size
+	 *            the file size.
+	 * @param modified
+	 *            the file modification time.
+	 */
+	private void probe(MediaItem item, URI uri, String path, long size, long modified)
+	{
+		openPermits.acquireUninterruptibly();
+		MediaPlayer player;
+		try
+		{
+			player = new MediaPlayer(new Media(uri.toString()));
+		}
+		catch(RuntimeException e)
+		{
+			openPermits.release();
+			publish(item, null, -1);
+			return;
+		}
+		//The player reports its status on the FX thread, so it is watched from there.
+		Probe probe = new Probe(player, item, path, size, modified);
+		Platform.runLater(probe::watch);
+	}
+	
+	/**
+	 * Applies a result to an item on the FX thread.
+	 * 
+	 * @param item
+	 *            the MediaItem to update.
+	 * @param title
+	 *            the metadata title or <i>null</i> to keep the current one.
+	 * @param duration
+	 *            the duration in milliseconds, negative if unknown.
+	 */
+	private void publish(MediaItem item, String title, long duration)
+	{
+		Platform.runLater(() -> 
+		{
+			inFlight.remove(item);
+			if(title != null)
+			{
+				item.setTitle(title);
+			}
+			item.setDuration(duration >= 0 ? Duration.millis(duration) : Duration.UNKNOWN);
+		});
+	}
+	
+	/**
+	 * Builds a display title from media metadata.
+	 * 
+	 * @param metadata
+	 *            the metadata of the media.
+	 * @return "artist - title", the title alone or <i>null</i> if untitled.
+	 */
+	private static String titleOf(ObservableMap<String, Object> metadata)
+	{
+		Object title = metadata.get("title");
+		if(title == null || title.toString().trim().isEmpty())
+		{
+			return null;
+		}
+		Object artist = metadata.get("artist");
+		if(artist == null || artist.toString().trim().isEmpty())
+		{
+			return title.toString().trim();
+		}
+		return artist.toString().trim() + " - " + title.toString().trim();
+	}
+	
+	/**
+	 * Reads the persisted cache. A missing or unreadable file leaves the cache
+	 * empty.
+	 */
+	private void load()
+	{
+		if(!cacheFile.isFile())
+		{
+			return;
+		}
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile))))
+		{
+			if(in.readInt() != CACHE_VERSION)
+			{
+				return;
+			}
+			while(true)
+			{
+				String path;
+				try
+				{
+					path = in.readUTF();
+				}
+				catch(EOFException e)
+				{
+					break;
+				}
+				long size = in.readLong();
+				long modified = in.readLong();
+				String title = in.readBoolean() ? in.readUTF() : null;
+				long duration = in.readLong();
+				cache.put(path, new Entry(size, modified, title, duration));
+			}
+		}
+		catch(IOException e)
+		{
+			Log.warn("Could not read metadata cache: {}", e.getMessage());
+		}
+	}
+	
+	/**
+	 * Persists the cache if it changed since it was read or last saved. The
+	 * file is replaced atomically.
+	 */
+	public void save()
+	{
+		if(!dirty)
+		{
+			return;
+		}
+		dirty = false;
+		File parent = cacheFile.getAbsoluteFile().getParentFile();
+		File temp = new File(parent, cacheFile.getName() + ".tmp");
+		try
+		{
+			parent.mkdirs();
+			try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))
+			{
+				out.writeInt(CACHE_VERSION);
+				for(Map.Entry<String, Entry> e : cache.entrySet())
+				{
+					Entry entry = e.getValue();
+					out.writeUTF(e.getKey());
+					out.writeLong(entry.size);
+					out.writeLong(entry.modified);
+					out.writeBoolean(entry.title != null);
+					if(entry.title != null)
+					{
+						out.writeUTF(entry.title);
+					}
+					out.writeLong(entry.duration);
+				}
+			}
+			Files.move(temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch(IOException e)
+		{
+			dirty = true;
+			Log.warn("Could not write metadata cache: {}", e.getMessage());
+		}
+	}
+	
+	/**
+	 * A player opened to read the metadata of an item. Its handlers are set
+	 * on the FX thread, where its status changes, so a player that got ready
+	 * or failed before is noticed as well. Gives up after the probe timeout.
+	 */
+	private final class Probe
+	{
+		private final MediaPlayer player;
+		private final MediaItem item;
+		private final String path;
+		private final long size;
+		private final long modified;
+		private final PauseTransition timeout = new PauseTransition(PROBE_TIMEOUT);
+		
+		/**
+		 * Set once the player was released.
+		 */
+		private boolean done;
+		
+		private Probe(MediaPlayer player, MediaItem item, String path, long size, long modified)
+		{
+			this.player = player;
+			this.item = item;
+			this.path = path;
+			this.size = size;
+			this.modified = modified;
+		} //end ctor
+		
+		/**
+		 * Waits for the player to get ready or fail. Runs on the FX thread.
+		 */
+		private void watch()
+		{
+			player.setOnReady(this::ready);
+			player.setOnError(this::failed);
+			timeout.setOnFinished(event -> 
+			{
+				Log.debug("Metadata probe timed out: {}", player.getMedia().getSource());
+				failed();
+			});
+			timeout.play();
+			if(player.getStatus() == MediaPlayer.Status.READY)
+			{
+				ready();
+			}
+			else if(player.getError() != null || player.getStatus() == MediaPlayer.Status.HALTED)
+			{
+				failed();
+			}
+		}
+		
+		private void ready()
+		{
+			if(done)
+			{
+				return;
+			}
+			//Read before release, which disposes the player.
+			Media media = player.getMedia();
+			String title = titleOf(media.getMetadata());
+			long duration = millisOf(media.getDuration());
+			if(!release())
+			{
+				return;
+			}
+			//An unknown length may be known once played, so it is not cached.
+			if(path != null && duration >= 0)
+			{
+				cache.put(path, new Entry(size, modified, title, duration));
+				dirty = true;
+			}
+			publish(item, title, duration);
+		}
+		
+		/**
+		 * Converts a media duration to milliseconds, -1 if unknown or
+		 * indefinite.
+		 */
+		private long millisOf(Duration length)
+		{
+			if(length == null || length.isUnknown() || length.isIndefinite())
+			{
+				return -1;
+			}
+			return (long)length.toMillis();
+		}
+		
+		private void failed()
+		{
+			if(release())
+			{
+				publish(item, null, -1);
+			}
+		}
+		
+		/**
+		 * Disposes the player and returns its open permit, once.
+		 * 
+		 * @return true if released by this call.
+		 */
+		private boolean release()
+		{
+			if(done)
+			{
+				return false;
+			}
+			done = true;
+			timeout.stop();
+			player.setOnReady(null);
+			player.setOnError(null);
+			player.dispose();
+			openPermits.release();
+			return true;
+		}
+	}
+	
+	/**
+	 * A cached metadata result.
+	 */
+	private static final class Entry
+	{
+		final long size;
+		final long modified;
+		final String title;
+		final long duration;
+		
+		Entry(long size, long modified, String title, long duration)
+		{
+			this.size = size;
+			this.modified = modified;
+			this.title = title;
+			this.duration = duration;
+		}
+	}
+}
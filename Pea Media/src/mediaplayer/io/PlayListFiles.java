@@ -0,0 +1,489 @@
+package mediaplayer.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+import javafx.util.Duration;
+import mediaplayer.model.MediaItem;
+import mediaplayer.util.ConversionUtils;
+
+/**
+ * Reads and writes M3U, M3U8 and PLS playlists. Both directions stream line by
+ * line: reading hands the entries to a sink in batches and never holds the
+ * whole file, writing never builds the whole file in memory.
+ * <p>
+ * M3U8 playlists are UTF-8 by definition. M3U and PLS have no fixed encoding:
+ * older players write them in the system's ANSI code page, so they are read
+ * as UTF-8 only if their beginning is valid UTF-8, and as Windows-1252
+ * otherwise. Bytes that do not decode become replacement characters instead
+ * of failing the import. All formats are written as UTF-8.
+ * </p>
+ * 
+ * @author Alex Hage
+ *
+ */
+public class PlayListFiles 
+{
+	/**
+	 * The playlist file extensions, in lower case.
+	 */
+	public static final String[] EXTENSIONS = {".m3u", ".m3u8", ".pls"};
+	
+	/**
+	 * The number of entries handed to the sink at once.
+	 */
+	private static final int BATCH_SIZE = 1000;
+	
+	/**
+	 * The number of bytes checked to tell UTF-8 from the legacy encoding.
+	 */
+	private static final int SNIFF_SIZE = 64 << 10;
+	
+	/**
+	 * The encoding of M3U and PLS playlists that are not UTF-8.
+	 */
+	private static final Charset LEGACY_CHARSET = Charset.forName("windows-1252");
+	
+	/**
+	 * Not instantiable.
+	 */
+	private PlayListFiles()
+	{
+		
+	} //end ctor
+	
+	/**
+	 * Returns whether a file is a playlist by its extension.
+	 * 
+	 * @param path
+	 *            the Path of the file.
+	 * @return true if the file is an M3U, M3U8 or PLS playlist.
+	 */
+	public static boolean isPlayList(Path path)
+	{
+		return extensionOf(path) != null;
+	}
+	
+	/**
+	 * Reads a playlist and hands its entries to a sink in batches. Relative
+	 * entries are resolved against the playlist's directory. Unresolvable
+	 * entries are skipped.
+	 * 
+	 * @param file
+	 *            the playlist file.
+	 * @param sink
+	 *            receives the entries, in batches, on the calling thread.
+	 * @throws IOException
+	 *             if the playlist cannot be read.
+	 */
+	public static void read(Path file, Consumer<List<MediaItem>> sink) throws IOException
+	{
+		List<MediaItem> batch = new ArrayList<MediaItem>(BATCH_SIZE);
+		try(BufferedReader in = newReader(file))
+		{
+			if(".pls".equals(extensionOf(file)))
+			{
+				readPls(in, file, batch, sink);
+			}
+			else
+			{
+				readM3u(in, file, batch, sink);
+			}
+		}
+		if(!batch.isEmpty())
+		{
+			sink.accept(batch);
+		}
+	}
+	
+	/**
+	 * Writes a playlist in the format given by the file's extension. Falls
+	 * back to M3U for unknown extensions.
+	 * 
+	 * @param file
+	 *            the playlist file to write.
+	 * @param items
+	 *            the entries to write.
+	 * @throws IOException
+	 *             if the playlist cannot be written.
+	 */
+	public static void write(Path file, List<MediaItem> items) throws IOException
+	{
+		try(BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8))
+		{
+			if(".pls".equals(extensionOf(file)))
+			{
+				writePls(out, items);
+			}
+			else
+			{
+				writeM3u(out, items);
+			}
+		}
+	}
+	
+	/**
+	 * Opens a playlist for reading in its encoding, replacing bytes that do
+	 * not decode.
+	 */
+	private static BufferedReader newReader(Path file) throws IOException
+	{
+		InputStream in = new BufferedInputStream(Files.newInputStream(file), SNIFF_SIZE);
+		try
+		{
+			Charset charset = StandardCharsets.UTF_8;
+			if(!".m3u8".equals(extensionOf(file)))
+			{
+				in.mark(SNIFF_SIZE);
+				byte[] head = in.readNBytes(SNIFF_SIZE);
+				in.reset();
+				if(!isUtf8(head))
+				{
+					charset = LEGACY_CHARSET;
+				}
+			}
+			CharsetDecoder decoder = charset.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			return new BufferedReader(new InputStreamReader(in, decoder));
+		}
+		catch(IOException e)
+		{
+			in.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Returns whether bytes are valid UTF-8. A sequence cut off at the end
+	 * counts as valid, as the bytes may be the beginning of a longer file.
+	 */
+	private static boolean isUtf8(byte[] bytes)
+	{
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+		return !decoder.decode(ByteBuffer.wrap(bytes), CharBuffer.allocate(bytes.length), false).isError();
+	}
+	
+	/**
+	 * Reads M3U lines. <i>#EXTINF</i> lines supply the length and title of
+	 * the following entry, other comments are skipped.
+	 */
+	private static void readM3u(BufferedReader in, Path file, List<MediaItem> batch, Consumer<List<MediaItem>> sink) throws IOException
+	{
+		String title = null;
+		long seconds = -1;
+		String line;
+		while((line = in.readLine()) != null)
+		{
+			line = stripBom(line).trim();
+			if(line.isEmpty())
+			{
+				continue;
+			}
+			if(line.startsWith("#"))
+			{
+				if(line.regionMatches(true, 0, "#EXTINF:", 0, 8))
+				{
+					int comma = line.indexOf(',');
+					String length = comma < 0 ? line.substring(8) : line.substring(8, comma);
+					seconds = parseSeconds(length);
+					title = comma < 0 ? null : line.substring(comma + 1).trim();
+				}
+				continue;
+			}
+			add(file, line, title, seconds, batch, sink);
+			title = null;
+			seconds = -1;
+		}
+	}
+	
+	/**
+	 * Reads PLS lines. The <i>File</i>, <i>Title</i> and <i>Length</i> keys of
+	 * one entry number are collected until the number changes.
+	 */
+	private static void readPls(BufferedReader in, Path file, List<MediaItem> batch, Consumer<List<MediaItem>> sink) throws IOException
+	{
+		String number = null;
+		String location = null;
+		String title = null;
+		long seconds = -1;
+		String line;
+		while((line = in.readLine()) != null)
+		{
+			line = stripBom(line).trim();
+			int equals = line.indexOf('=');
+			if(equals < 0)
+			{
+				continue;
+			}
+			String key = line.substring(0, equals).trim().toLowerCase(Locale.ROOT);
+			String value = line.substring(equals + 1).trim();
+			String prefix;
+			if(key.startsWith("file"))
+			{
+				prefix = "file";
+			}
+			else if(key.startsWith("title"))
+			{
+				prefix = "title";
+			}
+			else if(key.startsWith("length"))
+			{
+				prefix = "length";
+			}
+			else
+			{
+				continue;
+			}
+			String entry = key.substring(prefix.length());
+			if(!entry.equals(number))
+			{
+				if(location != null)
+				{
+					add(file, location, title, seconds, batch, sink);
+				}
+				number = entry;
+				location = null;
+				title = null;
+				seconds = -1;
+			}
+			if("file".equals(prefix))
+			{
+				location = value;
+			}
+			else if("title".equals(prefix))
+			{
+				title = value;
+			}
+			else
+			{
+				seconds = parseSeconds(value);
+			}
+		}
+		if(location != null)
+		{
+			add(file, location, title, seconds, batch, sink);
+		}
+	}
+	
+	/**
+	 * Resolves an entry location and adds it to the batch, handing the batch
+	 * to the sink once full.
+	 */
+	private static void add(Path file, String location, String title, long seconds, List<MediaItem> batch, Consumer<List<MediaItem>> sink)
+	{
+		URI uri = resolve(file, location);
+		if(uri == null)
+		{
+			return;
+		}
+		MediaItem item = new MediaItem(uri);
+		item.setTitle(title != null && !title.isEmpty() ? title : ConversionUtils.convertToFileName(uri));
+		if(seconds >= 0)
+		{
+			item.setDuration(Duration.seconds(seconds));
+		}
+		batch.add(item);
+		if(batch.size() == BATCH_SIZE)
+		{
+			sink.accept(new ArrayList<MediaItem>(batch));
+			batch.clear();
+		}
+	}
+	
+	/**
+	 * Resolves a playlist entry to a URI. Entries with a scheme are taken as
+	 * URIs, everything else as a path relative to the playlist's directory.
+	 * 
+	 * @param file
+	 *            the playlist file.
+	 * @param location
+	 *            the entry.
+	 * @return the URI or <i>null</i> if the entry cannot be resolved.
+	 */
+	private static URI resolve(Path file, String location)
+	{
+		try
+		{
+			int colon = location.indexOf(':');
+			if(colon > 1 && location.substring(0, colon).matches("[A-Za-z][A-Za-z0-9+.-]*"))
+			{
+				return URI.create(location);
+			}
+			Path path = Paths.get(location);
+			if(!path.isAbsolute())
+			{
+				Path parent = file.toAbsolutePath().getParent();
+				path = parent == null ? path.toAbsolutePath() : parent.resolve(path);
+			}
+			return path.normalize().toUri();
+		}
+		catch(IllegalArgumentException e)
+		{
+			return null;
+		}
+	}
+	
+	/**
+	 * Writes an extended M3U playlist.
+	 */
+	private static void writeM3u(BufferedWriter out, List<MediaItem> items) throws IOException
+	{
+		out.write("#EXTM3U");
+		out.newLine();
+		for(MediaItem item : items)
+		{
+			URI uri = item.getURI();
+			if(uri == null)
+			{
+				continue;
+			}
+			out.write("#EXTINF:");
+			out.write(Long.toString(secondsOf(item)));
+			out.write(',');
+			out.write(titleOf(item));
+			out.newLine();
+			out.write(locationOf(uri));
+			out.newLine();
+		}
+	}
+	
+	/**
+	 * Writes a version 2 PLS playlist.
+	 */
+	private static void writePls(BufferedWriter out, List<MediaItem> items) throws IOException
+	{
+		out.write("[playlist]");
+		out.newLine();
+		int number = 0;
+		for(MediaItem item : items)
+		{
+			URI uri = item.getURI();
+			if(uri == null)
+			{
+				continue;
+			}
+			number++;
+			out.write("File" + number + "=" + locationOf(uri));
+			out.newLine();
+			out.write("Title" + number + "=" + titleOf(item));
+			out.newLine();
+			out.write("Length" + number + "=" + secondsOf(item));
+			out.newLine();
+		}
+		out.write("NumberOfEntries=" + number);
+		out.newLine();
+		out.write("Version=2");
+		out.newLine();
+	}
+	
+	/**
+	 * Returns the location written for a URI: the plain path for local files,
+	 * the URI otherwise.
+	 */
+	private static String locationOf(URI uri)
+	{
+		if("file".equals(uri.getScheme()))
+		{
+			try
+			{
+				return Paths.get(uri).toString();
+			}
+			catch(IllegalArgumentException e)
+			{
+				return uri.toString();
+			}
+		}
+		return uri.toString();
+	}
+	
+	/**
+	 * Returns the title written for an item, without line breaks.
+	 */
+	private static String titleOf(MediaItem item)
+	{
+		String title = item.getTitle();
+		if(title == null || title.isEmpty())
+		{
+			title = ConversionUtils.convertToFileName(item.getURI());
+		}
+		return title.replace('\n', ' ').replace('\r', ' ');
+	}
+	
+	/**
+	 * Returns the length written for an item, -1 if not known.
+	 */
+	private static long secondsOf(MediaItem item)
+	{
+		Duration duration = item.getDuration();
+		if(duration == null || duration.isUnknown() || duration.isIndefinite())
+		{
+			return -1;
+		}
+		return (long)duration.toSeconds();
+	}
+	
+	/**
+	 * Parses a length in whole or fractional seconds, -1 if invalid.
+	 */
+	private static long parseSeconds(String text)
+	{
+		try
+		{
+			return (long)Double.parseDouble(text.trim());
+		}
+		catch(NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+	
+	/**
+	 * Removes a leading UTF-8 byte order mark.
+	 */
+	private static String stripBom(String line)
+	{
+		return !line.isEmpty() && line.charAt(0) == '\uFEFF' ? line.substring(1) : line;
+	}
+	
+	/**
+	 * Returns the playlist extension of a file in lower case, or <i>null</i>.
+	 */
+	private static String extensionOf(Path path)
+	{
+		Path name = path.getFileName();
+		if(name == null)
+		{
+			return null;
+		}
+		String fileName = name.toString().toLowerCase(Locale.ROOT);
+		for(String extension : EXTENSIONS)
+		{
+			if(fileName.endsWith(extension))
+			{
+				return extension;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,286 @@
+package mediaplayer.io;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Warms the OS page cache for the files coming up in the play order, so that
+ * opening them does not wait on a slow disk or network share. The head of
+ * each upcoming file is read with a {@link FileChannel} into a reused direct
+ * buffer on a background thread, within a byte budget split evenly over the
+ * upcoming files. Reading rather than mapping keeps large video files from
+ * taking up address space.
+ * <p>
+ * Each request replaces the one before: a new request interrupts the files
+ * still to be read for the old one. Files read recently are not read again.
+ * Counts an opened file as a hit if its head had been read, as a miss
+ * otherwise.
+ * </p>
+ *
+ * @author Alex Hage
+ *
+ */
+public class ReadAheadPrefetcher
+{
+	public static final int DEFAULT_COUNT = 3;
+	public static final long DEFAULT_BUDGET = 32L << 20;
+
+	/**
+	 * The size of the read buffer.
+	 */
+	private static final int CHUNK_SIZE = 256 << 10;
+
+	/**
+	 * The number of read files remembered.
+	 */
+	private static final int WARMED_LIMIT = 256;
+
+	private final int count;
+	private final long budget;
+	private final ExecutorService worker;
+
+	/**
+	 * The latest files to read, not yet taken by the worker.
+	 */
+	private final AtomicReference<List<URI>> pending = new AtomicReference<List<URI>>();
+
+	/**
+	 * Set while the worker is scheduled.
+	 */
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	/**
+	 * The number of bytes read of each recently read file, least recent first.
+	 */
+	private final Map<URI, Long> warmed = Collections.synchronizedMap(
+			new LinkedHashMap<URI, Long>(16, 0.75f, true)
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<URI, Long> eldest)
+				{
+					return size() > WARMED_LIMIT;
+				}
+			});
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong bytesRead = new AtomicLong();
+
+	/**
+	 * Constructs a prefetcher reading ahead the default number of files
+	 * within the default budget.
+	 */
+	public ReadAheadPrefetcher()
+	{
+		this(DEFAULT_COUNT, DEFAULT_BUDGET);
+	} //end dctor
+
+	/**
+	 * Constructs a prefetcher.
+	 *
+	 * @param count
+	 *            the number of upcoming files to read ahead.
+	 * @param budget
+	 *            the most bytes read per request, split over the files.
+	 */
+	public ReadAheadPrefetcher(int count, long budget)
+	{
+		this.count = Math.max(1, count);
+		this.budget = Math.max(0, budget);
+		this.worker = Executors.newSingleThreadExecutor(runnable ->
+		{
+			Thread thread = new Thread(runnable, "media-prefetch");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+	} //end ctor
+
+	/**
+	 * Returns the number of upcoming files read ahead.
+	 *
+	 * @return count the number of files.
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Reads the heads of the given files in the background, replacing any
+	 * earlier request. Returns immediately.
+	 *
+	 * @param uris
+	 *            the upcoming files in play order; only <i>file</i> URIs are
+	 *            read.
+	 */
+	public void prefetch(List<URI> uris)
+	{
+		pending.set(uris);
+		if(scheduled.compareAndSet(false, true))
+		{
+			worker.execute(this::drain);
+		}
+	}
+
+	/**
+	 * Records that a file is being opened for playback.
+	 *
+	 * @param uri
+	 *            the URI opened.
+	 */
+	public void opened(URI uri)
+	{
+		if(!"file".equalsIgnoreCase(uri.getScheme()))
+		{
+			return;
+		}
+		Long read = warmed.get(uri);
+		if(read != null && read > 0)
+		{
+			hits.incrementAndGet();
+		}
+		else
+		{
+			misses.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Returns the number of opened files whose head had been read.
+	 *
+	 * @return the hit count.
+	 */
+	public long getHitCount()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of opened files not read ahead.
+	 *
+	 * @return the miss count.
+	 */
+	public long getMissCount()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * Returns the number of bytes read ahead.
+	 *
+	 * @return the total bytes read.
+	 */
+	public long getBytesRead()
+	{
+		return bytesRead.get();
+	}
+
+	/**
+	 * Formats the hit and miss counts and the bytes read.
+	 *
+	 * @return the report as String.
+	 */
+	public String report()
+	{
+		long opened = hits.get() + misses.get();
+		return String.format("Prefetch: %d hits, %d misses (%.0f %% hit rate), %.1f MB read",
+				hits.get(), misses.get(), opened == 0 ? 0.0 : 100.0 * hits.get() / opened,
+				bytesRead.get() / (1024.0 * 1024.0));
+	}
+
+	/**
+	 * Stops reading ahead.
+	 */
+	public void close()
+	{
+		worker.shutdownNow();
+	}
+
+	/**
+	 * Reads the latest request. Runs on the worker thread.
+	 */
+	private void drain()
+	{
+		ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+		List<URI> uris;
+		scheduled.set(false);
+		while((uris = pending.getAndSet(null)) != null)
+		{
+			long share = uris.isEmpty() ? 0 : budget / uris.size();
+			for(URI uri : uris)
+			{
+				//A newer request takes over.
+				if(pending.get() != null || Thread.currentThread().isInterrupted())
+				{
+					break;
+				}
+				if("file".equalsIgnoreCase(uri.getScheme()))
+				{
+					warm(uri, share, buffer);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the head of a file unless it was read recently.
+	 *
+	 * @param uri
+	 *            the file URI.
+	 * @param limit
+	 *            the most bytes to read.
+	 * @param buffer
+	 *            the buffer to read into.
+	 */
+	private void warm(URI uri, long limit, ByteBuffer buffer)
+	{
+		Long read = warmed.get(uri);
+		if(read != null && read >= limit)
+		{
+			return;
+		}
+		Path path = Paths.get(uri);
+		long total = 0;
+		long end;
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			end = Math.min(limit, channel.size());
+			while(total < end && pending.get() == null)
+			{
+				buffer.clear();
+				buffer.limit((int)Math.min(buffer.capacity(), end - total));
+				int n = channel.read(buffer, total);
+				if(n < 0)
+				{
+					break;
+				}
+				total += n;
+			}
+		}
+		catch(IOException e)
+		{
+			//Unreadable files are a miss once opened.
+			return;
+		}
+		bytesRead.addAndGet(total);
+		//A file read to its end counts as read for any limit.
+		warmed.put(uri, total == end ? Math.max(total, limit) : total);
+	}
+}
@@ -0,0 +1,497 @@
+package mediaplayer.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import javafx.util.Duration;
+import mediaplayer.util.Log;
+
+/**
+ * Remembers where long media were left off, so that they resume there when
+ * played again. Positions are kept by media identity, a 64-bit hash of the
+ * URI, in an open-addressing table, so a lookup costs one probe or two.
+ * <p>
+ * Every change is appended to a journal of fixed-size records in a
+ * memory-mapped file. Saving a position is thus a store into the page cache
+ * and no system call; the OS writes the pages back in its own time, so a
+ * crash of the application loses nothing. The file grows in chunks and is
+ * compacted to the live positions once most of its records are outdated,
+ * when opened and when it would have to grow.
+ * </p>
+ * <p>
+ * Only media of at least {@link #MIN_LENGTH} are remembered, and only between
+ * the first and last {@link #MARGIN} of them; a position outside forgets the
+ * media. The journal is opened on first use. Must be used on one thread only,
+ * the FX thread in the application.
+ * </p>
+ *
+ * @author Alex Hage
+ *
+ */
+public class ResumeStore
+{
+	/**
+	 * The shortest media remembered.
+	 */
+	public static final Duration MIN_LENGTH = Duration.minutes(10);
+
+	/**
+	 * The start and end of media in which positions are not remembered.
+	 */
+	public static final Duration MARGIN = Duration.seconds(30);
+
+	private static final int MAGIC = 0x50454152;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+
+	/**
+	 * A record: the key and the position in milliseconds, 0 if forgotten.
+	 * A zero key marks the end of the journal.
+	 */
+	private static final int RECORD_SIZE = 16;
+
+	/**
+	 * The records the file grows by.
+	 */
+	private static final int CHUNK_RECORDS = 4096;
+
+	/**
+	 * Compacts once the journal holds this many records per live position.
+	 */
+	private static final int COMPACT_RATIO = 4;
+
+	private final File file;
+
+	private FileChannel channel;
+	private MappedByteBuffer journal;
+
+	/**
+	 * The offset of the next record to append.
+	 */
+	private int end;
+
+	/**
+	 * The hash table: keys, 0 for a free bucket, and positions by key.
+	 */
+	private long[] keys = new long[1024];
+	private long[] positions = new long[1024];
+	private int used;
+
+	/**
+	 * The number of keys with a position.
+	 */
+	private int live;
+
+	/**
+	 * Set once opening was tried.
+	 */
+	private boolean opened;
+
+	/**
+	 * Constructs a store kept in the given journal file.
+	 *
+	 * @param file
+	 *            the journal File, created on first use.
+	 */
+	public ResumeStore(File file)
+	{
+		this.file = file;
+	} //end ctor
+
+	/**
+	 * Returns the saved position of the media at a URI.
+	 *
+	 * @param uri
+	 *            the URI of the media.
+	 * @return the position, or <i>null</i> if none is saved.
+	 */
+	public Duration get(URI uri)
+	{
+		if(uri == null)
+		{
+			return null;
+		}
+		open();
+		long position = positions[find(key(uri))];
+		return position > 0 ? Duration.millis(position) : null;
+	}
+
+	/**
+	 * Saves the position of the media at a URI. A position within the margin
+	 * at the start or end forgets the media; media shorter than
+	 * {@link #MIN_LENGTH} are ignored.
+	 *
+	 * @param uri
+	 *            the URI of the media.
+	 * @param position
+	 *            the position reached.
+	 * @param length
+	 *            the length of the media, or <i>null</i> or UNKNOWN if not
+	 *            known.
+	 */
+	public void put(URI uri, Duration position, Duration length)
+	{
+		if(uri == null || position == null)
+		{
+			return;
+		}
+		boolean known = length != null && !length.isUnknown() && !length.isIndefinite();
+		if(known && length.lessThan(MIN_LENGTH))
+		{
+			return;
+		}
+		boolean inside = position.greaterThanOrEqualTo(MARGIN)
+				&& (!known || length.subtract(position).greaterThanOrEqualTo(MARGIN));
+		store(key(uri), inside ? (long)position.toMillis() : 0);
+	}
+
+	/**
+	 * Forgets the position of the media at a URI, typically once it has been
+	 * played to the end.
+	 *
+	 * @param uri
+	 *            the URI of the media.
+	 */
+	public void remove(URI uri)
+	{
+		if(uri != null)
+		{
+			store(key(uri), 0);
+		}
+	}
+
+	/**
+	 * Returns the number of remembered positions.
+	 *
+	 * @return the number of media with a position.
+	 */
+	public int size()
+	{
+		open();
+		return live;
+	}
+
+	/**
+	 * Closes the journal. Its pages are written back by the OS.
+	 */
+	public void close()
+	{
+		if(channel == null)
+		{
+			return;
+		}
+		try
+		{
+			journal.force();
+			channel.close();
+		}
+		catch(IOException e)
+		{
+			Log.warn("Could not close resume journal: {}", e.getMessage());
+		}
+		channel = null;
+		journal = null;
+	}
+
+	/**
+	 * Sets a position in the table and appends it to the journal, unless it
+	 * is already set.
+	 */
+	private void store(long key, long position)
+	{
+		open();
+		int bucket = find(key);
+		if(keys[bucket] == key && positions[bucket] == position)
+		{
+			return;
+		}
+		if(keys[bucket] != key && position == 0)
+		{
+			return;
+		}
+		set(bucket, key, position);
+		append(key, position);
+	}
+
+	/**
+	 * Reads the journal into the table on first use, compacts it if it is
+	 * mostly outdated and maps it for appending. Without a usable journal,
+	 * positions are kept in memory only.
+	 */
+	private void open()
+	{
+		if(opened)
+		{
+			return;
+		}
+		opened = true;
+		try
+		{
+			int records = file.isFile() ? load() : 0;
+			if(records > COMPACT_RATIO * live + CHUNK_RECORDS)
+			{
+				compact();
+			}
+			map();
+		}
+		catch(IOException | RuntimeException e)
+		{
+			Log.warn("Could not open resume journal: {}", e.getMessage());
+			unmap();
+		}
+	}
+
+	/**
+	 * Replays the journal into the table.
+	 *
+	 * @return the number of records read.
+	 * @throws IOException
+	 *             if the file cannot be read or is not a journal.
+	 */
+	private int load() throws IOException
+	{
+		ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		if(in.capacity() < HEADER_SIZE || in.getInt(0) != MAGIC || in.getInt(Integer.BYTES) != VERSION)
+		{
+			throw new IOException("Not a resume journal: " + file);
+		}
+		int records = 0;
+		for(int at = HEADER_SIZE; at + RECORD_SIZE <= in.capacity(); at += RECORD_SIZE, records++)
+		{
+			long key = in.getLong(at);
+			if(key == 0)
+			{
+				break;
+			}
+			set(find(key), key, in.getLong(at + Long.BYTES));
+		}
+		return records;
+	}
+
+	/**
+	 * Opens and maps the journal file, writing the header of a new one, and
+	 * finds the end of its records.
+	 *
+	 * @throws IOException
+	 *             if the file cannot be opened or is not a journal.
+	 */
+	private void map() throws IOException
+	{
+		file.getAbsoluteFile().getParentFile().mkdirs();
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		long size = channel.size();
+		if(size > Integer.MAX_VALUE)
+		{
+			throw new IOException("Resume journal too large: " + file);
+		}
+		journal = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+				Math.max(size, HEADER_SIZE + (long)CHUNK_RECORDS * RECORD_SIZE));
+		if(size == 0)
+		{
+			journal.putInt(0, MAGIC);
+			journal.putInt(Integer.BYTES, VERSION);
+		}
+		else if(journal.getInt(0) != MAGIC || journal.getInt(Integer.BYTES) != VERSION)
+		{
+			throw new IOException("Not a resume journal: " + file);
+		}
+		end = HEADER_SIZE;
+		while(end + RECORD_SIZE <= journal.capacity() && journal.getLong(end) != 0)
+		{
+			end += RECORD_SIZE;
+		}
+	}
+
+	private void unmap()
+	{
+		try
+		{
+			if(channel != null)
+			{
+				channel.close();
+			}
+		}
+		catch(IOException e)
+		{
+			//Nothing left to release.
+		}
+		channel = null;
+		journal = null;
+	}
+
+	/**
+	 * Appends a record, making room first by compacting or growing the file.
+	 */
+	private void append(long key, long position)
+	{
+		if(journal == null)
+		{
+			return;
+		}
+		try
+		{
+			if(end + RECORD_SIZE > journal.capacity())
+			{
+				int records = (end - HEADER_SIZE) / RECORD_SIZE;
+				if(records > COMPACT_RATIO * live)
+				{
+					//The record is in the table already and written with it.
+					unmap();
+					boolean compacted = compact();
+					map();
+					if(compacted)
+					{
+						return;
+					}
+				}
+				journal = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+						journal.capacity() + (long)CHUNK_RECORDS * RECORD_SIZE);
+			}
+			//The key last, as it marks the record as written.
+			journal.putLong(end + Long.BYTES, position);
+			journal.putLong(end, key);
+			end += RECORD_SIZE;
+		}
+		catch(IOException e)
+		{
+			Log.warn("Could not write resume journal: {}", e.getMessage());
+			unmap();
+		}
+	}
+
+	/**
+	 * Replaces the journal with one holding the live positions only, and
+	 * rebuilds the table without the forgotten keys. The new journal is
+	 * written next to the old one and moved over it, which fails on systems
+	 * that do not replace a file still mapped; the old journal stays valid
+	 * then.
+	 *
+	 * @return true if the journal was replaced.
+	 */
+	private boolean compact()
+	{
+		long[] oldKeys = keys;
+		long[] oldPositions = positions;
+		int capacity = 1024;
+		while(capacity < live * 4)
+		{
+			capacity <<= 1;
+		}
+		int records = (live / CHUNK_RECORDS + 1) * CHUNK_RECORDS;
+		keys = new long[capacity];
+		positions = new long[capacity];
+		used = 0;
+		live = 0;
+
+		ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + records * RECORD_SIZE);
+		out.putInt(MAGIC).putInt(VERSION).putLong(0);
+		for(int i = 0; i < oldKeys.length; i++)
+		{
+			if(oldKeys[i] != 0 && oldPositions[i] > 0)
+			{
+				set(find(oldKeys[i]), oldKeys[i], oldPositions[i]);
+				out.putLong(oldKeys[i]).putLong(oldPositions[i]);
+			}
+		}
+		out.clear();
+
+		File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+		try
+		{
+			try(FileChannel target = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+			{
+				while(out.hasRemaining())
+				{
+					target.write(out);
+				}
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			return true;
+		}
+		catch(IOException e)
+		{
+			Log.warn("Could not compact resume journal: {}", e.getMessage());
+			temp.delete();
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the bucket of a key, or the free bucket it would go in.
+	 */
+	private int find(long key)
+	{
+		int mask = keys.length - 1;
+		int bucket = (int)(key ^ (key >>> 32)) & mask;
+		while(keys[bucket] != 0 && keys[bucket] != key)
+		{
+			bucket = (bucket + 1) & mask;
+		}
+		return bucket;
+	}
+
+	/**
+	 * Sets the position of a key in its bucket, growing the table when it is
+	 * half full.
+	 */
+	private void set(int bucket, long key, long position)
+	{
+		if(keys[bucket] == 0)
+		{
+			keys[bucket] = key;
+			used++;
+		}
+		else if(positions[bucket] > 0)
+		{
+			live--;
+		}
+		positions[bucket] = position;
+		if(position > 0)
+		{
+			live++;
+		}
+		if(used * 2 > keys.length)
+		{
+			long[] oldKeys = keys;
+			long[] oldPositions = positions;
+			keys = new long[oldKeys.length * 2];
+			positions = new long[oldKeys.length * 2];
+			for(int i = 0; i < oldKeys.length; i++)
+			{
+				if(oldKeys[i] != 0)
+				{
+					int moved = find(oldKeys[i]);
+					keys[moved] = oldKeys[i];
+					positions[moved] = oldPositions[i];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the identity of the media at a URI: a 64-bit FNV-1a hash of the
+	 * URI, never 0. Collisions are not expected below billions of media.
+	 */
+	static long key(URI uri)
+	{
+		long hash = 0xcbf29ce484222325L;
+		for(byte b : uri.toString().getBytes(StandardCharsets.UTF_8))
+		{
+			hash ^= b & 0xFF;
+			hash *= 0x100000001b3L;
+		}
+		//Spreads the low bits used as bucket.
+		hash ^= hash >>> 29;
+		return hash == 0 ? 1 : hash;
+	}
+}
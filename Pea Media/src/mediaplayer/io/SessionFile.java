@@ -0,0 +1,330 @@
+package mediaplayer.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javafx.util.Duration;
+import mediaplayer.model.MediaItem;
+import mediaplayer.util.ConversionUtils;
+
+/**
+ * A compact binary snapshot of a playback session: the playlist, the current
+ * index and the playback position. URIs are split into a directory prefix,
+ * written once and referenced by number afterwards, and a file part. Numbers
+ * are written as variable-length integers and titles only when they differ
+ * from the file name. Sessions are written as a stream and read from a
+ * memory-mapped file, handing the entries over in batches.
+ * 
+ * @author Alex Hage
+ *
+ */
+public class SessionFile 
+{
+	private static final int MAGIC = 0x50454153;
+	private static final int VERSION = 1;
+	private static final int BATCH_SIZE = 1000;
+	
+	private static final int DURATION_NONE = 0;
+	private static final int DURATION_UNKNOWN = 1;
+	private static final int DURATION_INDEFINITE = 2;
+	private static final int DURATION_OFFSET = 3;
+	
+	/**
+	 * The index of the current item.
+	 */
+	private final int current;
+	
+	/**
+	 * The playback position in the current item in milliseconds.
+	 */
+	private final long position;
+	
+	/**
+	 * The number of playlist entries.
+	 */
+	private final int count;
+	
+	/**
+	 * Constructs a session header.
+	 * 
+	 * @param current
+	 *            the index of the current item.
+	 * @param position
+	 *            the playback position in milliseconds.
+	 * @param count
+	 *            the number of playlist entries.
+	 */
+	private SessionFile(int current, long position, int count)
+	{
+		this.current = current;
+		this.position = position;
+		this.count = count;
+	} //end ctor
+	
+	/**
+	 * Returns the index of the current item.
+	 * 
+	 * @return current int.
+	 */
+	public int getCurrent()
+	{
+		return current;
+	}
+	
+	/**
+	 * Returns the playback position in the current item.
+	 * 
+	 * @return position in milliseconds.
+	 */
+	public long getPosition()
+	{
+		return position;
+	}
+	
+	/**
+	 * Returns the number of playlist entries.
+	 * 
+	 * @return count int.
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+	
+	/**
+	 * Writes a session. The file is replaced atomically. A session read
+	 * earlier stays mapped until its buffer is collected, and systems that do
+	 * not replace a file still mapped fail the move; the old session stays
+	 * valid then and no temporary file is left behind.
+	 * 
+	 * @param file
+	 *            the session File.
+	 * @param items
+	 *            the playlist.
+	 * @param current
+	 *            the index of the current item.
+	 * @param position
+	 *            the playback position in milliseconds.
+	 * @throws IOException
+	 *             if the session cannot be written.
+	 */
+	public static void write(File file, List<MediaItem> items, int current, long position) throws IOException
+	{
+		File parent = file.getAbsoluteFile().getParentFile();
+		parent.mkdirs();
+		File temp = new File(parent, file.getName() + ".tmp");
+		try
+		{
+			writeEntries(temp, items, current, position);
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch(IOException e)
+		{
+			temp.delete();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Writes the header and the playlist entries to a file.
+	 */
+	private static void writeEntries(File temp, List<MediaItem> items, int current, long position) throws IOException
+	{
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16)))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(current);
+			out.writeLong(position);
+			out.writeInt(items.size());
+			
+			Map<String, Integer> prefixes = new HashMap<String, Integer>();
+			for(MediaItem item : items)
+			{
+				URI uri = item.getURI();
+				String text = uri == null ? "" : uri.toString();
+				int split = text.lastIndexOf('/') + 1;
+				String prefix = text.substring(0, split);
+				Integer index = prefixes.get(prefix);
+				if(index == null)
+				{
+					writeVarInt(out, prefixes.size());
+					writeString(out, prefix);
+					prefixes.put(prefix, prefixes.size());
+				}
+				else
+				{
+					writeVarInt(out, index);
+				}
+				writeString(out, text.substring(split));
+				
+				String title = item.getTitle();
+				boolean ownTitle = title != null && (uri == null || !title.equals(ConversionUtils.convertToFileName(uri)));
+				out.writeBoolean(ownTitle);
+				if(ownTitle)
+				{
+					writeString(out, title);
+				}
+				writeVarInt(out, encode(item.getDuration()));
+			}
+		}
+	}
+	
+	/**
+	 * Reads a session from a memory-mapped file and hands its playlist
+	 * entries to a sink in batches.
+	 * 
+	 * @param file
+	 *            the session File.
+	 * @param sink
+	 *            receives the entries, in batches, on the calling thread.
+	 * @return the session header with current index and position.
+	 * @throws IOException
+	 *             if the session cannot be read or is not a session file.
+	 */
+	public static SessionFile read(File file, Consumer<List<MediaItem>> sink) throws IOException
+	{
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			if(channel.size() > Integer.MAX_VALUE)
+			{
+				throw new IOException("Session file too large: " + file);
+			}
+			MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if(in.remaining() < 24 || in.getInt() != MAGIC || in.getInt() != VERSION)
+			{
+				throw new IOException("Not a session file: " + file);
+			}
+			int current = in.getInt();
+			long position = in.getLong();
+			int count = in.getInt();
+			
+			List<String> prefixes = new ArrayList<String>();
+			List<MediaItem> batch = new ArrayList<MediaItem>(BATCH_SIZE);
+			try
+			{
+				for(int i = 0; i < count; i++)
+				{
+					int index = readVarInt(in);
+					if(index == prefixes.size())
+					{
+						prefixes.add(readString(in));
+					}
+					String text = prefixes.get(index) + readString(in);
+					String title = in.get() != 0 ? readString(in) : null;
+					Duration duration = decode(readVarInt(in));
+					
+					MediaItem item = new MediaItem(text.isEmpty() ? null : URI.create(text));
+					item.setTitle(title != null ? title : item.getURI() == null ? "" : ConversionUtils.convertToFileName(item.getURI()));
+					item.setDuration(duration);
+					batch.add(item);
+					if(batch.size() == BATCH_SIZE)
+					{
+						sink.accept(batch);
+						batch = new ArrayList<MediaItem>(BATCH_SIZE);
+					}
+				}
+			}
+			catch(RuntimeException e)
+			{
+				throw new IOException("Corrupt session file: " + file, e);
+			}
+			if(!batch.isEmpty())
+			{
+				sink.accept(batch);
+			}
+			return new SessionFile(current, position, count);
+		}
+	}
+	
+	private static int encode(Duration duration)
+	{
+		if(duration == null)
+		{
+			return DURATION_NONE;
+		}
+		if(duration.isUnknown())
+		{
+			return DURATION_UNKNOWN;
+		}
+		if(duration.isIndefinite())
+		{
+			return DURATION_INDEFINITE;
+		}
+		return (int)Math.min(Integer.MAX_VALUE - DURATION_OFFSET, Math.max(0, Math.round(duration.toMillis()))) + DURATION_OFFSET;
+	}
+	
+	private static Duration decode(int value)
+	{
+		switch(value)
+		{
+			case DURATION_NONE:
+				return null;
+			case DURATION_UNKNOWN:
+				return Duration.UNKNOWN;
+			case DURATION_INDEFINITE:
+				return Duration.INDEFINITE;
+			default:
+				return Duration.millis(value - DURATION_OFFSET);
+		}
+	}
+	
+	/**
+	 * Writes a non-negative int in 7-bit groups, low group first.
+	 */
+	private static void writeVarInt(OutputStream out, int value) throws IOException
+	{
+		while((value & ~0x7F) != 0)
+		{
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+	
+	private static int readVarInt(MappedByteBuffer in)
+	{
+		int value = 0;
+		for(int shift = 0; shift < 32; shift += 7)
+		{
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+			if(b >= 0)
+			{
+				return value;
+			}
+		}
+		throw new IllegalStateException("Malformed variable-length int");
+	}
+	
+	private static void writeString(OutputStream out, String value) throws IOException
+	{
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+	
+	private static String readString(MappedByteBuffer in)
+	{
+		int length = readVarInt(in);
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,159 @@
+package mediaplayer.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The overview of an audio file's waveform: the lowest and highest sample in
+ * each of a fixed number of equal time slices, as signed bytes. Two bytes per
+ * slice keep the overview of even hour-long media at a few kilobytes.
+ * <p>
+ * Overviews are kept in peak files, which record the size and modification
+ * time of the media they were made from, so that a changed file is analyzed
+ * again.
+ * </p>
+ *
+ * @author Alex Hage
+ *
+ */
+public class Waveform
+{
+	private static final int MAGIC = 0x5045414B;
+	private static final int VERSION = 1;
+
+	private final byte[] min;
+	private final byte[] max;
+
+	/**
+	 * Constructs an overview from the peaks of its slices.
+	 *
+	 * @param min
+	 *            the lowest sample of each slice, scaled to -127..127.
+	 * @param max
+	 *            the highest sample of each slice, scaled to -127..127.
+	 */
+	public Waveform(byte[] min, byte[] max)
+	{
+		this.min = min;
+		this.max = max;
+	} //end ctor
+
+	/**
+	 * Returns the number of time slices.
+	 *
+	 * @return the slice count.
+	 */
+	public int size()
+	{
+		return min.length;
+	}
+
+	/**
+	 * Returns the lowest sample of a slice.
+	 *
+	 * @param slice
+	 *            the index of the slice.
+	 * @return the sample, from -1 to 1.
+	 */
+	public float getMin(int slice)
+	{
+		return min[slice] / 127f;
+	}
+
+	/**
+	 * Returns the highest sample of a slice.
+	 *
+	 * @param slice
+	 *            the index of the slice.
+	 * @return the sample, from -1 to 1.
+	 */
+	public float getMax(int slice)
+	{
+		return max[slice] / 127f;
+	}
+
+	/**
+	 * Writes the overview to a peak file. The file is replaced atomically.
+	 *
+	 * @param file
+	 *            the peak File.
+	 * @param size
+	 *            the size of the media in bytes.
+	 * @param modified
+	 *            the modification time of the media.
+	 * @throws IOException
+	 *             if the file cannot be written.
+	 */
+	public void write(File file, long size, long modified) throws IOException
+	{
+		File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(size);
+			out.writeLong(modified);
+			out.writeInt(min.length);
+			out.write(min);
+			out.write(max);
+		}
+		catch(IOException e)
+		{
+			temp.delete();
+			throw e;
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Reads an overview from a peak file, if it was made from the media as
+	 * it is now.
+	 *
+	 * @param file
+	 *            the peak File.
+	 * @param size
+	 *            the size of the media in bytes.
+	 * @param modified
+	 *            the modification time of the media.
+	 * @return the Waveform, or <i>null</i> if there is no peak file or it is
+	 *         outdated.
+	 * @throws IOException
+	 *             if the file cannot be read or is not a peak file.
+	 */
+	public static Waveform read(File file, long size, long modified) throws IOException
+	{
+		if(!file.isFile())
+		{
+			return null;
+		}
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+		{
+			if(in.readInt() != MAGIC || in.readInt() != VERSION)
+			{
+				throw new IOException("Not a peak file: " + file);
+			}
+			if(in.readLong() != size || in.readLong() != modified)
+			{
+				return null;
+			}
+			int count = in.readInt();
+			if(count < 0 || count > file.length())
+			{
+				throw new IOException("Corrupt peak file: " + file);
+			}
+			byte[] min = new byte[count];
+			byte[] max = new byte[count];
+			in.readFully(min);
+			in.readFully(max);
+			return new Waveform(min, max);
+		}
+	}
+}
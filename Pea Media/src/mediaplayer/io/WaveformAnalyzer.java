@@ -0,0 +1,419 @@
+package mediaplayer.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import javafx.application.Platform;
+import mediaplayer.util.Log;
+
+/**
+ * Makes waveform overviews of local audio files in the background. Any file
+ * <i>javax.sound.sampled</i> can read, WAV, AIFF and AU out of the box, is
+ * decoded to 16-bit PCM and reduced to the peaks of {@link #SLICES} time
+ * slices. Uncompressed files are split into chunks decoded in parallel; other
+ * formats are decoded in one pass, as they cannot be entered in the middle.
+ * <p>
+ * Each decoder reads through one small reused buffer, so memory does not grow
+ * with the length of the media. The overview is cached in a peak file next to
+ * the media, or in the cache directory if that is not writable. Only the
+ * latest request is worked on; a new one cancels the decoding of the one
+ * before. The result is handed to the FX thread.
+ * </p>
+ *
+ * @author Alex Hage
+ *
+ */
+public class WaveformAnalyzer
+{
+	/**
+	 * The number of time slices of an overview.
+	 */
+	public static final int SLICES = 2048;
+
+	public static final String PEAK_EXTENSION = ".peaks";
+
+	/**
+	 * The size of each decoder's read buffer.
+	 */
+	private static final int BUFFER_SIZE = 64 << 10;
+
+	private static final AudioFormat.Encoding[] SEEKABLE = {AudioFormat.Encoding.PCM_SIGNED,
+			AudioFormat.Encoding.PCM_UNSIGNED, AudioFormat.Encoding.PCM_FLOAT};
+
+	/**
+	 * The directory for peak files that cannot be kept next to their media.
+	 */
+	private final File cacheDirectory;
+
+	/**
+	 * Takes requests one at a time and splits them into chunks.
+	 */
+	private final ExecutorService coordinator;
+
+	/**
+	 * Decodes the chunks.
+	 */
+	private final ExecutorService decoders;
+
+	private final int decoderCount;
+
+	/**
+	 * Counts the requests; a chunk of an older one stops decoding.
+	 */
+	private final AtomicInteger generation = new AtomicInteger();
+
+	/**
+	 * Constructs an analyzer decoding on up to half the processors, at most
+	 * four.
+	 *
+	 * @param cacheDirectory
+	 *            the directory for peak files that cannot be written next to
+	 *            their media.
+	 */
+	public WaveformAnalyzer(File cacheDirectory)
+	{
+		this.cacheDirectory = cacheDirectory;
+		this.decoderCount = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+		this.coordinator = Executors.newSingleThreadExecutor(runnable -> thread(runnable, "waveform-analyzer"));
+		this.decoders = Executors.newFixedThreadPool(decoderCount, runnable -> thread(runnable, "waveform-decoder"));
+	} //end ctor
+
+	/**
+	 * Requests the overview of a file, cancelling any earlier request.
+	 * Returns immediately.
+	 *
+	 * @param uri
+	 *            the URI of the media; only <i>file</i> URIs are analyzed.
+	 *            <i>null</i> only cancels.
+	 * @param sink
+	 *            receives the Waveform on the FX thread, unless another
+	 *            request was made meanwhile. Not called if the file cannot be
+	 *            analyzed.
+	 */
+	public void request(URI uri, Consumer<Waveform> sink)
+	{
+		int request = generation.incrementAndGet();
+		if(uri == null || !"file".equalsIgnoreCase(uri.getScheme()))
+		{
+			return;
+		}
+		coordinator.execute(() ->
+		{
+			if(request != generation.get())
+			{
+				return;
+			}
+			Waveform waveform = analyze(request, Paths.get(uri).toFile());
+			if(waveform != null)
+			{
+				Platform.runLater(() ->
+				{
+					if(request == generation.get())
+					{
+						sink.accept(waveform);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Stops analyzing.
+	 */
+	public void close()
+	{
+		generation.incrementAndGet();
+		coordinator.shutdownNow();
+		decoders.shutdownNow();
+	}
+
+	/**
+	 * Reads the overview of a file from its peak file, or makes and caches
+	 * it. Runs on the coordinator thread.
+	 *
+	 * @return the Waveform, or <i>null</i> if the file cannot be analyzed or
+	 *         the request was cancelled.
+	 */
+	private Waveform analyze(int request, File media)
+	{
+		long size = media.length();
+		long modified = media.lastModified();
+		File peaks = new File(media.getAbsoluteFile().getParentFile(), media.getName() + PEAK_EXTENSION);
+		File cached = new File(cacheDirectory, cacheName(media));
+		try
+		{
+			Waveform waveform = Waveform.read(peaks, size, modified);
+			if(waveform == null)
+			{
+				waveform = Waveform.read(cached, size, modified);
+			}
+			if(waveform != null)
+			{
+				return waveform;
+			}
+		}
+		catch(IOException e)
+		{
+			Log.debug("Ignoring peak file of {}: {}", media, e.getMessage());
+		}
+
+		long start = System.nanoTime();
+		Waveform waveform;
+		try
+		{
+			waveform = decode(request, media);
+		}
+		catch(IOException | UnsupportedAudioFileException | IllegalArgumentException e)
+		{
+			Log.debug("No waveform for {}: {}", media, e.getMessage());
+			return null;
+		}
+		if(waveform == null)
+		{
+			return null;
+		}
+		if(Log.isEnabled(Log.Level.DEBUG))
+		{
+			Log.debug("Analyzed {} in {} ms", media.getName(), (System.nanoTime() - start) / 1000000);
+		}
+		try
+		{
+			waveform.write(peaks, size, modified);
+		}
+		catch(IOException e)
+		{
+			try
+			{
+				cacheDirectory.mkdirs();
+				waveform.write(cached, size, modified);
+			}
+			catch(IOException e2)
+			{
+				Log.debug("Could not cache waveform of {}: {}", media, e2.getMessage());
+			}
+		}
+		return waveform;
+	}
+
+	/**
+	 * Decodes a file into its overview, in parallel chunks if it is
+	 * uncompressed.
+	 *
+	 * @return the Waveform, or <i>null</i> if the request was cancelled.
+	 */
+	private Waveform decode(int request, File media) throws IOException, UnsupportedAudioFileException
+	{
+		long frames;
+		boolean seekable = false;
+		try(AudioInputStream source = AudioSystem.getAudioInputStream(media))
+		{
+			frames = source.getFrameLength();
+			for(AudioFormat.Encoding encoding : SEEKABLE)
+			{
+				seekable |= encoding.equals(source.getFormat().getEncoding());
+			}
+		}
+		if(frames <= 0)
+		{
+			throw new UnsupportedAudioFileException("Unknown length");
+		}
+		int slices = (int)Math.min(SLICES, frames);
+		byte[] min = new byte[slices];
+		byte[] max = new byte[slices];
+
+		int chunks = seekable ? Math.min(decoderCount, slices) : 1;
+		List<Future<Boolean>> parts = new ArrayList<Future<Boolean>>(chunks);
+		for(int c = 0; c < chunks; c++)
+		{
+			int first = (int)((long)slices * c / chunks);
+			int last = (int)((long)slices * (c + 1) / chunks);
+			parts.add(decoders.submit(() -> decodeChunk(request, media, frames, slices, first, last, min, max)));
+		}
+		boolean complete = true;
+		try
+		{
+			for(Future<Boolean> part : parts)
+			{
+				complete &= part.get();
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch(ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException)
+			{
+				throw (IOException)cause;
+			}
+			if(cause instanceof UnsupportedAudioFileException)
+			{
+				throw (UnsupportedAudioFileException)cause;
+			}
+			throw new IOException(cause);
+		}
+		return complete ? new Waveform(min, max) : null;
+	}
+
+	/**
+	 * Decodes the frames of a range of slices into their peaks. Runs on a
+	 * decoder thread.
+	 *
+	 * @return false if the request was cancelled.
+	 */
+	private boolean decodeChunk(int request, File media, long frames, int slices, int first, int last,
+			byte[] min, byte[] max) throws IOException, UnsupportedAudioFileException
+	{
+		long startFrame = firstFrame(first, frames, slices);
+		long endFrame = firstFrame(last, frames, slices);
+		try(AudioInputStream source = AudioSystem.getAudioInputStream(media))
+		{
+			AudioFormat format = source.getFormat();
+			if(startFrame > 0)
+			{
+				skipFully(source, startFrame * format.getFrameSize());
+			}
+			AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(), 16,
+					format.getChannels(), format.getChannels() * 2, format.getSampleRate(), false);
+			try(AudioInputStream in = format.matches(pcm) ? source : AudioSystem.getAudioInputStream(pcm, source))
+			{
+				int channels = pcm.getChannels();
+				int frameSize = pcm.getFrameSize();
+				byte[] buffer = new byte[BUFFER_SIZE - BUFFER_SIZE % frameSize];
+				long frame = startFrame;
+				int slice = first;
+				long sliceEnd = firstFrame(slice + 1, frames, slices);
+				int low = 0;
+				int high = 0;
+				int n;
+				while(frame < endFrame && (n = readFrames(in, buffer, frameSize)) > 0)
+				{
+					if(request != generation.get())
+					{
+						return false;
+					}
+					for(int at = 0; at < n && frame < endFrame; at += frameSize, frame++)
+					{
+						if(frame >= sliceEnd)
+						{
+							store(slice, low, high, min, max);
+							slice++;
+							sliceEnd = firstFrame(slice + 1, frames, slices);
+							low = 0;
+							high = 0;
+						}
+						for(int ch = 0; ch < channels; ch++)
+						{
+							int i = at + ch * 2;
+							int sample = (short)((buffer[i] & 0xFF) | (buffer[i + 1] << 8));
+							low = Math.min(low, sample);
+							high = Math.max(high, sample);
+						}
+					}
+				}
+				if(slice < last)
+				{
+					store(slice, low, high, min, max);
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the first frame of a slice: the frames of slice <i>s</i> are
+	 * those with <i>frame * slices / frames == s</i>.
+	 */
+	private static long firstFrame(int slice, long frames, int slices)
+	{
+		return (slice * frames + slices - 1) / slices;
+	}
+
+	private static void store(int slice, int low, int high, byte[] min, byte[] max)
+	{
+		min[slice] = (byte)(low * 127 / 32768);
+		max[slice] = (byte)(high * 127 / 32767);
+	}
+
+	/**
+	 * Reads whole frames into the buffer.
+	 *
+	 * @return the number of bytes read, a multiple of the frame size, or -1
+	 *         at the end.
+	 */
+	private static int readFrames(InputStream in, byte[] buffer, int frameSize) throws IOException
+	{
+		int total = 0;
+		while(total < buffer.length)
+		{
+			int n = in.read(buffer, total, buffer.length - total);
+			if(n < 0)
+			{
+				break;
+			}
+			total += n;
+			if(total % frameSize == 0)
+			{
+				break;
+			}
+		}
+		return total == 0 ? -1 : total - total % frameSize;
+	}
+
+	private static void skipFully(InputStream in, long bytes) throws IOException
+	{
+		long left = bytes;
+		while(left > 0)
+		{
+			long n = in.skip(left);
+			if(n <= 0)
+			{
+				throw new IOException("Unexpected end of audio data");
+			}
+			left -= n;
+		}
+	}
+
+	/**
+	 * Returns the name of the peak file of a media in the cache directory,
+	 * from a hash of its path.
+	 */
+	private static String cacheName(File media)
+	{
+		long hash = 0xcbf29ce484222325L;
+		for(byte b : media.getAbsolutePath().getBytes(StandardCharsets.UTF_8))
+		{
+			hash ^= b & 0xFF;
+			hash *= 0x100000001b3L;
+		}
+		return Long.toHexString(hash) + PEAK_EXTENSION;
+	}
+
+	private static Thread thread(Runnable runnable, String name)
+	{
+		Thread thread = new Thread(runnable, name);
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		return thread;
+	}
+}
@@ -0,0 +1,979 @@
+package mediaplayer.model;
+
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javafx.collections.ModifiableObservableListBase;
+import javafx.util.Duration;
+import mediaplayer.util.ConversionUtils;
+
+/**
+ * A memory-lean observable playlist. Entries are stored in columns indexed by
+ * a storage slot instead of as one object graph per entry: the directory part
+ * of each URI is interned in a shared prefix table, the file part is kept as
+ * UTF-8 bytes in a single pool and durations are kept in a primitive array.
+ * Titles are only stored when they differ from the file name.
+ * <p>
+ * A MediaItem is created for a slot when the list is asked for it and is
+ * only weakly remembered, so that items, and their observable properties,
+ * exist for the rows the playlist view shows and little else. While an item
+ * is referenced, the list hands out that same instance; changes to the item
+ * are written through to the columns. Removed items are detached and keep
+ * their values.
+ * </p>
+ * <p>
+ * Slots stay with their entry while it is moved, so {@link #slotAt(int)} and
+ * {@link #indexOfSlot(int)} identify an entry across inserts, removals and
+ * sorts. Must be accessed on the FX thread only, like any ObservableList
+ * backing a control.
+ * </p>
+ *
+ * @author Alex Hage
+ *
+ */
+public class CompactPlayList extends ModifiableObservableListBase<MediaItem>
+{
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * The smallest amount of unused name bytes worth compacting the pool for.
+	 */
+	private static final int MIN_POOL_GARBAGE = 1 << 16;
+
+	private static final int DURATION_NONE = -1;
+	private static final int DURATION_UNKNOWN = -2;
+	private static final int DURATION_INDEFINITE = -3;
+
+	/**
+	 * The interned URI prefixes, up to and including the last '/'.
+	 */
+	private final List<String> prefixes = new ArrayList<String>();
+
+	/**
+	 * The prefix table index of each interned prefix.
+	 */
+	private final Map<String, Integer> prefixIndex = new HashMap<String, Integer>();
+
+	/**
+	 * The prefix of each slot, or -1 for a slot without URI.
+	 */
+	private int[] prefix;
+
+	/**
+	 * The offset of each slot's file part in the name pool.
+	 */
+	private int[] nameOffset;
+
+	/**
+	 * The length of each slot's file part in the name pool.
+	 */
+	private int[] nameLength;
+
+	/**
+	 * The duration of each slot in milliseconds, or a negative marker.
+	 */
+	private int[] durations;
+
+	/**
+	 * The title of each slot, or <i>null</i> if it is the file name.
+	 */
+	private String[] titles;
+
+	/**
+	 * The weakly remembered MediaItem of each slot.
+	 */
+	private WeakReference<MediaItem>[] items;
+
+	/**
+	 * The list position of each slot, or -1 for a free slot.
+	 */
+	private int[] positions;
+
+	/**
+	 * The number of slots ever allocated.
+	 */
+	private int slotCount;
+
+	/**
+	 * The stack of free slots.
+	 */
+	private int[] freeSlots;
+	private int freeCount;
+
+	/**
+	 * The pool of UTF-8 encoded file parts.
+	 */
+	private byte[] names;
+	private int namesSize;
+	private int namesGarbage;
+
+	/**
+	 * The slot at each list position.
+	 */
+	private int[] order;
+	private int size;
+
+	/**
+	 * The search index kept up to date with the entries, or <i>null</i>.
+	 */
+	private TrigramIndex index;
+
+	/**
+	 * Constructs a new, empty playlist.
+	 */
+	public CompactPlayList()
+	{
+		this.prefix = new int[INITIAL_CAPACITY];
+		this.nameOffset = new int[INITIAL_CAPACITY];
+		this.nameLength = new int[INITIAL_CAPACITY];
+		this.durations = new int[INITIAL_CAPACITY];
+		this.titles = new String[INITIAL_CAPACITY];
+		this.items = newItemArray(INITIAL_CAPACITY);
+		this.positions = new int[INITIAL_CAPACITY];
+		this.freeSlots = new int[INITIAL_CAPACITY];
+		this.names = new byte[INITIAL_CAPACITY * 32];
+		this.order = new int[INITIAL_CAPACITY];
+	} //end ctor
+
+	@Override
+	public MediaItem get(int index)
+	{
+		checkIndex(index);
+		return getBySlot(order[index]);
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the storage slot of the entry at a list position. The slot
+	 * stays the same while the entry is moved.
+	 *
+	 * @param index
+	 *            the list position.
+	 * @return the slot of the entry.
+	 */
+	public int slotAt(int index)
+	{
+		checkIndex(index);
+		return order[index];
+	}
+
+	/**
+	 * Returns the list position of the entry stored in a slot.
+	 *
+	 * @param slot
+	 *            the storage slot.
+	 * @return the list position, or -1 if the slot holds no entry.
+	 */
+	public int indexOfSlot(int slot)
+	{
+		return slot >= 0 && slot < slotCount ? positions[slot] : -1;
+	}
+
+	/**
+	 * Returns the storage slot of an item of this list.
+	 *
+	 * @param item
+	 *            the MediaItem.
+	 * @return the slot, or -1 if the item does not belong to this list.
+	 */
+	public int slotOf(MediaItem item)
+	{
+		return item != null && item.owner == this ? item.slot : -1;
+	}
+
+	/**
+	 * Returns the MediaItem of a slot, creating it if it is not referenced.
+	 *
+	 * @param slot
+	 *            the storage slot holding an entry.
+	 * @return item the MediaItem of the slot.
+	 */
+	public MediaItem getBySlot(int slot)
+	{
+		if(indexOfSlot(slot) < 0)
+		{
+			throw new IllegalArgumentException("Slot holds no entry: " + slot);
+		}
+		WeakReference<MediaItem> reference = items[slot];
+		MediaItem item = reference != null ? reference.get() : null;
+		if(item == null)
+		{
+			item = new MediaItem(this, slot);
+			items[slot] = new WeakReference<MediaItem>(item);
+		}
+		return item;
+	}
+
+	/**
+	 * Returns the URI string of the entry at a list position without creating
+	 * a MediaItem.
+	 *
+	 * @param index
+	 *            the list position.
+	 * @return the URI as String, or <i>null</i> if the entry has none.
+	 */
+	public String uriStringAt(int index)
+	{
+		checkIndex(index);
+		return uriString(order[index]);
+	}
+
+	/**
+	 * Finds the entries with any of the given URIs in a single pass that only
+	 * decodes the file parts of entries in a matching folder.
+	 *
+	 * @param uris
+	 *            the URIs to look for.
+	 * @return the list positions of the matching entries, ascending.
+	 */
+	public int[] indicesOf(Collection<URI> uris)
+	{
+		Map<Integer, Set<String>> wanted = new HashMap<Integer, Set<String>>();
+		for(URI uri : uris)
+		{
+			String text = uri.toString();
+			int split = text.lastIndexOf('/') + 1;
+			Integer head = prefixIndex.get(text.substring(0, split));
+			if(head != null)
+			{
+				Set<String> tails = wanted.get(head);
+				if(tails == null)
+				{
+					tails = new HashSet<String>();
+					wanted.put(head, tails);
+				}
+				tails.add(text.substring(split));
+			}
+		}
+		boolean[] folders = new boolean[prefixes.size()];
+		for(Integer head : wanted.keySet())
+		{
+			folders[head] = true;
+		}
+		int[] found = new int[Math.min(size, uris.size())];
+		int count = 0;
+		for(int i = 0; i < size; i++)
+		{
+			int slot = order[i];
+			if(prefix[slot] >= 0 && folders[prefix[slot]] && wanted.get(prefix[slot]).contains(fileNameAt(slot)))
+			{
+				if(count == found.length)
+				{
+					found = Arrays.copyOf(found, count * 2);
+				}
+				found[count++] = i;
+			}
+		}
+		return Arrays.copyOf(found, count);
+	}
+
+	/**
+	 * Finds the entries in a folder or any folder below it in a single pass.
+	 *
+	 * @param folder
+	 *            the URI of the folder.
+	 * @return the list positions of the matching entries, ascending.
+	 */
+	public int[] indicesUnder(URI folder)
+	{
+		String head = folder.toString();
+		if(!head.endsWith("/"))
+		{
+			head += "/";
+		}
+		boolean[] folders = new boolean[prefixes.size()];
+		boolean any = false;
+		for(int i = 0; i < folders.length; i++)
+		{
+			folders[i] = prefixes.get(i).startsWith(head);
+			any |= folders[i];
+		}
+		int[] found = new int[any ? size : 0];
+		int count = 0;
+		for(int i = 0; any && i < size; i++)
+		{
+			int slot = order[i];
+			if(prefix[slot] >= 0 && folders[prefix[slot]])
+			{
+				found[count++] = i;
+			}
+		}
+		return Arrays.copyOf(found, count);
+	}
+
+	@Override
+	public int indexOf(Object o)
+	{
+		return o instanceof MediaItem ? indexOfSlot(slotOf((MediaItem)o)) : -1;
+	}
+
+	@Override
+	public int lastIndexOf(Object o)
+	{
+		return indexOf(o);
+	}
+
+	@Override
+	public boolean contains(Object o)
+	{
+		return indexOf(o) >= 0;
+	}
+
+	@Override
+	protected void doAdd(int index, MediaItem element)
+	{
+		if(index < 0 || index > size)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		int slot = store(element);
+		ensureOrderCapacity(size + 1);
+		System.arraycopy(order, index, order, index + 1, size - index);
+		order[index] = slot;
+		size++;
+		updatePositions(index, size);
+	}
+
+	@Override
+	protected MediaItem doSet(int index, MediaItem element)
+	{
+		checkIndex(index);
+		MediaItem old = get(index);
+		if(old == element)
+		{
+			return old;
+		}
+		int oldSlot = order[index];
+		int slot = store(element);
+		order[index] = slot;
+		positions[slot] = index;
+		release(oldSlot, old);
+		return old;
+	}
+
+	@Override
+	protected MediaItem doRemove(int index)
+	{
+		checkIndex(index);
+		MediaItem old = get(index);
+		int slot = order[index];
+		System.arraycopy(order, index + 1, order, index, size - index - 1);
+		size--;
+		updatePositions(index, size);
+		release(slot, old);
+		return old;
+	}
+
+	/**
+	 * Removes a range with a single shift instead of one per entry.
+	 */
+	@Override
+	protected void removeRange(int fromIndex, int toIndex)
+	{
+		if(fromIndex < 0 || toIndex > size || fromIndex > toIndex)
+		{
+			throw new IndexOutOfBoundsException("Range: " + fromIndex + "-" + toIndex + ", Size: " + size);
+		}
+		if(fromIndex == toIndex)
+		{
+			return;
+		}
+		List<MediaItem> removed = new ArrayList<MediaItem>(toIndex - fromIndex);
+		int[] removedSlots = Arrays.copyOfRange(order, fromIndex, toIndex);
+		for(int i = fromIndex; i < toIndex; i++)
+		{
+			removed.add(get(i));
+		}
+		System.arraycopy(order, toIndex, order, fromIndex, size - toIndex);
+		size -= toIndex - fromIndex;
+		updatePositions(fromIndex, size);
+		for(int i = 0; i < removedSlots.length; i++)
+		{
+			release(removedSlots[i], removed.get(i));
+		}
+
+		beginChange();
+		nextRemove(fromIndex, removed);
+		modCount++;
+		endChange();
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c)
+	{
+		boolean[] remove = new boolean[size];
+		boolean any = false;
+		for(Object o : c)
+		{
+			int index = indexOf(o);
+			if(index >= 0)
+			{
+				remove[index] = true;
+				any = true;
+			}
+		}
+		return any && removeMarked(remove);
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c)
+	{
+		boolean[] remove = new boolean[size];
+		Arrays.fill(remove, true);
+		for(Object o : c)
+		{
+			int index = indexOf(o);
+			if(index >= 0)
+			{
+				remove[index] = false;
+			}
+		}
+		return removeMarked(remove);
+	}
+
+	/**
+	 * Sorts the entries by moving their slots. Fires a single permutation.
+	 */
+	@Override
+	public void sort(Comparator<? super MediaItem> comparator)
+	{
+		MediaItem[] sorted = new MediaItem[size];
+		for(int i = 0; i < size; i++)
+		{
+			sorted[i] = get(i);
+		}
+		Arrays.sort(sorted, comparator);
+		int[] newOrder = new int[size];
+		for(int i = 0; i < size; i++)
+		{
+			newOrder[i] = sorted[i].slot;
+		}
+		permute(newOrder);
+	}
+
+	/**
+	 * Replaces the content. A collection holding exactly the current entries
+	 * in another order, as produced when the playlist view sorts, is applied
+	 * as a permutation, so the entries keep their slots.
+	 */
+	@Override
+	public boolean setAll(Collection<? extends MediaItem> col)
+	{
+		if(col.size() == size && size > 0)
+		{
+			int[] newOrder = new int[size];
+			boolean[] seen = new boolean[slotCount];
+			int i = 0;
+			for(MediaItem item : col)
+			{
+				int slot = slotOf(item);
+				if(slot < 0 || positions[slot] < 0 || seen[slot])
+				{
+					return super.setAll(col);
+				}
+				seen[slot] = true;
+				newOrder[i++] = slot;
+			}
+			permute(newOrder);
+			return true;
+		}
+		return super.setAll(col);
+	}
+
+	/**
+	 * Returns the title stored for a slot.
+	 *
+	 * @param slot
+	 *            the storage slot.
+	 * @return the title String.
+	 */
+	String titleAt(int slot)
+	{
+		String title = titles[slot];
+		if(title == null)
+		{
+			String uri = uriString(slot);
+			title = uri == null ? "" : ConversionUtils.convertToFileName(URI.create(uri));
+		}
+		return title;
+	}
+
+	/**
+	 * Returns the title stored for a slot as is.
+	 *
+	 * @param slot
+	 *            the storage slot.
+	 * @return the title, or <i>null</i> if it is the file name.
+	 */
+	String storedTitleAt(int slot)
+	{
+		return titles[slot];
+	}
+
+	/**
+	 * Stores the title of a slot. A title equal to the file name is not kept.
+	 *
+	 * @param slot
+	 *            the storage slot.
+	 * @param title
+	 *            the title String.
+	 */
+	void setTitleAt(int slot, String title)
+	{
+		titles[slot] = null;
+		if(title == null || !title.equals(titleAt(slot)))
+		{
+			titles[slot] = title;
+		}
+		if(index != null)
+		{
+			index.update(slot);
+		}
+	}
+
+	/**
+	 * Returns the URI stored for a slot.
+	 *
+	 * @param slot
+	 *            the storage slot.
+	 * @return the URI or <i>null</i>.
+	 */
+	URI uriAt(int slot)
+	{
+		String uri = uriString(slot);
+		return uri == null ? null : URI.create(uri);
+	}
+
+	/**
+	 * Stores the URI of a slot. The current title is kept as is.
+	 *
+	 * @param slot
+	 *            the storage slot.
+	 * @param uri
+	 *            the URI or <i>null</i>.
+	 */
+	void setURIAt(int slot, URI uri)
+	{
+		if(titles[slot] == null)
+		{
+			titles[slot] = titleAt(slot);
+		}
+		namesGarbage += nameLength[slot];
+		writeURI(slot, uri);
+		setTitleAt(slot, titles[slot]);
+		compactNamesIfWorthIt();
+	}
+
+	/**
+	 * Returns the duration stored for a slot.
+	 *
+	 * @param slot
+	 *            the storage slot.
+	 * @return the Duration or <i>null</i> if not known.
+	 */
+	Duration durationAt(int slot)
+	{
+		int millis = durations[slot];
+		switch(millis)
+		{
+			case DURATION_NONE:
+				return null;
+			case DURATION_UNKNOWN:
+				return Duration.UNKNOWN;
+			case DURATION_INDEFINITE:
+				return Duration.INDEFINITE;
+			default:
+				return Duration.millis(millis);
+		}
+	}
+
+	/**
+	 * Stores the duration of a slot with millisecond precision.
+	 *
+	 * @param slot
+	 *            the storage slot.
+	 * @param duration
+	 *            the Duration or <i>null</i>.
+	 */
+	void setDurationAt(int slot, Duration duration)
+	{
+		if(duration == null)
+		{
+			durations[slot] = DURATION_NONE;
+		}
+		else if(duration.isUnknown())
+		{
+			durations[slot] = DURATION_UNKNOWN;
+		}
+		else if(duration.isIndefinite())
+		{
+			durations[slot] = DURATION_INDEFINITE;
+		}
+		else
+		{
+			durations[slot] = (int)Math.max(0, Math.min(Integer.MAX_VALUE, Math.round(duration.toMillis())));
+		}
+	}
+
+	/**
+	 * Sets the search index to notify of every stored, retitled and released
+	 * entry.
+	 *
+	 * @param index
+	 *            the TrigramIndex or <i>null</i>.
+	 */
+	void setIndex(TrigramIndex index)
+	{
+		this.index = index;
+	}
+
+	/**
+	 * Returns the prefix table index of a slot's URI.
+	 *
+	 * @param slot
+	 *            the storage slot.
+	 * @return the prefix, or -1 for a slot without URI.
+	 */
+	int prefixOf(int slot)
+	{
+		return prefix[slot];
+	}
+
+	/**
+	 * Returns the number of interned prefixes. Prefixes are never dropped.
+	 *
+	 * @return the size of the prefix table.
+	 */
+	int prefixCount()
+	{
+		return prefixes.size();
+	}
+
+	/**
+	 * Returns an interned prefix.
+	 *
+	 * @param prefix
+	 *            the prefix table index.
+	 * @return the URI prefix, up to and including the last '/'.
+	 */
+	String prefixAt(int prefix)
+	{
+		return prefixes.get(prefix);
+	}
+
+	/**
+	 * Returns the still encoded file part of a slot's URI.
+	 *
+	 * @param slot
+	 *            the storage slot.
+	 * @return the file part, empty for a slot without URI.
+	 */
+	String fileNameAt(int slot)
+	{
+		return new String(names, nameOffset[slot], nameLength[slot], StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Copies the values of an item into a new slot. An item not owned by any
+	 * list is bound to the slot, so that the caller's instance stays the one
+	 * handed out for this entry.
+	 *
+	 * @param element
+	 *            the MediaItem to store.
+	 * @return slot the new slot.
+	 */
+	private int store(MediaItem element)
+	{
+		if(element == null)
+		{
+			throw new NullPointerException("MediaItem is null");
+		}
+		URI uri = element.getURI();
+		String title = element.getTitle();
+		Duration duration = element.getDuration();
+
+		int slot = allocateSlot();
+		writeURI(slot, uri);
+		setTitleAt(slot, title);
+		setDurationAt(slot, duration);
+		if(element.owner == null)
+		{
+			element.attach(this, slot);
+			items[slot] = new WeakReference<MediaItem>(element);
+		}
+		return slot;
+	}
+
+	/**
+	 * Frees a slot whose entry has left the list and detaches its item.
+	 *
+	 * @param slot
+	 *            the storage slot.
+	 * @param item
+	 *            the MediaItem of the slot.
+	 */
+	private void release(int slot, MediaItem item)
+	{
+		if(index != null)
+		{
+			index.remove(slot);
+		}
+		item.detach();
+		items[slot] = null;
+		titles[slot] = null;
+		positions[slot] = -1;
+		namesGarbage += nameLength[slot];
+		nameLength[slot] = 0;
+		freeSlots[freeCount++] = slot;
+		compactNamesIfWorthIt();
+	}
+
+	/**
+	 * Takes a slot from the free stack or allocates a new one.
+	 *
+	 * @return slot the slot, marked as used.
+	 */
+	private int allocateSlot()
+	{
+		int slot;
+		if(freeCount > 0)
+		{
+			slot = freeSlots[--freeCount];
+		}
+		else
+		{
+			ensureSlotCapacity(slotCount + 1);
+			slot = slotCount++;
+		}
+		positions[slot] = Integer.MAX_VALUE;
+		return slot;
+	}
+
+	/**
+	 * Splits a URI into its interned prefix and its pooled file part.
+	 *
+	 * @param slot
+	 *            the storage slot.
+	 * @param uri
+	 *            the URI or <i>null</i>.
+	 */
+	private void writeURI(int slot, URI uri)
+	{
+		if(uri == null)
+		{
+			prefix[slot] = -1;
+			nameLength[slot] = 0;
+			return;
+		}
+		String text = uri.toString();
+		int split = text.lastIndexOf('/') + 1;
+		String head = text.substring(0, split);
+		Integer index = prefixIndex.get(head);
+		if(index == null)
+		{
+			index = prefixes.size();
+			prefixes.add(head);
+			prefixIndex.put(head, index);
+		}
+		prefix[slot] = index;
+
+		byte[] tail = text.substring(split).getBytes(StandardCharsets.UTF_8);
+		if(namesSize + tail.length > names.length)
+		{
+			names = Arrays.copyOf(names, Math.max(names.length * 2, namesSize + tail.length));
+		}
+		System.arraycopy(tail, 0, names, namesSize, tail.length);
+		nameOffset[slot] = namesSize;
+		nameLength[slot] = tail.length;
+		namesSize += tail.length;
+	}
+
+	/**
+	 * Rebuilds the URI string of a slot.
+	 *
+	 * @param slot
+	 *            the storage slot.
+	 * @return the URI as String or <i>null</i>.
+	 */
+	private String uriString(int slot)
+	{
+		if(prefix[slot] < 0)
+		{
+			return null;
+		}
+		return prefixes.get(prefix[slot])
+				+ new String(names, nameOffset[slot], nameLength[slot], StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Drops the name bytes of removed entries once they make up half the pool.
+	 */
+	private void compactNamesIfWorthIt()
+	{
+		if(namesGarbage < MIN_POOL_GARBAGE || namesGarbage < namesSize / 2)
+		{
+			return;
+		}
+		byte[] compacted = new byte[Math.max(INITIAL_CAPACITY * 32, (namesSize - namesGarbage) * 3 / 2)];
+		int used = 0;
+		for(int slot = 0; slot < slotCount; slot++)
+		{
+			if(positions[slot] >= 0 && nameLength[slot] > 0)
+			{
+				System.arraycopy(names, nameOffset[slot], compacted, used, nameLength[slot]);
+				nameOffset[slot] = used;
+				used += nameLength[slot];
+			}
+		}
+		names = compacted;
+		namesSize = used;
+		namesGarbage = 0;
+	}
+
+	/**
+	 * Removes the marked positions in one pass and fires their removal.
+	 *
+	 * @param remove
+	 *            the flags by list position.
+	 * @return true if anything was removed.
+	 */
+	private boolean removeMarked(boolean[] remove)
+	{
+		List<Integer> removedIndices = new ArrayList<Integer>();
+		List<MediaItem> removed = new ArrayList<MediaItem>();
+		int kept = 0;
+		int oldSize = size;
+		for(int i = 0; i < oldSize; i++)
+		{
+			if(remove[i])
+			{
+				removedIndices.add(i);
+				removed.add(get(i));
+			}
+			else
+			{
+				order[kept++] = order[i];
+			}
+		}
+		if(removed.isEmpty())
+		{
+			return false;
+		}
+		int[] removedSlots = new int[removed.size()];
+		for(int i = 0; i < removedSlots.length; i++)
+		{
+			removedSlots[i] = removed.get(i).slot;
+		}
+		size = kept;
+		updatePositions(0, size);
+		for(int i = 0; i < removedSlots.length; i++)
+		{
+			release(removedSlots[i], removed.get(i));
+		}
+
+		//Report from the back, so every index is valid when it is reported.
+		beginChange();
+		for(int i = removed.size() - 1; i >= 0; i--)
+		{
+			nextRemove(removedIndices.get(i), removed.get(i));
+		}
+		modCount++;
+		endChange();
+		return true;
+	}
+
+	/**
+	 * Applies a new order of the current slots and fires it as a permutation.
+	 *
+	 * @param newOrder
+	 *            the slots in their new order.
+	 */
+	private void permute(int[] newOrder)
+	{
+		int[] permutation = new int[size];
+		for(int i = 0; i < size; i++)
+		{
+			permutation[positions[newOrder[i]]] = i;
+		}
+		System.arraycopy(newOrder, 0, order, 0, size);
+		updatePositions(0, size);
+
+		beginChange();
+		nextPermutation(0, size, permutation);
+		modCount++;
+		endChange();
+	}
+
+	/**
+	 * Rewrites the positions of the slots in a range of the list.
+	 *
+	 * @param from
+	 *            the first list position.
+	 * @param to
+	 *            the position after the last one.
+	 */
+	private void updatePositions(int from, int to)
+	{
+		for(int i = from; i < to; i++)
+		{
+			positions[order[i]] = i;
+		}
+	}
+
+	/**
+	 * Creates an array of item references. Arrays of a generic type can only
+	 * be created raw.
+	 */
+	@SuppressWarnings("unchecked")
+	private static WeakReference<MediaItem>[] newItemArray(int length)
+	{
+		return (WeakReference<MediaItem>[])new WeakReference<?>[length];
+	}
+
+	private void checkIndex(int index)
+	{
+		if(index < 0 || index >= size)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+
+	private void ensureOrderCapacity(int capacity)
+	{
+		if(capacity > order.length)
+		{
+			order = Arrays.copyOf(order, Math.max(capacity, order.length * 2));
+		}
+	}
+
+	private void ensureSlotCapacity(int capacity)
+	{
+		if(capacity > prefix.length)
+		{
+			int length = Math.max(capacity, prefix.length * 2);
+			prefix = Arrays.copyOf(prefix, length);
+			nameOffset = Arrays.copyOf(nameOffset, length);
+			nameLength = Arrays.copyOf(nameLength, length);
+			durations = Arrays.copyOf(durations, length);
+			titles = Arrays.copyOf(titles, length);
+			items = Arrays.copyOf(items, length);
+			positions = Arrays.copyOf(positions, length);
+			freeSlots = Arrays.copyOf(freeSlots, length);
+		}
+	}
+}
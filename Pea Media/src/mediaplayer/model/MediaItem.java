@@ -6,27 +6,75 @@ import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
+import javafx.util.Duration;
 
 /**
  * Stores and retrieves the media item associated data. Contains the information
  * necessary for playback and displaying of media info.
+ * <p>
+ * The observable properties are only created when first asked for. Until then
+ * the values are kept in plain fields. An item of a {@link CompactPlayList}
+ * reads its values from the columns of that playlist on first access and
+ * writes every change through to them.
+ * </p>
  * 
  * @author Alex Hage
  *
  */
 public class MediaItem 
 {	
+	private static final int TITLE = 1;
+	private static final int URI_VALUE = 2;
+	private static final int DURATION = 4;
+	private static final int ALL = TITLE | URI_VALUE | DURATION;
+	
 	/**
-	 * The observable name value of the media file. TODO: Get title from
-	 * metadata.
+	 * The observable name value of the media file. Replaced by the metadata
+	 * title once the metadata has been read. Created lazily.
 	 */
-	private final StringProperty title;
+	private StringProperty title;
 	
 	/**
-	 * The observable URI object of the media file.
+	 * The observable URI object of the media file. Created lazily.
 	 */
 	private ObjectProperty<URI> uri;
 	
+	/**
+	 * The observable playback duration. <i>null</i> until the metadata has
+	 * been read. Created lazily.
+	 */
+	private ObjectProperty<Duration> duration;
+	
+	/**
+	 * The title, valid once loaded.
+	 */
+	private String titleValue;
+	
+	/**
+	 * The URI, valid once loaded.
+	 */
+	private URI uriValue;
+	
+	/**
+	 * The duration, valid once loaded.
+	 */
+	private Duration durationValue;
+	
+	/**
+	 * The flags of the plain value fields holding the current values.
+	 */
+	private int loaded;
+	
+	/**
+	 * The playlist storing the values of this item, or <i>null</i>.
+	 */
+	CompactPlayList owner;
+	
+	/**
+	 * The storage slot of this item in its owner.
+	 */
+	int slot;
+	
 	/**
 	 * Default constructor
 	 */
@@ -34,7 +82,7 @@ public class MediaItem
 	{
 		this(null);
 	} //end dctor
-
+	
 	/**
 	 * Constructs a new MediaItem with the corresponding path value.
 	 * 
@@ -43,8 +91,23 @@ public class MediaItem
 	 */
 	public MediaItem(URI uri) 
 	{	
-		this.title = new SimpleStringProperty("");
-		this.uri = new SimpleObjectProperty<URI>(uri);
+		this.titleValue = "";
+		this.uriValue = uri;
+		this.loaded = ALL;
+	} //end ctor
+	
+	/**
+	 * Constructs a MediaItem backed by a slot of a playlist.
+	 * 
+	 * @param owner
+	 *            the CompactPlayList storing the values.
+	 * @param slot
+	 *            the storage slot.
+	 */
+	MediaItem(CompactPlayList owner, int slot)
+	{
+		this.owner = owner;
+		this.slot = slot;
 	} //end ctor
 	
 	/**
@@ -54,7 +117,12 @@ public class MediaItem
 	 */
 	public String getTitle()
 	{
-		return title.get();
+		if(title != null)
+		{
+			return title.get();
+		}
+		load(TITLE);
+		return titleValue;
 	}
 	
 	/**
@@ -65,7 +133,14 @@ public class MediaItem
 	 */
 	public void setTitle(String title)
 	{
-		this.title.set(title);
+		if(this.title != null)
+		{
+			this.title.set(title);
+		}
+		else
+		{
+			storeTitle(title);
+		}
 	}
 	
 	/**
@@ -75,6 +150,17 @@ public class MediaItem
 	 */
 	public StringProperty getTitleProperty()
 	{
+		if(title == null)
+		{
+			title = new SimpleStringProperty(this, "title", getTitle())
+			{
+				@Override
+				protected void invalidated()
+				{
+					storeTitle(get());
+				}
+			};
+		}
 		return title;
 	}
 	
@@ -85,7 +171,12 @@ public class MediaItem
 	 */
 	public URI getURI()
 	{
-		return uri.get();
+		if(uri != null)
+		{
+			return uri.get();
+		}
+		load(URI_VALUE);
+		return uriValue;
 	}
 	
 	/**
@@ -96,7 +187,14 @@ public class MediaItem
 	 */
 	public void setURI(URI uri)
 	{
-		this.uri.set(uri);
+		if(this.uri != null)
+		{
+			this.uri.set(uri);
+		}
+		else
+		{
+			storeURI(uri);
+		}
 	}
 	
 	/**
@@ -106,6 +204,169 @@ public class MediaItem
 	 */
 	public ObjectProperty<URI> getURIProperty()
 	{
+		if(uri == null)
+		{
+			uri = new SimpleObjectProperty<URI>(this, "uri", getURI())
+			{
+				@Override
+				protected void invalidated()
+				{
+					storeURI(get());
+				}
+			};
+		}
 		return uri;
 	}
+	
+	/**
+	 * Returns the playback duration of the media file.
+	 * 
+	 * @return duration Duration or <i>null</i> if not yet known.
+	 */
+	public Duration getDuration()
+	{
+		if(duration != null)
+		{
+			return duration.get();
+		}
+		load(DURATION);
+		return durationValue;
+	}
+	
+	/**
+	 * Sets the playback duration of the media file.
+	 * 
+	 * @param duration
+	 *            the Duration of the media.
+	 */
+	public void setDuration(Duration duration)
+	{
+		if(this.duration != null)
+		{
+			this.duration.set(duration);
+		}
+		else
+		{
+			storeDuration(duration);
+		}
+	}
+	
+	/**
+	 * Returns the duration ObjectProperty of the MediaItem.
+	 * 
+	 * @return duration {@code ObjectProperty<Duration>}.
+	 */
+	public ObjectProperty<Duration> getDurationProperty()
+	{
+		if(duration == null)
+		{
+			duration = new SimpleObjectProperty<Duration>(this, "duration", getDuration())
+			{
+				@Override
+				protected void invalidated()
+				{
+					storeDuration(get());
+				}
+			};
+		}
+		return duration;
+	}
+	
+	/**
+	 * Binds this item to a playlist slot. The playlist has already copied the
+	 * current values.
+	 * 
+	 * @param owner
+	 *            the CompactPlayList storing the values.
+	 * @param slot
+	 *            the storage slot.
+	 */
+	void attach(CompactPlayList owner, int slot)
+	{
+		load(ALL);
+		this.owner = owner;
+		this.slot = slot;
+	}
+	
+	/**
+	 * Loads the values out of the owning playlist and unbinds this item, so
+	 * that it stays valid after removal.
+	 */
+	void detach()
+	{
+		load(ALL);
+		this.owner = null;
+	}
+	
+	/**
+	 * Reads values from the owning playlist unless already loaded.
+	 * 
+	 * @param fields
+	 *            the flags of the values to load.
+	 */
+	private void load(int fields)
+	{
+		int missing = fields & ~loaded;
+		if((missing & TITLE) != 0)
+		{
+			titleValue = owner.titleAt(slot);
+		}
+		if((missing & URI_VALUE) != 0)
+		{
+			uriValue = owner.uriAt(slot);
+		}
+		if((missing & DURATION) != 0)
+		{
+			durationValue = owner.durationAt(slot);
+		}
+		loaded |= missing;
+	}
+	
+	/**
+	 * Writes the title to the plain field and the owning playlist, if any.
+	 * 
+	 * @param title
+	 *            the value to store.
+	 */
+	private void storeTitle(String title)
+	{
+		loaded |= TITLE;
+		titleValue = title;
+		if(owner != null)
+		{
+			owner.setTitleAt(slot, title);
+		}
+	}
+	
+	/**
+	 * Writes the URI to the plain field and the owning playlist, if any.
+	 * 
+	 * @param uri
+	 *            the value to store.
+	 */
+	private void storeURI(URI uri)
+	{
+		loaded |= URI_VALUE;
+		uriValue = uri;
+		if(owner != null)
+		{
+			owner.setURIAt(slot, uri);
+		}
+	}
+	
+	/**
+	 * Writes the duration to the plain field and the owning playlist, if any.
+	 * 
+	 * @param duration
+	 *            the value to store.
+	 */
+	private void storeDuration(Duration duration)
+	{
+		loaded |= DURATION;
+		durationValue = duration;
+		if(owner != null)
+		{
+			owner.setDurationAt(slot, duration);
+		}
+	}
 }
@@ -0,0 +1,499 @@
+package mediaplayer.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableListBase;
+
+/**
+ * The entries of a {@link CompactPlayList} matching a search query, in list
+ * order. A read-only view like a FilteredList, backed by the slots found by a
+ * {@link TrigramIndex} instead of a predicate tested on every entry.
+ * <p>
+ * The results are searched again right away when the playlist changes and
+ * once per pulse while titles are being updated. Only the difference to the
+ * previous results is reported, so that a table showing them keeps its rows
+ * and selection. Positions in the results map to playlist positions through
+ * {@link #getSourceIndex(int)} and {@link #getViewIndex(int)}. Must be used
+ * on the FX thread only.
+ * </p>
+ *
+ * @author Alex Hage
+ *
+ */
+public class SearchResultList extends ObservableListBase<MediaItem>
+{
+	private final TrigramIndex index;
+	private final CompactPlayList list;
+
+	/**
+	 * The current query.
+	 */
+	private String query = "";
+
+	/**
+	 * The slots of the matching entries.
+	 */
+	private int[] slots = new int[0];
+
+	/**
+	 * The slots of the entries removed from the playlist since the last
+	 * refresh.
+	 */
+	private BitSet released = new BitSet();
+
+	/**
+	 * The playlist has changed since the last refresh, so the previous
+	 * results may no longer be in list order.
+	 */
+	private boolean listChanged;
+
+	/**
+	 * The refresh for retitled entries is already scheduled.
+	 */
+	private boolean refreshScheduled;
+
+	/**
+	 * Constructs an empty result list searching the given index.
+	 *
+	 * @param index
+	 *            the TrigramIndex of the playlist.
+	 */
+	public SearchResultList(TrigramIndex index)
+	{
+		this.index = index;
+		this.list = index.getPlayList();
+		list.addListener((ListChangeListener<MediaItem>) change -> 
+		{
+			collectReleased(change);
+			listChanged = true;
+			refresh();
+		});
+		index.onUpdate = () -> scheduleRefresh();
+	} //end ctor
+
+	@Override
+	public MediaItem get(int index)
+	{
+		if(index < 0 || index >= slots.length)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + slots.length);
+		}
+		return list.getBySlot(slots[index]);
+	}
+
+	@Override
+	public int size()
+	{
+		return slots.length;
+	}
+
+	/**
+	 * Returns the current query.
+	 *
+	 * @return query the query String.
+	 */
+	public String getQuery()
+	{
+		return query;
+	}
+
+	/**
+	 * Sets the query and searches the playlist for it.
+	 *
+	 * @param query
+	 *            the text to look for, empty for no results.
+	 */
+	public void setQuery(String query)
+	{
+		this.query = query == null ? "" : query;
+		refresh();
+	}
+
+	/**
+	 * Returns the playlist position of a result.
+	 *
+	 * @param index
+	 *            the position in the results.
+	 * @return the position in the playlist.
+	 */
+	public int getSourceIndex(int index)
+	{
+		return list.indexOfSlot(slots[index]);
+	}
+
+	/**
+	 * Returns the result position of a playlist entry.
+	 *
+	 * @param sourceIndex
+	 *            the position in the playlist.
+	 * @return the position in the results, or -1 if the entry does not match.
+	 */
+	public int getViewIndex(int sourceIndex)
+	{
+		if(sourceIndex < 0 || sourceIndex >= list.size())
+		{
+			return -1;
+		}
+		//The results are in list order.
+		int low = 0;
+		int high = slots.length - 1;
+		while(low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			int position = list.indexOfSlot(slots[middle]);
+			if(position < sourceIndex)
+			{
+				low = middle + 1;
+			}
+			else if(position > sourceIndex)
+			{
+				high = middle - 1;
+			}
+			else
+			{
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Searches again and reports the difference to the previous results, so
+	 * that the rows and the selection of unchanged results are kept.
+	 */
+	private void refresh()
+	{
+		refreshScheduled = false;
+		int[] old = slots;
+		BitSet gone = released;
+		released = new BitSet();
+		boolean ordered = !listChanged || inListOrder(old, gone);
+		listChanged = false;
+		slots = query.isEmpty() ? new int[0] : index.search(query);
+		if(Arrays.equals(old, slots) && gone.isEmpty())
+		{
+			return;
+		}
+		if(ordered)
+		{
+			Diff diff = diff(old, gone);
+			if(diff.count > 0)
+			{
+				fireChange(diff);
+			}
+			return;
+		}
+		beginChange();
+		int[] permutation = permutation(old, gone);
+		if(permutation != null)
+		{
+			nextPermutation(0, slots.length, permutation);
+		}
+		else
+		{
+			nextReplace(0, slots.length, removed(old, 0, old.length, gone));
+		}
+		endChange();
+	}
+
+	/**
+	 * Finds the results removed and added since the previous results, both
+	 * being in list order. The entries in both keep their order, so the
+	 * results are walked side by side, taking the runs found in only one of
+	 * them as removed or added, without looking up any list positions.
+	 *
+	 * @param old
+	 *            the slots of the previous results.
+	 * @param gone
+	 *            the slots released since.
+	 * @return the change from the previous results.
+	 */
+	private Diff diff(int[] old, BitSet gone)
+	{
+		Diff diff = new Diff(old, gone);
+		//The entries in both results.
+		long[] kept = marks(old, gone.isEmpty() ? null : gone);
+		long[] current = marks(slots, null);
+		for(int w = 0; w < kept.length; w++)
+		{
+			kept[w] &= w < current.length ? current[w] : 0;
+		}
+		int i = 0;
+		int j = 0;
+		while(i < old.length || j < slots.length)
+		{
+			int removedFrom = i;
+			while(i < old.length && !marked(kept, old[i]))
+			{
+				i++;
+			}
+			int from = j;
+			while(j < slots.length && !marked(kept, slots[j]))
+			{
+				j++;
+			}
+			if(i > removedFrom || j > from)
+			{
+				diff.add(from, j, removedFrom, i);
+			}
+			else
+			{
+				//The same entry in both.
+				i++;
+				j++;
+			}
+		}
+		return diff;
+	}
+
+	/**
+	 * Marks slots in a bit set.
+	 *
+	 * @param slots
+	 *            the slots to mark.
+	 * @param skip
+	 *            the slots to leave out, or <i>null</i>.
+	 * @return the words of the bit set.
+	 */
+	private static long[] marks(int[] slots, BitSet skip)
+	{
+		int max = -1;
+		for(int slot : slots)
+		{
+			max = Math.max(max, slot);
+		}
+		long[] words = new long[(max + 64) >>> 6];
+		for(int slot : slots)
+		{
+			if(skip == null || !skip.get(slot))
+			{
+				words[slot >>> 6] |= 1L << slot;
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * Returns whether a slot is marked in a bit set.
+	 */
+	private static boolean marked(long[] words, int slot)
+	{
+		return slot >>> 6 < words.length && (words[slot >>> 6] & 1L << slot) != 0;
+	}
+
+	/**
+	 * Returns whether the previous results still in the list are in list
+	 * order, which only a reordering of the playlist changes.
+	 */
+	private boolean inListOrder(int[] old, BitSet gone)
+	{
+		int last = -1;
+		for(int slot : old)
+		{
+			int position = positionOf(slot, gone);
+			if(position >= 0)
+			{
+				if(position < last)
+				{
+					return false;
+				}
+				last = position;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns where each previous result has moved to, if the results are the
+	 * same entries in another order.
+	 *
+	 * @return the new position of each previous result, or <i>null</i> if
+	 *         the entries differ.
+	 */
+	private int[] permutation(int[] old, BitSet gone)
+	{
+		if(old.length != slots.length || !gone.isEmpty())
+		{
+			return null;
+		}
+		int[] permutation = new int[old.length];
+		for(int i = 0; i < old.length; i++)
+		{
+			permutation[i] = getViewIndex(list.indexOfSlot(old[i]));
+			if(permutation[i] < 0)
+			{
+				return null;
+			}
+		}
+		return permutation;
+	}
+
+	/**
+	 * Returns the list position of a previous result, or -1 if it has left
+	 * the list.
+	 */
+	private int positionOf(int slot, BitSet gone)
+	{
+		return gone.get(slot) ? -1 : list.indexOfSlot(slot);
+	}
+
+	/**
+	 * Searches again once the current pulse is done.
+	 */
+	private void scheduleRefresh()
+	{
+		if(!refreshScheduled && !query.isEmpty())
+		{
+			refreshScheduled = true;
+			Platform.runLater(() ->
+			{
+				if(refreshScheduled)
+				{
+					refresh();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Remembers the slots of entries leaving the playlist, which may be
+	 * reused by entries added in the same change.
+	 */
+	private void collectReleased(ListChangeListener.Change<? extends MediaItem> change)
+	{
+		while(change.next())
+		{
+			if(change.wasRemoved())
+			{
+				for(MediaItem item : change.getRemoved())
+				{
+					released.set(item.slot);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Wraps a range of replaced results. Entries that have left the playlist
+	 * meanwhile are reported as <i>null</i>.
+	 *
+	 * @param old
+	 *            the slots of the previous results.
+	 * @param from
+	 *            the first result of the range.
+	 * @param to
+	 *            the result after the range.
+	 * @param gone
+	 *            the slots released since.
+	 * @return the replaced items.
+	 */
+	private List<MediaItem> removed(int[] old, int from, int to, BitSet gone)
+	{
+		return new AbstractList<MediaItem>()
+		{
+			@Override
+			public MediaItem get(int i)
+			{
+				int slot = old[from + i];
+				return positionOf(slot, gone) >= 0 ? list.getBySlot(slot) : null;
+			}
+
+			@Override
+			public int size()
+			{
+				return to - from;
+			}
+		};
+	}
+
+	/**
+	 * The removals and additions between two results in list order, as
+	 * ranges of the previous and the current slots. Reported as one change
+	 * without building a list of the items moved, which for a query matching
+	 * much of a large playlist would cost more than the search itself.
+	 */
+	private class Diff extends ListChangeListener.Change<MediaItem>
+	{
+		private final int[] old;
+		private final BitSet gone;
+
+		/**
+		 * Four values per range: from and to in the results, from and to in
+		 * the previous results.
+		 */
+		private int[] ranges = new int[16];
+		private int count;
+		private int cursor = -1;
+
+		private Diff(int[] old, BitSet gone)
+		{
+			super(SearchResultList.this);
+			this.old = old;
+			this.gone = gone;
+		} //end ctor
+
+		/**
+		 * Adds a range, merging it into the previous one where they meet.
+		 */
+		private void add(int from, int to, int removedFrom, int removedTo)
+		{
+			int last = (count - 1) * 4;
+			if(count > 0 && ranges[last + 1] == from && ranges[last + 3] == removedFrom)
+			{
+				ranges[last + 1] = to;
+				ranges[last + 3] = removedTo;
+				return;
+			}
+			if(last + 8 > ranges.length)
+			{
+				ranges = Arrays.copyOf(ranges, ranges.length * 2);
+			}
+			ranges[last + 4] = from;
+			ranges[last + 5] = to;
+			ranges[last + 6] = removedFrom;
+			ranges[last + 7] = removedTo;
+			count++;
+		}
+
+		@Override
+		public boolean next()
+		{
+			return ++cursor < count;
+		}
+
+		@Override
+		public void reset()
+		{
+			cursor = -1;
+		}
+
+		@Override
+		public int getFrom()
+		{
+			return ranges[cursor * 4];
+		}
+
+		@Override
+		public int getTo()
+		{
+			return ranges[cursor * 4 + 1];
+		}
+
+		@Override
+		public List<MediaItem> getRemoved()
+		{
+			return removed(old, ranges[cursor * 4 + 2], ranges[cursor * 4 + 3], gone);
+		}
+
+		@Override
+		protected int[] getPermutation()
+		{
+			return new int[0];
+		}
+	}
+}
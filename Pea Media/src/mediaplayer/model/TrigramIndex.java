@@ -0,0 +1,813 @@
+package mediaplayer.model;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A substring search index over the titles, file names and folders of a
+ * {@link CompactPlayList}. The title and file name of every entry are split
+ * into overlapping three character sequences, each mapping to the sorted
+ * slots containing it and where in their text it occurs. A query intersects
+ * the posting lists of all its trigrams. Where each trigram occurs once in an
+ * entry, their positions alone tell whether they line up into the query;
+ * only the other candidates are confirmed against the precomputed lower case
+ * text of the entry.
+ * <p>
+ * Folders are shared by many entries, so they are indexed on their own: the
+ * trigrams of each interned URI prefix map to the prefixes containing them,
+ * and each prefix lists the slots stored under it. A query matching a folder
+ * takes its entries from that list instead of a pass over the playlist.
+ * </p>
+ * <p>
+ * The playlist notifies the index of every stored, retitled and released
+ * slot, so the index follows the list as it changes. Postings of released or
+ * retitled slots are left in place and skipped on lookup until they make up
+ * half of the index, when it is rebuilt. Must be used on the FX thread only,
+ * like the playlist itself.
+ * </p>
+ *
+ * @author Alex Hage
+ *
+ */
+public class TrigramIndex
+{
+	/**
+	 * The length of an indexed sequence, and of the shortest query searched.
+	 */
+	public static final int GRAM = 3;
+
+	/**
+	 * The smallest number of stale postings worth rebuilding the index for.
+	 */
+	private static final int MIN_GARBAGE = 1 << 16;
+
+	/**
+	 * The position posted for a trigram occurring more than once in a text,
+	 * or too far into it to be recorded.
+	 */
+	private static final int ANYWHERE = 0xFF;
+
+	/**
+	 * The start of a candidate whose trigram positions are not all known.
+	 */
+	private static final int UNALIGNED = Integer.MIN_VALUE;
+
+	private static final int[] NONE = new int[0];
+
+	/**
+	 * The playlist indexed.
+	 */
+	private final CompactPlayList list;
+
+	/**
+	 * The slots containing each trigram, possibly stale.
+	 */
+	private final Map<Long, Postings> postings = new HashMap<Long, Postings>();
+
+	/**
+	 * The number of postings held for each slot.
+	 */
+	private int[] counts = new int[16];
+
+	/**
+	 * The slots indexed more than once since the last rebuild, whose old
+	 * postings may still be found.
+	 */
+	private final BitSet stale = new BitSet();
+
+	/**
+	 * The lower case text of each slot, or <i>null</i>.
+	 */
+	private String[] texts = new String[16];
+
+	/**
+	 * The lower case, decoded folder of each interned prefix.
+	 */
+	private final List<String> folders = new ArrayList<String>();
+
+	/**
+	 * The prefixes whose folder contains each trigram.
+	 */
+	private final Map<Long, Postings> folderPostings = new HashMap<Long, Postings>();
+
+	/**
+	 * The slots stored under each prefix, possibly stale.
+	 */
+	private final List<Postings> members = new ArrayList<Postings>();
+
+	/**
+	 * The trigrams of the text being indexed. Reused.
+	 */
+	private long[] grams = new long[64];
+
+	private long live;
+	private long garbage;
+
+	/**
+	 * Called after an entry of the list has been retitled, or <i>null</i>.
+	 */
+	Runnable onUpdate;
+
+	/**
+	 * Constructs the index of a playlist and keeps it up to date from then on.
+	 *
+	 * @param list
+	 *            the CompactPlayList to index.
+	 */
+	public TrigramIndex(CompactPlayList list)
+	{
+		this.list = list;
+		rebuild();
+		list.setIndex(this);
+	} //end ctor
+
+	/**
+	 * Returns the playlist indexed.
+	 *
+	 * @return list the CompactPlayList.
+	 */
+	public CompactPlayList getPlayList()
+	{
+		return list;
+	}
+
+	/**
+	 * Finds the entries whose title, file name or folder contains the query,
+	 * ignoring case.
+	 *
+	 * @param query
+	 *            the text to look for.
+	 * @return the slots of the matching entries, in list order. None for a
+	 *         query shorter than {@link #GRAM}.
+	 */
+	public int[] search(String query)
+	{
+		String text = query.toLowerCase(Locale.ROOT);
+		if(text.length() < GRAM)
+		{
+			return NONE;
+		}
+		int[] found = matchEntries(text);
+		int[] inFolders = matchFolders(text);
+		if(inFolders.length > 0)
+		{
+			found = union(found, inFolders);
+		}
+		return inListOrder(found);
+	}
+
+	/**
+	 * Returns the number of postings held, stale ones included.
+	 *
+	 * @return the size of the index.
+	 */
+	public long getPostingCount()
+	{
+		return live + garbage;
+	}
+
+	/**
+	 * Re-indexes a slot whose title or URI has been stored.
+	 *
+	 * @param slot
+	 *            the storage slot.
+	 */
+	void update(int slot)
+	{
+		//Rebuild first: a slot being stored is not in the list order yet.
+		rebuildIfWorthIt();
+		drop(slot);
+		add(slot);
+		//A slot being stored is reported by the change of the list.
+		if(onUpdate != null && list.indexOfSlot(slot) < list.size())
+		{
+			onUpdate.run();
+		}
+	}
+
+	/**
+	 * Forgets a slot that is being released.
+	 *
+	 * @param slot
+	 *            the storage slot.
+	 */
+	void remove(int slot)
+	{
+		drop(slot);
+		rebuildIfWorthIt();
+	}
+
+	/**
+	 * Finds the live entries whose own text contains the query.
+	 *
+	 * @param text
+	 *            the lower case query.
+	 * @return the slots in ascending order.
+	 */
+	private int[] matchEntries(String text)
+	{
+		Candidates candidates = intersect(postings, text, stale);
+		boolean exact = text.length() == GRAM;
+		int[] found = new int[candidates.count];
+		int count = 0;
+		for(int i = 0; i < candidates.count; i++)
+		{
+			int slot = candidates.slots[i];
+			if(list.indexOfSlot(slot) < 0)
+			{
+				continue;
+			}
+			//Postings of a slot indexed again may be outdated.
+			boolean aligned = exact ? !stale.get(slot) : candidates.starts[i] != UNALIGNED;
+			if(aligned || texts[slot].contains(text))
+			{
+				found[count++] = slot;
+			}
+		}
+		return count == found.length ? found : Arrays.copyOf(found, count);
+	}
+
+	/**
+	 * Finds the live entries stored under a folder containing the query. The
+	 * entries of few folders are taken from their member lists; when the
+	 * folders hold a large part of the playlist, the slots are scanned in
+	 * order instead of gathered from all over.
+	 *
+	 * @param text
+	 *            the lower case query.
+	 * @return the slots in ascending order.
+	 */
+	private int[] matchFolders(String text)
+	{
+		indexNewFolders();
+		Candidates prefixes = intersect(folderPostings, text, null);
+		int matched = 0;
+		long stored = 0;
+		for(int p = 0; p < prefixes.count; p++)
+		{
+			int prefix = prefixes.slots[p];
+			if(text.length() <= GRAM || folders.get(prefix).contains(text))
+			{
+				prefixes.slots[matched++] = prefix;
+				stored += members.get(prefix).size;
+			}
+		}
+		if(stored * 8 > counts.length)
+		{
+			return scanFolders(prefixes.slots, matched);
+		}
+
+		int[] found = new int[(int)stored];
+		int count = 0;
+		for(int p = 0; p < matched; p++)
+		{
+			int prefix = prefixes.slots[p];
+			Postings slots = members.get(prefix).sorted();
+			for(int i = 0; i < slots.size; i++)
+			{
+				int slot = slots.slots[i];
+				if(list.prefixOf(slot) == prefix && list.indexOfSlot(slot) >= 0)
+				{
+					found[count++] = slot;
+				}
+			}
+		}
+		found = Arrays.copyOf(found, count);
+		if(matched > 1)
+		{
+			Arrays.sort(found);
+		}
+		return found;
+	}
+
+	/**
+	 * Finds the live slots stored under any of the given prefixes in one pass
+	 * over the slots.
+	 *
+	 * @param prefixes
+	 *            the matching prefixes.
+	 * @param count
+	 *            the number of prefixes.
+	 * @return the slots in ascending order.
+	 */
+	private int[] scanFolders(int[] prefixes, int count)
+	{
+		boolean[] matched = new boolean[folders.size()];
+		for(int p = 0; p < count; p++)
+		{
+			matched[prefixes[p]] = true;
+		}
+		int[] found = new int[list.size()];
+		int size = 0;
+		for(int slot = 0; slot < counts.length && size < found.length; slot++)
+		{
+			int prefix = list.indexOfSlot(slot) >= 0 ? list.prefixOf(slot) : -1;
+			if(prefix >= 0 && matched[prefix])
+			{
+				found[size++] = slot;
+			}
+		}
+		return size == found.length ? found : Arrays.copyOf(found, size);
+	}
+
+	/**
+	 * Intersects the posting lists of all trigrams of a query, smallest
+	 * first, so that each step only probes the candidates left. With
+	 * positions, a candidate whose trigrams occur once each but not in the
+	 * order of the query is dropped.
+	 *
+	 * @param index
+	 *            the posting lists.
+	 * @param text
+	 *            the lower case query, at least {@link #GRAM} long.
+	 * @param outdated
+	 *            the slots whose positions may be outdated, or <i>null</i>
+	 *            if the postings hold no positions.
+	 * @return the candidates in ascending order.
+	 */
+	private static Candidates intersect(Map<Long, Postings> index, String text, BitSet outdated)
+	{
+		//The trigrams by the size of their posting list, each with its offset in the query.
+		long[] bySize = new long[text.length() - GRAM + 1];
+		Postings[] lists = new Postings[bySize.length];
+		for(int i = 0; i < lists.length; i++)
+		{
+			lists[i] = index.get(gram(text, i));
+			if(lists[i] == null)
+			{
+				return new Candidates(NONE, NONE, 0);
+			}
+			lists[i].sorted();
+			bySize[i] = (long)lists[i].size << 32 | i;
+		}
+		Arrays.sort(bySize);
+
+		int first = (int)bySize[0];
+		Postings smallest = lists[first];
+		int[] slots = Arrays.copyOf(smallest.slots, smallest.size);
+		int[] starts = new int[slots.length];
+		int count = 0;
+		for(int i = 0; i < slots.length; i++)
+		{
+			boolean known = outdated != null && !outdated.get(slots[i]);
+			int start = known ? startOf(smallest.positions[i], first) : UNALIGNED;
+			if(start >= 0 || start == UNALIGNED)
+			{
+				slots[count] = slots[i];
+				starts[count++] = start;
+			}
+		}
+		for(int l = 1; l < bySize.length && count > 0; l++)
+		{
+			int offset = (int)bySize[l];
+			Postings next = lists[offset];
+			int at = 0;
+			int kept = 0;
+			//Gallop over a much longer list, step through one of similar length.
+			boolean sparse = next.size / 8 > count;
+			for(int i = 0; i < count && at < next.size; i++)
+			{
+				if(sparse)
+				{
+					at = seek(next.slots, at, next.size, slots[i]);
+				}
+				else
+				{
+					while(at < next.size && next.slots[at] < slots[i])
+					{
+						at++;
+					}
+				}
+				if(at == next.size || next.slots[at] != slots[i])
+				{
+					continue;
+				}
+				int start = starts[i];
+				if(start != UNALIGNED)
+				{
+					int position = next.positions[at] & 0xFF;
+					if(position == ANYWHERE)
+					{
+						start = UNALIGNED;
+					}
+					else if(position - offset != start)
+					{
+						continue;
+					}
+				}
+				slots[kept] = slots[i];
+				starts[kept++] = start;
+			}
+			count = kept;
+		}
+		return new Candidates(slots, starts, count);
+	}
+
+	/**
+	 * Returns where a query would start in a text given the position of one
+	 * of its trigrams.
+	 *
+	 * @param position
+	 *            the posted position of the trigram.
+	 * @param offset
+	 *            the offset of the trigram in the query.
+	 * @return the start, negative if the query cannot occur, or
+	 *         {@link #UNALIGNED} if the position is not known.
+	 */
+	private static int startOf(byte position, int offset)
+	{
+		int at = position & 0xFF;
+		return at == ANYWHERE ? UNALIGNED : at - offset;
+	}
+
+	/**
+	 * Finds the first position from a start holding at least a value, by
+	 * galloping ahead and then bisecting.
+	 *
+	 * @return the position, or the size if all are smaller.
+	 */
+	private static int seek(int[] slots, int from, int size, int value)
+	{
+		int step = 1;
+		int low = from;
+		int high = from;
+		while(high < size && slots[high] < value)
+		{
+			low = high + 1;
+			high = from + step;
+			step <<= 1;
+		}
+		high = Math.min(high, size);
+		while(low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if(slots[middle] < value)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Merges two ascending slot arrays without duplicates.
+	 */
+	private static int[] union(int[] a, int[] b)
+	{
+		if(a.length == 0 || b.length == 0)
+		{
+			return a.length == 0 ? b : a;
+		}
+		int[] merged = new int[a.length + b.length];
+		int i = 0;
+		int j = 0;
+		int count = 0;
+		while(i < a.length || j < b.length)
+		{
+			int next = j == b.length || (i < a.length && a[i] <= b[j]) ? a[i] : b[j];
+			while(i < a.length && a[i] == next)
+			{
+				i++;
+			}
+			while(j < b.length && b[j] == next)
+			{
+				j++;
+			}
+			merged[count++] = next;
+		}
+		return Arrays.copyOf(merged, count);
+	}
+
+	/**
+	 * Orders slots by their list position. Slots of a list that has not been
+	 * reordered are already in list order. Otherwise few slots are sorted by
+	 * position, many are marked in a bit set of positions and read back.
+	 *
+	 * @param slots
+	 *            the slots of live entries, ascending and distinct.
+	 * @return the slots in list order.
+	 */
+	private int[] inListOrder(int[] slots)
+	{
+		int[] found = new int[slots.length];
+		if(slots.length == list.size())
+		{
+			//Every entry matches.
+			for(int i = 0; i < found.length; i++)
+			{
+				found[i] = list.slotAt(i);
+			}
+			return found;
+		}
+		boolean ordered = true;
+		for(int i = 0; i < slots.length; i++)
+		{
+			found[i] = list.indexOfSlot(slots[i]);
+			ordered &= i == 0 || found[i] > found[i - 1];
+		}
+		if(ordered)
+		{
+			return slots;
+		}
+		if(slots.length * 8L < list.size())
+		{
+			Arrays.sort(found);
+			for(int i = 0; i < found.length; i++)
+			{
+				found[i] = list.slotAt(found[i]);
+			}
+			return found;
+		}
+		//Mark the positions and read them back in order.
+		long[] marked = new long[(list.size() + 63) >>> 6];
+		for(int position : found)
+		{
+			marked[position >>> 6] |= 1L << position;
+		}
+		int count = 0;
+		for(int w = 0; w < marked.length; w++)
+		{
+			for(long word = marked[w]; word != 0; word &= word - 1)
+			{
+				found[count++] = list.slotAt(w << 6 | Long.numberOfTrailingZeros(word));
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Keeps the text of a slot and posts its trigrams and its folder.
+	 *
+	 * @param slot
+	 *            the storage slot.
+	 */
+	private void add(int slot)
+	{
+		if(slot >= counts.length)
+		{
+			int length = Math.max(slot + 1, counts.length * 2);
+			counts = Arrays.copyOf(counts, length);
+			texts = Arrays.copyOf(texts, length);
+		}
+		String text = textOf(slot);
+		texts[slot] = text;
+
+		int length = Math.max(0, text.length() - GRAM + 1);
+		if(length > grams.length)
+		{
+			grams = new long[length];
+		}
+		//Each trigram with its position in the low byte, so that sorting groups them.
+		for(int i = 0; i < length; i++)
+		{
+			grams[i] = gram(text, i) << 8 | Math.min(i, ANYWHERE);
+		}
+		//Post each distinct trigram once, at its only position if it has one.
+		Arrays.sort(grams, 0, length);
+		int count = 0;
+		for(int i = 0; i < length; i++)
+		{
+			long gram = grams[i] >>> 8;
+			if(i > 0 && grams[i - 1] >>> 8 == gram)
+			{
+				continue;
+			}
+			boolean once = i + 1 == length || grams[i + 1] >>> 8 != gram;
+			int position = once ? (int)grams[i] & 0xFF : ANYWHERE;
+			postings.computeIfAbsent(gram, key -> new Postings()).add(slot, position);
+			count++;
+		}
+
+		int prefix = list.prefixOf(slot);
+		if(prefix >= 0)
+		{
+			indexNewFolders();
+			members.get(prefix).add(slot, ANYWHERE);
+			count++;
+		}
+		counts[slot] = count;
+		live += count;
+	}
+
+	/**
+	 * Marks the postings of a slot as stale.
+	 *
+	 * @param slot
+	 *            the storage slot.
+	 */
+	private void drop(int slot)
+	{
+		if(slot < counts.length && counts[slot] > 0)
+		{
+			live -= counts[slot];
+			garbage += counts[slot];
+			counts[slot] = 0;
+			texts[slot] = null;
+			stale.set(slot);
+		}
+	}
+
+	/**
+	 * Rebuilds the postings from the list once stale ones make up half.
+	 */
+	private void rebuildIfWorthIt()
+	{
+		if(garbage >= MIN_GARBAGE && garbage > live)
+		{
+			rebuild();
+		}
+	}
+
+	/**
+	 * Indexes every entry of the list from scratch, in slot order so that
+	 * the posting lists come out sorted.
+	 */
+	private void rebuild()
+	{
+		postings.clear();
+		for(Postings slots : members)
+		{
+			slots.clear();
+		}
+		Arrays.fill(counts, 0);
+		stale.clear();
+		Arrays.fill(texts, null);
+		live = 0;
+		garbage = 0;
+		BitSet slots = new BitSet();
+		for(int i = 0; i < list.size(); i++)
+		{
+			slots.set(list.slotAt(i));
+		}
+		for(int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1))
+		{
+			add(slot);
+		}
+	}
+
+	/**
+	 * Indexes the folders of the prefixes interned since the last call.
+	 * Prefixes are numbered in order, so their posting lists stay sorted.
+	 */
+	private void indexNewFolders()
+	{
+		for(int prefix = folders.size(); prefix < list.prefixCount(); prefix++)
+		{
+			String folder = decode(list.prefixAt(prefix)).toLowerCase(Locale.ROOT);
+			folders.add(folder);
+			members.add(new Postings());
+			for(int i = 0; i + GRAM <= folder.length(); i++)
+			{
+				folderPostings.computeIfAbsent(gram(folder, i), gram -> new Postings()).add(prefix, ANYWHERE);
+			}
+		}
+	}
+
+	/**
+	 * Returns the searchable text of a slot: its title and decoded file name.
+	 *
+	 * @param slot
+	 *            the storage slot.
+	 * @return the lower case text.
+	 */
+	private String textOf(int slot)
+	{
+		String title = list.storedTitleAt(slot);
+		String name = decode(list.fileNameAt(slot));
+		//A title taken from the file name adds nothing to search for.
+		if(title == null)
+		{
+			return name.toLowerCase(Locale.ROOT);
+		}
+		return (title + '\n' + name).toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Packs three characters of a String into one key.
+	 */
+	private static long gram(String text, int from)
+	{
+		return (long)text.charAt(from) << 32 | (long)text.charAt(from + 1) << 16 | text.charAt(from + 2);
+	}
+
+	/**
+	 * Decodes the percent escapes of a URI part.
+	 *
+	 * @param part
+	 *            the encoded URI part.
+	 * @return the decoded part, or the part as is if it is malformed.
+	 */
+	private static String decode(String part)
+	{
+		if(part.indexOf('%') < 0)
+		{
+			return part;
+		}
+		try
+		{
+			return URLDecoder.decode(part.replace("+", "%2B"), "UTF-8");
+		}
+		catch(UnsupportedEncodingException | IllegalArgumentException e)
+		{
+			return part;
+		}
+	}
+
+	/**
+	 * A growable list of slots and the position of the trigram in each,
+	 * sorted on demand. Slots are mostly added in ascending order; a reused
+	 * slot puts the list out of order until the next lookup.
+	 */
+	private static class Postings
+	{
+		private int[] slots = new int[4];
+		private byte[] positions = new byte[4];
+		private int size;
+		private boolean sorted = true;
+
+		private void add(int slot, int position)
+		{
+			if(size > 0 && slots[size - 1] >= slot)
+			{
+				if(slots[size - 1] == slot)
+				{
+					return;
+				}
+				sorted = false;
+			}
+			if(size == slots.length)
+			{
+				slots = Arrays.copyOf(slots, size * 2);
+				positions = Arrays.copyOf(positions, size * 2);
+			}
+			positions[size] = (byte)position;
+			slots[size++] = slot;
+		}
+
+		/**
+		 * Sorts the slots and drops the duplicates left by re-indexing.
+		 *
+		 * @return this.
+		 */
+		private Postings sorted()
+		{
+			if(!sorted)
+			{
+				long[] packed = new long[size];
+				for(int i = 0; i < size; i++)
+				{
+					packed[i] = (long)slots[i] << 8 | (positions[i] & 0xFF);
+				}
+				Arrays.sort(packed);
+				int count = 0;
+				for(int i = 0; i < size; i++)
+				{
+					int slot = (int)(packed[i] >>> 8);
+					if(count == 0 || slot != slots[count - 1])
+					{
+						positions[count] = (byte)packed[i];
+						slots[count++] = slot;
+					}
+				}
+				size = count;
+				sorted = true;
+			}
+			return this;
+		}
+
+		private void clear()
+		{
+			size = 0;
+			sorted = true;
+		}
+	}
+
+	/**
+	 * The candidates of a query: slots in ascending order, each with the start
+	 * of the query its trigrams line up at, or {@link #UNALIGNED}.
+	 */
+	private static class Candidates
+	{
+		private final int[] slots;
+		private final int[] starts;
+		private final int count;
+
+		private Candidates(int[] slots, int[] starts, int count)
+		{
+			this.slots = slots;
+			this.starts = starts;
+			this.count = count;
+		} //end ctor
+	}
+}
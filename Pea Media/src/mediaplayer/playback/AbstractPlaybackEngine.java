@@ -0,0 +1,501 @@
+package mediaplayer.playback;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.beans.property.IntegerProperty;
+import javafx.util.Duration;
+import mediaplayer.io.ReadAheadPrefetcher;
+import mediaplayer.io.ResumeStore;
+import mediaplayer.model.MediaItem;
+import mediaplayer.util.Log;
+
+/**
+ * The sequencing shared by every {@link PlaybackEngine}: which entry to play,
+ * when, and what to pre-roll and prefetch next. Subclasses only open, start,
+ * stop and pause media.
+ *
+ * @author Alex Hage
+ *
+ */
+public abstract class AbstractPlaybackEngine implements PlaybackEngine
+{
+	/**
+	 * The playback time between saves of the position.
+	 */
+	public static final Duration SAVE_INTERVAL = Duration.seconds(5);
+
+	protected final List<MediaItem> playList;
+	protected final IntegerProperty current;
+	protected final PlayOrder playOrder;
+
+	/**
+	 * The reader warming the page cache for upcoming files, or <i>null</i>.
+	 */
+	private final ReadAheadPrefetcher prefetcher;
+
+	private Listener listener;
+
+	/**
+	 * The store of positions to resume entries at, or <i>null</i>.
+	 */
+	private ResumeStore resumeStore;
+
+	/**
+	 * The entry playing, <i>null</i> once played to its end.
+	 */
+	private MediaItem item;
+
+	/**
+	 * The position last saved.
+	 */
+	private Duration savedPosition = Duration.ZERO;
+
+	/**
+	 * The number of entries failed in a row.
+	 */
+	private int failures;
+
+	/**
+	 * The playlist index of the entry playing.
+	 */
+	private int currentIndex;
+
+	/**
+	 * The playback started flag.
+	 */
+	private boolean playing;
+
+	/**
+	 * The playback paused flag.
+	 */
+	private boolean paused;
+
+	/**
+	 * The media repeat flag.
+	 */
+	private boolean repeat;
+
+	/**
+	 * The position to start the next opened entry at, or <i>null</i>.
+	 */
+	private Duration startPosition;
+
+	/**
+	 * The overlap of consecutive entries.
+	 */
+	private Duration crossfade = Duration.ZERO;
+
+	/**
+	 * Constructs an engine playing a playlist in the given play order.
+	 *
+	 * @param playList
+	 *            the playlist to play.
+	 * @param current
+	 *            the IntegerProperty holding the current index.
+	 * @param playOrder
+	 *            the PlayOrder of the playlist.
+	 * @param prefetcher
+	 *            the ReadAheadPrefetcher to hand upcoming files to, or
+	 *            <i>null</i>.
+	 */
+	protected AbstractPlaybackEngine(List<MediaItem> playList, IntegerProperty current,
+			PlayOrder playOrder, ReadAheadPrefetcher prefetcher)
+	{
+		this.playList = playList;
+		this.current = current;
+		this.playOrder = playOrder;
+		this.prefetcher = prefetcher;
+		this.currentIndex = current.get();
+		current.addListener((observable, oldValue, newValue) -> currentChanged());
+		playOrder.onChanged = () -> nextChanged();
+	} //end ctor
+
+	@Override
+	public void playCurrent()
+	{
+		if(playList.isEmpty())
+		{
+			return;
+		}
+		currentIndex = current.get();
+		playing = true;
+		paused = false;
+		playOrder.playing(currentIndex);
+		item = playList.get(currentIndex);
+		URI uri = item.getURI();
+		if(prefetcher != null)
+		{
+			prefetcher.opened(uri);
+		}
+		try
+		{
+			open(uri);
+		}
+		catch(RuntimeException e)
+		{
+			failed(uri, e);
+			return;
+		}
+		if(listener != null)
+		{
+			listener.opened(currentIndex, item);
+		}
+		Duration position = startPosition;
+		startPosition = null;
+		if(position == null && resumeStore != null)
+		{
+			position = resumeStore.get(uri);
+		}
+		savedPosition = position != null ? position : Duration.ZERO;
+		start(position != null && position.greaterThan(Duration.ZERO) ? position : null);
+
+		prerollNext();
+		prefetchUpcoming();
+	}
+
+	@Override
+	public void next()
+	{
+		failures = 0;
+		savePosition();
+		stopMedia();
+		playIndex(playOrder.next());
+	}
+
+	@Override
+	public void back()
+	{
+		failures = 0;
+		savePosition();
+		stopMedia();
+		playIndex(playOrder.previous());
+	}
+
+	@Override
+	public void endOfMedia()
+	{
+		if(resumeStore != null && item != null)
+		{
+			resumeStore.remove(item.getURI());
+		}
+		item = null;
+		failures = 0;
+		if(repeat)
+		{
+			playCurrent();
+			return;
+		}
+		int next = playOrder.next();
+		if(next < 0)
+		{
+			//Nothing left to play.
+			stopMedia();
+			playing = false;
+			paused = false;
+			return;
+		}
+		playIndex(next);
+	}
+
+	@Override
+	public void pause()
+	{
+		if(playing && !paused)
+		{
+			paused = true;
+			pauseMedia();
+			savePosition();
+		}
+	}
+
+	@Override
+	public void resume()
+	{
+		if(playing && paused)
+		{
+			paused = false;
+			resumeMedia();
+		}
+	}
+
+	@Override
+	public boolean isPlaying()
+	{
+		return playing;
+	}
+
+	@Override
+	public boolean isPaused()
+	{
+		return paused;
+	}
+
+	@Override
+	public boolean isRepeat()
+	{
+		return repeat;
+	}
+
+	@Override
+	public void setRepeat(boolean repeat)
+	{
+		this.repeat = repeat;
+		nextChanged();
+	}
+
+	@Override
+	public Duration getCrossfade()
+	{
+		return crossfade;
+	}
+
+	@Override
+	public void setCrossfade(Duration crossfade)
+	{
+		this.crossfade = crossfade == null || crossfade.lessThan(Duration.ZERO) ? Duration.ZERO : crossfade;
+	}
+
+	@Override
+	public int getCurrentIndex()
+	{
+		return currentIndex;
+	}
+
+	@Override
+	public void setResumeStore(ResumeStore resumeStore)
+	{
+		this.resumeStore = resumeStore;
+	}
+
+	@Override
+	public void savePosition()
+	{
+		if(resumeStore != null && item != null)
+		{
+			savedPosition = getPosition();
+			resumeStore.put(item.getURI(), savedPosition, getLength());
+		}
+	}
+
+	@Override
+	public void setStartPosition(Duration position)
+	{
+		this.startPosition = position;
+	}
+
+	@Override
+	public void setListener(Listener listener)
+	{
+		this.listener = listener;
+	}
+
+	/**
+	 * Returns the playlist index of the item to play after the current one,
+	 * honoring the <i>repeat</i> flag and the play order.
+	 *
+	 * @return the index of the next item, or -1 if not yet known.
+	 */
+	protected int nextIndex()
+	{
+		if(repeat)
+		{
+			return currentIndex;
+		}
+		return playOrder.peekNext();
+	}
+
+	/**
+	 * Returns the length of the entry playing. The engine may know it before
+	 * the metadata of the entry does.
+	 *
+	 * @return the length, or <i>null</i> if not known.
+	 */
+	protected Duration getLength()
+	{
+		return item != null ? item.getDuration() : null;
+	}
+
+	/**
+	 * Called by the engine as the entry playing advances. Saves its position
+	 * once it has moved by the save interval since the last save.
+	 *
+	 * @param position
+	 *            the new position.
+	 */
+	protected void progress(Duration position)
+	{
+		if(resumeStore != null && item != null
+				&& Math.abs(position.toMillis() - savedPosition.toMillis()) >= SAVE_INTERVAL.toMillis())
+		{
+			savePosition();
+		}
+	}
+
+	/**
+	 * Called when the entry playing cannot be played. Skips to the next entry
+	 * in the play order, even in repeat mode, and stops once every entry has
+	 * failed in a row.
+	 *
+	 * @param uri
+	 *            the URI of the failed media.
+	 * @param error
+	 *            the cause, or <i>null</i> if not known.
+	 */
+	protected void failed(URI uri, Throwable error)
+	{
+		Log.warn("Could not play {}: {}", uri, error != null ? error.getMessage() : "unknown error");
+		item = null;
+		if(++failures >= playList.size())
+		{
+			failures = 0;
+			playing = false;
+			return;
+		}
+		later(() ->
+		{
+			if(playing)
+			{
+				stopMedia();
+				playIndex(playOrder.next());
+			}
+		});
+	}
+
+	/**
+	 * Runs an action after the current one, so that skipping a run of failing
+	 * entries does not nest. Runs it right away unless overridden.
+	 *
+	 * @param action
+	 *            the action to run.
+	 */
+	protected void later(Runnable action)
+	{
+		action.run();
+	}
+
+	/**
+	 * Opens the media of the entry to play.
+	 *
+	 * @param uri
+	 *            the URI of the media.
+	 * @throws RuntimeException
+	 *             if the media cannot be opened; the entry is skipped.
+	 */
+	protected abstract void open(URI uri);
+
+	/**
+	 * Starts the opened media.
+	 *
+	 * @param position
+	 *            the position to start at, or <i>null</i> for the beginning.
+	 */
+	protected abstract void start(Duration position);
+
+	/**
+	 * Opens the media of the entry to play next in the background, if the
+	 * engine supports it. Called again whenever the entry coming up changes,
+	 * so a call for the URI already pre-rolled should keep it.
+	 *
+	 * @param uri
+	 *            the URI of the media.
+	 */
+	protected abstract void preroll(URI uri);
+
+	/**
+	 * Stops the current media, if any.
+	 */
+	protected abstract void stopMedia();
+
+	/**
+	 * Pauses the current media.
+	 */
+	protected abstract void pauseMedia();
+
+	/**
+	 * Resumes the paused media.
+	 */
+	protected abstract void resumeMedia();
+
+	/**
+	 * Plays the given playlist index. A changed <i>current</i> is picked up by
+	 * {@link #currentChanged()}, an unchanged one is played again right away.
+	 *
+	 * @param index
+	 *            the playlist index, or -1 for none.
+	 */
+	private void playIndex(int index)
+	{
+		if(index < 0)
+		{
+			return;
+		}
+		if(index != current.get())
+		{
+			current.set(index);
+		}
+		else
+		{
+			playCurrent();
+		}
+	}
+
+	/**
+	 * Plays the new current entry. A <i>current</i> only following its entry
+	 * to a new position after a playlist change leaves playback alone.
+	 */
+	private void currentChanged()
+	{
+		if(playOrder.isAdjusting())
+		{
+			currentIndex = current.get();
+			return;
+		}
+		savePosition();
+		stopMedia();
+		playCurrent();
+	}
+
+	/**
+	 * Pre-rolls the entry to play next, if known.
+	 */
+	private void prerollNext()
+	{
+		int next = nextIndex();
+		if(next >= 0)
+		{
+			preroll(playList.get(next).getURI());
+		}
+	}
+
+	/**
+	 * Pre-rolls the entry now coming up after a change of the play order or
+	 * the <i>repeat</i> flag.
+	 */
+	private void nextChanged()
+	{
+		if(playing && item != null)
+		{
+			prerollNext();
+		}
+	}
+
+	/**
+	 * Hands the files coming up in the play order to the prefetcher.
+	 */
+	private void prefetchUpcoming()
+	{
+		if(prefetcher == null)
+		{
+			return;
+		}
+		int[] upcoming = playOrder.upcoming(prefetcher.getCount());
+		List<URI> uris = new ArrayList<URI>(upcoming.length);
+		for(int index : upcoming)
+		{
+			uris.add(playList.get(index).getURI());
+		}
+		prefetcher.prefetch(uris);
+	}
+}
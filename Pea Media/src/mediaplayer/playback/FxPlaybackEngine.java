@@ -0,0 +1,386 @@
+package mediaplayer.playback;
+
+import java.net.URI;
+import java.util.List;
+
+import javafx.animation.Interpolator;
+import javafx.animation.Transition;
+import javafx.application.Platform;
+import javafx.beans.property.IntegerProperty;
+import javafx.scene.media.MediaPlayer;
+import javafx.scene.media.MediaView;
+import javafx.util.Duration;
+import mediaplayer.io.ReadAheadPrefetcher;
+import mediaplayer.model.MediaItem;
+
+/**
+ * Plays the playlist with JavaFX MediaPlayers shown in a MediaView. The
+ * players are owned by a {@link MediaPlayerEngine}, which keeps the next one
+ * pre-rolled, so the swap at end-of-media costs no open latency.
+ * <p>
+ * With a crossfade set, the pre-rolled player is started that long before the
+ * current one ends, and the volumes of both are ramped with equal power from
+ * the same baseline volume. The next player is pre-rolled as soon as the
+ * current one starts, so it is buffered long before the fade. If it is not
+ * ready in time, or the entry is too short to fade, the transition happens at
+ * end-of-media as without crossfade.
+ * </p>
+ *
+ * @author Alex Hage
+ *
+ */
+public class FxPlaybackEngine extends AbstractPlaybackEngine
+{
+	private final MediaPlayerEngine players;
+
+	/**
+	 * The baseline volume, set by the volume slider.
+	 */
+	private double volume = 1.0;
+
+	private boolean muted;
+
+	/**
+	 * Set while a transition is opening the next player as a crossfade.
+	 */
+	private boolean crossfading;
+
+	/**
+	 * The running volume ramp, or <i>null</i>.
+	 */
+	private Transition fade;
+
+	/**
+	 * The progress of the running ramp, from 0 to 1.
+	 */
+	private double fadeProgress;
+
+	/**
+	 * Constructs an engine playing into the given MediaView.
+	 *
+	 * @param mediaView
+	 *            the MediaView to show the current player in.
+	 * @param playList
+	 *            the playlist to play.
+	 * @param current
+	 *            the IntegerProperty holding the current index.
+	 * @param playOrder
+	 *            the PlayOrder of the playlist.
+	 * @param prefetcher
+	 *            the ReadAheadPrefetcher to hand upcoming files to, or
+	 *            <i>null</i>.
+	 */
+	public FxPlaybackEngine(MediaView mediaView, List<MediaItem> playList, IntegerProperty current,
+			PlayOrder playOrder, ReadAheadPrefetcher prefetcher)
+	{
+		super(playList, current, playOrder, prefetcher);
+		this.players = new MediaPlayerEngine(mediaView);
+	} //end ctor
+
+	/**
+	 * Returns the currently playing MediaPlayer.
+	 *
+	 * @return the MediaPlayer, or <i>null</i> if nothing was opened.
+	 */
+	public MediaPlayer getMediaPlayer()
+	{
+		return players.getMediaPlayer();
+	}
+
+	/**
+	 * Returns the lifecycle owning the players. Listeners on the current
+	 * player are to be attached through it.
+	 *
+	 * @return lifecycle the MediaPlayerLifecycle.
+	 */
+	public MediaPlayerLifecycle getLifecycle()
+	{
+		return players.getLifecycle();
+	}
+
+	/**
+	 * Sets the baseline volume of the players.
+	 *
+	 * @param volume
+	 *            the volume, between 0 and 1.
+	 */
+	public void setVolume(double volume)
+	{
+		this.volume = volume;
+		applyVolume();
+	}
+
+	/**
+	 * Mutes or unmutes the players.
+	 *
+	 * @param muted
+	 *            true to mute.
+	 */
+	public void setMute(boolean muted)
+	{
+		this.muted = muted;
+		MediaPlayer player = players.getMediaPlayer();
+		if(player != null)
+		{
+			player.setMute(muted);
+		}
+		if(players.getFadingPlayer() != null)
+		{
+			players.getFadingPlayer().setMute(muted);
+		}
+	}
+
+	@Override
+	public Duration getPosition()
+	{
+		MediaPlayer player = players.getMediaPlayer();
+		return player != null ? player.getCurrentTime() : Duration.ZERO;
+	}
+
+	@Override
+	protected Duration getLength()
+	{
+		MediaPlayer player = players.getMediaPlayer();
+		Duration total = player != null ? player.getTotalDuration() : null;
+		return total != null && !total.isUnknown() ? total : super.getLength();
+	}
+
+	@Override
+	public void close()
+	{
+		savePosition();
+		stopFade();
+		players.close();
+	}
+
+	@Override
+	protected void open(URI uri)
+	{
+		MediaPlayer player = crossfading ? players.crossfadeTo(uri) : players.open(uri);
+		player.setOnEndOfMedia(this::endOfMedia);
+		player.setOnError(() -> 
+		{
+			if(player == players.getMediaPlayer())
+			{
+				failed(uri, player.getError());
+			}
+		});
+		player.setMute(muted);
+		getLifecycle().addListener(player, player.currentTimeProperty(), (observable, oldTime, newTime) ->
+		{
+			if(player == players.getMediaPlayer())
+			{
+				progress(newTime);
+				checkCrossfade(player, newTime);
+			}
+		});
+		applyVolume();
+	}
+
+	/**
+	 * Starts the player and seeks to the position once it is ready. Starts
+	 * the volume ramp of a crossfade.
+	 */
+	@Override
+	protected void start(Duration position)
+	{
+		MediaPlayer player = players.getMediaPlayer();
+		player.play();
+		if(crossfading)
+		{
+			startFade();
+		}
+		if(position == null)
+		{
+			return;
+		}
+		if(player.getStatus() == MediaPlayer.Status.READY 
+				|| player.getStatus() == MediaPlayer.Status.PLAYING)
+		{
+			player.seek(position);
+		}
+		else
+		{
+			player.setOnReady(() -> player.seek(position));
+		}
+	}
+
+	@Override
+	protected void later(Runnable action)
+	{
+		Platform.runLater(action);
+	}
+
+	@Override
+	protected void preroll(URI uri)
+	{
+		players.preroll(uri);
+	}
+
+	/**
+	 * Stops the current player. A transition starting a crossfade keeps it
+	 * playing as the fading player; any other transition ends a running fade.
+	 */
+	@Override
+	protected void stopMedia()
+	{
+		if(crossfading)
+		{
+			return;
+		}
+		stopFade();
+		MediaPlayer player = players.getMediaPlayer();
+		if(player != null)
+		{
+			player.stop();
+		}
+	}
+
+	@Override
+	protected void pauseMedia()
+	{
+		players.getMediaPlayer().pause();
+		if(fade != null)
+		{
+			fade.pause();
+			players.getFadingPlayer().pause();
+		}
+	}
+
+	@Override
+	protected void resumeMedia()
+	{
+		players.getMediaPlayer().play();
+		if(fade != null)
+		{
+			players.getFadingPlayer().play();
+			fade.play();
+		}
+	}
+
+	/**
+	 * Starts the transition to the next entry once a player is within the
+	 * crossfade of its end and the player pre-rolled for the entry coming up
+	 * is ready. Without one the entry plays to its end and the next opens
+	 * then.
+	 *
+	 * @param player
+	 *            the MediaPlayer whose time changed.
+	 * @param time
+	 *            its current time.
+	 */
+	private void checkCrossfade(MediaPlayer player, Duration time)
+	{
+		Duration total = player.getTotalDuration();
+		Duration crossfade = getCrossfade();
+		if(player != players.getMediaPlayer() || crossfading || fade != null || isPaused()
+				|| crossfade.lessThanOrEqualTo(Duration.ZERO) || total == null || total.isUnknown()
+				|| total.isIndefinite() || total.lessThan(crossfade.multiply(2))
+				|| total.subtract(time).greaterThan(crossfade) || !isNextReady())
+		{
+			return;
+		}
+		crossfading = true;
+		try
+		{
+			endOfMedia();
+		}
+		finally
+		{
+			crossfading = false;
+		}
+	}
+
+	/**
+	 * Returns whether the pre-rolled player is ready and still holds the entry
+	 * to play next, which a change of the play order may have moved.
+	 */
+	private boolean isNextReady()
+	{
+		int next = nextIndex();
+		return next >= 0 && players.isNextReady() && playList.get(next).getURI().equals(players.getNextURI());
+	}
+
+	/**
+	 * Ramps the volumes of the fading and the current player over the rest of
+	 * the fading player's media.
+	 */
+	private void startFade()
+	{
+		MediaPlayer fading = players.getFadingPlayer();
+		if(fading == null)
+		{
+			return;
+		}
+		//The fading player must not end the new entry as well.
+		fading.setOnEndOfMedia(this::finishFade);
+		Duration left = fading.getTotalDuration().subtract(fading.getCurrentTime());
+		Duration length = left.greaterThan(Duration.ZERO) && left.lessThan(getCrossfade()) ? left : getCrossfade();
+		fadeProgress = 0;
+		fade = new Transition()
+		{
+			{
+				setCycleDuration(length);
+				setInterpolator(Interpolator.LINEAR);
+			}
+
+			@Override
+			protected void interpolate(double fraction)
+			{
+				fadeProgress = fraction;
+				applyVolume();
+			}
+		};
+		fade.setOnFinished(event -> finishFade());
+		fade.play();
+	}
+
+	/**
+	 * Ends the crossfade: releases the fading player and leaves the current
+	 * one at the baseline volume.
+	 */
+	private void finishFade()
+	{
+		if(fade != null)
+		{
+			stopFade();
+			applyVolume();
+		}
+	}
+
+	/**
+	 * Stops the volume ramp and releases the fading player.
+	 */
+	private void stopFade()
+	{
+		if(fade != null)
+		{
+			fade.setOnFinished(null);
+			fade.stop();
+			fade = null;
+		}
+		players.finishFade();
+	}
+
+	/**
+	 * Sets the volume of the current player, and during a crossfade of the
+	 * fading player, from the baseline volume. The fade keeps the sum of the
+	 * powers of both constant, so the loudness does not dip in the middle.
+	 */
+	private void applyVolume()
+	{
+		MediaPlayer player = players.getMediaPlayer();
+		MediaPlayer fading = players.getFadingPlayer();
+		if(fade == null || fading == null)
+		{
+			if(player != null)
+			{
+				player.setVolume(crossfading ? 0 : volume);
+			}
+			return;
+		}
+		double angle = fadeProgress * Math.PI / 2;
+		player.setVolume(volume * Math.sin(angle));
+		fading.setVolume(volume * Math.cos(angle));
+	}
+}
@@ -0,0 +1,261 @@
+package mediaplayer.playback;
+
+import java.net.URI;
+
+import javafx.scene.media.MediaException;
+import javafx.scene.media.MediaPlayer;
+import javafx.scene.media.MediaView;
+import mediaplayer.util.Log;
+
+/**
+ * Owns the MediaPlayer shown in the MediaView and keeps the player of the next
+ * playlist entry pre-rolled. A pre-rolled player has already opened, demuxed
+ * and buffered its media by the time the current one reaches its end, so the
+ * swap at end-of-media costs no open latency. Players are created and disposed
+ * through a {@link MediaPlayerLifecycle}.
+ * <p>
+ * For a crossfade, the previous player is kept playing as the fading player
+ * until {@link #finishFade()}.
+ * </p>
+ * 
+ * @author Alex Hage
+ *
+ */
+public class MediaPlayerEngine 
+{
+	/**
+	 * The MediaView the current player is shown in.
+	 */
+	private final MediaView mediaView;
+	
+	/**
+	 * The lifecycle owning every player of this engine.
+	 */
+	private final MediaPlayerLifecycle lifecycle;
+	
+	/**
+	 * The currently playing MediaPlayer.
+	 */
+	private MediaPlayer mediaPlayer;
+	
+	/**
+	 * The pre-rolled MediaPlayer of the next playlist entry.
+	 */
+	private MediaPlayer nextPlayer;
+	
+	/**
+	 * The URI the pre-rolled MediaPlayer was opened with.
+	 */
+	private URI nextURI;
+	
+	/**
+	 * The previous MediaPlayer while it fades out, or <i>null</i>.
+	 */
+	private MediaPlayer fadingPlayer;
+	
+	/**
+	 * Constructs a new engine playing into the given MediaView.
+	 * 
+	 * @param mediaView
+	 *            the MediaView to show the current player in.
+	 */
+	public MediaPlayerEngine(MediaView mediaView)
+	{
+		this.mediaView = mediaView;
+		this.lifecycle = new MediaPlayerLifecycle();
+	} //end ctor
+	
+	/**
+	 * Makes the media at the given URI the current one. Takes over the
+	 * pre-rolled player if it was opened for the same URI, otherwise opens a
+	 * new one. The previous player is released.
+	 * 
+	 * @param uri
+	 *            the URI of the media to open.
+	 * @return mediaPlayer the MediaPlayer now shown in the MediaView.
+	 * @throws MediaException
+	 *             if the media cannot be opened; the previous player is kept.
+	 */
+	public MediaPlayer open(URI uri)
+	{
+		finishFade();
+		MediaPlayer previous = swap(uri);
+		lifecycle.dispose(previous);
+		return mediaPlayer;
+	}
+	
+	/**
+	 * Makes the media at the given URI the current one like
+	 * {@link #open(URI)}, but keeps the previous player as the fading player.
+	 * A player still fading from an earlier crossfade is released.
+	 * 
+	 * @param uri
+	 *            the URI of the media to open.
+	 * @return mediaPlayer the MediaPlayer now shown in the MediaView.
+	 */
+	public MediaPlayer crossfadeTo(URI uri)
+	{
+		finishFade();
+		fadingPlayer = swap(uri);
+		return mediaPlayer;
+	}
+	
+	/**
+	 * Returns the player fading out in a crossfade.
+	 * 
+	 * @return the fading MediaPlayer, or <i>null</i>.
+	 */
+	public MediaPlayer getFadingPlayer()
+	{
+		return fadingPlayer;
+	}
+	
+	/**
+	 * Releases the fading player, if any.
+	 */
+	public void finishFade()
+	{
+		MediaPlayer player = fadingPlayer;
+		fadingPlayer = null;
+		lifecycle.dispose(player);
+	}
+	
+	/**
+	 * Makes the media at the given URI the current one.
+	 * 
+	 * @param uri
+	 *            the URI of the media to open.
+	 * @return the previous MediaPlayer, or <i>null</i>.
+	 */
+	private MediaPlayer swap(URI uri)
+	{
+		MediaPlayer player;
+		boolean prerolled = nextPlayer != null && uri.equals(nextURI);
+		if(prerolled)
+		{
+			player = nextPlayer;
+			nextPlayer = null;
+			nextURI = null;
+		}
+		else
+		{
+			releaseNext();
+			player = lifecycle.create(uri);
+			PlayerTelemetry.trackOpen(lifecycle, player, uri, false);
+		}
+		PlayerTelemetry.trackPlayback(lifecycle, player, uri, prerolled);
+		MediaPlayer previous = mediaPlayer;
+		mediaPlayer = player;
+		mediaView.setMediaPlayer(mediaPlayer);
+		return previous;
+	}
+	
+	/**
+	 * Opens the media at the given URI in the background so that a following
+	 * {@link #open(URI)} of the same URI can start without delay. Keeps an
+	 * already pre-rolled player of the same URI. Media that cannot be opened
+	 * are not pre-rolled.
+	 * 
+	 * @param uri
+	 *            the URI of the media to pre-roll.
+	 */
+	public void preroll(URI uri)
+	{
+		if(uri.equals(nextURI))
+		{
+			return;
+		}
+		releaseNext();
+		MediaPlayer player;
+		try
+		{
+			player = lifecycle.create(uri);
+		}
+		catch(MediaException e)
+		{
+			//Missing or unsupported; open() fails the same way once it is due.
+			Log.warn("Could not pre-roll {}: {}", uri, e.getMessage());
+			return;
+		}
+		nextURI = uri;
+		nextPlayer = player;
+		PlayerTelemetry.trackOpen(lifecycle, player, uri, true);
+		
+		player.setOnError(new Runnable() 
+		{
+			@Override
+			public void run() 
+			{
+				//Drop a broken pre-roll, the player opened in its place reports the error.
+				if(nextPlayer == player)
+				{
+					releaseNext();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Returns whether the pre-rolled player has reached READY.
+	 * 
+	 * @return true if the next player is ready to start.
+	 */
+	public boolean isNextReady()
+	{
+		return nextPlayer != null && nextPlayer.getStatus() == MediaPlayer.Status.READY;
+	}
+	
+	/**
+	 * Returns the URI of the pre-rolled player.
+	 * 
+	 * @return the URI, or <i>null</i> if none is pre-rolled.
+	 */
+	public URI getNextURI()
+	{
+		return nextURI;
+	}
+	
+	/**
+	 * Returns the currently playing MediaPlayer.
+	 * 
+	 * @return mediaPlayer the MediaPlayer, or <i>null</i> if nothing was opened.
+	 */
+	public MediaPlayer getMediaPlayer()
+	{
+		return mediaPlayer;
+	}
+	
+	/**
+	 * Returns the lifecycle owning the players of this engine. Listeners on
+	 * the current player are to be attached through it.
+	 * 
+	 * @return lifecycle the MediaPlayerLifecycle.
+	 */
+	public MediaPlayerLifecycle getLifecycle()
+	{
+		return lifecycle;
+	}
+	
+	/**
+	 * Releases the current, the fading and the pre-rolled player.
+	 */
+	public void close()
+	{
+		finishFade();
+		releaseNext();
+		mediaView.setMediaPlayer(null);
+		lifecycle.dispose(mediaPlayer);
+		mediaPlayer = null;
+	}
+	
+	/**
+	 * Releases the pre-rolled player, if any.
+	 */
+	private void releaseNext()
+	{
+		MediaPlayer player = nextPlayer;
+		nextPlayer = null;
+		nextURI = null;
+		lifecycle.dispose(player);
+	}
+}
@@ -0,0 +1,186 @@
+package mediaplayer.playback;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.scene.media.AudioSpectrumListener;
+import javafx.scene.media.Media;
+import javafx.scene.media.MediaPlayer;
+
+/**
+ * Owns creation and disposal of every MediaPlayer. Listeners attached to a
+ * player through this class are remembered and detached again when the player
+ * is disposed, so that neither native player resources nor listener references
+ * survive a track change. Reports the number of live players and listeners.
+ * 
+ * @author Alex Hage
+ *
+ */
+public class MediaPlayerLifecycle 
+{
+	/**
+	 * The detach actions of the listeners attached to each live player.
+	 */
+	private final Map<MediaPlayer, List<Runnable>> players = new IdentityHashMap<MediaPlayer, List<Runnable>>();
+	
+	/**
+	 * The number of listeners attached to live players.
+	 */
+	private int liveListeners;
+	
+	/**
+	 * Creates a new MediaPlayer for the media at the given URI.
+	 * 
+	 * @param uri
+	 *            the URI of the media.
+	 * @return player the new MediaPlayer.
+	 */
+	public MediaPlayer create(URI uri)
+	{
+		MediaPlayer player = new MediaPlayer(new Media(uri.toString()));
+		players.put(player, new ArrayList<Runnable>());
+		return player;
+	}
+	
+	/**
+	 * Adds a ChangeListener to a property of a live player. The listener is
+	 * removed when the player is disposed.
+	 * 
+	 * @param player
+	 *            the MediaPlayer the property belongs to.
+	 * @param property
+	 *            the property to listen to.
+	 * @param listener
+	 *            the ChangeListener to add.
+	 */
+	public <T> void addListener(MediaPlayer player, ObservableValue<T> property, ChangeListener<? super T> listener)
+	{
+		List<Runnable> detachers = detachersOf(player);
+		property.addListener(listener);
+		detachers.add(new Runnable() 
+		{
+			@Override
+			public void run() 
+			{
+				property.removeListener(listener);
+			}
+		});
+		liveListeners++;
+	}
+	
+	/**
+	 * Sets the AudioSpectrumListener of a live player. The listener is cleared
+	 * when the player is disposed.
+	 * 
+	 * @param player
+	 *            the MediaPlayer.
+	 * @param listener
+	 *            the AudioSpectrumListener to set.
+	 */
+	public void setAudioSpectrumListener(MediaPlayer player, AudioSpectrumListener listener)
+	{
+		List<Runnable> detachers = detachersOf(player);
+		boolean replacing = player.getAudioSpectrumListener() != null;
+		player.setAudioSpectrumListener(listener);
+		if(!replacing)
+		{
+			detachers.add(new Runnable() 
+			{
+				@Override
+				public void run() 
+				{
+					player.setAudioSpectrumListener(null);
+				}
+			});
+			liveListeners++;
+		}
+	}
+	
+	/**
+	 * Stops and disposes a player created by this lifecycle. Detaches all of
+	 * its listeners and clears its event handlers first. Does nothing for
+	 * <i>null</i> or an already disposed player.
+	 * 
+	 * @param player
+	 *            the MediaPlayer to dispose.
+	 */
+	public void dispose(MediaPlayer player)
+	{
+		if(player == null)
+		{
+			return;
+		}
+		List<Runnable> detachers = players.remove(player);
+		if(detachers == null)
+		{
+			return;
+		}
+		for(Runnable detacher : detachers)
+		{
+			detacher.run();
+		}
+		liveListeners -= detachers.size();
+		
+		player.setOnEndOfMedia(null);
+		player.setOnError(null);
+		player.setOnReady(null);
+		player.setOnStalled(null);
+		player.stop();
+		player.dispose();
+	}
+	
+	/**
+	 * Disposes every live player.
+	 */
+	public void disposeAll()
+	{
+		for(MediaPlayer player : new ArrayList<MediaPlayer>(players.keySet()))
+		{
+			dispose(player);
+		}
+	}
+	
+	/**
+	 * Returns the number of created and not yet disposed players.
+	 * 
+	 * @return the live player count.
+	 */
+	public int getLivePlayerCount()
+	{
+		return players.size();
+	}
+	
+	/**
+	 * Returns the number of listeners attached to live players.
+	 * 
+	 * @return the live listener count.
+	 */
+	public int getLiveListenerCount()
+	{
+		return liveListeners;
+	}
+	
+	/**
+	 * Returns the detach actions of a live player.
+	 * 
+	 * @param player
+	 *            the MediaPlayer.
+	 * @return the list of detach actions.
+	 * @throws IllegalStateException
+	 *             if the player was not created here or already disposed.
+	 */
+	private List<Runnable> detachersOf(MediaPlayer player)
+	{
+		List<Runnable> detachers = players.get(player);
+		if(detachers == null)
+		{
+			throw new IllegalStateException("MediaPlayer is not live: " + player);
+		}
+		return detachers;
+	}
+}
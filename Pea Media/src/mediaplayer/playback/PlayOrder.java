@@ -0,0 +1,680 @@
+package mediaplayer.playback;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Random;
+
+import javafx.beans.property.IntegerProperty;
+import javafx.collections.ListChangeListener;
+import mediaplayer.model.CompactPlayList;
+import mediaplayer.model.MediaItem;
+
+/**
+ * Decides what plays next. Steps through the playlist in list order or in a
+ * shuffled order that plays every entry once per cycle, serves a "play next"
+ * queue first and keeps a history of played entries to step back through.
+ * <p>
+ * The current entry is tracked by identity rather than by index. When the
+ * playlist changes, <i>current</i> is moved to wherever that entry went while
+ * {@link #isAdjusting()} is set, so listeners can tell the move from a user's
+ * choice. When the current entry itself is removed, <i>current</i> points at
+ * the entry that took its place, which plays next.
+ * </p>
+ * <p>
+ * Next and previous take constant time: the shuffled order is kept as an
+ * array of playlist slots with an inverse, removed entries are skipped where
+ * they stand and added ones are swapped into a random place of the remainder
+ * of the cycle. Must be used on the FX thread only.
+ * </p>
+ *
+ * @author Alex Hage
+ *
+ */
+public class PlayOrder
+{
+	/**
+	 * The number of played entries remembered.
+	 */
+	public static final int HISTORY_LIMIT = 1000;
+
+	private final CompactPlayList playList;
+	private final IntegerProperty current;
+	private final Random random;
+
+	/**
+	 * The entries queued to play next, in order.
+	 */
+	private final Deque<MediaItem> queue = new ArrayDeque<MediaItem>();
+
+	/**
+	 * The entries played before the current one, latest first.
+	 */
+	private final Deque<MediaItem> history = new ArrayDeque<MediaItem>();
+
+	/**
+	 * The entry playing, or <i>null</i> if none has played or it was removed.
+	 */
+	private MediaItem currentItem;
+
+	/**
+	 * The current entry was removed and <i>current</i> points at its
+	 * successor, which has not played yet.
+	 */
+	private boolean orphaned;
+
+	/**
+	 * The last known position of the current entry.
+	 */
+	private int lastIndex;
+
+	/**
+	 * <i>current</i> is being moved along with its entry.
+	 */
+	private boolean adjusting;
+
+	private boolean shuffle;
+
+	/**
+	 * The shuffled slots of this cycle, -1 where an entry was replaced.
+	 */
+	private int[] shuffled = new int[0];
+	private int shuffledSize;
+
+	/**
+	 * The position of each slot in the shuffled order.
+	 */
+	private int[] shufflePosition = new int[0];
+
+	/**
+	 * The shuffled position of the current entry, -1 before the first.
+	 */
+	private int cursor = -1;
+
+	/**
+	 * Called after the entry to play next may have changed other than by
+	 * advancing, or <i>null</i>.
+	 */
+	Runnable onChanged;
+
+	/**
+	 * Constructs a play order over the playlist, moving <i>current</i> along
+	 * with the playing entry.
+	 *
+	 * @param playList
+	 *            the CompactPlayList to play.
+	 * @param current
+	 *            the IntegerProperty holding the current index.
+	 */
+	public PlayOrder(CompactPlayList playList, IntegerProperty current)
+	{
+		this(playList, current, new Random());
+	} //end ctor
+
+	/**
+	 * Constructs a play order shuffling with the given source of randomness.
+	 *
+	 * @param playList
+	 *            the CompactPlayList to play.
+	 * @param current
+	 *            the IntegerProperty holding the current index.
+	 * @param random
+	 *            the Random to shuffle with.
+	 */
+	public PlayOrder(CompactPlayList playList, IntegerProperty current, Random random)
+	{
+		this.playList = playList;
+		this.current = current;
+		this.random = random;
+		playList.addListener((ListChangeListener<MediaItem>) change -> playListChanged(change));
+	} //end ctor
+
+	/**
+	 * Returns whether <i>current</i> is being moved along with its entry
+	 * after a playlist change, rather than set to another entry.
+	 *
+	 * @return true while adjusting.
+	 */
+	public boolean isAdjusting()
+	{
+		return adjusting;
+	}
+
+	/**
+	 * Returns whether entries are played in shuffled order.
+	 *
+	 * @return true in shuffle mode.
+	 */
+	public boolean isShuffle()
+	{
+		return shuffle;
+	}
+
+	/**
+	 * Switches shuffle mode. A new cycle starts with the current entry.
+	 *
+	 * @param shuffle
+	 *            true to shuffle, false to play in list order.
+	 */
+	public void setShuffle(boolean shuffle)
+	{
+		this.shuffle = shuffle;
+		if(shuffle)
+		{
+			reshuffle();
+			int index = currentIndex();
+			if(index >= 0 && !orphaned)
+			{
+				//The current entry opens the cycle.
+				swap(positionOf(playList.slotAt(index)), 0);
+				cursor = 0;
+			}
+		}
+		else
+		{
+			shuffled = new int[0];
+			shufflePosition = new int[0];
+			shuffledSize = 0;
+			cursor = -1;
+		}
+		changed();
+	}
+
+	/**
+	 * Queues an entry to play next, after those already queued.
+	 *
+	 * @param index
+	 *            the playlist index of the entry.
+	 */
+	public void enqueue(int index)
+	{
+		queue.addLast(playList.get(index));
+		changed();
+	}
+
+	/**
+	 * Returns the number of queued entries, including removed ones not yet
+	 * skipped.
+	 *
+	 * @return the size of the queue.
+	 */
+	public int getQueueSize()
+	{
+		return queue.size();
+	}
+
+	/**
+	 * Empties the queue.
+	 */
+	public void clearQueue()
+	{
+		queue.clear();
+		changed();
+	}
+
+	/**
+	 * Records the entry that has started playing. An entry chosen other than
+	 * through {@link #next()} or {@link #previous()} is added to the history
+	 * and, in shuffle mode, taken out of the rest of the cycle.
+	 *
+	 * @param index
+	 *            the playlist index playing.
+	 */
+	public void playing(int index)
+	{
+		MediaItem item = playList.get(index);
+		if(item == currentItem)
+		{
+			return;
+		}
+		remember();
+		moveTo(item);
+		if(shuffle)
+		{
+			int position = positionOf(playList.slotAt(index));
+			if(position > cursor)
+			{
+				swap(position, cursor + 1);
+				cursor++;
+			}
+		}
+	}
+
+	/**
+	 * Returns the entry {@link #next()} will return, without advancing.
+	 *
+	 * @return the playlist index, or -1 if not known before advancing.
+	 */
+	public int peekNext()
+	{
+		if(playList.isEmpty())
+		{
+			return -1;
+		}
+		for(MediaItem item : queue)
+		{
+			int index = playList.indexOf(item);
+			if(index >= 0)
+			{
+				return index;
+			}
+		}
+		if(shuffle)
+		{
+			int position = nextShuffled(cursor);
+			return position < 0 ? -1 : playList.indexOfSlot(shuffled[position]);
+		}
+		return nextInOrder();
+	}
+
+	/**
+	 * Returns the entries coming up after the current one, without advancing:
+	 * the queued ones, then the rest of the shuffled cycle or the following
+	 * ones in list order.
+	 *
+	 * @param count
+	 *            the most entries to return.
+	 * @return the playlist indices in play order.
+	 */
+	public int[] upcoming(int count)
+	{
+		int[] upcoming = new int[Math.min(count, playList.size())];
+		int found = 0;
+		for(MediaItem item : queue)
+		{
+			int index = playList.indexOf(item);
+			if(found < upcoming.length && index >= 0)
+			{
+				upcoming[found++] = index;
+			}
+		}
+		if(shuffle)
+		{
+			for(int position = nextShuffled(cursor); found < upcoming.length && position >= 0; position = nextShuffled(position))
+			{
+				upcoming[found++] = playList.indexOfSlot(shuffled[position]);
+			}
+		}
+		else if(found < upcoming.length)
+		{
+			int first = nextInOrder();
+			for(int index = first; found < upcoming.length; )
+			{
+				upcoming[found++] = index;
+				index = (index + 1) % playList.size();
+				if(index == first)
+				{
+					break;
+				}
+			}
+		}
+		return Arrays.copyOf(upcoming, found);
+	}
+
+	/**
+	 * Advances to the next entry: the first queued one, otherwise the next in
+	 * shuffled or list order. The current entry goes to the history.
+	 *
+	 * @return the playlist index to play, or -1 if the playlist is empty.
+	 */
+	public int next()
+	{
+		if(playList.isEmpty())
+		{
+			return -1;
+		}
+		MediaItem item = null;
+		while(item == null && !queue.isEmpty())
+		{
+			item = queue.pollFirst();
+			if(playList.indexOf(item) < 0)
+			{
+				item = null;
+			}
+		}
+		if(item == null && shuffle)
+		{
+			int position = nextShuffled(cursor);
+			if(position < 0)
+			{
+				reshuffle();
+				position = nextShuffled(-1);
+			}
+			cursor = position;
+			item = playList.getBySlot(shuffled[position]);
+		}
+		else if(item == null)
+		{
+			item = playList.get(nextInOrder());
+		}
+		remember();
+		moveTo(item);
+		return lastIndex;
+	}
+
+	/**
+	 * Steps back to the last played entry still in the playlist, otherwise to
+	 * the previous one in shuffled or list order.
+	 *
+	 * @return the playlist index to play, or -1 if the playlist is empty.
+	 */
+	public int previous()
+	{
+		if(playList.isEmpty())
+		{
+			return -1;
+		}
+		MediaItem item = null;
+		while(item == null && !history.isEmpty())
+		{
+			item = history.pollFirst();
+			if(playList.indexOf(item) < 0)
+			{
+				item = null;
+			}
+		}
+		if(item != null && shuffle)
+		{
+			int position = positionOf(playList.slotOf(item));
+			cursor = position >= 0 ? position : cursor;
+		}
+		else if(item == null && shuffle)
+		{
+			int position = previousShuffled(cursor);
+			if(position >= 0)
+			{
+				cursor = position;
+				item = playList.getBySlot(shuffled[position]);
+			}
+		}
+		if(item == null)
+		{
+			int index = currentIndex();
+			item = playList.get(index <= 0 ? playList.size() - 1 : index - 1);
+		}
+		moveTo(item);
+		return lastIndex;
+	}
+
+	/**
+	 * Returns the index of the current entry, or of the position it was last
+	 * seen at.
+	 *
+	 * @return the playlist index, -1 if the playlist is empty.
+	 */
+	private int currentIndex()
+	{
+		if(playList.isEmpty())
+		{
+			return -1;
+		}
+		int index = currentItem != null ? playList.indexOf(currentItem) : current.get();
+		return Math.max(0, Math.min(index, playList.size() - 1));
+	}
+
+	/**
+	 * Returns the index after the current entry in list order.
+	 */
+	private int nextInOrder()
+	{
+		int index = currentIndex();
+		if(orphaned)
+		{
+			return index;
+		}
+		return (index + 1) % playList.size();
+	}
+
+	/**
+	 * Makes an entry the current one.
+	 */
+	private void moveTo(MediaItem item)
+	{
+		currentItem = item;
+		orphaned = false;
+		lastIndex = playList.indexOf(item);
+	}
+
+	/**
+	 * Pushes the current entry onto the history.
+	 */
+	private void remember()
+	{
+		if(currentItem != null)
+		{
+			history.addFirst(currentItem);
+			if(history.size() > HISTORY_LIMIT)
+			{
+				history.removeLast();
+			}
+		}
+	}
+
+	/**
+	 * Follows the current entry through a playlist change and adds new
+	 * entries to the shuffled cycle.
+	 *
+	 * @param change
+	 *            the change of the playlist.
+	 */
+	private void playListChanged(ListChangeListener.Change<? extends MediaItem> change)
+	{
+		int position = lastIndex;
+		boolean removed = false;
+		while(change.next())
+		{
+			if(change.wasPermutated())
+			{
+				if(position >= change.getFrom() && position < change.getTo())
+				{
+					position = change.getPermutation(position);
+				}
+				continue;
+			}
+			boolean removedHere = false;
+			if(change.wasRemoved())
+			{
+				if(position >= change.getFrom() + change.getRemovedSize())
+				{
+					position -= change.getRemovedSize();
+				}
+				else if(position >= change.getFrom())
+				{
+					position = change.getFrom();
+					removed = true;
+					removedHere = true;
+				}
+			}
+			if(change.wasAdded())
+			{
+				if(position > change.getFrom() || position == change.getFrom() && !removedHere)
+				{
+					position += change.getAddedSize();
+				}
+				if(shuffle)
+				{
+					for(int i = change.getFrom(); i < change.getTo(); i++)
+					{
+						addShuffled(playList.slotAt(i));
+					}
+				}
+			}
+		}
+
+		if(currentItem != null && playList.indexOf(currentItem) >= 0)
+		{
+			adjust(playList.indexOf(currentItem));
+		}
+		else if(currentItem != null && removed)
+		{
+			currentItem = null;
+			orphaned = true;
+			adjust(position < playList.size() ? position : 0);
+		}
+		changed();
+	}
+
+	/**
+	 * Tells the listener that the entry to play next may have changed.
+	 */
+	private void changed()
+	{
+		if(onChanged != null)
+		{
+			onChanged.run();
+		}
+	}
+
+	/**
+	 * Moves <i>current</i> to the index of the entry it stands for.
+	 */
+	private void adjust(int index)
+	{
+		lastIndex = index;
+		if(current.get() != index)
+		{
+			adjusting = true;
+			try
+			{
+				current.set(index);
+			}
+			finally
+			{
+				adjusting = false;
+			}
+		}
+	}
+
+	/**
+	 * Starts a new shuffled cycle over all entries. The entry just played does
+	 * not open the new cycle.
+	 */
+	private void reshuffle()
+	{
+		int size = playList.size();
+		shuffled = new int[Math.max(16, size)];
+		shuffledSize = size;
+		for(int i = 0; i < size; i++)
+		{
+			shuffled[i] = playList.slotAt(i);
+		}
+		for(int i = size - 1; i > 0; i--)
+		{
+			int j = random.nextInt(i + 1);
+			int slot = shuffled[i];
+			shuffled[i] = shuffled[j];
+			shuffled[j] = slot;
+		}
+		shufflePosition = new int[0];
+		for(int i = 0; i < size; i++)
+		{
+			setPosition(shuffled[i], i);
+		}
+		if(size > 1 && currentItem != null && shuffled[0] == playList.slotOf(currentItem))
+		{
+			swap(0, 1 + random.nextInt(size - 1));
+		}
+		cursor = -1;
+	}
+
+	/**
+	 * Swaps a slot new to the playlist into a random place of the rest of the
+	 * cycle. A replaced entry that held the slot before is dropped.
+	 */
+	private void addShuffled(int slot)
+	{
+		int old = positionOf(slot);
+		if(old >= 0)
+		{
+			shuffled[old] = -1;
+		}
+		if(shuffledSize == shuffled.length)
+		{
+			shuffled = Arrays.copyOf(shuffled, shuffledSize * 2);
+		}
+		shuffled[shuffledSize] = slot;
+		setPosition(slot, shuffledSize);
+		shuffledSize++;
+		swap(shuffledSize - 1, cursor + 1 + random.nextInt(shuffledSize - cursor - 1));
+	}
+
+	/**
+	 * Returns the shuffled position of the first entry after a position still
+	 * in the playlist.
+	 *
+	 * @return the position, or -1 at the end of the cycle.
+	 */
+	private int nextShuffled(int from)
+	{
+		for(int position = from + 1; position < shuffledSize; position++)
+		{
+			if(isLive(position))
+			{
+				return position;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the shuffled position of the last entry before a position still
+	 * in the playlist.
+	 *
+	 * @return the position, or -1 at the start of the cycle.
+	 */
+	private int previousShuffled(int from)
+	{
+		for(int position = Math.min(from, shuffledSize) - 1; position >= 0; position--)
+		{
+			if(isLive(position))
+			{
+				return position;
+			}
+		}
+		return -1;
+	}
+
+	private boolean isLive(int position)
+	{
+		return shuffled[position] >= 0 && playList.indexOfSlot(shuffled[position]) >= 0;
+	}
+
+	/**
+	 * Returns the shuffled position of a slot, or -1 if it is not shuffled.
+	 */
+	private int positionOf(int slot)
+	{
+		if(slot < 0 || slot >= shufflePosition.length)
+		{
+			return -1;
+		}
+		int position = shufflePosition[slot];
+		return position >= 0 && position < shuffledSize && shuffled[position] == slot ? position : -1;
+	}
+
+	private void setPosition(int slot, int position)
+	{
+		if(slot >= shufflePosition.length)
+		{
+			int length = shufflePosition.length;
+			shufflePosition = Arrays.copyOf(shufflePosition, Math.max(Math.max(slot + 1, 16), length * 2));
+			Arrays.fill(shufflePosition, length, shufflePosition.length, -1);
+		}
+		shufflePosition[slot] = position;
+	}
+
+	private void swap(int a, int b)
+	{
+		int slot = shuffled[a];
+		shuffled[a] = shuffled[b];
+		shuffled[b] = slot;
+		if(shuffled[a] >= 0)
+		{
+			setPosition(shuffled[a], a);
+		}
+		if(shuffled[b] >= 0)
+		{
+			setPosition(shuffled[b], b);
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package mediaplayer.playback;
+
+import javafx.util.Duration;
+import mediaplayer.io.ResumeStore;
+import mediaplayer.model.MediaItem;
+
+/**
+ * Plays a playlist in its play order: starts the current entry, steps forward
+ * and back on request and moves on, or repeats, at the end of an entry. The
+ * sequencing does not depend on how media is actually played, so it can be
+ * driven by a JavaFX MediaPlayer ({@link FxPlaybackEngine}) or by a virtual
+ * clock without any media or display ({@link SimulatedPlaybackEngine}).
+ * <p>
+ * An engine follows the <i>current</i> property of its playlist: setting it
+ * to another index plays that entry. Must be used on the thread owning the
+ * playlist, the FX thread in the application.
+ * </p>
+ *
+ * @author Alex Hage
+ *
+ */
+public interface PlaybackEngine
+{
+	/**
+	 * Notified whenever an entry has been opened, before it starts playing.
+	 */
+	@FunctionalInterface
+	interface Listener
+	{
+		/**
+		 * Called when an entry has been opened.
+		 *
+		 * @param index
+		 *            the playlist index of the entry.
+		 * @param item
+		 *            the MediaItem of the entry.
+		 */
+		void opened(int index, MediaItem item);
+	}
+
+	/**
+	 * Plays the current entry from the start, or from the start position if
+	 * one is set. Does nothing if the playlist is empty.
+	 */
+	void playCurrent();
+
+	/**
+	 * Stops the current entry and plays the next one in the play order.
+	 */
+	void next();
+
+	/**
+	 * Stops the current entry and plays the previous one in the play order.
+	 */
+	void back();
+
+	/**
+	 * Called when the current entry has played to its end. Plays it again in
+	 * repeat mode, otherwise the next entry in the play order. Stops if the
+	 * playlist has become empty.
+	 */
+	void endOfMedia();
+
+	/**
+	 * Pauses the current entry.
+	 */
+	void pause();
+
+	/**
+	 * Resumes the paused entry.
+	 */
+	void resume();
+
+	/**
+	 * Returns whether playback has been started.
+	 *
+	 * @return true once an entry has been played.
+	 */
+	boolean isPlaying();
+
+	/**
+	 * Returns whether playback is paused.
+	 *
+	 * @return true while paused.
+	 */
+	boolean isPaused();
+
+	/**
+	 * Returns whether the current entry is repeated at its end.
+	 *
+	 * @return true in repeat mode.
+	 */
+	boolean isRepeat();
+
+	/**
+	 * Sets whether the current entry is repeated at its end.
+	 *
+	 * @param repeat
+	 *            true to repeat.
+	 */
+	void setRepeat(boolean repeat);
+
+	/**
+	 * Returns how long consecutive entries overlap.
+	 *
+	 * @return the crossfade Duration, {@link Duration#ZERO} if off.
+	 */
+	Duration getCrossfade();
+
+	/**
+	 * Sets how long before the end of an entry the next one starts, fading
+	 * the current one out and the next one in. Applies from the next
+	 * transition on.
+	 *
+	 * @param crossfade
+	 *            the crossfade Duration, {@link Duration#ZERO} to turn it off.
+	 */
+	void setCrossfade(Duration crossfade);
+
+	/**
+	 * Returns the playlist index of the entry playing.
+	 *
+	 * @return the index.
+	 */
+	int getCurrentIndex();
+
+	/**
+	 * Returns the playback position in the current entry.
+	 *
+	 * @return the position, {@link Duration#ZERO} if nothing is playing.
+	 */
+	Duration getPosition();
+
+	/**
+	 * Sets the store remembering where long entries were left off. Entries
+	 * found in it start at their saved position, and the position of the
+	 * current entry is saved every few seconds and when leaving it.
+	 *
+	 * @param resumeStore
+	 *            the ResumeStore, or <i>null</i> to not resume entries.
+	 */
+	void setResumeStore(ResumeStore resumeStore);
+
+	/**
+	 * Saves the position of the current entry in the resume store, if any.
+	 */
+	void savePosition();
+
+	/**
+	 * Sets the position the next opened entry starts at.
+	 *
+	 * @param position
+	 *            the position, or <i>null</i> to start at the beginning.
+	 */
+	void setStartPosition(Duration position);
+
+	/**
+	 * Sets the listener notified of opened entries.
+	 *
+	 * @param listener
+	 *            the Listener, or <i>null</i>.
+	 */
+	void setListener(Listener listener);
+
+	/**
+	 * Stops playback and releases the media.
+	 */
+	void close();
+}
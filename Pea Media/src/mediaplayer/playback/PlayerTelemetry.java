@@ -0,0 +1,110 @@
+package mediaplayer.playback;
+
+import java.net.URI;
+
+import javafx.scene.media.MediaPlayer;
+import javafx.scene.media.MediaPlayer.Status;
+import mediaplayer.telemetry.BufferingStallEvent;
+import mediaplayer.telemetry.PlaybackStartEvent;
+import mediaplayer.telemetry.TrackOpenEvent;
+
+/**
+ * Emits the Flight Recorder events of a player's life: the time to READY, the
+ * time to PLAYING and each buffering stall. Listens to the player's status
+ * through its lifecycle, so the listeners go when the player is disposed.
+ * Nothing is attached while the events are disabled.
+ * 
+ * @author Alex Hage
+ *
+ */
+final class PlayerTelemetry 
+{
+	/**
+	 * Not instantiable.
+	 */
+	private PlayerTelemetry()
+	{
+		
+	} //end ctor
+	
+	/**
+	 * Records the time until a newly created player is READY or has failed.
+	 * 
+	 * @param lifecycle
+	 *            the lifecycle owning the player.
+	 * @param player
+	 *            the MediaPlayer just created.
+	 * @param uri
+	 *            the URI it was created for.
+	 * @param prerolled
+	 *            whether it is a pre-roll.
+	 */
+	static void trackOpen(MediaPlayerLifecycle lifecycle, MediaPlayer player, URI uri, boolean prerolled)
+	{
+		TrackOpenEvent event = new TrackOpenEvent();
+		if(!event.isEnabled())
+		{
+			return;
+		}
+		event.uri = uri.toString();
+		event.prerolled = prerolled;
+		event.begin();
+		lifecycle.addListener(player, player.statusProperty(), (observable, oldStatus, newStatus) -> 
+		{
+			if(event.uri != null && (newStatus == Status.READY || newStatus == Status.HALTED))
+			{
+				event.failed = newStatus == Status.HALTED;
+				event.commit();
+				//Committed once only.
+				event.uri = null;
+			}
+		});
+	}
+	
+	/**
+	 * Records the time until a player made current is PLAYING and every
+	 * stall from then on.
+	 * 
+	 * @param lifecycle
+	 *            the lifecycle owning the player.
+	 * @param player
+	 *            the MediaPlayer made current.
+	 * @param uri
+	 *            the URI it plays.
+	 * @param prerolled
+	 *            whether it was pre-rolled.
+	 */
+	static void trackPlayback(MediaPlayerLifecycle lifecycle, MediaPlayer player, URI uri, boolean prerolled)
+	{
+		PlaybackStartEvent start = new PlaybackStartEvent();
+		BufferingStallEvent[] stall = new BufferingStallEvent[1];
+		if(!start.isEnabled() && !new BufferingStallEvent().isEnabled())
+		{
+			return;
+		}
+		start.uri = uri.toString();
+		start.prerolled = prerolled;
+		start.begin();
+		lifecycle.addListener(player, player.statusProperty(), (observable, oldStatus, newStatus) -> 
+		{
+			if(newStatus == Status.PLAYING && start.uri != null)
+			{
+				start.video = player.getMedia().getWidth() > 0;
+				start.commit();
+				start.uri = null;
+			}
+			if(newStatus == Status.STALLED)
+			{
+				stall[0] = new BufferingStallEvent();
+				stall[0].uri = uri.toString();
+				stall[0].position = (long)player.getCurrentTime().toMillis();
+				stall[0].begin();
+			}
+			else if(stall[0] != null)
+			{
+				stall[0].commit();
+				stall[0] = null;
+			}
+		});
+	}
+}
@@ -0,0 +1,258 @@
+package mediaplayer.playback;
+
+import javafx.animation.PauseTransition;
+import javafx.beans.value.ChangeListener;
+import javafx.scene.media.MediaPlayer;
+import javafx.util.Duration;
+import mediaplayer.telemetry.SeekEvent;
+
+/**
+ * Coalesces seek requests on a MediaPlayer. While a seek is in flight only the
+ * latest requested target is kept, and it is issued when the in-flight window
+ * ends or when the request is flushed. Scrubbing therefore issues at most one
+ * seek per interval, however many drag events arrive. Counts requested and
+ * executed seeks.
+ * <p>
+ * Each run of requests is recorded as a {@link SeekEvent} lasting from the
+ * first request until the player reports a position near the last issued
+ * target, or until the landing timeout passes without it.
+ * </p>
+ * 
+ * @author Alex Hage
+ *
+ */
+public class SeekController 
+{
+	public static final Duration DEFAULT_INTERVAL = Duration.millis(150);
+
+	/**
+	 * How close a reported position must be to the target for the seek to
+	 * count as completed.
+	 */
+	public static final Duration LANDING_TOLERANCE = Duration.millis(500);
+
+	/**
+	 * The time after the last issued seek at which its event is recorded as
+	 * not completed.
+	 */
+	public static final Duration LANDING_TIMEOUT = Duration.seconds(2);
+	
+	/**
+	 * The timer closing the in-flight window of the last executed seek.
+	 */
+	private final PauseTransition inFlight;
+
+	/**
+	 * The timer giving up on the last issued seek landing.
+	 */
+	private final PauseTransition landing;
+
+	/**
+	 * The MediaPlayer to seek.
+	 */
+	private MediaPlayer mediaPlayer;
+	
+	/**
+	 * The latest target not yet issued, or <i>null</i>.
+	 */
+	private Duration pending;
+	
+	/**
+	 * The event of the requests not yet landed, or <i>null</i>.
+	 */
+	private SeekEvent event;
+
+	/**
+	 * The last issued target not yet reached, or <i>null</i>.
+	 */
+	private Duration issued;
+	
+	private long requested;
+	private long executed;
+	
+	/**
+	 * Constructs a new controller issuing at most one seek per default
+	 * interval.
+	 */
+	public SeekController()
+	{
+		this(DEFAULT_INTERVAL);
+	} //end dctor
+	
+	/**
+	 * Constructs a new controller issuing at most one seek per interval.
+	 * 
+	 * @param interval
+	 *            the minimum Duration between two issued seeks.
+	 */
+	public SeekController(Duration interval)
+	{
+		this.inFlight = new PauseTransition(interval);
+		this.inFlight.setOnFinished(event -> 
+		{
+			if(pending != null)
+			{
+				execute();
+			}
+		});
+		this.landing = new PauseTransition(LANDING_TIMEOUT);
+		this.landing.setOnFinished(event -> commit(false));
+	} //end ctor
+	
+	/**
+	 * Sets the MediaPlayer to seek. Drops a pending target of the previous
+	 * player. The position listener is attached through the lifecycle, which
+	 * detaches it when the player is disposed.
+	 * 
+	 * @param mediaPlayer
+	 *            the MediaPlayer or <i>null</i>.
+	 * @param lifecycle
+	 *            the lifecycle owning the player.
+	 */
+	public void setMediaPlayer(MediaPlayer mediaPlayer, MediaPlayerLifecycle lifecycle)
+	{
+		this.mediaPlayer = mediaPlayer;
+		if(mediaPlayer != null)
+		{
+			lifecycle.addListener(mediaPlayer, mediaPlayer.currentTimeProperty(), positionListener(mediaPlayer));
+		}
+		this.pending = null;
+		this.event = null;
+		this.issued = null;
+		inFlight.stop();
+		landing.stop();
+	}
+	
+	/**
+	 * Requests a seek. Issues it right away unless a seek is in flight, in
+	 * which case it replaces any earlier pending target.
+	 * 
+	 * @param target
+	 *            the Duration to seek to.
+	 */
+	public void request(Duration target)
+	{
+		if(mediaPlayer == null)
+		{
+			return;
+		}
+		requested++;
+		pending = target;
+		if(event == null)
+		{
+			event = new SeekEvent();
+			event.begin();
+		}
+		event.requests++;
+		if(inFlight.getStatus() != PauseTransition.Status.RUNNING)
+		{
+			execute();
+		}
+	}
+	
+	/**
+	 * Issues the pending target right away, if any. Called when scrubbing
+	 * ends.
+	 */
+	public void flush()
+	{
+		if(pending != null && mediaPlayer != null)
+		{
+			execute();
+		}
+	}
+	
+	/**
+	 * Returns the target to show while seeking: the pending target, if any.
+	 * 
+	 * @return the pending Duration or <i>null</i>.
+	 */
+	public Duration getPending()
+	{
+		return pending;
+	}
+	
+	/**
+	 * Returns the number of requested seeks.
+	 * 
+	 * @return requested long.
+	 */
+	public long getRequestedCount()
+	{
+		return requested;
+	}
+	
+	/**
+	 * Returns the number of seeks issued to the player.
+	 * 
+	 * @return executed long.
+	 */
+	public long getExecutedCount()
+	{
+		return executed;
+	}
+	
+	/**
+	 * Issues the pending target and opens a new in-flight window. The event
+	 * now waits for the player to reach this target.
+	 */
+	private void execute()
+	{
+		Duration target = pending;
+		pending = null;
+		issued = target;
+		mediaPlayer.seek(target);
+		executed++;
+		inFlight.playFromStart();
+		landing.playFromStart();
+	}
+
+	/**
+	 * Returns a listener completing the event once the given player, while
+	 * still the one seeked, reports a position near the target.
+	 */
+	private ChangeListener<Duration> positionListener(MediaPlayer player)
+	{
+		return (observable, oldTime, time) -> 
+		{
+			if(player == mediaPlayer)
+			{
+				landed(time);
+			}
+		};
+	}
+
+	/**
+	 * Completes the event when a reported position is near the last issued
+	 * target.
+	 */
+	private void landed(Duration time)
+	{
+		if(issued != null && time != null
+				&& Math.abs(time.toMillis() - issued.toMillis()) <= LANDING_TOLERANCE.toMillis())
+		{
+			commit(true);
+		}
+	}
+
+	/**
+	 * Records the event of the last issued seek, unless more requests are
+	 * waiting to be issued.
+	 */
+	private void commit(boolean completed)
+	{
+		if(pending != null || issued == null)
+		{
+			return;
+		}
+		landing.stop();
+		if(event != null)
+		{
+			event.target = (long)issued.toMillis();
+			event.completed = completed;
+			event.commit();
+			event = null;
+		}
+		issued = null;
+	}
+}
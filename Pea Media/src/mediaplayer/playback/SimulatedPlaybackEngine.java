@@ -0,0 +1,312 @@
+package mediaplayer.playback;
+
+import java.net.URI;
+import java.util.List;
+
+import javafx.beans.property.IntegerProperty;
+import javafx.util.Duration;
+import mediaplayer.model.MediaItem;
+
+/**
+ * Plays the playlist on a virtual clock instead of real media. Nothing is
+ * opened or decoded and no display is needed: {@link #advance(Duration)}
+ * moves the clock and runs the same sequencing as the application at every
+ * end of an entry. Hours of playback over a large playlist thus run in
+ * moments, which makes the engine suited for load tests on a headless machine.
+ * <p>
+ * Entries play for their known duration, or for a default duration if it is
+ * not known. With a crossfade, the next entry starts that much earlier. The
+ * engine counts opened entries and pre-roll hits and measures the real time
+ * spent in each transition to the next entry.
+ * </p>
+ *
+ * @author Alex Hage
+ *
+ */
+public class SimulatedPlaybackEngine extends AbstractPlaybackEngine
+{
+	public static final Duration DEFAULT_DURATION = Duration.minutes(3);
+
+	/**
+	 * The duration of entries whose duration is not known, in milliseconds.
+	 */
+	private final long defaultMillis;
+
+	/**
+	 * The virtual time in milliseconds.
+	 */
+	private long clock;
+
+	/**
+	 * The position in the current entry in milliseconds.
+	 */
+	private long position;
+
+	/**
+	 * The duration of the current entry in milliseconds.
+	 */
+	private long length;
+
+	/**
+	 * Set while the current entry is opened and not stopped.
+	 */
+	private boolean started;
+
+	/**
+	 * The URI pre-rolled for the next entry, or <i>null</i>.
+	 */
+	private URI prerolled;
+
+	private long openCount;
+	private long prerollHits;
+	private long transitionCount;
+	private long transitionNanos;
+	private long maxTransitionNanos;
+
+	/**
+	 * Constructs an engine playing entries of unknown duration for the
+	 * default duration.
+	 *
+	 * @param playList
+	 *            the playlist to play.
+	 * @param current
+	 *            the IntegerProperty holding the current index.
+	 * @param playOrder
+	 *            the PlayOrder of the playlist.
+	 */
+	public SimulatedPlaybackEngine(List<MediaItem> playList, IntegerProperty current, PlayOrder playOrder)
+	{
+		this(playList, current, playOrder, DEFAULT_DURATION);
+	} //end dctor
+
+	/**
+	 * Constructs an engine.
+	 *
+	 * @param playList
+	 *            the playlist to play.
+	 * @param current
+	 *            the IntegerProperty holding the current index.
+	 * @param playOrder
+	 *            the PlayOrder of the playlist.
+	 * @param defaultDuration
+	 *            the Duration to play entries of unknown duration for.
+	 */
+	public SimulatedPlaybackEngine(List<MediaItem> playList, IntegerProperty current, PlayOrder playOrder,
+			Duration defaultDuration)
+	{
+		super(playList, current, playOrder, null);
+		this.defaultMillis = Math.max(1, (long)defaultDuration.toMillis());
+	} //end ctor
+
+	/**
+	 * Moves the virtual clock forward, playing through every entry ending
+	 * meanwhile.
+	 *
+	 * @param time
+	 *            the Duration to advance by.
+	 */
+	public void advance(Duration time)
+	{
+		advance((long)time.toMillis());
+	}
+
+	/**
+	 * Moves the virtual clock forward, playing through every entry ending
+	 * meanwhile. Playback stops when an entry ends and no other one opens.
+	 *
+	 * @param millis
+	 *            the milliseconds to advance by.
+	 */
+	public void advance(long millis)
+	{
+		long remaining = millis;
+		while(remaining > 0)
+		{
+			if(!started || isPaused())
+			{
+				clock += remaining;
+				return;
+			}
+			long left = Math.max(0, end() - position);
+			if(remaining < left)
+			{
+				position += remaining;
+				clock += remaining;
+				return;
+			}
+			position += left;
+			clock += left;
+			remaining -= left;
+			long start = System.nanoTime();
+			long opened = openCount;
+			endOfMedia();
+			record(System.nanoTime() - start);
+			if(openCount == opened)
+			{
+				//Nothing left to play, as at the end of the application's playlist.
+				started = false;
+				clock += remaining;
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void next()
+	{
+		long start = System.nanoTime();
+		super.next();
+		record(System.nanoTime() - start);
+	}
+
+	@Override
+	public void back()
+	{
+		long start = System.nanoTime();
+		super.back();
+		record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Returns the virtual time passed.
+	 *
+	 * @return the time as Duration.
+	 */
+	public Duration getClock()
+	{
+		return Duration.millis(clock);
+	}
+
+	@Override
+	public Duration getPosition()
+	{
+		return started ? Duration.millis(position) : Duration.ZERO;
+	}
+
+	/**
+	 * Returns the number of entries opened.
+	 *
+	 * @return the open count.
+	 */
+	public long getOpenCount()
+	{
+		return openCount;
+	}
+
+	/**
+	 * Returns the number of entries opened that had been pre-rolled.
+	 *
+	 * @return the pre-roll hit count.
+	 */
+	public long getPrerollHits()
+	{
+		return prerollHits;
+	}
+
+	/**
+	 * Returns the number of transitions to another entry measured.
+	 *
+	 * @return the transition count.
+	 */
+	public long getTransitionCount()
+	{
+		return transitionCount;
+	}
+
+	/**
+	 * Returns the mean real time of a transition.
+	 *
+	 * @return the mean in nanoseconds.
+	 */
+	public double getMeanTransitionNanos()
+	{
+		return transitionCount == 0 ? 0 : (double)transitionNanos / transitionCount;
+	}
+
+	/**
+	 * Returns the longest real time of a transition.
+	 *
+	 * @return the maximum in nanoseconds.
+	 */
+	public long getMaxTransitionNanos()
+	{
+		return maxTransitionNanos;
+	}
+
+	@Override
+	public void close()
+	{
+		started = false;
+		prerolled = null;
+	}
+
+	@Override
+	protected void open(URI uri)
+	{
+		openCount++;
+		if(uri.equals(prerolled))
+		{
+			prerollHits++;
+		}
+		prerolled = null;
+		Duration duration = playList.get(getCurrentIndex()).getDuration();
+		length = duration != null && duration.greaterThan(Duration.ZERO) && !duration.isIndefinite()
+				? Math.max(1, (long)duration.toMillis()) : defaultMillis;
+		position = 0;
+		started = true;
+	}
+
+	@Override
+	protected void start(Duration position)
+	{
+		if(position != null)
+		{
+			this.position = Math.min(length - 1, (long)position.toMillis());
+		}
+	}
+
+	@Override
+	protected void preroll(URI uri)
+	{
+		prerolled = uri;
+	}
+
+	@Override
+	protected void stopMedia()
+	{
+		position = 0;
+		started = false;
+	}
+
+	@Override
+	protected void pauseMedia()
+	{
+		//The clock does not move the position while paused.
+	}
+
+	@Override
+	protected void resumeMedia()
+	{
+		//The clock moves the position again.
+	}
+
+	/**
+	 * Returns the position the next entry starts at: the end of the current
+	 * one, less the crossfade if the entry is longer than that.
+	 */
+	private long end()
+	{
+		long fade = (long)getCrossfade().toMillis();
+		return fade > 0 && length > fade ? length - fade : length;
+	}
+
+	/**
+	 * Records the real time of a transition.
+	 */
+	private void record(long nanos)
+	{
+		transitionCount++;
+		transitionNanos += nanos;
+		maxTransitionNanos = Math.max(maxTransitionNanos, nanos);
+	}
+}
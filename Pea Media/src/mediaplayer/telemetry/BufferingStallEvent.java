@@ -0,0 +1,30 @@
+package mediaplayer.telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Time a playing player spent STALLED, waiting for its media to buffer.
+ * 
+ * @author Alex Hage
+ *
+ */
+@Name("mediaplayer.BufferingStall")
+@Label("Buffering Stall")
+@Category({"Pea Media", "Playback"})
+@Description("Time a player spent STALLED while playing")
+@StackTrace(false)
+public class BufferingStallEvent extends Event 
+{
+	@Label("URI")
+	public String uri;
+	
+	@Label("Position")
+	@Timespan(Timespan.MILLISECONDS)
+	public long position;
+}
@@ -0,0 +1,32 @@
+package mediaplayer.telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Time from making a track current until its player is PLAYING: the latency
+ * of the first audio and, for a video, of the first frame.
+ * 
+ * @author Alex Hage
+ *
+ */
+@Name("mediaplayer.PlaybackStart")
+@Label("Playback Start")
+@Category({"Pea Media", "Playback"})
+@Description("Time from making a track current until its player is PLAYING")
+@StackTrace(false)
+public class PlaybackStartEvent extends Event 
+{
+	@Label("URI")
+	public String uri;
+	
+	@Label("Pre-rolled")
+	public boolean prerolled;
+	
+	@Label("Video")
+	public boolean video;
+}
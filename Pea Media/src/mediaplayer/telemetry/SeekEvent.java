@@ -0,0 +1,38 @@
+package mediaplayer.telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Time from the first of a run of coalesced seek requests until the player
+ * reports a position near the last target issued, with the number of
+ * requests it stands for. A seek not reached within the timeout of the
+ * {@code SeekController} is recorded as not completed at that time.
+ * 
+ * @author Alex Hage
+ *
+ */
+@Name("mediaplayer.Seek")
+@Label("Seek")
+@Category({"Pea Media", "Playback"})
+@Description("Time from the first coalesced seek request until the player reaches the target")
+@StackTrace(false)
+public class SeekEvent extends Event 
+{
+	@Label("Target")
+	@Timespan(Timespan.MILLISECONDS)
+	public long target;
+	
+	@Label("Requests")
+	@Description("Seek requests coalesced into this seek")
+	public int requests;
+
+	@Label("Completed")
+	@Description("Whether the player reached the target before the timeout")
+	public boolean completed;
+}
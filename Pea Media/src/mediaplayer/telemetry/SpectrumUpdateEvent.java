@@ -0,0 +1,25 @@
+package mediaplayer.telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Time spent in one audio spectrum callback, smoothing and drawing included.
+ * 
+ * @author Alex Hage
+ *
+ */
+@Name("mediaplayer.SpectrumUpdate")
+@Label("Spectrum Update")
+@Category({"Pea Media", "Rendering"})
+@Description("Time spent in one audio spectrum callback")
+@StackTrace(false)
+public class SpectrumUpdateEvent extends Event 
+{
+	@Label("Bands")
+	public int bands;
+}
@@ -0,0 +1,35 @@
+package mediaplayer.telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The startup latencies of the application: the first frame of the main
+ * window and the first audio.
+ * 
+ * @author Alex Hage
+ *
+ */
+@Name("mediaplayer.Startup")
+@Label("Startup")
+@Category({"Pea Media", "Startup"})
+@Description("Time from application start until the first frame and the first audio")
+@StackTrace(false)
+public class StartupEvent extends Event 
+{
+	@Label("First Frame")
+	@Timespan(Timespan.MILLISECONDS)
+	public long firstFrame;
+	
+	@Label("First Audio")
+	@Timespan(Timespan.MILLISECONDS)
+	public long firstAudio;
+	
+	@Label("Fast Start")
+	public boolean fastStart;
+}
@@ -0,0 +1,32 @@
+package mediaplayer.telemetry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Time from creating a MediaPlayer until it is READY or has failed. Covers
+ * pre-rolled players as well as ones opened on demand.
+ * 
+ * @author Alex Hage
+ *
+ */
+@Name("mediaplayer.TrackOpen")
+@Label("Track Open")
+@Category({"Pea Media", "Playback"})
+@Description("Time from creating a MediaPlayer until it is READY or has failed")
+@StackTrace(false)
+public class TrackOpenEvent extends Event 
+{
+	@Label("URI")
+	public String uri;
+	
+	@Label("Pre-rolled")
+	public boolean prerolled;
+	
+	@Label("Failed")
+	public boolean failed;
+}
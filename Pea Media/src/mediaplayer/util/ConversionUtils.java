@@ -10,7 +10,35 @@ import java.net.URI;
 public class ConversionUtils {
 
 	/**
-	 * Formats time in seconds to a string of format hh:mm:ss.
+	 * The longest time written by {@link #formatTime(long, char[])}: 16 hour
+	 * digits for {@link Long#MAX_VALUE} seconds and the minutes and seconds.
+	 */
+	public static final int MAX_TIME_LENGTH = 22;
+	
+	/**
+	 * The number of seconds in a day. Formatted times below are cached.
+	 */
+	private static final int TIME_CACHE_SIZE = 86400;
+	
+	/**
+	 * The number of seconds below 100 minutes. Short times below are cached.
+	 */
+	private static final int SHORT_TIME_CACHE_SIZE = 6000;
+	
+	/**
+	 * Lazily filled hh:mm:ss strings by second.
+	 */
+	private static final String[] TIME_CACHE = new String[TIME_CACHE_SIZE];
+	
+	/**
+	 * Lazily filled mm:ss strings by second.
+	 */
+	private static final String[] SHORT_TIME_CACHE = new String[SHORT_TIME_CACHE_SIZE];
+
+	/**
+	 * Formats time in seconds to a string of format hh:mm:ss. Hours are not
+	 * wrapped at 24. Results below a day are cached, so repeated calls do not
+	 * allocate. Negative times are formatted as zero.
 	 * 
 	 * @param inTime
 	 *            the time in seconds to format.
@@ -18,17 +46,175 @@ public class ConversionUtils {
 	 */
     public static String convertTimeInSeconds(int inTime)
     {
-    	String outTime = "";
-    	
-    	int hours = (inTime / 3600) % 24;
-    	int minutes = (inTime / 60) % 60;
-    	int seconds = inTime % 60;
-    	
-		outTime += (hours < 10 ? "0" + hours : hours) + ":"
-				+ (minutes < 10 ? "0" + minutes : minutes) + ":"
-				+ (seconds < 10 ? "0" + seconds : seconds);
-		
-		return outTime;
+    	int time = Math.max(0, inTime);
+    	if(time >= TIME_CACHE_SIZE)
+    	{
+    		return appendTime(new StringBuilder(12), time).toString();
+    	}
+    	String outTime = TIME_CACHE[time];
+    	if(outTime == null)
+    	{
+    		outTime = appendTime(new StringBuilder(8), time).toString();
+    		TIME_CACHE[time] = outTime;
+    	}
+    	return outTime;
+    }
+    
+	/**
+	 * Formats time in seconds to a string of format mm:ss. Minutes are not
+	 * wrapped at 60. Results below 100 minutes are cached. Negative times are
+	 * formatted as zero.
+	 * 
+	 * @param inTime
+	 *            the time in seconds to format.
+	 * @return outTime formatted time as String.
+	 */
+    public static String convertTimeInSecondsShort(int inTime)
+    {
+    	int time = Math.max(0, inTime);
+    	if(time >= SHORT_TIME_CACHE_SIZE)
+    	{
+    		return appendShortTime(new StringBuilder(8), time).toString();
+    	}
+    	String outTime = SHORT_TIME_CACHE[time];
+    	if(outTime == null)
+    	{
+    		outTime = appendShortTime(new StringBuilder(5), time).toString();
+    		SHORT_TIME_CACHE[time] = outTime;
+    	}
+    	return outTime;
+    }
+    
+	/**
+	 * Appends time in seconds in the format hh:mm:ss to a reusable
+	 * StringBuilder. Hours are not wrapped at 24. Negative times are appended
+	 * as zero.
+	 * 
+	 * @param out
+	 *            the StringBuilder to append to.
+	 * @param inTime
+	 *            the time in seconds to format.
+	 * @return out the StringBuilder appended to.
+	 */
+    public static StringBuilder appendTime(StringBuilder out, long inTime)
+    {
+    	long time = Math.max(0, inTime);
+    	long hours = time / 3600;
+    	if(hours < 10)
+    	{
+    		out.append('0');
+    	}
+    	out.append(hours).append(':');
+    	appendTwoDigits(out, (int)(time / 60 % 60)).append(':');
+    	return appendTwoDigits(out, (int)(time % 60));
+    }
+    
+	/**
+	 * Appends time in seconds in the format mm:ss to a reusable StringBuilder.
+	 * Minutes are not wrapped at 60. Negative times are appended as zero.
+	 * 
+	 * @param out
+	 *            the StringBuilder to append to.
+	 * @param inTime
+	 *            the time in seconds to format.
+	 * @return out the StringBuilder appended to.
+	 */
+    public static StringBuilder appendShortTime(StringBuilder out, long inTime)
+    {
+    	long time = Math.max(0, inTime);
+    	long minutes = time / 60;
+    	if(minutes < 10)
+    	{
+    		out.append('0');
+    	}
+    	out.append(minutes).append(':');
+    	return appendTwoDigits(out, (int)(time % 60));
+    }
+    
+	/**
+	 * Writes time in seconds in the format hh:mm:ss into a reusable char
+	 * array. Hours are not wrapped at 24. Negative times are written as zero.
+	 * 
+	 * @param inTime
+	 *            the time in seconds to format.
+	 * @param out
+	 *            the char array to write to, at least
+	 *            {@link #MAX_TIME_LENGTH} chars long.
+	 * @return the number of chars written.
+	 */
+    public static int formatTime(long inTime, char[] out)
+    {
+    	long time = Math.max(0, inTime);
+    	long hours = time / 3600;
+    	int length = 0;
+    	if(hours < 10)
+    	{
+    		out[length++] = '0';
+    	}
+    	length = writeDigits(out, length, hours);
+    	out[length++] = ':';
+    	length = writeTwoDigits(out, length, (int)(time / 60 % 60));
+    	out[length++] = ':';
+    	return writeTwoDigits(out, length, (int)(time % 60));
+    }
+    
+	/**
+	 * Appends a value from 0 to 99 as two digits.
+	 * 
+	 * @param out
+	 *            the StringBuilder to append to.
+	 * @param value
+	 *            the value to append.
+	 * @return out the StringBuilder appended to.
+	 */
+    private static StringBuilder appendTwoDigits(StringBuilder out, int value)
+    {
+    	return out.append((char)('0' + value / 10)).append((char)('0' + value % 10));
+    }
+    
+	/**
+	 * Writes a value from 0 to 99 as two digits.
+	 * 
+	 * @param out
+	 *            the char array to write to.
+	 * @param offset
+	 *            the index to write at.
+	 * @param value
+	 *            the value to write.
+	 * @return the index after the written digits.
+	 */
+    private static int writeTwoDigits(char[] out, int offset, int value)
+    {
+    	out[offset] = (char)('0' + value / 10);
+    	out[offset + 1] = (char)('0' + value % 10);
+    	return offset + 2;
+    }
+    
+	/**
+	 * Writes a non-negative value in decimal digits.
+	 * 
+	 * @param out
+	 *            the char array to write to.
+	 * @param offset
+	 *            the index to write at.
+	 * @param value
+	 *            the value to write.
+	 * @return the index after the written digits.
+	 */
+    private static int writeDigits(char[] out, int offset, long value)
+    {
+    	int digits = 1;
+    	for(long v = value; v >= 10; v /= 10)
+    	{
+    		digits++;
+    	}
+    	long v = value;
+    	for(int i = offset + digits - 1; i >= offset; i--)
+    	{
+    		out[i] = (char)('0' + v % 10);
+    		v /= 10;
+    	}
+    	return offset + digits;
     }
     
 	/**
@@ -0,0 +1,364 @@
+package mediaplayer.util;
+
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A small asynchronous logging facade. A call first checks the level and
+ * returns right away if it is disabled, before any message is built. An
+ * enabled call only stores the pattern and its arguments in a preallocated
+ * slot of a lock-free ring buffer; a background thread formats and writes
+ * the messages. Logging therefore never blocks the FX thread on console I/O.
+ * The writer parks while the ring is empty and is woken by the next message,
+ * so an idle application does not wake it at all.
+ * <p>
+ * Patterns use <i>{}</i> as placeholder for the next argument. A Throwable
+ * as the last argument has its stack trace written as well. When the ring is
+ * full, messages are dropped and counted rather than waited for. The level
+ * is set with <i>-Dpeamedia.log=DEBUG|INFO|WARN|ERROR|OFF</i>, INFO by
+ * default. Callers passing primitives on hot paths check
+ * {@link #isEnabled(Level)} first, so that nothing is boxed while disabled.
+ * </p>
+ *
+ * @author Alex Hage
+ *
+ */
+public final class Log
+{
+	/**
+	 * The message levels, least severe first.
+	 */
+	public enum Level
+	{
+		DEBUG, INFO, WARN, ERROR, OFF
+	}
+
+	public static final String LEVEL_PROPERTY = "peamedia.log";
+
+	/**
+	 * The number of slots of the ring. A power of two.
+	 */
+	private static final int CAPACITY = 1 << 12;
+	private static final int MASK = CAPACITY - 1;
+
+	private static final Slot[] RING = new Slot[CAPACITY];
+
+	/**
+	 * The sequence of the next slot to claim.
+	 */
+	private static final AtomicLong HEAD = new AtomicLong();
+
+	/**
+	 * The sequence of the next slot to write. Only advanced by the writer.
+	 */
+	private static final AtomicLong TAIL = new AtomicLong();
+
+	private static final AtomicLong DROPPED = new AtomicLong();
+
+	/**
+	 * Set while the writer is about to park or parked, so that a producer
+	 * knows to wake it.
+	 */
+	private static volatile boolean parked;
+
+	private static volatile Level level = parseLevel(System.getProperty(LEVEL_PROPERTY));
+
+	private static final Thread WRITER;
+
+	static
+	{
+		for(int i = 0; i < CAPACITY; i++)
+		{
+			RING[i] = new Slot(i - CAPACITY);
+		}
+		WRITER = new Thread(Log::write, "log-writer");
+		WRITER.setDaemon(true);
+		WRITER.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "log-flush"));
+	}
+
+	/**
+	 * Not instantiable.
+	 */
+	private Log()
+	{
+
+	} //end ctor
+
+	/**
+	 * Returns whether messages of a level are written.
+	 *
+	 * @param messageLevel
+	 *            the Level of the message.
+	 * @return true if enabled.
+	 */
+	public static boolean isEnabled(Level messageLevel)
+	{
+		return messageLevel.compareTo(level) >= 0 && level != Level.OFF;
+	}
+
+	/**
+	 * Returns the lowest level written.
+	 *
+	 * @return level the Level.
+	 */
+	public static Level getLevel()
+	{
+		return level;
+	}
+
+	/**
+	 * Sets the lowest level written.
+	 *
+	 * @param newLevel
+	 *            the Level.
+	 */
+	public static void setLevel(Level newLevel)
+	{
+		level = newLevel;
+	}
+
+	/**
+	 * Returns the number of messages dropped because the ring was full.
+	 *
+	 * @return the dropped count.
+	 */
+	public static long getDroppedCount()
+	{
+		return DROPPED.get();
+	}
+
+	public static void debug(String pattern)
+	{
+		log(Level.DEBUG, pattern, null, null, null);
+	}
+
+	public static void debug(String pattern, Object a)
+	{
+		log(Level.DEBUG, pattern, a, null, null);
+	}
+
+	public static void debug(String pattern, Object a, Object b)
+	{
+		log(Level.DEBUG, pattern, a, b, null);
+	}
+
+	public static void debug(String pattern, Object a, Object b, Object c)
+	{
+		log(Level.DEBUG, pattern, a, b, c);
+	}
+
+	public static void info(String pattern)
+	{
+		log(Level.INFO, pattern, null, null, null);
+	}
+
+	public static void info(String pattern, Object a)
+	{
+		log(Level.INFO, pattern, a, null, null);
+	}
+
+	public static void info(String pattern, Object a, Object b)
+	{
+		log(Level.INFO, pattern, a, b, null);
+	}
+
+	public static void info(String pattern, Object a, Object b, Object c)
+	{
+		log(Level.INFO, pattern, a, b, c);
+	}
+
+	public static void warn(String pattern)
+	{
+		log(Level.WARN, pattern, null, null, null);
+	}
+
+	public static void warn(String pattern, Object a)
+	{
+		log(Level.WARN, pattern, a, null, null);
+	}
+
+	public static void warn(String pattern, Object a, Object b)
+	{
+		log(Level.WARN, pattern, a, b, null);
+	}
+
+	public static void error(String pattern, Object a)
+	{
+		log(Level.ERROR, pattern, a, null, null);
+	}
+
+	public static void error(String pattern, Object a, Object b)
+	{
+		log(Level.ERROR, pattern, a, b, null);
+	}
+
+	/**
+	 * Writes every message logged so far and waits until they are out, for
+	 * at most a second. Called on exit.
+	 */
+	public static void flush()
+	{
+		long target = HEAD.get();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+		while(TAIL.get() < target && System.nanoTime() < deadline)
+		{
+			LockSupport.unpark(WRITER);
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+		System.out.flush();
+		System.err.flush();
+	}
+
+	/**
+	 * Stores a message in the next free slot, or drops it if there is none.
+	 */
+	private static void log(Level messageLevel, String pattern, Object a, Object b, Object c)
+	{
+		if(!isEnabled(messageLevel))
+		{
+			return;
+		}
+		long sequence;
+		do
+		{
+			sequence = HEAD.get();
+			if(sequence - TAIL.get() >= CAPACITY)
+			{
+				DROPPED.incrementAndGet();
+				return;
+			}
+		}
+		while(!HEAD.compareAndSet(sequence, sequence + 1));
+
+		Slot slot = RING[(int)(sequence & MASK)];
+		slot.level = messageLevel;
+		slot.time = System.currentTimeMillis();
+		slot.thread = Thread.currentThread().getName();
+		slot.pattern = pattern;
+		slot.a = a;
+		slot.b = b;
+		slot.c = c;
+		//Publishes the fields above to the writer.
+		slot.sequence = sequence;
+		if(parked)
+		{
+			LockSupport.unpark(WRITER);
+		}
+	}
+
+	/**
+	 * Formats and writes published slots in order. Runs on the writer thread.
+	 */
+	private static void write()
+	{
+		SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS", Locale.ROOT);
+		StringBuilder line = new StringBuilder(256);
+		long dropped = 0;
+		while(true)
+		{
+			long sequence = TAIL.get();
+			Slot slot = RING[(int)(sequence & MASK)];
+			if(slot.sequence != sequence)
+			{
+				//Check again after announcing the park: a producer publishing
+				//meanwhile either is seen here or sees the flag and wakes us.
+				parked = true;
+				if(slot.sequence != sequence)
+				{
+					LockSupport.park();
+				}
+				parked = false;
+				continue;
+			}
+			line.setLength(0);
+			line.append(timeFormat.format(new Date(slot.time))).append(' ')
+					.append(slot.level).append(" [").append(slot.thread).append("] ");
+			Throwable thrown = format(line, slot.pattern, slot.a, slot.b, slot.c);
+			PrintStream out = slot.level.compareTo(Level.WARN) >= 0 ? System.err : System.out;
+			slot.pattern = null;
+			slot.a = slot.b = slot.c = null;
+			TAIL.lazySet(sequence + 1);
+
+			out.println(line);
+			if(thrown != null)
+			{
+				thrown.printStackTrace(out);
+			}
+			if(DROPPED.get() != dropped)
+			{
+				dropped = DROPPED.get();
+				System.err.println("Log ring full, " + dropped + " messages dropped so far");
+			}
+		}
+	}
+
+	/**
+	 * Appends a pattern with its placeholders replaced by the arguments.
+	 *
+	 * @return a trailing Throwable argument not used by the pattern, or
+	 *         <i>null</i>.
+	 */
+	private static Throwable format(StringBuilder line, String pattern, Object a, Object b, Object c)
+	{
+		Object[] args = {a, b, c};
+		int used = 0;
+		int from = 0;
+		int at;
+		while((at = pattern.indexOf("{}", from)) >= 0 && used < args.length)
+		{
+			line.append(pattern, from, at).append(args[used++]);
+			from = at + 2;
+		}
+		line.append(pattern, from, pattern.length());
+		for(int i = args.length - 1; i >= used; i--)
+		{
+			if(args[i] instanceof Throwable)
+			{
+				return (Throwable)args[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Parses the level property, INFO if unset or unknown.
+	 */
+	private static Level parseLevel(String name)
+	{
+		try
+		{
+			return name == null ? Level.INFO : Level.valueOf(name.trim().toUpperCase(Locale.ROOT));
+		}
+		catch(IllegalArgumentException e)
+		{
+			return Level.INFO;
+		}
+	}
+
+	/**
+	 * A ring slot. Its fields are written by one producer before the
+	 * volatile sequence is set, and read by the writer after it.
+	 */
+	private static final class Slot
+	{
+		private volatile long sequence;
+		private Level level;
+		private long time;
+		private String thread;
+		private String pattern;
+		private Object a;
+		private Object b;
+		private Object c;
+
+		private Slot(long sequence)
+		{
+			this.sequence = sequence;
+		}
+	}
+}
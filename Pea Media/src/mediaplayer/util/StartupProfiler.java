@@ -0,0 +1,201 @@
+package mediaplayer.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import mediaplayer.telemetry.StartupEvent;
+
+/**
+ * Records the timestamps of the startup phases, measured from the start of
+ * the process: FXML loads, controller initialization, first frame and first
+ * audio. Also holds the fast-start
+ * switch, under which non-critical UI is only built after the first frame.
+ * <p>
+ * Fast-start is enabled with <i>-Dpeamedia.fastStart=true</i>, the first
+ * frame budget in milliseconds is set with <i>-Dpeamedia.startupBudget</i>.
+ * All methods are to be called on the FX thread.
+ * </p>
+ * 
+ * @author Alex Hage
+ */
+public class StartupProfiler {
+
+	public static final String FAST_START_PROPERTY = "peamedia.fastStart";
+	public static final String BUDGET_PROPERTY = "peamedia.startupBudget";
+	
+	public static final String FIRST_FRAME = "first frame";
+	public static final String FIRST_AUDIO = "first audio";
+	
+	/**
+	 * The start of the process on the {@link System#nanoTime()} scale, so
+	 * that JVM boot and class loading count towards startup.
+	 */
+	private static final long START = processStart();
+	
+	/**
+	 * The phases in order of their first mark, in nanoseconds since start.
+	 */
+	private static final Map<String, Long> PHASES = new LinkedHashMap<String, Long>();
+	
+	/**
+	 * The tasks to run once the first frame is up.
+	 */
+	private static final List<Runnable> AFTER_FIRST_FRAME = new ArrayList<Runnable>();
+	
+	private static boolean firstFrameShown;
+	
+	/**
+	 * Not instantiable.
+	 */
+	private StartupProfiler()
+	{
+		
+	} //end ctor
+	
+	/**
+	 * Returns the start of the JVM on the {@link System#nanoTime()} scale.
+	 * The wall clock start time is only precise to the millisecond. The JVM's
+	 * own start time is used rather than the one of the operating system,
+	 * which is derived from the boot time and can be off by far more.
+	 * 
+	 * @return the start in nanoseconds.
+	 */
+	private static long processStart()
+	{
+		long now = System.nanoTime();
+		long elapsed = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+		return now - Math.max(0, elapsed) * 1000000;
+	}
+	
+	/**
+	 * Returns whether non-critical UI is deferred until after the first frame.
+	 * 
+	 * @return true in fast-start mode.
+	 */
+	public static boolean isFastStart()
+	{
+		return Boolean.getBoolean(FAST_START_PROPERTY);
+	}
+	
+	/**
+	 * Records the end of a startup phase. Only the first mark of a phase is
+	 * kept.
+	 * 
+	 * @param phase
+	 *            the name of the phase.
+	 */
+	public static void mark(String phase)
+	{
+		if(!PHASES.containsKey(phase))
+		{
+			PHASES.put(phase, System.nanoTime() - START);
+		}
+	}
+	
+	/**
+	 * Marks the first frame on the next pulse, prints the startup report and
+	 * runs the tasks deferred until then. Called once the primary stage is
+	 * shown.
+	 */
+	public static void awaitFirstFrame()
+	{
+		new AnimationTimer() 
+		{
+			@Override
+			public void handle(long now) 
+			{
+				stop();
+				mark(FIRST_FRAME);
+				firstFrameShown = true;
+				Log.info(report());
+				
+				//Run after this pulse has been rendered.
+				for(Runnable task : AFTER_FIRST_FRAME)
+				{
+					Platform.runLater(task);
+				}
+				AFTER_FIRST_FRAME.clear();
+			}
+		}.start();
+	}
+	
+	/**
+	 * Runs a task after the first frame in fast-start mode, right away
+	 * otherwise.
+	 * 
+	 * @param task
+	 *            the non-critical initialization to run.
+	 */
+	public static void afterFirstFrame(Runnable task)
+	{
+		if(!isFastStart() || firstFrameShown)
+		{
+			task.run();
+		}
+		else
+		{
+			AFTER_FIRST_FRAME.add(task);
+		}
+	}
+	
+	/**
+	 * Records the first audio, prints the startup report and emits it as a
+	 * {@link StartupEvent}, once.
+	 */
+	public static void markFirstAudio()
+	{
+		if(!PHASES.containsKey(FIRST_AUDIO))
+		{
+			mark(FIRST_AUDIO);
+			Log.info(report());
+			
+			StartupEvent event = new StartupEvent();
+			event.firstFrame = Math.round(getMillis(FIRST_FRAME));
+			event.firstAudio = Math.round(getMillis(FIRST_AUDIO));
+			event.fastStart = isFastStart();
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Returns the elapsed time of a phase.
+	 * 
+	 * @param phase
+	 *            the name of the phase.
+	 * @return the time since start in milliseconds, or -1 if not reached.
+	 */
+	public static double getMillis(String phase)
+	{
+		Long nanos = PHASES.get(phase);
+		return nanos == null ? -1 : nanos / 1e6;
+	}
+	
+	/**
+	 * Formats the recorded phases, one per line, and the first frame budget
+	 * check if a budget is set.
+	 * 
+	 * @return the report as String.
+	 */
+	public static String report()
+	{
+		StringBuilder out = new StringBuilder("Startup").append(isFastStart() ? " (fast-start)" : "").append(':');
+		for(Map.Entry<String, Long> phase : PHASES.entrySet())
+		{
+			out.append(System.lineSeparator()).append("  ").append(phase.getKey()).append(": ")
+					.append(String.format("%.1f ms", phase.getValue() / 1e6));
+		}
+		long budget = Long.getLong(BUDGET_PROPERTY, -1);
+		double firstFrame = getMillis(FIRST_FRAME);
+		if(budget >= 0 && firstFrame >= 0)
+		{
+			out.append(System.lineSeparator()).append("  budget ").append(budget).append(" ms ")
+					.append(firstFrame <= budget ? "met" : "exceeded");
+		}
+		return out.toString();
+	}
+}
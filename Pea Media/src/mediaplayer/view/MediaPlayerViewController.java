@@ -8,6 +8,7 @@ import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.css.PseudoClass;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
 import javafx.scene.Cursor;
@@ -18,17 +19,18 @@ import javafx.scene.control.Slider;
 import javafx.scene.control.Tooltip;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.AnchorPane;
-import javafx.scene.media.AudioSpectrumListener;
-import javafx.scene.media.Media;
+import javafx.scene.layout.StackPane;
 import javafx.scene.media.MediaPlayer;
 import javafx.scene.media.MediaView;
-import javafx.scene.paint.Color;
-import javafx.scene.shape.Rectangle;
 import javafx.stage.FileChooser;
 import javafx.util.Duration;
 import mediaplayer.Main;
 import mediaplayer.model.MediaItem;
+import mediaplayer.playback.FxPlaybackEngine;
+import mediaplayer.playback.SeekController;
 import mediaplayer.util.ConversionUtils;
+import mediaplayer.util.Log;
+import mediaplayer.util.StartupProfiler;
  
 /**
  * The Controller for the MediaPlayerView. Contains the UI functionality and
@@ -43,10 +45,22 @@ public class MediaPlayerViewController {
 	private static final boolean SHOW_UI = true;
 	private static final boolean HIDE_UI = false;
 	private static final String[] MUSIC = {".MP3", ".WAV"};
+	private static final double LOW_VOLUME = 0.6;
+	
+	/**
+	 * The button icon states. The icons themselves are set in the skin.
+	 */
+	private static final PseudoClass PLAYING = PseudoClass.getPseudoClass("playing");
+	private static final PseudoClass REPEAT_ONE = PseudoClass.getPseudoClass("repeat-one");
+	private static final PseudoClass MUTED = PseudoClass.getPseudoClass("muted");
+	private static final PseudoClass LOW = PseudoClass.getPseudoClass("low");
 
 	@FXML
 	private MediaView mediaView;
 	
+	@FXML
+	private StackPane progressBox;
+	
 	@FXML
 	private ProgressBar progBar;
 	
@@ -87,37 +101,22 @@ public class MediaPlayerViewController {
 	private AnchorPane spectrumBox;
 	
 	/**
-	 * A single MediaItem object.
-	 */
-	private MediaItem mediaItem;
-	/**
-	 * The reusable MediaPlayer.
+	 * The currently playing MediaPlayer. Owned by the engine.
 	 */
 	private MediaPlayer mediaPlayer;
 	/**
-	 * The reusable Media.
-	 */
-	private Media media;
-	/**
-	 * The iterator for the playlist location. Set by Main.
+	 * The playback engine. Sequences the playlist, opens the current and
+	 * pre-rolls the next item. Created once Main is set.
 	 */
-	private int current;
-	/**
-	 * The playback started flag. Initialized to <i>false</i> locally.
-	 */
-	private boolean playing;
-	/**
-	 * The playback paused flag. Initialized to <i>false</i> locally.
-	 */
-	private boolean paused;
+	private FxPlaybackEngine engine;
 	/**
 	 * The media mute flag. Initialized to <i>false</i> locally.
 	 */
 	private boolean muted;
 	/**
-	 * The media repeat flag. Initialized to <i>false</i> locally.
+	 * The progress bar scrubbing flag. Set while the progress bar is dragged.
 	 */
-	private boolean repeat;
+	private boolean scrubbing;
 	/**
 	 * The UI visibility flag. Initialized to <i>true</i> locally.
 	 */
@@ -137,6 +136,26 @@ public class MediaPlayerViewController {
 	 */
 	private Timeline timeLine;
 	
+	/**
+	 * The band-spectroscope shown in the spectrum box.
+	 */
+	private SpectrumCanvas spectrum;
+	
+	/**
+	 * The waveform overview drawn over the progress bar.
+	 */
+	private WaveformView waveform;
+	
+	/**
+	 * The per-pulse updater of the progress bar and the progress clock.
+	 */
+	private ProgressUpdater progressUpdater;
+	
+	/**
+	 * The coalescing seek controller used by progress bar scrubbing.
+	 */
+	private SeekController seekController;
+	
 	/**
 	 * The default constructor.
 	 * Called before the <i>initialize()</i> method.
@@ -147,20 +166,44 @@ public class MediaPlayerViewController {
 	} //end ctor
 
 	/**
-	 * Initializes the controller class. Sets the controller-wise flags, UI
-	 * tooltips and default values. Is automatically called after the fxml file
-	 * has been loaded.
+	 * Initializes the controller class. Sets the controller-wise flags and
+	 * default values. Is automatically called after the fxml file has been
+	 * loaded. Tooltips and the spectroscope are built after the first frame in
+	 * fast-start mode.
 	 */
 	@FXML
 	public void initialize()
 	{
-		this.playing = false;
-		this.paused = false;
 		this.muted = false;
-		this.repeat = false;
 		this.showUI = true;
 		this.music = true;
+		this.progressUpdater = new ProgressUpdater(progBar, timeLabel);
+		this.seekController = new SeekController();
+		this.waveform = new WaveformView();
+		progressBox.getChildren().add(waveform);
+		progBar.progressProperty().addListener((observable, oldValue, newValue) -> 
+				waveform.setProgress(newValue.doubleValue()));
+		
+		StartupProfiler.afterFirstFrame(() -> initNonCritical());
+		
+		progBar.setOnMouseClicked(progBarMouseListener());
+		progBar.setOnMouseDragged(progBarMouseListener());
+		progBar.setOnMouseReleased(progBarMouseListener());
 		
+		userControls.setOnMouseEntered(uIMouseInOutListener());
+		userControls.setOnMouseExited(uIMouseInOutListener());
+		
+		volSlider.setValue(0.5);
+        volSlider.valueProperty().addListener(volumeSliderChangedListener());
+        updateVolumeIcon();
+	}
+
+	/**
+	 * Builds the UI parts not needed for the first frame: the tooltips and the
+	 * spectroscope. Attaches the spectroscope if music is already playing.
+	 */
+	private void initNonCritical()
+	{
 		//Adding tooltips
 		addBtn.setTooltip(new Tooltip("Open..."));
 		playBtn.setTooltip(new Tooltip("Play / Pause"));
@@ -172,52 +215,49 @@ public class MediaPlayerViewController {
 		volBtn.setTooltip(new Tooltip("Toggle Mute"));
 		volSlider.setTooltip(new Tooltip("Volume"));
 		
-		progBar.setOnMouseClicked(progBarMouseListener());
-		progBar.setOnMouseDragged(progBarMouseListener());
-		
-		userControls.setOnMouseEntered(uIMouseInOutListener());
-		userControls.setOnMouseExited(uIMouseInOutListener());
-		
-		volSlider.setValue(0.5);
-        volSlider.valueProperty().addListener(volumeSliderChangedListener());
+		this.spectrum = new SpectrumCanvas(spectrumBox.getPrefWidth(), spectrumBox.getPrefHeight());
+		spectrumBox.getChildren().add(spectrum);
+		if(mediaPlayer != null && music)
+		{
+			initSpectroscope();
+		}
 	}
-
+	
 	/**
-	 * Handles the <i>Play/Pause</i> button click. Uses the flags <i>playing</i>
-	 * and <i>paused</i> to initiate, pause or resume media item playback. Sets
-	 * the <i>paused</i> flag by flipping it.
+	 * Handles the <i>Play/Pause</i> button click. Uses the engine's
+	 * <i>playing</i> and <i>paused</i> state to initiate, pause or resume media
+	 * item playback.
 	 */
 	@FXML
 	public void playRequestHandler()
 	{
 		//If not playing anything, play the list.
-		if(!playing)
+		if(!engine.isPlaying())
 		{
-			playAll();
+			engine.playCurrent();
 		}
 		//Otherwise, check the paused flag.
 		else
 		{
 			//If not paused, pause.
-			if(!paused)
+			if(!engine.isPaused())
 			{
-				playBtn.setStyle("-fx-graphic: url('file:resources/images/playbtn.png'); -fx-padding: 2 4 2 4;");
-				mediaPlayer.pause();
+				playBtn.pseudoClassStateChanged(PLAYING, false);
+				engine.pause();
 			}
 			//Otherwise, resume.
 			else
 			{
-				playBtn.setStyle("-fx-graphic: url('file:resources/images/pausebtn.png'); -fx-padding: 2 4 2 4;");
-				mediaPlayer.play();
+				playBtn.pseudoClassStateChanged(PLAYING, true);
+				engine.resume();
 			}
-			this.paused = !paused;
 		}
 	}
 	
 	/**
 	 * Handles the <i>Add</i> button click. Uses <i>FileChooser</i> to populate
-	 * the playlist. Starts playback if <i>playing</i> flag is set to
-	 * <i>false</i>.
+	 * the playlist through the background importer. Starts playback once the
+	 * first items arrive if <i>playing</i> flag is set to <i>false</i>.
 	 */
 	@FXML
 	public void openRequestHandler()
@@ -226,53 +266,34 @@ public class MediaPlayerViewController {
 		List<File> files = fileChooser.showOpenMultipleDialog(main.getPrimaryStage());
 		if(files != null)
 		{
-			for(File f : files)
+			main.getImporter().importFiles(files, () -> 
 			{
-				mediaItem = new MediaItem(f.toURI());
-				mediaItem.setTitle(ConversionUtils.convertToFileName((f.toURI())));
-				main.getPlayList().add(mediaItem);
-				
-				System.out.println("Added " + f.getName() + " to playlist");
-			}
-			if(!playing)
-			{
-				playAll();
-				
-				System.out.println("Playing all items in playlist starting with index #" + current);
-			}
+				if(!engine.isPlaying())
+				{
+					engine.playCurrent();
+					
+					Log.debug("Playing all items in playlist starting with index #{}", engine.getCurrentIndex());
+				}
+			});
 		}
 	}
 	
 	/**
-	 * Handles the <i>Back</i> button click by setting the appropriate
-	 * <i>current</i> value.
+	 * Handles the <i>Back</i> button click by stepping back in the play order.
 	 */
 	@FXML
 	public void backRequestHandler()
 	{
-		mediaPlayer.stop();
-		if(current == 0)
-		{
-			current = main.getPlayList().size();
-		}
-		current--;
-		main.getCurrent().set(current);
+		engine.back();
 	}
 	
 	/**
-	 * Handles the <i>Next</i> button click by setting the appropriate
-	 * <i>current</i> value.
+	 * Handles the <i>Next</i> button click by advancing in the play order.
 	 */
 	@FXML
 	public void nextRequestHandler()
 	{
-		mediaPlayer.stop();
-		current++;
-		if(current == main.getPlayList().size())
-		{
-			current = 0;
-		}
-		main.getCurrent().set(current);
+		engine.next();
 	}
 	
 	/**
@@ -283,15 +304,8 @@ public class MediaPlayerViewController {
 	{
 		if(mediaPlayer != null)
 		{
-			repeat = !repeat;
-			if(repeat)
-			{
-				repeatBtn.setStyle("-fx-graphic: url('file:resources/images/repeatonebtn.png'); -fx-padding: 2 4 2 4;");
-			}
-			else
-			{
-				repeatBtn.setStyle("-fx-graphic: url('file:resources/images/repeatbtn.png'); -fx-padding: 2 4 2 4;");
-			}
+			engine.setRepeat(!engine.isRepeat());
+			repeatBtn.pseudoClassStateChanged(REPEAT_ONE, engine.isRepeat());
 		}
 	}
 	
@@ -315,31 +329,23 @@ public class MediaPlayerViewController {
 		//If not initialized, nothing happens. Otherwise,
 		if(mediaPlayer != null)
 		{
-			//If not currently muted, then mute.
-			if(!muted)
-			{
-				mediaPlayer.muteProperty().set(!muted);
-				muted = !muted;
-				volBtn.setStyle("-fx-graphic: url('file:resources/images/mutebtn.png'); -fx-padding: 2 4 2 4;");
-			}
-			//Otherwise, demute.
-			else
-			{
-				mediaPlayer.muteProperty().set(!muted);
-				muted = !muted;
-				//Set the appropriate volume button icon on return, based on current volume.
-                if(volSlider.getValue() > 0.6)
-                {
-                	volBtn.setStyle("-fx-graphic: url('file:resources/images/volbtn.png'); -fx-padding: 2 4 2 4;");
-                }
-                else if(volSlider.getValue() > 0)
-                {
-                	volBtn.setStyle("-fx-graphic: url('file:resources/images/halfVolbtn.png'); -fx-padding: 2 4 2 4;");
-                }
-			}
+			muted = !muted;
+			engine.setMute(muted);
+			updateVolumeIcon();
 		}
 	}
 	
+	/**
+	 * Sets the volume button icon state from the mute flag and the volume
+	 * slider position.
+	 */
+	private void updateVolumeIcon()
+	{
+		double volume = volSlider.getValue();
+		volBtn.pseudoClassStateChanged(MUTED, muted || volume == 0);
+		volBtn.pseudoClassStateChanged(LOW, !muted && volume > 0 && volume <= LOW_VOLUME);
+	}
+	
 	/**
 	 * Handles the <i>Playlist</i> button click. Calls to Main to show playlist.
 	 */
@@ -350,101 +356,112 @@ public class MediaPlayerViewController {
 	}
 	
 	/**
-	 * Initializes the MediaPlayer and plays every track in the playlist one
-	 * after the other, starting from a preset current track. Sets the
-	 * <i>playing</i> flag to denote that the initial playback has commenced
-	 * <p>
-	 * The playing of the next item is achieved via a recursive call. .
-	 * </p>
+	 * Sets up the view for an item the engine has opened, before it starts
+	 * playing: volume, viewport, spectroscope or video controls, and the
+	 * progress display.
+	 * 
+	 * @param index
+	 *            the playlist index of the item.
+	 * @param item
+	 *            the opened MediaItem.
 	 */
-	private void playAll()
+	private void mediaOpened(int index, MediaItem item)
 	{
-		//Get the playlist from Main.
-		List<MediaItem> playList = main.getPlayList();
+		mediaPlayer = engine.getMediaPlayer();
+		playBtn.pseudoClassStateChanged(PLAYING, true);
+		mediaView.setFitWidth(main.getPrimaryStage().getScene().getWidth());
 		
-		if (playList.size() != 0) 
+		for (String s : MUSIC) 
 		{
-			this.current = main.getCurrent().get();
-			this.playing = true;
-			playBtn.setStyle("-fx-graphic: url('file:resources/images/pausebtn.png'); -fx-padding: 2 4 2 4;");
-			media = new Media(playList.get(current).getURI().toString());
-			mediaPlayer = new MediaPlayer(media);
-			mediaPlayer.setVolume(volSlider.getValue());
-			mediaView.setMediaPlayer(mediaPlayer);
-			mediaView.setFitWidth(main.getPrimaryStage().getScene().getWidth());
-			
-			for (String s : MUSIC) 
+			if (s.equalsIgnoreCase(ConversionUtils.convertToFileExtension(item.getURI()))) 
 			{
-				if (s.equalsIgnoreCase(ConversionUtils.convertToFileExtension(playList
-						.get(current).getURI()))) 
-				{
-					this.music = true;
-					initSpectroscope();
-					break;
-				}
-				else
-				{
-					this.music = false;
-				}
+				this.music = true;
+				initSpectroscope();
+				break;
+			}
+			else
+			{
+				this.music = false;
 			}
-			if(!music) toggleUI(HIDE_UI);
+		}
+		if(!music)
+		{
+			if(spectrum != null)
+			{
+				spectrum.clear();
+			}
+			toggleUI(HIDE_UI);
+		}
 
-			mediaPlayer.play();
+		engine.getLifecycle().addListener(mediaPlayer, mediaPlayer.statusProperty(), firstAudioListener());
+		
+		//The overview is drawn once the analyzer has it, if the file can be decoded.
+		waveform.setWaveform(null);
+		main.getWaveformAnalyzer().request(item.getURI(), waveform::setWaveform);
 
-			mediaPlayer.currentTimeProperty().addListener(progressChangedListener());
-			
-			mediaPlayer.setOnEndOfMedia(new Runnable() 
-			{
-				@Override
-				public void run()
-				{
-					mediaPlayer.stop();
-					if(!repeat)
-					{
-						current++;
-					}
-					main.getCurrent().set(current);
-					if(current == playList.size())
-					{
-						current = 0;
-					}
-					playAll();
-				}
-			});
+		progressUpdater.setMediaPlayer(mediaPlayer);
+		seekController.setMediaPlayer(mediaPlayer, engine.getLifecycle());
+		engine.getLifecycle().addListener(mediaPlayer, mediaPlayer.statusProperty(), progressListener(mediaPlayer));
+	}
+	
+	/**
+	 * Resumes a restored session: starts playback of the given playlist index
+	 * at the given position.
+	 * 
+	 * @param index
+	 *            the playlist index to play.
+	 * @param position
+	 *            the position to start at.
+	 */
+	public void resume(int index, Duration position)
+	{
+		if(index < 0)
+		{
+			return;
+		}
+		engine.setStartPosition(position);
+		if(main.getCurrent().get() != index)
+		{
+			main.getCurrent().set(index);
+		}
+		else
+		{
+			engine.playCurrent();
 		}
 	}
+	
+	/**
+	 * Saves the position of the current item, so that it resumes there when
+	 * played again.
+	 */
+	public void savePosition()
+	{
+		engine.savePosition();
+	}
+	
+	/**
+	 * Returns the playback position of the current item.
+	 * 
+	 * @return the position, {@link Duration#ZERO} if nothing is playing.
+	 */
+	public Duration getPosition()
+	{
+		return engine.getPosition();
+	}
 
 	/**
-	 * Creates a band-spectroscope from an anchor pane and an array of
-	 * rectangles. The number of rectangles corresponds to the number of audio
-	 * spectrum bands in media. The graph is inverted and its thickness
-	 * contingent on amplitude for better look and feel.
+	 * Attaches the band-spectroscope to the current MediaPlayer. The canvas
+	 * sets the player's band count and update interval and is registered as
+	 * its AudioSpectrumListener.
 	 */
 	private void initSpectroscope() 
 	{
-		spectrumBox.getChildren().clear();
-		Rectangle[] bars = new Rectangle[mediaPlayer.getAudioSpectrumNumBands()];
-		for(int i = 0; i < bars.length; i++)
+		if(spectrum == null)
 		{
-			bars[i] = new Rectangle();
-			bars[i].setWidth(1);
-			bars[i].setHeight(0);
-			bars[i].setLayoutX(i + 3);
-			spectrumBox.getChildren().add(bars[i]);
+			return;
 		}
-		mediaPlayer.setAudioSpectrumListener(new AudioSpectrumListener(){
-
-			@Override
-			public void spectrumDataUpdate(double timestamp, double duration, float[] magnitudes, float[] phases) {
-				for(int i = 0; i < bars.length; i++)
-				{
-					bars[i].setLayoutY((spectrumBox.getHeight() / 2) - magnitudes[i]);
-					bars[i].setHeight((magnitudes[i] + 60) / 4);
-					bars[i].setFill(Color.GREEN);
-				}
-			}
-			
-		});
+		spectrum.attach(mediaPlayer);
+		engine.getLifecycle().setAudioSpectrumListener(mediaPlayer, spectrum);
 	}
 	
 	/**
@@ -497,40 +514,62 @@ public class MediaPlayerViewController {
     {
         this.main = main;
         
+        //The engine follows changes in current from playlist requests.
+        this.engine = new FxPlaybackEngine(mediaView, main.getPlayList(), main.getCurrent(),
+        		main.getPlayOrder(), main.getPrefetcher());
+        this.engine.setListener(this::mediaOpened);
+        this.engine.setVolume(volSlider.getValue());
+        this.engine.setCrossfade(main.getCrossfade());
+        this.engine.setResumeStore(main.getResumeStore());
+        
 		//Calling a listener for scene size change
 		this.main.getPrimaryStage().getScene().widthProperty().addListener(sceneSizeChangedListener());
-		
-        //Listens for changes in current from playlist requests. 
-        this.main.getCurrent().addListener(currentChangedListener());
         
         //Listens for mouse movement
         this.main.getPrimaryStage().getScene().setOnMouseMoved(sceneMouseMovedListener());
     }
 
 	/**
-	 * Listens to changes in Main's <i>current</i>. On change, stops playback of
-	 * the currently playing item and initiates playback starting with the new
-	 * index of <i>current</i>.
+	 * Runs the progress updater while the given player is the current one and
+	 * plays, so that it does not keep the pulse going while paused, stopped or
+	 * after the playlist has ended.
 	 * 
-	 * @return {@code ChangeListener<Number>}
+	 * @param player
+	 *            the MediaPlayer whose status is listened to.
+	 * @return {@code ChangeListener<MediaPlayer.Status>}
 	 */
-	private ChangeListener<Number> currentChangedListener() 
+	private ChangeListener<MediaPlayer.Status> progressListener(MediaPlayer player)
 	{
-		return new ChangeListener<Number>() 
+		return (observableValue, oldStatus, newStatus) -> 
+		{
+			if(player == mediaPlayer)
+			{
+				progressUpdater.setPlaying(newStatus == MediaPlayer.Status.PLAYING);
+			}
+		};
+	}
+	
+	/**
+	 * Listens to changes in MediaPlayer status. Records the first audio of the
+	 * application's lifetime with the startup profiler.
+	 * 
+	 * @return {@code ChangeListener<MediaPlayer.Status>}
+	 */
+	private ChangeListener<MediaPlayer.Status> firstAudioListener()
+	{
+		return new ChangeListener<MediaPlayer.Status>() 
+		{
+			@Override
+			public void changed(
+					ObservableValue<? extends MediaPlayer.Status> observableValue,
+					MediaPlayer.Status oldStatus, MediaPlayer.Status newStatus) 
+			{
+				if(newStatus == MediaPlayer.Status.PLAYING)
 				{
-					@Override
-					public void changed(
-							ObservableValue<? extends Number> observableValue,
-							Number oldSceneWidth, Number newSceneWidth) 
-					{
-						if(mediaPlayer != null)
-						{
-							mediaPlayer.stop();
-						}
-						current = main.getCurrent().get();
-						playAll();
-					}
-				};
+					StartupProfiler.markFirstAudio();
+				}
+			}
+		};
 	}
 	
 	/**
@@ -566,56 +605,21 @@ public class MediaPlayerViewController {
 		return new ChangeListener<Number>() {
             public void changed(ObservableValue<? extends Number> obervable,
                 Number oldValue, Number newValue) {
-                    if(mediaPlayer != null)
+                    if(engine != null)
                     {
-                    	mediaPlayer.setMute(false);
+                    	engine.setMute(false);
                     	muted = false;
-                    	mediaPlayer.setVolume(newValue.doubleValue());
-                    }
-                    if(newValue.doubleValue() > 0.6)
-                    {
-                    	volBtn.setStyle("-fx-graphic: url('file:resources/images/volbtn.png'); -fx-padding: 2 4 2 4;");
-                    }
-                    else if(newValue.doubleValue() == 0)
-                    {
-                    	volBtn.setStyle("-fx-graphic: url('file:resources/images/mutebtn.png'); -fx-padding: 2 4 2 4;");
-                    }
-                    else
-                    {
-                        volBtn.setStyle("-fx-graphic: url('file:resources/images/halfvolbtn.png'); -fx-padding: 2 4 2 4;");
+                    	engine.setVolume(newValue.doubleValue());
                     }
+                    updateVolumeIcon();
             }
         };
 	}
 
 	/**
-	 * Listens to changes in media playback progress. On change, sets the
-	 * progress bar and the progress clock accordingly.
-	 * 
-	 * @return {@code ChangeListener<Duration>}
-	 */
-	private ChangeListener<Duration> progressChangedListener() 
-	{
-		ChangeListener<Duration> progressChangeListener = new ChangeListener<Duration>() 
-		{
-			@Override
-			public void changed(
-					ObservableValue<? extends Duration> observableValue,
-					Duration oldValue, Duration newValue) 
-			{
-				progBar.setProgress(1.0
-						* mediaPlayer.getCurrentTime().toMillis()
-						/ mediaPlayer.getTotalDuration().toMillis());
-
-				timeLabel.setText(ConversionUtils.convertTimeInSeconds((int)newValue.toSeconds()));
-			}
-		};
-		return progressChangeListener;
-	}
-	
-	/**
-	 * Listens for left mouse button click or drag action on the progress bar. Reacts
-	 * by updating the media position index.
+	 * Listens for left mouse button click, drag or release action on the
+	 * progress bar. Shows the scrubbed position right away and hands the seek
+	 * to the SeekController, which issues the final one on release.
 	 * 
 	 * @return {@code EventHandler<MouseEvent>}
 	 */
@@ -631,20 +635,49 @@ public class MediaPlayerViewController {
         			event.consume();
         		}
         		else if (event.getEventType() == MouseEvent.MOUSE_DRAGGED
-        				|| event.getEventType() == MouseEvent.MOUSE_CLICKED) 
+        				|| (event.getEventType() == MouseEvent.MOUSE_CLICKED && event.isStillSincePress())) 
         		{
-        			mediaPlayer.seek(mediaPlayer.getTotalDuration().multiply(
-        					event.getX() / progBar.getWidth()));
-        			
-        			//Console printout for easier testing.
-					System.out.println("Setting media progress to "
-							+ (int)(event.getX() / progBar.getWidth() * 100)
-							+ " %");
+        			double fraction = Math.max(0, Math.min(1, event.getX() / progBar.getWidth()));
+        			Duration target = mediaPlayer.getTotalDuration().multiply(fraction);
+        			progressUpdater.setPreview(target.toMillis());
+        			seekController.request(target);
+        			if(event.getEventType() == MouseEvent.MOUSE_CLICKED)
+        			{
+        				endScrub(fraction);
+        			}
+        			else
+        			{
+        				scrubbing = true;
+        			}
+        		}
+        		else if (event.getEventType() == MouseEvent.MOUSE_RELEASED && scrubbing)
+        		{
+        			scrubbing = false;
+        			endScrub(Math.max(0, Math.min(1, event.getX() / progBar.getWidth())));
         		}
         	}
         };
 	}
 	
+	/**
+	 * Ends a scrub by issuing the pending seek and returning the progress
+	 * display to the player position.
+	 * 
+	 * @param fraction
+	 *            the final position as a fraction of the total duration.
+	 */
+	private void endScrub(double fraction)
+	{
+		seekController.flush();
+		progressUpdater.clearPreview();
+		
+		if(Log.isEnabled(Log.Level.DEBUG))
+		{
+			Log.debug("Setting media progress to {} % ({} of {} seeks issued)", (int)(fraction * 100),
+					seekController.getExecutedCount(), seekController.getRequestedCount());
+		}
+	}
+	
 	/**
 	 * Listens for mouse entering and exiting the UI container. Toggles UI
 	 * visibility accordingly using <i>toggleUI()</i>
@@ -1,22 +1,37 @@
 package mediaplayer.view;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
 
+import javafx.beans.binding.Bindings;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
+import javafx.scene.control.CheckMenuItem;
+import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Label;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
 import javafx.scene.input.DragEvent;
 import javafx.scene.input.Dragboard;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.input.TransferMode;
+import javafx.stage.DirectoryChooser;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import mediaplayer.Main;
+import mediaplayer.io.PlayListFiles;
 import mediaplayer.model.MediaItem;
+import mediaplayer.model.SearchResultList;
+import mediaplayer.model.TrigramIndex;
 import mediaplayer.util.ConversionUtils;
+import mediaplayer.util.Log;
 
 /**
  * The controller for the PlayListView. Contains playlist item selection and
@@ -33,6 +48,9 @@ public class PlayListViewController
 	@FXML
 	private TableColumn<MediaItem, String> titleColumn;
 	
+	@FXML
+	private TextField searchField;
+	
 	@FXML
 	private Label pathLabel;
 	
@@ -52,6 +70,11 @@ public class PlayListViewController
 	 */
 	private Main main;
 	
+	/**
+	 * The playlist entries matching the search field.
+	 */
+	private SearchResultList searchResults;
+	
     /**
      * The default constructor.
      * Called before the <i>initialize()</i> method.
@@ -70,6 +93,7 @@ public class PlayListViewController
     {
         // Initialize the playlist table.
         titleColumn.setCellValueFactory(cellData -> cellData.getValue().getTitleProperty());
+        titleColumn.setCellFactory(column -> new MetadataCell());
         
         // Clear the media item details.
         showMediaInfo(null);
@@ -83,6 +107,9 @@ public class PlayListViewController
         
         playListTable.setOnDragOver(playListFileDropListener());
         playListTable.setOnDragDropped(playListFileDropListener());
+        
+        searchField.textProperty().addListener(
+        		(observable, oldValue, newValue) -> search(newValue));
     }
     
     /**
@@ -97,27 +124,52 @@ public class PlayListViewController
     }
     
 	/**
-	 * Sets the text attribute of the labels to show media item information.
-	 * Clears labels if null.
+	 * Binds the text attribute of the labels to show media item information.
+	 * Requests the item's metadata if not yet known. Clears labels if null.
 	 * 
 	 * @param Track
 	 *            the media item or <i>null</i>
 	 */
     private void showMediaInfo(MediaItem track) 
     {
+    	titleLabel.textProperty().unbind();
+    	durationLabel.textProperty().unbind();
         if (track != null) 
         {
             // Fill the labels with info from the Track object.
         	pathLabel.setText(ConversionUtils.convertToFileName(track.getURI()));
-        	titleLabel.setText(track.getTitle());
+        	titleLabel.textProperty().bind(track.getTitleProperty());
+        	durationLabel.textProperty().bind(Bindings.createStringBinding(
+        			() -> formatDuration(track.getDuration()), track.getDurationProperty()));
+        	if(main != null)
+        	{
+        		main.getMetadataService().request(track);
+        	}
         } 
         else 
         {
         	pathLabel.setText("");
         	titleLabel.setText("");
+        	durationLabel.setText("");
         }
     }
     
+	/**
+	 * Formats a media duration for the duration label.
+	 * 
+	 * @param duration
+	 *            the Duration or <i>null</i> if not yet known.
+	 * @return the formatted duration, or an empty String if unknown.
+	 */
+    private static String formatDuration(Duration duration)
+    {
+    	if(duration == null || duration.isUnknown() || duration.isIndefinite())
+    	{
+    		return "";
+    	}
+    	return ConversionUtils.convertTimeInSeconds((int)duration.toSeconds());
+    }
+    
 	/**
 	 * Called by the main application to give it a reference back to itself.
 	 * 
@@ -128,8 +180,123 @@ public class PlayListViewController
         this.main = main;
 
         // Add observable list data to the table
+        this.searchResults = new SearchResultList(main.getSearchIndex());
         playListTable.setItems(main.getPlayList());
-        playListTable.getSelectionModel().select(main.getCurrent().get());
+        playListTable.setContextMenu(createContextMenu());
+        showCurrent();
+    }
+    
+	/**
+	 * Creates the playlist context menu: queue the selected entry to play
+	 * next, toggle shuffle and add a watched folder.
+	 * 
+	 * @return contextMenu the ContextMenu.
+	 */
+    private ContextMenu createContextMenu()
+    {
+    	MenuItem playNext = new MenuItem("Play Next");
+    	playNext.setOnAction(event -> 
+    	{
+    		int index = toSourceIndex(playListTable.getSelectionModel().getSelectedIndex());
+    		if(index >= 0)
+    		{
+    			main.getPlayOrder().enqueue(index);
+    		}
+    	});
+    	CheckMenuItem shuffle = new CheckMenuItem("Shuffle");
+    	shuffle.setSelected(main.getPlayOrder().isShuffle());
+    	shuffle.selectedProperty().addListener(
+    			(observable, oldValue, newValue) -> main.getPlayOrder().setShuffle(newValue));
+    	MenuItem watch = new MenuItem("Watch Folder...");
+    	watch.setOnAction(event -> 
+    	{
+    		File folder = new DirectoryChooser().showDialog(playListStage);
+    		if(folder != null)
+    		{
+    			main.watchFolder(folder);
+    		}
+    	});
+    	return new ContextMenu(playNext, shuffle, watch);
+    }
+    
+	/**
+	 * Selects the currently playing item and scrolls it into view. Called
+	 * each time the playlist window is shown.
+	 */
+    public void showCurrent()
+    {
+    	int current = toViewIndex(main.getCurrent().get());
+    	if(current >= 0 && current < playListTable.getItems().size())
+    	{
+    		playListTable.getSelectionModel().clearAndSelect(current);
+    		playListTable.scrollTo(current);
+    	}
+    }
+    
+	/**
+	 * Shows the entries matching the query, or the whole playlist for a query
+	 * shorter than a trigram. Keeps the selected entry selected if it matches.
+	 * 
+	 * @param query
+	 *            the text of the search field.
+	 */
+    private void search(String query)
+    {
+    	int selected = toSourceIndex(playListTable.getSelectionModel().getSelectedIndex());
+    	String trimmed = query.trim();
+    	searchResults.setQuery(trimmed.length() < TrigramIndex.GRAM ? "" : trimmed);
+    	playListTable.setItems(searchResults.getQuery().isEmpty() ? main.getPlayList() : searchResults);
+    	
+    	int index = toViewIndex(selected);
+    	if(index >= 0)
+    	{
+    		playListTable.getSelectionModel().clearAndSelect(index);
+    		playListTable.scrollTo(index);
+    	}
+    }
+    
+	/**
+	 * Maps a row of the table to its playlist position.
+	 * 
+	 * @param index
+	 *            the table row, or -1.
+	 * @return the playlist position, or -1.
+	 */
+    private int toSourceIndex(int index)
+    {
+    	if(index < 0 || playListTable.getItems() != searchResults)
+    	{
+    		return index;
+    	}
+    	return searchResults.getSourceIndex(index);
+    }
+    
+	/**
+	 * Maps a playlist position to its row in the table.
+	 * 
+	 * @param sourceIndex
+	 *            the playlist position, or -1.
+	 * @return the table row, or -1 if the entry is filtered out.
+	 */
+    private int toViewIndex(int sourceIndex)
+    {
+    	if(playListTable.getItems() != searchResults)
+    	{
+    		return sourceIndex;
+    	}
+    	return searchResults.getViewIndex(sourceIndex);
+    }
+    
+    /**
+     * Plays the selected entry.
+     */
+    private void playSelected()
+    {
+    	int index = toSourceIndex(playListTable.getSelectionModel().getSelectedIndex());
+    	if(index >= 0)
+    	{
+    		main.getCurrent().set(index);
+    	}
     }
 	
 	/**
@@ -147,9 +314,7 @@ public class PlayListViewController
         	{
         	    if (event.getClickCount()>1) 
         	    {
-					main.getCurrent().set(
-							playListTable.getSelectionModel()
-									.selectedIndexProperty().get());
+        	    	playSelected();
         	    }
         	}
         };
@@ -157,7 +322,8 @@ public class PlayListViewController
 	
 	/**
 	 * Listens for and reacts to {@link KeyEvent}s. keyReleased is used due to
-	 * triggering once per click.
+	 * triggering once per click. <i>Shortcut+O</i> opens and <i>Shortcut+S</i>
+	 * saves a playlist file.
 	 * 
 	 * @return {@code EventHandler<KeyEvent>}
 	 */
@@ -169,20 +335,75 @@ public class PlayListViewController
             {
             	if(e.getCode() == KeyCode.ESCAPE)
             	{
-            		playListStage.close();
+            		playListStage.hide();
             	}
             	if(e.getCode() == KeyCode.ENTER)
             	{
-            		main.getCurrent().set(
-							playListTable.getSelectionModel()
-									.selectedIndexProperty().get());
+            		playSelected();
+            	}
+            	if(e.isShortcutDown() && e.getCode() == KeyCode.O)
+            	{
+            		openPlayListFile();
+            	}
+            	if(e.isShortcutDown() && e.getCode() == KeyCode.S)
+            	{
+            		savePlayListFile();
             	}
             }
         };
 	}
 	
 	/**
-	 * Listens for and reacts to {@link DragEvent}s. 
+	 * Lets the user pick an M3U, M3U8 or PLS file and imports its entries.
+	 */
+	private void openPlayListFile()
+	{
+		FileChooser fileChooser = createPlayListChooser();
+		File file = fileChooser.showOpenDialog(playListStage);
+		if(file != null)
+		{
+			main.getImporter().importFiles(Collections.singletonList(file), null);
+		}
+	}
+	
+	/**
+	 * Lets the user pick a file and writes the playlist to it in the format
+	 * given by its extension.
+	 */
+	private void savePlayListFile()
+	{
+		FileChooser fileChooser = createPlayListChooser();
+		File file = fileChooser.showSaveDialog(playListStage);
+		if(file != null)
+		{
+			try
+			{
+				PlayListFiles.write(file.toPath(), main.getPlayList());
+			}
+			catch(IOException e)
+			{
+				Log.warn("Could not save playlist: {}", e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Creates a FileChooser filtered to playlist files.
+	 * 
+	 * @return fileChooser the FileChooser.
+	 */
+	private FileChooser createPlayListChooser()
+	{
+		FileChooser fileChooser = new FileChooser();
+		fileChooser.getExtensionFilters().addAll(
+				new FileChooser.ExtensionFilter("M3U Playlist", "*.m3u", "*.m3u8"),
+				new FileChooser.ExtensionFilter("PLS Playlist", "*.pls"));
+		return fileChooser;
+	}
+	
+	/**
+	 * Listens for and reacts to {@link DragEvent}s. Dropped files and folders
+	 * are handed to the background importer.
 	 * 
 	 * @return {@code EventHandler<DragEvent>}
 	 */
@@ -204,14 +425,9 @@ public class PlayListViewController
                 {
                 	if (db.hasFiles()) 
                     {
-                        for (File file : db.getFiles()) 
-                        {
-                            MediaItem track = new MediaItem(file.toURI());
-                            track.setURI(file.toURI());
-                            track.setTitle(file.getName());
-                            main.getPlayList().add(track);
-                        }
+                        main.getImporter().importFiles(db.getFiles(), null);
                     }
+                    event.setDropCompleted(db.hasFiles());
                 }
                 else 
                 {
@@ -220,4 +436,24 @@ public class PlayListViewController
             }
         };
 	}
+	
+	/**
+	 * A title cell requesting the metadata of its row's MediaItem when it is
+	 * shown, so that only visible rows are resolved.
+	 */
+	private class MetadataCell extends TableCell<MediaItem, String>
+	{
+		@Override
+		protected void updateItem(String title, boolean empty)
+		{
+			super.updateItem(title, empty);
+			setText(empty ? null : title);
+			
+			MediaItem item = empty || getTableRow() == null ? null : getTableRow().getItem();
+			if(item != null && main != null)
+			{
+				main.getMetadataService().request(item);
+			}
+		}
+	}
 }
@@ -0,0 +1,259 @@
+package mediaplayer.view;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.media.MediaPlayer;
+import mediaplayer.util.ConversionUtils;
+import mediaplayer.util.Log;
+
+/**
+ * Updates the progress bar and the progress clock once per pulse instead of on
+ * every change of the player's current time. The position is sampled at most
+ * once per frame, the progress bar is only set when it moved and the clock
+ * label only when the displayed second changed. While scrubbing, a preview
+ * position is shown instead of the sampled one.
+ * <p>
+ * The timer only runs while the player plays, so a paused or stopped player
+ * does not keep the pulse going. Samples and updates are counted per run of
+ * the timer and logged at debug level when it stops.
+ * </p>
+ * 
+ * @author Alex Hage
+ *
+ */
+public class ProgressUpdater extends AnimationTimer 
+{
+	/**
+	 * The smallest progress change worth a progress bar update.
+	 */
+	private static final double PROGRESS_STEP = 0.0005;
+	
+	private final ProgressBar progBar;
+	private final Label timeLabel;
+	
+	/**
+	 * The sampled MediaPlayer.
+	 */
+	private MediaPlayer mediaPlayer;
+	
+	/**
+	 * The last progress set on the progress bar.
+	 */
+	private double lastProgress;
+	
+	/**
+	 * The last second shown on the clock label.
+	 */
+	private int lastSecond;
+	
+	/**
+	 * The preview position in milliseconds, or a negative value if none.
+	 */
+	private double preview;
+	
+	/**
+	 * The timer is started.
+	 */
+	private boolean running;
+	
+	private long startNanos;
+	private long samples;
+	private long progressUpdates;
+	private long labelUpdates;
+	
+	/**
+	 * Constructs a new updater for the given controls.
+	 * 
+	 * @param progBar
+	 *            the ProgressBar to update.
+	 * @param timeLabel
+	 *            the Label showing the progress clock.
+	 */
+	public ProgressUpdater(ProgressBar progBar, Label timeLabel)
+	{
+		this.progBar = progBar;
+		this.timeLabel = timeLabel;
+		this.preview = -1;
+		resetCounters();
+	} //end ctor
+	
+	/**
+	 * Sets the MediaPlayer to sample and forces an update on the next pulse.
+	 * 
+	 * @param mediaPlayer
+	 *            the MediaPlayer or <i>null</i> to stop sampling.
+	 */
+	public void setMediaPlayer(MediaPlayer mediaPlayer)
+	{
+		this.mediaPlayer = mediaPlayer;
+		this.lastProgress = -1;
+		this.lastSecond = -1;
+		this.preview = -1;
+		if(!running)
+		{
+			update();
+		}
+	}
+	
+	/**
+	 * Starts sampling on every pulse while the player plays, and stops after
+	 * a last update otherwise.
+	 * 
+	 * @param playing
+	 *            true if the sampled player is playing.
+	 */
+	public void setPlaying(boolean playing)
+	{
+		if(playing)
+		{
+			start();
+		}
+		else
+		{
+			update();
+			stop();
+		}
+	}
+	
+	/**
+	 * Shows the given position instead of the player's until cleared.
+	 * 
+	 * @param millis
+	 *            the preview position in milliseconds.
+	 */
+	public void setPreview(double millis)
+	{
+		this.preview = millis;
+		if(!running)
+		{
+			update();
+		}
+	}
+	
+	/**
+	 * Goes back to showing the player's position.
+	 */
+	public void clearPreview()
+	{
+		this.preview = -1;
+		if(!running)
+		{
+			update();
+		}
+	}
+	
+	@Override
+	public void start()
+	{
+		if(!running)
+		{
+			running = true;
+			resetCounters();
+			super.start();
+		}
+	}
+	
+	@Override
+	public void stop()
+	{
+		if(running)
+		{
+			running = false;
+			super.stop();
+			Log.debug("Progress sampled {} times at {} Hz", getSampleCount(), Math.round(getSampleRate()));
+			Log.debug("Progress bar updated {} times, clock {} times", getProgressUpdateCount(), getLabelUpdateCount());
+		}
+	}
+	
+	@Override
+	public void handle(long now) 
+	{
+		update();
+	}
+	
+	/**
+	 * Samples the position and updates the progress bar and the clock label
+	 * if they changed.
+	 */
+	private void update()
+	{
+		if(mediaPlayer == null)
+		{
+			return;
+		}
+		samples++;
+		
+		double time = preview >= 0 ? preview : mediaPlayer.getCurrentTime().toMillis();
+		double total = mediaPlayer.getTotalDuration().toMillis();
+		double progress = total > 0 && !Double.isInfinite(total) ? time / total : 0;
+		if(Math.abs(progress - lastProgress) >= PROGRESS_STEP)
+		{
+			lastProgress = progress;
+			progBar.setProgress(progress);
+			progressUpdates++;
+		}
+		
+		int second = (int)(time / 1000);
+		if(second != lastSecond)
+		{
+			lastSecond = second;
+			timeLabel.setText(ConversionUtils.convertTimeInSeconds(second));
+			labelUpdates++;
+		}
+	}
+	
+	/**
+	 * Resets the sample and update counters. Done on every start of the
+	 * timer.
+	 */
+	public void resetCounters()
+	{
+		startNanos = System.nanoTime();
+		samples = 0;
+		progressUpdates = 0;
+		labelUpdates = 0;
+	}
+	
+	/**
+	 * Returns the number of position samples since the last start.
+	 * 
+	 * @return samples long.
+	 */
+	public long getSampleCount()
+	{
+		return samples;
+	}
+	
+	/**
+	 * Returns the number of progress bar updates since the last start.
+	 * 
+	 * @return progressUpdates long.
+	 */
+	public long getProgressUpdateCount()
+	{
+		return progressUpdates;
+	}
+	
+	/**
+	 * Returns the number of clock label updates since the last start.
+	 * 
+	 * @return labelUpdates long.
+	 */
+	public long getLabelUpdateCount()
+	{
+		return labelUpdates;
+	}
+	
+	/**
+	 * Returns the average number of position samples per second since the
+	 * last start.
+	 * 
+	 * @return the sample rate in Hz.
+	 */
+	public double getSampleRate()
+	{
+		double seconds = (System.nanoTime() - startNanos) / 1e9;
+		return seconds > 0 ? samples / seconds : 0;
+	}
+}
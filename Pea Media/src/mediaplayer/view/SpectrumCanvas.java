@@ -0,0 +1,267 @@
+package mediaplayer.view;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.media.AudioSpectrumListener;
+import javafx.scene.media.MediaPlayer;
+import javafx.scene.paint.Color;
+import jdk.jfr.EventType;
+import mediaplayer.telemetry.SpectrumUpdateEvent;
+
+/**
+ * A band-spectroscope drawn into a single Canvas. Band levels are smoothed
+ * into reused float buffers and drawn with one fill per band, so an update
+ * neither allocates nor touches the scene graph. The bars are mirrored around
+ * the vertical center, with a peak-hold mark above each one.
+ * 
+ * @author Alex Hage
+ *
+ */
+public class SpectrumCanvas extends Canvas implements AudioSpectrumListener 
+{
+	public static final int DEFAULT_BAND_COUNT = 64;
+	public static final double DEFAULT_UPDATE_INTERVAL = 0.05;
+	public static final float DEFAULT_SMOOTHING = 0.5f;
+	public static final float DEFAULT_PEAK_DECAY = 1.5f;
+	
+	private static final Color BAR_COLOR = Color.GREEN;
+	private static final Color PEAK_COLOR = Color.web("#5ff000");
+	
+	/**
+	 * The type of the update event, checked so that an update allocates no
+	 * event while none is recorded.
+	 */
+	private static final EventType UPDATE_EVENT = EventType.getEventType(SpectrumUpdateEvent.class);
+	
+	/**
+	 * The number of audio spectrum bands shown.
+	 */
+	private int bandCount;
+	
+	/**
+	 * The audio spectrum update interval in seconds.
+	 */
+	private double updateInterval;
+	
+	/**
+	 * The share of the previous level kept on each update, from 0 to 1.
+	 */
+	private float smoothing;
+	
+	/**
+	 * The level in dB a held peak falls per update.
+	 */
+	private float peakDecay;
+	
+	/**
+	 * The smoothed band levels in dB above the spectrum threshold.
+	 */
+	private float[] levels;
+	
+	/**
+	 * The held band peaks in dB above the spectrum threshold.
+	 */
+	private float[] peaks;
+	
+	/**
+	 * The spectrum threshold in dB of the attached player.
+	 */
+	private float threshold;
+	
+	/**
+	 * Constructs a new spectroscope of the given size with default settings.
+	 * 
+	 * @param width
+	 *            the width of the canvas.
+	 * @param height
+	 *            the height of the canvas.
+	 */
+	public SpectrumCanvas(double width, double height)
+	{
+		super(width, height);
+		this.updateInterval = DEFAULT_UPDATE_INTERVAL;
+		this.smoothing = DEFAULT_SMOOTHING;
+		this.peakDecay = DEFAULT_PEAK_DECAY;
+		this.threshold = -60;
+		setBandCount(DEFAULT_BAND_COUNT);
+	} //end ctor
+	
+	/**
+	 * Applies the band count and update interval to a MediaPlayer and clears
+	 * the levels of the previous media. Called before this canvas is set as
+	 * the player's AudioSpectrumListener.
+	 * 
+	 * @param player
+	 *            the MediaPlayer to take spectrum data from.
+	 */
+	public void attach(MediaPlayer player)
+	{
+		player.setAudioSpectrumNumBands(bandCount);
+		player.setAudioSpectrumInterval(updateInterval);
+		threshold = player.getAudioSpectrumThreshold();
+		clear();
+	}
+	
+	/**
+	 * Resets all levels and peaks and blanks the canvas.
+	 */
+	public void clear()
+	{
+		for(int i = 0; i < bandCount; i++)
+		{
+			levels[i] = 0;
+			peaks[i] = 0;
+		}
+		getGraphicsContext2D().clearRect(0, 0, getWidth(), getHeight());
+	}
+	
+	@Override
+	public void spectrumDataUpdate(double timestamp, double duration, float[] magnitudes, float[] phases) 
+	{
+		SpectrumUpdateEvent event = null;
+		if(UPDATE_EVENT.isEnabled())
+		{
+			event = new SpectrumUpdateEvent();
+			event.begin();
+		}
+		int bands = Math.min(bandCount, magnitudes.length);
+		float range = -threshold;
+		for(int i = 0; i < bands; i++)
+		{
+			float level = Math.max(0, Math.min(range, magnitudes[i] - threshold));
+			levels[i] = levels[i] * smoothing + level * (1 - smoothing);
+			peaks[i] = Math.max(levels[i], peaks[i] - peakDecay);
+		}
+		draw(bands, range);
+		if(event != null)
+		{
+			event.bands = bands;
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Draws the current levels and peaks.
+	 * 
+	 * @param bands
+	 *            the number of bands to draw.
+	 * @param range
+	 *            the level in dB drawn at full height.
+	 */
+	private void draw(int bands, float range)
+	{
+		GraphicsContext gc = getGraphicsContext2D();
+		double width = getWidth();
+		double height = getHeight();
+		double center = height / 2;
+		double barWidth = Math.max(1, Math.floor(width / bandCount) - 1);
+		double step = width / bandCount;
+		
+		gc.clearRect(0, 0, width, height);
+		gc.setFill(BAR_COLOR);
+		for(int i = 0; i < bands; i++)
+		{
+			double half = levels[i] / range * center;
+			gc.fillRect(i * step, center - half, barWidth, half * 2);
+		}
+		gc.setFill(PEAK_COLOR);
+		for(int i = 0; i < bands; i++)
+		{
+			gc.fillRect(i * step, center - peaks[i] / range * center, barWidth, 1);
+		}
+	}
+	
+	/**
+	 * Returns the number of bands shown.
+	 * 
+	 * @return bandCount the int to return.
+	 */
+	public int getBandCount()
+	{
+		return bandCount;
+	}
+	
+	/**
+	 * Sets the number of bands shown. Takes effect on the next attached
+	 * player.
+	 * 
+	 * @param bandCount
+	 *            the number of bands, at least 2.
+	 */
+	public void setBandCount(int bandCount)
+	{
+		if(bandCount < 2)
+		{
+			throw new IllegalArgumentException("bandCount < 2");
+		}
+		this.bandCount = bandCount;
+		this.levels = new float[bandCount];
+		this.peaks = new float[bandCount];
+	}
+	
+	/**
+	 * Returns the spectrum update interval.
+	 * 
+	 * @return updateInterval the interval in seconds.
+	 */
+	public double getUpdateInterval()
+	{
+		return updateInterval;
+	}
+	
+	/**
+	 * Sets the spectrum update interval. Takes effect on the next attached
+	 * player.
+	 * 
+	 * @param updateInterval
+	 *            the interval in seconds.
+	 */
+	public void setUpdateInterval(double updateInterval)
+	{
+		this.updateInterval = updateInterval;
+	}
+	
+	/**
+	 * Returns the smoothing factor.
+	 * 
+	 * @return smoothing the share of the previous level kept per update.
+	 */
+	public float getSmoothing()
+	{
+		return smoothing;
+	}
+	
+	/**
+	 * Sets the smoothing factor. 0 shows raw levels, values close to 1 react
+	 * slowly.
+	 * 
+	 * @param smoothing
+	 *            the share of the previous level kept per update, from 0 to
+	 *            1 exclusive.
+	 */
+	public void setSmoothing(float smoothing)
+	{
+		this.smoothing = Math.max(0, Math.min(0.99f, smoothing));
+	}
+	
+	/**
+	 * Returns the peak-hold decay.
+	 * 
+	 * @return peakDecay the level in dB a peak falls per update.
+	 */
+	public float getPeakDecay()
+	{
+		return peakDecay;
+	}
+	
+	/**
+	 * Sets the peak-hold decay.
+	 * 
+	 * @param peakDecay
+	 *            the level in dB a peak falls per update.
+	 */
+	public void setPeakDecay(float peakDecay)
+	{
+		this.peakDecay = peakDecay;
+	}
+}
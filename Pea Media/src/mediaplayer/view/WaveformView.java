@@ -0,0 +1,133 @@
+package mediaplayer.view;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import mediaplayer.io.Waveform;
+
+/**
+ * Draws a waveform overview over the progress bar: one column of the lowest
+ * to the highest peak per pixel, played columns in the accent color. The
+ * canvas follows the size of the pane. A progress change only redraws the
+ * columns passed meanwhile, so playback costs a few fills per pulse. Shows
+ * nothing without a waveform, leaving the progress bar below visible.
+ *
+ * @author Alex Hage
+ *
+ */
+public class WaveformView extends Pane
+{
+	private static final Color PLAYED_COLOR = Color.web("#5ff000");
+	private static final Color BACKGROUND_COLOR = Color.web("#333333");
+	private static final Color WAVE_COLOR = Color.web("#808080");
+
+	private final Canvas canvas = new Canvas();
+
+	/**
+	 * The shown overview, or <i>null</i>.
+	 */
+	private Waveform waveform;
+
+	/**
+	 * The progress shown, from 0 to 1.
+	 */
+	private double progress;
+
+	/**
+	 * Constructs an empty view.
+	 */
+	public WaveformView()
+	{
+		getChildren().add(canvas);
+		setMouseTransparent(true);
+	} //end ctor
+
+	/**
+	 * Shows a waveform overview, or none.
+	 *
+	 * @param waveform
+	 *            the Waveform, or <i>null</i> to show the plain progress bar.
+	 */
+	public void setWaveform(Waveform waveform)
+	{
+		this.waveform = waveform;
+		paint(0, (int)canvas.getWidth());
+	}
+
+	/**
+	 * Sets the progress and redraws the columns it passed.
+	 *
+	 * @param progress
+	 *            the progress, from 0 to 1.
+	 */
+	public void setProgress(double progress)
+	{
+		int from = column(this.progress);
+		int to = column(progress);
+		this.progress = progress;
+		if(waveform != null && from != to)
+		{
+			paint(Math.min(from, to), Math.max(from, to) + 1);
+		}
+	}
+
+	@Override
+	protected void layoutChildren()
+	{
+		double width = snapSizeX(getWidth());
+		double height = snapSizeY(getHeight());
+		if(canvas.getWidth() != width || canvas.getHeight() != height)
+		{
+			canvas.setWidth(width);
+			canvas.setHeight(height);
+			paint(0, (int)width);
+		}
+	}
+
+	private int column(double fraction)
+	{
+		return (int)(fraction * canvas.getWidth());
+	}
+
+	/**
+	 * Redraws a range of columns.
+	 *
+	 * @param from
+	 *            the first column.
+	 * @param to
+	 *            the column after the last.
+	 */
+	private void paint(int from, int to)
+	{
+		GraphicsContext g = canvas.getGraphicsContext2D();
+		double width = canvas.getWidth();
+		double height = canvas.getHeight();
+		to = Math.min(to, (int)width);
+		g.clearRect(from, 0, to - from, height);
+		if(waveform == null || to <= from)
+		{
+			return;
+		}
+		g.setFill(BACKGROUND_COLOR);
+		g.fillRect(from, 0, to - from, height);
+
+		int slices = waveform.size();
+		int played = column(progress);
+		double middle = height / 2;
+		for(int x = from; x < to; x++)
+		{
+			int first = (int)(x * slices / width);
+			int last = Math.max(first + 1, (int)((x + 1) * slices / width));
+			float low = 0;
+			float high = 0;
+			for(int i = first; i < last && i < slices; i++)
+			{
+				low = Math.min(low, waveform.getMin(i));
+				high = Math.max(high, waveform.getMax(i));
+			}
+			g.setFill(x < played ? PLAYED_COLOR : WAVE_COLOR);
+			g.fillRect(x, middle - high * middle, 1, Math.max(1, (high - low) * middle));
+		}
+	}
+}
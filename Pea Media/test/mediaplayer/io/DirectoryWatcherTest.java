@@ -0,0 +1,184 @@
+package mediaplayer.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import mediaplayer.model.CompactPlayList;
+import mediaplayer.model.MediaItem;
+
+/**
+ * Tests how {@link DirectoryWatcher} sorts a batch of events and applies it
+ * to the playlist. The batches are built by hand, so no events are waited for
+ * and no FX thread is needed.
+ *
+ * @author Alex Hage
+ *
+ */
+public class DirectoryWatcherTest
+{
+	private static final FileTime MODIFIED = FileTime.fromMillis(1_600_000_000_000L);
+
+	@TempDir
+	Path directory;
+
+	private CompactPlayList playList;
+	private DirectoryWatcher watcher;
+	private MediaItem first;
+	private MediaItem second;
+
+	@BeforeEach
+	public void setUp() throws IOException
+	{
+		playList = new CompactPlayList();
+		Path music = Files.createDirectory(directory.resolve("music"));
+		first = MediaImporter.createItem(write(music.resolve("first.mp3"), "first song", MODIFIED));
+		second = MediaImporter.createItem(write(music.resolve("second.mp3"), "second song", MODIFIED));
+		playList.addAll(first, second);
+		watcher = new DirectoryWatcher(playList, new MediaImporter(playList));
+		watcher.watch(directory);
+		//Batches are applied by the test only.
+		watcher.close();
+	}
+
+	@AfterEach
+	public void tearDown()
+	{
+		watcher.close();
+	}
+
+	@Test
+	public void renameKeepsTheEntry() throws IOException
+	{
+		Path from = directory.resolve("music/first.mp3");
+		Path to = Files.move(from, directory.resolve("music/renamed.mp3"));
+
+		apply(from, to);
+		assertEquals(2, playList.size());
+		assertSame(first, playList.get(0));
+		assertEquals(to.toUri(), first.getURI());
+		assertEquals("renamed", first.getTitle());
+	}
+
+	@Test
+	public void moveToAnotherFolderKeepsTheEntry() throws IOException
+	{
+		Path from = directory.resolve("music/second.mp3");
+		Path to = Files.move(from, Files.createDirectory(directory.resolve("other")).resolve("second.mp3"));
+
+		apply(from, to);
+		assertSame(second, playList.get(1));
+		assertEquals(to.toUri(), second.getURI());
+	}
+
+	@Test
+	public void replacementIsNewEntry() throws IOException
+	{
+		Path from = directory.resolve("music/first.mp3");
+		Files.delete(from);
+		//Same size as the deleted file, but written at another time.
+		Path to = write(directory.resolve("music/other.mp3"), "other song", FileTime.fromMillis(MODIFIED.toMillis() + 1000));
+
+		apply(from, to);
+		assertEquals(uris(directory.resolve("music/second.mp3"), to), uris(playList));
+		assertNotSame(first, playList.get(1));
+		assertEquals(directory.resolve("music/first.mp3").toUri(), first.getURI());
+	}
+
+	@Test
+	public void differentSizeIsNewEntry() throws IOException
+	{
+		Path from = directory.resolve("music/first.mp3");
+		Files.delete(from);
+		Path to = write(directory.resolve("music/longer.mp3"), "a longer song", MODIFIED);
+
+		apply(from, to);
+		assertEquals(uris(directory.resolve("music/second.mp3"), to), uris(playList));
+	}
+
+	@Test
+	public void deletesAndCreatesWithoutPartner() throws IOException
+	{
+		Path gone = directory.resolve("music/second.mp3");
+		Files.delete(gone);
+		Path added = write(directory.resolve("music/third.mp3"), "third", MODIFIED);
+		Path ignored = write(directory.resolve("music/notes.txt"), "first song", MODIFIED);
+
+		apply(gone, added, ignored);
+		assertEquals(uris(directory.resolve("music/first.mp3"), added), uris(playList));
+	}
+
+	@Test
+	public void deletedFolderDropsItsEntries() throws IOException
+	{
+		Path music = directory.resolve("music");
+		for(String name : new String[] {"first.mp3", "second.mp3"})
+		{
+			Files.delete(music.resolve(name));
+		}
+		Files.delete(music);
+
+		DirectoryWatcher.Batch batch = watcher.new Batch();
+		batch.deleted(music);
+		batch.prepare();
+		watcher.apply(batch);
+		assertEquals(0, playList.size());
+		assertEquals(1, watcher.getWatchedCount());
+	}
+
+	/**
+	 * Applies a batch holding the delete of the first path and the creates of
+	 * the others.
+	 */
+	private void apply(Path deleted, Path... created)
+	{
+		DirectoryWatcher.Batch batch = watcher.new Batch();
+		batch.deleted(deleted);
+		for(Path path : created)
+		{
+			batch.created(path);
+		}
+		batch.prepare();
+		watcher.apply(batch);
+	}
+
+	private static Path write(Path file, String content, FileTime modified) throws IOException
+	{
+		Files.writeString(file, content);
+		Files.setLastModifiedTime(file, modified);
+		return file;
+	}
+
+	private static List<URI> uris(Path... paths)
+	{
+		List<URI> uris = new ArrayList<URI>();
+		for(Path path : paths)
+		{
+			uris.add(path.toUri());
+		}
+		return uris;
+	}
+
+	private static List<URI> uris(CompactPlayList playList)
+	{
+		List<URI> uris = new ArrayList<URI>();
+		for(MediaItem item : playList)
+		{
+			uris.add(item.getURI());
+		}
+		return uris;
+	}
+}
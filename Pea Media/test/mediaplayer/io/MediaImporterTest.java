@@ -0,0 +1,178 @@
+package mediaplayer.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import mediaplayer.model.CompactPlayList;
+import mediaplayer.model.MediaItem;
+
+/**
+ * Tests that {@link MediaImporter} puts the items of an import in walk order
+ * although directories are listed in parallel, and runs the callback of every
+ * import whose items were inserted. Insertions are queued and run by the test
+ * in place of the FX thread.
+ *
+ * @author Alex Hage
+ *
+ */
+public class MediaImporterTest
+{
+	@TempDir
+	Path directory;
+
+	private CompactPlayList playList;
+	private BlockingQueue<Runnable> fxThread;
+	private MediaImporter importer;
+
+	@BeforeEach
+	public void setUp()
+	{
+		playList = new CompactPlayList();
+		fxThread = new LinkedBlockingQueue<Runnable>();
+		importer = new MediaImporter(playList, fxThread::add);
+	}
+
+	@Test
+	public void itemsAreInWalkOrder() throws Exception
+	{
+		Path root = Files.createDirectory(directory.resolve("music"));
+		for(int album = 0; album < 12; album++)
+		{
+			Path folder = Files.createDirectory(root.resolve("album" + album));
+			//Uneven sizes, so that listing finishes in varying order.
+			for(int track = 0; track < 1 + album * 7 % 5; track++)
+			{
+				Files.createFile(folder.resolve("track" + track + ".mp3"));
+			}
+			if(album % 3 == 0)
+			{
+				Path disc = Files.createDirectory(folder.resolve("disc2"));
+				Files.createFile(disc.resolve("bonus.mp3"));
+			}
+			Files.createFile(folder.resolve("cover.jpg"));
+		}
+		Files.createFile(root.resolve("intro.mp3"));
+		Files.createFile(root.resolve("zz.mp3"));
+		List<URI> expected = new ArrayList<URI>();
+		walk(root, expected);
+
+		for(int run = 0; run < 5; run++)
+		{
+			playList.clear();
+			importer.importFiles(Collections.singletonList(root.toFile()), null);
+			insertUntil(expected.size());
+			assertEquals(expected, uris(), "run " + run);
+		}
+	}
+
+	@Test
+	public void filesAndFoldersKeepTheirGivenOrder() throws Exception
+	{
+		Path first = Files.createFile(directory.resolve("first.mp3"));
+		Path folder = Files.createDirectory(directory.resolve("folder"));
+		Path inside = Files.createFile(folder.resolve("inside.mp3"));
+		Path last = Files.createFile(directory.resolve("last.wav"));
+
+		importer.importFiles(Arrays.asList(first.toFile(), folder.toFile(), last.toFile()), null);
+		insertUntil(3);
+		assertEquals(Arrays.asList(first.toUri(), inside.toUri(), last.toUri()), uris());
+	}
+
+	@Test
+	public void everyImportRunsItsCallback() throws Exception
+	{
+		Path opened = Files.createDirectory(directory.resolve("opened"));
+		Path dropped = Files.createDirectory(directory.resolve("dropped"));
+		for(int i = 0; i < 5; i++)
+		{
+			Files.createFile(opened.resolve("o" + i + ".mp3"));
+			Files.createFile(dropped.resolve("d" + i + ".mp3"));
+		}
+		AtomicInteger openedCalls = new AtomicInteger();
+		AtomicInteger droppedCalls = new AtomicInteger();
+		importer.importFiles(Collections.singletonList(dropped.toFile()), () -> droppedCalls.incrementAndGet());
+		importer.importFiles(Collections.singletonList(opened.toFile()), () -> openedCalls.incrementAndGet());
+
+		//Both imports finish before the scheduled insertion runs.
+		Runnable insertion = fxThread.poll(10, TimeUnit.SECONDS);
+		assertNotNull(insertion);
+		Thread.sleep(500);
+		insertion.run();
+		insertUntil(10);
+		assertEquals(1, openedCalls.get());
+		assertEquals(1, droppedCalls.get());
+	}
+
+	/**
+	 * Runs the queued insertions until the playlist holds the given number of
+	 * items.
+	 */
+	private void insertUntil(int size) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + 10000;
+		while(playList.size() < size && System.currentTimeMillis() < deadline)
+		{
+			Runnable insertion = fxThread.poll(100, TimeUnit.MILLISECONDS);
+			if(insertion != null)
+			{
+				insertion.run();
+			}
+		}
+		assertEquals(size, playList.size());
+	}
+
+	/**
+	 * Lists the supported files below a folder in walk order.
+	 */
+	private static void walk(Path folder, List<URI> uris) throws IOException
+	{
+		List<Path> entries = new ArrayList<Path>();
+		try(DirectoryStream<Path> stream = Files.newDirectoryStream(folder))
+		{
+			for(Path entry : stream)
+			{
+				entries.add(entry);
+			}
+		}
+		Collections.sort(entries);
+		for(Path entry : entries)
+		{
+			if(Files.isDirectory(entry))
+			{
+				walk(entry, uris);
+			}
+			else if(MediaImporter.isSupported(entry))
+			{
+				uris.add(entry.toUri());
+			}
+		}
+	}
+
+	private List<URI> uris()
+	{
+		List<URI> uris = new ArrayList<URI>();
+		for(MediaItem item : playList)
+		{
+			uris.add(item.getURI());
+		}
+		return uris;
+	}
+}
@@ -0,0 +1,83 @@
+package mediaplayer.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import mediaplayer.model.MediaItem;
+
+/**
+ * Tests the encodings {@link PlayListFiles} reads playlists in.
+ *
+ * @author Alex Hage
+ *
+ */
+public class PlayListFilesTest
+{
+	private static final String PLAYLIST = "#EXTM3U\n#EXTINF:61,Sigur Rós - Hoppípolla\nhoppipolla.mp3\n";
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void m3uInLegacyEncoding() throws IOException
+	{
+		List<MediaItem> items = read("list.m3u", PLAYLIST.getBytes(Charset.forName("windows-1252")));
+		assertEquals(1, items.size());
+		assertEquals("Sigur Rós - Hoppípolla", items.get(0).getTitle());
+		assertEquals(directory.resolve("hoppipolla.mp3").toUri(), items.get(0).getURI());
+	}
+
+	@Test
+	public void m3uInUtf8() throws IOException
+	{
+		List<MediaItem> items = read("list.m3u", PLAYLIST.getBytes(StandardCharsets.UTF_8));
+		assertEquals("Sigur Rós - Hoppípolla", items.get(0).getTitle());
+	}
+
+	@Test
+	public void plsInLegacyEncoding() throws IOException
+	{
+		String pls = "[playlist]\nFile1=cafe.mp3\nTitle1=Café\nLength1=10\nNumberOfEntries=1\n";
+		List<MediaItem> items = read("list.pls", pls.getBytes(Charset.forName("windows-1252")));
+		assertEquals("Café", items.get(0).getTitle());
+	}
+
+	@Test
+	public void m3u8ReplacesInvalidBytes() throws IOException
+	{
+		List<MediaItem> items = read("list.m3u8", PLAYLIST.getBytes(Charset.forName("windows-1252")));
+		assertEquals(1, items.size());
+		assertEquals("Sigur R�s - Hopp�polla", items.get(0).getTitle());
+	}
+
+	@Test
+	public void writtenPlayListReadsBack() throws IOException
+	{
+		Path file = directory.resolve("out.m3u");
+		List<MediaItem> written = read("list.m3u8", PLAYLIST.getBytes(StandardCharsets.UTF_8));
+		PlayListFiles.write(file, written);
+		List<MediaItem> items = new ArrayList<MediaItem>();
+		PlayListFiles.read(file, items::addAll);
+		assertEquals("Sigur Rós - Hoppípolla", items.get(0).getTitle());
+		assertEquals(written.get(0).getURI(), items.get(0).getURI());
+	}
+
+	private List<MediaItem> read(String name, byte[] content) throws IOException
+	{
+		Path file = directory.resolve(name);
+		Files.write(file, content);
+		List<MediaItem> items = new ArrayList<MediaItem>();
+		PlayListFiles.read(file, items::addAll);
+		return items;
+	}
+}
@@ -0,0 +1,141 @@
+package mediaplayer.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javafx.util.Duration;
+
+/**
+ * Tests that {@link ResumeStore} replays its journal, grows and compacts it,
+ * and keeps positions only away from the start and end of long media.
+ *
+ * @author Alex Hage
+ *
+ */
+public class ResumeStoreTest
+{
+	private static final Duration LENGTH = Duration.hours(24);
+
+	/**
+	 * The size of a new journal: the header and one chunk of records.
+	 */
+	private static final long INITIAL_SIZE = 16 + 4096 * 16;
+
+	@TempDir
+	File directory;
+
+	private File file;
+	private ResumeStore store;
+
+	@BeforeEach
+	public void setUp()
+	{
+		file = new File(directory, "resume.journal");
+		store = new ResumeStore(file);
+	}
+
+	@AfterEach
+	public void tearDown()
+	{
+		store.close();
+	}
+
+	@Test
+	public void positionsAreReplayedWhenReopened()
+	{
+		store.put(uri(1), Duration.minutes(5), LENGTH);
+		store.put(uri(2), Duration.minutes(7), LENGTH);
+		store.put(uri(1), Duration.minutes(6), LENGTH);
+		store.remove(uri(2));
+		reopen();
+		assertEquals(Duration.minutes(6), store.get(uri(1)));
+		assertNull(store.get(uri(2)));
+		assertEquals(1, store.size());
+	}
+
+	@Test
+	public void marginsAndShortMediaAreNotRemembered()
+	{
+		store.put(uri(1), Duration.seconds(10), LENGTH);
+		store.put(uri(2), LENGTH.subtract(Duration.seconds(10)), LENGTH);
+		store.put(uri(3), Duration.minutes(5), Duration.minutes(9));
+		store.put(uri(4), Duration.minutes(5), Duration.UNKNOWN);
+		assertNull(store.get(uri(1)));
+		assertNull(store.get(uri(2)));
+		assertNull(store.get(uri(3)));
+		assertEquals(Duration.minutes(5), store.get(uri(4)));
+
+		//Back within the margin forgets a remembered position.
+		store.put(uri(4), Duration.seconds(5), LENGTH);
+		assertNull(store.get(uri(4)));
+		assertEquals(0, store.size());
+	}
+
+	@Test
+	public void journalGrowsForMorePositions()
+	{
+		int count = 10000;
+		for(int i = 0; i < count; i++)
+		{
+			store.put(uri(i), Duration.seconds(60 + i), LENGTH);
+		}
+		assertEquals(count, store.size());
+		reopen();
+		assertEquals(count, store.size());
+		assertTrue(file.length() > INITIAL_SIZE);
+		for(int i = 0; i < count; i++)
+		{
+			assertEquals(Duration.seconds(60 + i), store.get(uri(i)));
+		}
+	}
+
+	@Test
+	public void outdatedRecordsAreCompacted()
+	{
+		//Enough updates of a few positions to fill several chunks.
+		for(int i = 0; i < 20000; i++)
+		{
+			store.put(uri(i % 3), Duration.seconds(60 + i), LENGTH);
+		}
+		assertEquals(INITIAL_SIZE, file.length());
+		reopen();
+		assertEquals(3, store.size());
+		assertEquals(Duration.seconds(60 + 19998), store.get(uri(0)));
+		assertEquals(Duration.seconds(60 + 19999), store.get(uri(1)));
+		assertEquals(Duration.seconds(60 + 19997), store.get(uri(2)));
+	}
+
+	@Test
+	public void foreignFileKeepsPositionsInMemory() throws IOException
+	{
+		Files.writeString(file.toPath(), "not a journal");
+		store.put(uri(1), Duration.minutes(5), LENGTH);
+		assertEquals(Duration.minutes(5), store.get(uri(1)));
+		assertEquals("not a journal", Files.readString(file.toPath()));
+	}
+
+	/**
+	 * Closes the store and opens a new one on the same journal.
+	 */
+	private void reopen()
+	{
+		store.close();
+		store = new ResumeStore(file);
+	}
+
+	private static URI uri(int number)
+	{
+		return URI.create("file:///video/episode" + number + ".mkv");
+	}
+}
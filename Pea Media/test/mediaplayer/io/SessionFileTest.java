@@ -0,0 +1,153 @@
+package mediaplayer.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javafx.util.Duration;
+import mediaplayer.model.MediaItem;
+import mediaplayer.util.ConversionUtils;
+
+/**
+ * Tests that {@link SessionFile} reads back the playlist, current index and
+ * position it wrote, and rejects files that are truncated or not sessions.
+ *
+ * @author Alex Hage
+ *
+ */
+public class SessionFileTest
+{
+	@TempDir
+	File directory;
+
+	private File file;
+
+	@BeforeEach
+	public void setUp()
+	{
+		file = new File(directory, "session.bin");
+	}
+
+	@Test
+	public void entriesRoundTrip() throws IOException
+	{
+		List<MediaItem> items = new ArrayList<MediaItem>();
+		items.add(item("file:///music/album/01%20intro.mp3", null, Duration.millis(61500)));
+		items.add(item("file:///music/album/02.mp3", "Custom title", Duration.UNKNOWN));
+		items.add(item("file:///music/other/03.mp3", null, Duration.INDEFINITE));
+		items.add(item("file:///music/album/04.mp3", "", null));
+		items.add(item("http://radio.example/stream", null, Duration.ZERO));
+
+		SessionFile.write(file, items, 3, 123456789012L);
+		List<MediaItem> read = new ArrayList<MediaItem>();
+		SessionFile session = SessionFile.read(file, read::addAll);
+
+		assertEquals(3, session.getCurrent());
+		assertEquals(123456789012L, session.getPosition());
+		assertEquals(items.size(), session.getCount());
+		assertEquals(items.size(), read.size());
+		for(int i = 0; i < items.size(); i++)
+		{
+			assertEquals(items.get(i).getURI(), read.get(i).getURI(), "uri " + i);
+			assertEquals(items.get(i).getTitle(), read.get(i).getTitle(), "title " + i);
+		}
+		assertEquals(Duration.millis(61500), read.get(0).getDuration());
+		assertTrue(read.get(1).getDuration().isUnknown());
+		assertTrue(read.get(2).getDuration().isIndefinite());
+		assertNull(read.get(3).getDuration());
+		assertEquals(Duration.ZERO, read.get(4).getDuration());
+	}
+
+	@Test
+	public void sharedPrefixesAreWrittenOnce() throws IOException
+	{
+		List<MediaItem> items = new ArrayList<MediaItem>();
+		for(int i = 0; i < 2500; i++)
+		{
+			items.add(item("file:///music/a%20rather%20long%20folder%20name/" + (i % 2) + "/track" + i + ".mp3", null, Duration.seconds(i)));
+		}
+		SessionFile.write(file, items, 0, 0);
+		assertTrue(file.length() < items.size() * 20, "size " + file.length());
+
+		List<Integer> batches = new ArrayList<Integer>();
+		List<MediaItem> read = new ArrayList<MediaItem>();
+		SessionFile.read(file, batch ->
+		{
+			batches.add(batch.size());
+			read.addAll(batch);
+		});
+		assertEquals(Arrays.asList(1000, 1000, 500), batches);
+		for(int i = 0; i < items.size(); i++)
+		{
+			assertEquals(items.get(i).getURI(), read.get(i).getURI());
+			assertEquals(Duration.seconds(i), read.get(i).getDuration());
+		}
+	}
+
+	@Test
+	public void truncatedFileIsCorrupt() throws IOException
+	{
+		List<MediaItem> items = new ArrayList<MediaItem>();
+		for(int i = 0; i < 10; i++)
+		{
+			items.add(item("file:///music/" + i + ".mp3", "Title " + i, Duration.minutes(i)));
+		}
+		SessionFile.write(file, items, 0, 0);
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 5));
+		assertThrows(IOException.class, () -> SessionFile.read(file, batch -> {}));
+
+		Files.write(file.toPath(), Arrays.copyOf(bytes, 10));
+		assertThrows(IOException.class, () -> SessionFile.read(file, batch -> {}));
+	}
+
+	@Test
+	public void foreignFileIsRejected() throws IOException
+	{
+		Files.writeString(file.toPath(), "this is not a session file at all");
+		assertThrows(IOException.class, () -> SessionFile.read(file, batch -> {}));
+
+		//A prefix number that was never defined.
+		byte[] bytes = new byte[26];
+		ByteBuffer.wrap(bytes).putInt(0x50454153).putInt(1).putInt(0).putLong(0).putInt(1).put((byte)5);
+		Files.write(file.toPath(), bytes);
+		assertThrows(IOException.class, () -> SessionFile.read(file, batch -> {}));
+	}
+
+	@Test
+	public void failedWriteLeavesNoTemporaryFile() throws IOException
+	{
+		//A directory in place of the session cannot be replaced.
+		assertTrue(file.mkdir());
+		Files.createFile(file.toPath().resolve("child"));
+		List<MediaItem> items = Arrays.asList(item("file:///music/1.mp3", null, null));
+		assertThrows(IOException.class, () -> SessionFile.write(file, items, 0, 0));
+		assertFalse(new File(directory, file.getName() + ".tmp").exists());
+	}
+
+	/**
+	 * Creates an item with a title, or the derived file name if <i>null</i>.
+	 */
+	private static MediaItem item(String uri, String title, Duration duration)
+	{
+		MediaItem item = new MediaItem(URI.create(uri));
+		item.setTitle(title != null ? title : ConversionUtils.convertToFileName(item.getURI()));
+		item.setDuration(duration);
+		return item;
+	}
+}
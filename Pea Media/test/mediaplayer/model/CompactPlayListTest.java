@@ -0,0 +1,211 @@
+package mediaplayer.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javafx.collections.ListChangeListener;
+
+/**
+ * Tests the slot handling of {@link CompactPlayList}.
+ *
+ * @author Alex Hage
+ *
+ */
+public class CompactPlayListTest
+{
+	private CompactPlayList list;
+	private List<Part> changes;
+
+	@BeforeEach
+	public void setUp()
+	{
+		list = new CompactPlayList();
+		changes = new ArrayList<Part>();
+	}
+
+	@Test
+	public void removedSlotIsReused()
+	{
+		MediaItem a = item("a");
+		MediaItem b = item("b");
+		MediaItem c = item("c");
+		list.addAll(a, b, c);
+		int slot = list.slotOf(b);
+
+		list.remove(b);
+		assertEquals(-1, list.slotOf(b));
+		assertEquals(-1, list.indexOfSlot(slot));
+		assertEquals(URI.create("file:///music/b.mp3"), b.getURI());
+		assertEquals(1, list.indexOf(c));
+
+		MediaItem d = item("d");
+		list.add(d);
+		assertEquals(slot, list.slotOf(d));
+		assertEquals(2, list.indexOfSlot(slot));
+		assertSame(d, list.getBySlot(slot));
+		assertEquals("file:///music/d.mp3", list.uriStringAt(2));
+	}
+
+	@Test
+	public void sortPermutesSlots()
+	{
+		MediaItem c = item("c");
+		MediaItem a = item("a");
+		MediaItem b = item("b");
+		list.addAll(c, a, b);
+		int[] slots = {list.slotOf(a), list.slotOf(b), list.slotOf(c)};
+		record();
+
+		list.sort(Comparator.comparing(MediaItem::getTitle));
+		assertEquals(Arrays.asList(a, b, c), list);
+		assertEquals(slots[0], list.slotOf(a));
+		assertEquals(slots[1], list.slotOf(b));
+		assertEquals(slots[2], list.slotOf(c));
+		assertPermutation(new int[] {2, 0, 1});
+	}
+
+	@Test
+	public void setAllWithSameItemsPermutes()
+	{
+		MediaItem a = item("a");
+		MediaItem b = item("b");
+		MediaItem c = item("c");
+		list.addAll(a, b, c);
+		int slotA = list.slotOf(a);
+		int slotC = list.slotOf(c);
+		record();
+
+		assertTrue(list.setAll(Arrays.asList(c, b, a)));
+		assertEquals(Arrays.asList(c, b, a), list);
+		assertEquals(slotA, list.slotOf(a));
+		assertEquals(slotC, list.slotOf(c));
+		assertEquals(2, list.indexOfSlot(slotA));
+		assertPermutation(new int[] {2, 1, 0});
+	}
+
+	@Test
+	public void setAllWithOtherItemsReplaces()
+	{
+		MediaItem a = item("a");
+		MediaItem b = item("b");
+		list.addAll(a, b);
+		record();
+
+		MediaItem c = item("c");
+		list.setAll(Arrays.asList(b, c));
+		assertEquals(Arrays.asList(b, c), list);
+		assertEquals(-1, list.slotOf(a));
+		assertTrue(list.slotOf(c) >= 0);
+		assertEquals(1, changes.size());
+		assertFalse(changes.get(0).permutated);
+		assertTrue(changes.get(0).replaced);
+	}
+
+	@Test
+	public void removeRangeFiresOneChange()
+	{
+		MediaItem[] items = new MediaItem[5];
+		for(int i = 0; i < items.length; i++)
+		{
+			items[i] = item("track" + i);
+		}
+		list.addAll(items);
+		int[] removedSlots = {list.slotOf(items[1]), list.slotOf(items[2]), list.slotOf(items[3])};
+		record();
+
+		list.remove(1, 4);
+		assertEquals(Arrays.asList(items[0], items[4]), list);
+		assertEquals(1, list.indexOfSlot(list.slotOf(items[4])));
+		for(int slot : removedSlots)
+		{
+			assertEquals(-1, list.indexOfSlot(slot));
+		}
+		assertEquals(-1, list.slotOf(items[2]));
+
+		assertEquals(1, changes.size());
+		Part change = changes.get(0);
+		assertTrue(change.removed);
+		assertFalse(change.added);
+		assertEquals(1, change.from);
+		assertEquals(Arrays.asList(items[1], items[2], items[3]), change.removedItems);
+
+		list.add(item("again"));
+		assertTrue(Arrays.stream(removedSlots).anyMatch(slot -> slot == list.slotAt(2)));
+	}
+
+	/**
+	 * Records every part of the changes of the list.
+	 */
+	private void record()
+	{
+		list.addListener((ListChangeListener<MediaItem>)change ->
+		{
+			while(change.next())
+			{
+				changes.add(new Part(change));
+			}
+		});
+	}
+
+	/**
+	 * Checks that a single permutation moving each old position to the given
+	 * new one was fired.
+	 */
+	private void assertPermutation(int[] expected)
+	{
+		assertEquals(1, changes.size());
+		Part change = changes.get(0);
+		assertTrue(change.permutated);
+		for(int i = 0; i < expected.length; i++)
+		{
+			assertEquals(expected[i], change.permutation[i - change.from], "Position " + i);
+		}
+	}
+
+	/**
+	 * The part of a change, which is only valid while the listener runs.
+	 */
+	private static final class Part
+	{
+		final boolean permutated;
+		final boolean replaced;
+		final boolean added;
+		final boolean removed;
+		final int from;
+		final int[] permutation;
+		final List<MediaItem> removedItems;
+
+		Part(ListChangeListener.Change<? extends MediaItem> change)
+		{
+			this.permutated = change.wasPermutated();
+			this.replaced = change.wasReplaced();
+			this.added = change.wasAdded();
+			this.removed = change.wasRemoved();
+			this.from = change.getFrom();
+			this.permutation = new int[change.getTo() - from];
+			for(int i = 0; permutated && i < permutation.length; i++)
+			{
+				permutation[i] = change.getPermutation(from + i);
+			}
+			this.removedItems = new ArrayList<MediaItem>(change.getRemoved());
+		} //end ctor
+	}
+
+	private static MediaItem item(String name)
+	{
+		MediaItem item = new MediaItem(URI.create("file:///music/" + name + ".mp3"));
+		item.setTitle(name);
+		return item;
+	}
+}
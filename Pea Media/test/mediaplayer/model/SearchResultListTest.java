@@ -0,0 +1,197 @@
+package mediaplayer.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javafx.collections.ListChangeListener;
+
+/**
+ * Tests that {@link SearchResultList} reports exactly the difference between
+ * its previous and current results.
+ *
+ * @author Alex Hage
+ *
+ */
+public class SearchResultListTest
+{
+	private CompactPlayList list;
+	private SearchResultList results;
+
+	/**
+	 * The results as rebuilt from the reported changes alone.
+	 */
+	private List<MediaItem> mirror;
+
+	private int replaces;
+	private int permutations;
+
+	@BeforeEach
+	public void setUp()
+	{
+		list = new CompactPlayList();
+		for(String name : new String[] {"red song", "blue song", "red tune", "green song", "red song two"})
+		{
+			MediaItem item = new MediaItem(URI.create("file:///music/" + name.replace(" ", "%20") + ".mp3"));
+			item.setTitle(name);
+			list.add(item);
+		}
+		results = new SearchResultList(new TrigramIndex(list));
+		mirror = new ArrayList<MediaItem>();
+		results.addListener((ListChangeListener<MediaItem>)change ->
+		{
+			while(change.next())
+			{
+				if(change.wasPermutated())
+				{
+					permutations++;
+					List<MediaItem> moved = new ArrayList<MediaItem>(mirror);
+					for(int i = change.getFrom(); i < change.getTo(); i++)
+					{
+						moved.set(change.getPermutation(i), mirror.get(i));
+					}
+					mirror.clear();
+					mirror.addAll(moved);
+					continue;
+				}
+				if(change.wasReplaced())
+				{
+					replaces++;
+				}
+				mirror.subList(change.getFrom(), change.getFrom() + change.getRemovedSize()).clear();
+				mirror.addAll(change.getFrom(), change.getAddedSubList());
+			}
+		});
+	}
+
+	@Test
+	public void typingReportsRemovals()
+	{
+		results.setQuery("red");
+		assertResults("red song", "red tune", "red song two");
+		results.setQuery("red s");
+		assertResults("red song", "red song two");
+		results.setQuery("song");
+		assertResults("red song", "blue song", "green song", "red song two");
+		results.setQuery("");
+		assertResults();
+		assertEquals(0, replaces);
+	}
+
+	@Test
+	public void playlistChangesAreDiffed()
+	{
+		results.setQuery("song");
+		list.add(1, item("new song"));
+		assertResults("red song", "new song", "blue song", "green song", "red song two");
+		list.remove(2);
+		assertResults("red song", "new song", "green song", "red song two");
+		list.set(1, item("new tune"));
+		assertResults("red song", "green song", "red song two");
+		assertEquals(0, replaces);
+	}
+
+	@Test
+	public void reorderingIsAPermutation()
+	{
+		results.setQuery("song");
+		list.sort((a, b) -> a.getTitle().compareTo(b.getTitle()));
+		assertResults("blue song", "green song", "red song", "red song two");
+		assertEquals(1, permutations);
+	}
+
+	@Test
+	public void replacedEntriesAreReported()
+	{
+		results.setQuery("song");
+		List<MediaItem> items = new ArrayList<MediaItem>();
+		for(String name : new String[] {"other song", "red song", "blue song"})
+		{
+			items.add(item(name));
+		}
+		list.setAll(items);
+		assertResults("other song", "red song", "blue song");
+		assertFalse(results.isEmpty());
+	}
+
+	@Test
+	public void viewIndexMapsBack()
+	{
+		results.setQuery("red");
+		for(int i = 0; i < results.size(); i++)
+		{
+			assertEquals(i, results.getViewIndex(results.getSourceIndex(i)));
+		}
+		assertEquals(-1, results.getViewIndex(1));
+		assertEquals(-1, results.getViewIndex(list.size()));
+	}
+
+	@Test
+	public void randomChangesAreReported()
+	{
+		Random random = new Random(3);
+		String[] words = {"red", "blue", "song", "tune", "green", "two"};
+		String[] queries = {"", "red", "red s", "son", "song", "tune", "ree", "two"};
+		for(int round = 0; round < 2000; round++)
+		{
+			switch(random.nextInt(8))
+			{
+				case 0:
+				case 1:
+					list.add(random.nextInt(list.size() + 1), item(words[random.nextInt(words.length)] + " "
+							+ words[random.nextInt(words.length)] + " " + round));
+					break;
+				case 2:
+					if(list.size() > 40)
+					{
+						int from = random.nextInt(list.size());
+						list.remove(from, Math.min(list.size(), from + 1 + random.nextInt(4)));
+					}
+					break;
+				case 3:
+					list.set(random.nextInt(list.size()), item(words[random.nextInt(words.length)] + " " + round));
+					break;
+				case 4:
+					if(random.nextInt(10) == 0)
+					{
+						list.sort((a, b) -> a.getTitle().compareTo(b.getTitle()));
+					}
+					break;
+				default:
+					results.setQuery(queries[random.nextInt(queries.length)]);
+					break;
+			}
+			assertTrue(mirror.equals(results), "Reported changes: " + mirror + " instead of " + results);
+		}
+	}
+
+	/**
+	 * Checks the results and that the reported changes lead to them.
+	 */
+	private void assertResults(String... titles)
+	{
+		List<String> found = new ArrayList<String>();
+		for(MediaItem item : results)
+		{
+			found.add(item.getTitle());
+		}
+		assertEquals(Arrays.asList(titles), found);
+		assertTrue(mirror.equals(results), "Reported changes: " + mirror + " instead of " + results);
+	}
+
+	private static MediaItem item(String name)
+	{
+		MediaItem item = new MediaItem(URI.create("file:///music/" + name.replace(" ", "%20") + ".mp3"));
+		item.setTitle(name);
+		return item;
+	}
+}
@@ -0,0 +1,163 @@
+package mediaplayer.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import mediaplayer.util.ConversionUtils;
+
+/**
+ * Tests {@link TrigramIndex} against a plain scan of the playlist while the
+ * playlist changes.
+ *
+ * @author Alex Hage
+ *
+ */
+public class TrigramIndexTest
+{
+	private static final String[] WORDS = {"alpha", "beta", "gamma", "delta", "Ærø", "mix", "live", "track"};
+
+	private final Random random = new Random(7);
+
+	@Test
+	public void findsTitlesFileNamesAndFolders()
+	{
+		CompactPlayList list = new CompactPlayList();
+		TrigramIndex index = new TrigramIndex(list);
+		MediaItem titled = item("Rock/Album/01%20Intro.mp3", "Opening Night");
+		MediaItem named = item("Jazz/Live%20Set/02%20Blue%20Train.mp3", null);
+		list.addAll(titled, named);
+
+		assertArrayEquals(new int[] {list.slotOf(titled)}, index.search("NING NIG"));
+		assertArrayEquals(new int[] {list.slotOf(named)}, index.search("blue train"));
+		assertArrayEquals(new int[] {list.slotOf(named)}, index.search("live set"));
+		assertArrayEquals(new int[] {list.slotOf(titled), list.slotOf(named)}, index.search(".mp3"));
+		assertEquals(0, index.search("in").length);
+		assertEquals(0, index.search("nope").length);
+	}
+
+	@Test
+	public void followsChanges()
+	{
+		CompactPlayList list = new CompactPlayList();
+		TrigramIndex index = new TrigramIndex(list);
+		List<MediaItem> items = new ArrayList<MediaItem>();
+		for(int i = 0; i < 2000; i++)
+		{
+			items.add(randomItem());
+		}
+		list.addAll(items);
+		check(list, index);
+
+		for(int round = 0; round < 5000; round++)
+		{
+			//Grows about as much as it shrinks.
+			switch(random.nextInt(list.size() < 100 ? 1 : 6))
+			{
+				case 0:
+				case 5:
+					list.add(random.nextInt(list.size() + 1), randomItem());
+					break;
+				case 1:
+					list.remove(random.nextInt(list.size()));
+					break;
+				case 2:
+					list.get(random.nextInt(list.size())).setTitle(random.nextBoolean() ? words() : null);
+					break;
+				case 3:
+					list.set(random.nextInt(list.size()), randomItem());
+					break;
+				default:
+					int from = random.nextInt(list.size());
+					list.remove(from, Math.min(list.size(), from + random.nextInt(10)));
+					break;
+			}
+			if(round % 100 == 0)
+			{
+				check(list, index);
+			}
+		}
+		list.sort((a, b) -> a.getURI().compareTo(b.getURI()));
+		check(list, index);
+	}
+
+	/**
+	 * Compares the results of queries taken from the entries with a scan.
+	 */
+	private void check(CompactPlayList list, TrigramIndex index)
+	{
+		for(int q = 0; q < 30; q++)
+		{
+			String text = list.get(random.nextInt(list.size())).getTitle() + "/"
+					+ list.get(random.nextInt(list.size())).getURI();
+			int length = 3 + random.nextInt(6);
+			int from = random.nextInt(Math.max(1, text.length() - length));
+			String query = text.substring(from, Math.min(text.length(), from + length));
+			if(query.length() < TrigramIndex.GRAM)
+			{
+				continue;
+			}
+			assertArrayEquals(scan(list, query), index.search(query), query);
+		}
+	}
+
+	private static int[] scan(CompactPlayList list, String query)
+	{
+		String text = query.toLowerCase(Locale.ROOT);
+		List<Integer> found = new ArrayList<Integer>();
+		for(int i = 0; i < list.size(); i++)
+		{
+			int slot = list.slotAt(i);
+			//A title taken from the file name is not searched apart from it.
+			String title = list.storedTitleAt(slot);
+			String uri = list.uriStringAt(i);
+			int split = uri.lastIndexOf('/') + 1;
+			String folder = decode(uri.substring(0, split));
+			String name = decode(uri.substring(split));
+			if((title != null && title.toLowerCase(Locale.ROOT).contains(text)) || folder.contains(text)
+					|| name.contains(text))
+			{
+				found.add(slot);
+			}
+		}
+		return found.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	private static String decode(String part)
+	{
+		return URLDecoder.decode(part.replace("+", "%2B"), StandardCharsets.UTF_8).toLowerCase(Locale.ROOT);
+	}
+
+	private MediaItem randomItem()
+	{
+		String path = WORDS[random.nextInt(WORDS.length)] + "/" + random.nextInt(30) + "/"
+				+ words().replace(" ", "%20") + ".mp3";
+		return item(path, random.nextInt(3) == 0 ? words() : null);
+	}
+
+	private String words()
+	{
+		StringBuilder out = new StringBuilder();
+		for(int i = 1 + random.nextInt(3); i > 0; i--)
+		{
+			out.append(WORDS[random.nextInt(WORDS.length)]).append(i > 1 ? " " : "");
+		}
+		return out.toString();
+	}
+
+	private static MediaItem item(String path, String title)
+	{
+		MediaItem item = new MediaItem(URI.create("file:///music/" + path.replace("Æ", "%C3%86").replace("ø", "%C3%B8")));
+		item.setTitle(title != null ? title : ConversionUtils.convertToFileName(item.getURI()));
+		return item;
+	}
+}
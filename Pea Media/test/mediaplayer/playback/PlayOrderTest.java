@@ -0,0 +1,187 @@
+package mediaplayer.playback;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import mediaplayer.model.CompactPlayList;
+import mediaplayer.model.MediaItem;
+
+/**
+ * Tests the sequencing of {@link PlayOrder}: list order, the queue, the
+ * history, shuffled cycles and following the current entry through playlist
+ * changes.
+ *
+ * @author Alex Hage
+ *
+ */
+public class PlayOrderTest
+{
+	private CompactPlayList playList;
+	private IntegerProperty current;
+	private PlayOrder order;
+
+	@BeforeEach
+	public void setUp()
+	{
+		playList = new CompactPlayList();
+		for(int i = 0; i < 5; i++)
+		{
+			playList.add(item(i));
+		}
+		current = new SimpleIntegerProperty(0);
+		order = new PlayOrder(playList, current, new Random(7));
+		order.playing(0);
+	}
+
+	@Test
+	public void listOrderWrapsAround()
+	{
+		assertEquals(1, order.peekNext());
+		assertArrayEquals(new int[] {1, 2, 3, 4, 0}, order.upcoming(10));
+		assertEquals(1, advance());
+		assertEquals(2, advance());
+		assertEquals(3, advance());
+		assertEquals(4, advance());
+		assertEquals(0, advance());
+	}
+
+	@Test
+	public void queuedEntriesPlayFirst()
+	{
+		order.enqueue(3);
+		order.enqueue(1);
+		assertEquals(3, order.peekNext());
+		assertArrayEquals(new int[] {3, 1, 1, 2}, order.upcoming(4));
+		assertEquals(3, advance());
+		assertEquals(1, advance());
+		assertEquals(0, order.getQueueSize());
+		assertEquals(2, advance());
+	}
+
+	@Test
+	public void removedQueuedEntryIsSkipped()
+	{
+		order.enqueue(3);
+		order.enqueue(4);
+		playList.remove(3);
+		assertEquals(3, order.peekNext());
+		assertEquals(3, advance());
+		assertEquals(uri(4), playList.get(3).getURI());
+	}
+
+	@Test
+	public void previousStepsBackThroughHistory()
+	{
+		advance();
+		advance();
+		current.set(order.previous());
+		assertEquals(1, current.get());
+		current.set(order.previous());
+		assertEquals(0, current.get());
+		//Without history, the previous entry in list order.
+		current.set(order.previous());
+		assertEquals(4, current.get());
+	}
+
+	@Test
+	public void shuffledCyclePlaysEveryEntryOnce()
+	{
+		order.setShuffle(true);
+		Set<Integer> played = new HashSet<Integer>();
+		played.add(0);
+		for(int i = 1; i < playList.size(); i++)
+		{
+			int peeked = order.peekNext();
+			int index = advance();
+			assertEquals(peeked, index);
+			assertTrue(played.add(index), "played twice: " + index);
+		}
+		assertEquals(playList.size(), played.size());
+
+		//The next cycle does not open with the entry just played.
+		int last = current.get();
+		assertFalse(advance() == last);
+	}
+
+	@Test
+	public void addedEntriesJoinTheShuffledCycle()
+	{
+		order.setShuffle(true);
+		advance();
+		playList.add(item(5));
+		playList.add(item(6));
+		Set<URI> played = new HashSet<URI>();
+		for(int i = 0; i < 5; i++)
+		{
+			played.add(playList.get(advance()).getURI());
+		}
+		assertTrue(played.contains(uri(5)));
+		assertTrue(played.contains(uri(6)));
+	}
+
+	@Test
+	public void currentFollowsItsEntry()
+	{
+		advance();
+		advance();
+		playList.add(0, item(9));
+		assertEquals(3, current.get());
+		playList.sort((a, b) -> b.getURI().compareTo(a.getURI()));
+		assertEquals(uri(2), playList.get(current.get()).getURI());
+		assertEquals(uri(1), playList.get(order.peekNext()).getURI());
+	}
+
+	@Test
+	public void removedCurrentEntryPlaysItsSuccessorNext()
+	{
+		advance();
+		playList.remove(1);
+		assertEquals(1, current.get());
+		assertEquals(uri(2), playList.get(1).getURI());
+		assertEquals(1, order.peekNext());
+		assertEquals(1, advance());
+		assertEquals(2, advance());
+	}
+
+	@Test
+	public void emptyPlayListHasNoNext()
+	{
+		playList.clear();
+		assertEquals(-1, order.peekNext());
+		assertEquals(-1, order.next());
+		assertEquals(-1, order.previous());
+		assertEquals(0, order.upcoming(3).length);
+	}
+
+	/**
+	 * Advances the order and moves <i>current</i> as the engine does.
+	 */
+	private int advance()
+	{
+		int index = order.next();
+		current.set(index);
+		return index;
+	}
+
+	private static MediaItem item(int number)
+	{
+		return new MediaItem(uri(number));
+	}
+
+	private static URI uri(int number)
+	{
+		return URI.create("file:///music/" + number + ".mp3");
+	}
+}
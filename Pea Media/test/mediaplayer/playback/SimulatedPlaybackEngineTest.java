@@ -0,0 +1,122 @@
+package mediaplayer.playback;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.net.URI;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import javafx.util.Duration;
+import mediaplayer.model.CompactPlayList;
+import mediaplayer.model.MediaItem;
+
+/**
+ * Tests the sequencing of {@link SimulatedPlaybackEngine} on its virtual
+ * clock.
+ *
+ * @author Alex Hage
+ *
+ */
+public class SimulatedPlaybackEngineTest
+{
+	private CompactPlayList playList;
+	private IntegerProperty current;
+	private PlayOrder playOrder;
+	private SimulatedPlaybackEngine engine;
+
+	@BeforeEach
+	public void setUp()
+	{
+		playList = new CompactPlayList();
+		for(int i = 0; i < 3; i++)
+		{
+			MediaItem item = new MediaItem(URI.create("file:///music/" + i + ".mp3"));
+			item.setDuration(Duration.minutes(1));
+			playList.add(item);
+		}
+		current = new SimpleIntegerProperty(0);
+		playOrder = new PlayOrder(playList, current);
+		engine = new SimulatedPlaybackEngine(playList, current, playOrder);
+	}
+
+	@Test
+	public void playsThroughEndingEntries()
+	{
+		engine.playCurrent();
+		engine.advance(Duration.seconds(150));
+		assertEquals(2, current.get());
+		assertEquals(Duration.seconds(30), engine.getPosition());
+		assertEquals(3, engine.getOpenCount());
+		assertEquals(2, engine.getPrerollHits());
+		assertEquals(Duration.seconds(150), engine.getClock());
+	}
+
+	@Test
+	public void crossfadeStartsNextEarlier()
+	{
+		engine.setCrossfade(Duration.seconds(10));
+		engine.playCurrent();
+		engine.advance(Duration.seconds(55));
+		assertEquals(1, current.get());
+		assertEquals(Duration.seconds(5), engine.getPosition());
+	}
+
+	@Test
+	public void queuedEntryIsPrerolled()
+	{
+		engine.playCurrent();
+		playOrder.enqueue(2);
+		engine.advance(Duration.seconds(70));
+		assertEquals(2, current.get());
+		assertEquals(1, engine.getPrerollHits());
+	}
+
+	@Test
+	public void repeatPrerollsCurrentEntry()
+	{
+		engine.playCurrent();
+		engine.setRepeat(true);
+		engine.advance(Duration.seconds(70));
+		assertEquals(0, current.get());
+		assertEquals(1, engine.getPrerollHits());
+
+		engine.setRepeat(false);
+		engine.advance(Duration.seconds(60));
+		assertEquals(1, current.get());
+		assertEquals(2, engine.getPrerollHits());
+	}
+
+	@Test
+	public void emptiedPlayListStops()
+	{
+		engine.playCurrent();
+		playList.clear();
+		assertTimeoutPreemptively(java.time.Duration.ofSeconds(5), () -> engine.advance(Duration.hours(1)));
+		assertEquals(Duration.ZERO, engine.getPosition());
+		assertEquals(Duration.hours(1), engine.getClock());
+		assertEquals(1, engine.getOpenCount());
+
+		//Stays stopped until played again.
+		engine.advance(Duration.minutes(5));
+		assertEquals(Duration.ZERO, engine.getPosition());
+	}
+
+	@Test
+	public void pausedClockKeepsPosition()
+	{
+		engine.playCurrent();
+		engine.advance(Duration.seconds(20));
+		engine.pause();
+		engine.advance(Duration.minutes(10));
+		assertEquals(0, current.get());
+		assertEquals(Duration.seconds(20), engine.getPosition());
+		engine.resume();
+		engine.advance(Duration.seconds(50));
+		assertEquals(1, current.get());
+		assertEquals(Duration.seconds(10), engine.getPosition());
+	}
+}
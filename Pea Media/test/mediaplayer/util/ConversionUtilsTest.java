@@ -0,0 +1,87 @@
+package mediaplayer.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the time formats of {@link ConversionUtils} at the boundaries of
+ * minutes, hours, days and their caches.
+ *
+ * @author Alex Hage
+ *
+ */
+public class ConversionUtilsTest
+{
+	@Test
+	public void longFormat()
+	{
+		assertEquals("00:00:00", ConversionUtils.convertTimeInSeconds(0));
+		assertEquals("00:00:59", ConversionUtils.convertTimeInSeconds(59));
+		assertEquals("00:01:00", ConversionUtils.convertTimeInSeconds(60));
+		assertEquals("00:59:59", ConversionUtils.convertTimeInSeconds(3599));
+		assertEquals("01:00:00", ConversionUtils.convertTimeInSeconds(3600));
+		assertEquals("23:59:59", ConversionUtils.convertTimeInSeconds(86399));
+		//Past the cache, hours go on beyond a day.
+		assertEquals("24:00:00", ConversionUtils.convertTimeInSeconds(86400));
+		assertEquals("100:00:01", ConversionUtils.convertTimeInSeconds(360001));
+		assertEquals("596523:14:07", ConversionUtils.convertTimeInSeconds(Integer.MAX_VALUE));
+	}
+
+	@Test
+	public void shortFormat()
+	{
+		assertEquals("00:00", ConversionUtils.convertTimeInSecondsShort(0));
+		assertEquals("00:59", ConversionUtils.convertTimeInSecondsShort(59));
+		assertEquals("59:59", ConversionUtils.convertTimeInSecondsShort(3599));
+		assertEquals("60:00", ConversionUtils.convertTimeInSecondsShort(3600));
+		assertEquals("99:59", ConversionUtils.convertTimeInSecondsShort(5999));
+		assertEquals("100:00", ConversionUtils.convertTimeInSecondsShort(6000));
+		assertEquals("1440:00", ConversionUtils.convertTimeInSecondsShort(86400));
+	}
+
+	@Test
+	public void negativeIsZero()
+	{
+		assertEquals("00:00:00", ConversionUtils.convertTimeInSeconds(-1));
+		assertEquals("00:00:00", ConversionUtils.convertTimeInSeconds(Integer.MIN_VALUE));
+		assertEquals("00:00", ConversionUtils.convertTimeInSecondsShort(-59));
+		assertEquals("00:00:00", ConversionUtils.appendTime(new StringBuilder(), -3600).toString());
+		assertEquals("00:00", ConversionUtils.appendShortTime(new StringBuilder(), -1).toString());
+		char[] out = new char[ConversionUtils.MAX_TIME_LENGTH];
+		assertEquals("00:00:00", new String(out, 0, ConversionUtils.formatTime(Long.MIN_VALUE, out)));
+	}
+
+	@Test
+	public void cachedTimesAreReused()
+	{
+		assertSame(ConversionUtils.convertTimeInSeconds(3599), ConversionUtils.convertTimeInSeconds(3599));
+		assertSame(ConversionUtils.convertTimeInSeconds(86399), ConversionUtils.convertTimeInSeconds(86399));
+		assertSame(ConversionUtils.convertTimeInSecondsShort(5999), ConversionUtils.convertTimeInSecondsShort(5999));
+	}
+
+	@Test
+	public void appendsToExistingContent()
+	{
+		StringBuilder out = new StringBuilder("at ");
+		ConversionUtils.appendTime(out, 86400L * 400 + 61).append(" / ");
+		ConversionUtils.appendShortTime(out, 3661);
+		assertEquals("at 9600:01:01 / 61:01", out.toString());
+	}
+
+	@Test
+	public void formatTimeFillsExactBuffer()
+	{
+		char[] out = new char[ConversionUtils.MAX_TIME_LENGTH];
+		int length = ConversionUtils.formatTime(Long.MAX_VALUE, out);
+		assertEquals(ConversionUtils.MAX_TIME_LENGTH, length);
+		assertEquals("2562047788015215:30:07", new String(out, 0, length));
+
+		assertEquals("00:00:00", new String(out, 0, ConversionUtils.formatTime(0, out)));
+		assertEquals("00:59:59", new String(out, 0, ConversionUtils.formatTime(3599, out)));
+		assertEquals("23:59:59", new String(out, 0, ConversionUtils.formatTime(86399, out)));
+		assertEquals("24:00:00", new String(out, 0, ConversionUtils.formatTime(86400, out)));
+		assertEquals("10:00:00", new String(out, 0, ConversionUtils.formatTime(36000, out)));
+	}
+}
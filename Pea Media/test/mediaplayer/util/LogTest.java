@@ -0,0 +1,94 @@
+package mediaplayer.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that the {@link Log} writer sleeps while idle and wakes up for new
+ * messages.
+ *
+ * @author Alex Hage
+ *
+ */
+public class LogTest
+{
+	private PrintStream console;
+	private ByteArrayOutputStream written;
+
+	@BeforeEach
+	public void setUp()
+	{
+		console = System.out;
+		written = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(written, true, StandardCharsets.UTF_8));
+		Log.setLevel(Log.Level.INFO);
+	}
+
+	@AfterEach
+	public void tearDown()
+	{
+		Log.flush();
+		System.setOut(console);
+	}
+
+	@Test
+	public void idleWriterWaitsWithoutTimeout() throws InterruptedException
+	{
+		Log.info("warming up");
+		Log.flush();
+		Thread writer = writer();
+		long deadline = System.currentTimeMillis() + 2000;
+		while(writer.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(10);
+		}
+		assertEquals(Thread.State.WAITING, writer.getState());
+	}
+
+	@Test
+	public void messageWakesWriter() throws InterruptedException
+	{
+		//Let the writer park first.
+		Thread.sleep(100);
+		Log.info("track {} of {}", 3, 12);
+		long deadline = System.currentTimeMillis() + 2000;
+		while(!output().contains("track 3 of 12") && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(5);
+		}
+		assertTrue(output().contains("INFO [" + Thread.currentThread().getName() + "] track 3 of 12"), output());
+	}
+
+	@Test
+	public void disabledLevelWritesNothing()
+	{
+		Log.debug("not {}", "written");
+		Log.flush();
+		assertEquals("", output());
+	}
+
+	private String output()
+	{
+		return new String(written.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static Thread writer()
+	{
+		for(Thread thread : Thread.getAllStackTraces().keySet())
+		{
+			if(thread.getName().equals("log-writer"))
+			{
+				return thread;
+			}
+		}
+		throw new AssertionError("No log writer");
+	}
+}
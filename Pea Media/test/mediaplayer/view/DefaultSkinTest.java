@@ -0,0 +1,55 @@
+package mediaplayer.view;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that the images of the skin are found on the class path, relative to
+ * the stylesheet, wherever the application is started from.
+ *
+ * @author Alex Hage
+ *
+ */
+public class DefaultSkinTest
+{
+	private static final Pattern URL = Pattern.compile("url\\('([^']*)'\\)");
+
+	@Test
+	public void imagesResolveFromStylesheet() throws IOException
+	{
+		URL stylesheet = getClass().getResource("DefaultSkin.css");
+		assertNotNull(stylesheet);
+		String css;
+		try(InputStream in = stylesheet.openStream())
+		{
+			css = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+		List<String> images = new ArrayList<String>();
+		Matcher matcher = URL.matcher(css);
+		while(matcher.find())
+		{
+			images.add(matcher.group(1));
+		}
+		assertFalse(images.isEmpty());
+		for(String image : images)
+		{
+			assertFalse(image.contains(":"), image + " is not relative");
+			URL resolved = new URL(stylesheet, image);
+			try(InputStream in = resolved.openStream())
+			{
+				assertNotNull(in, image);
+			}
+		}
+	}
+}
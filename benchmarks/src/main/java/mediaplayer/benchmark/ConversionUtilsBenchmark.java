@@ -0,0 +1,102 @@
+package mediaplayer.benchmark;
+
+import java.io.File;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mediaplayer.util.ConversionUtils;
+
+/**
+ * Measures the time formatting used by the progress label and the playlist
+ * duration column, and the file name conversions done per imported entry.
+ *
+ * @author Alex Hage
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConversionUtilsBenchmark
+{
+	/**
+	 * Cycles over a range of times so that both cached and uncached values are
+	 * formatted.
+	 */
+	private int second;
+
+	private final char[] buffer = new char[ConversionUtils.MAX_TIME_LENGTH];
+	private final StringBuilder builder = new StringBuilder(24);
+
+	private URI plain;
+	private URI escaped;
+
+	@Setup
+	public void setUp()
+	{
+		plain = URI.create("file:/home/user/Music/Artist/Album/01-Track.mp3");
+		escaped = new File("/home/user/My Music/Some Artist/Some Album/01 Some Track.m4a").toURI();
+	}
+
+	private int nextSecond()
+	{
+		second = (second + 7919) % 100000;
+		return second;
+	}
+
+	@Benchmark
+	public String convertTimeInSeconds()
+	{
+		return ConversionUtils.convertTimeInSeconds(nextSecond());
+	}
+
+	@Benchmark
+	public String convertTimeInSecondsShort()
+	{
+		return ConversionUtils.convertTimeInSecondsShort(nextSecond());
+	}
+
+	@Benchmark
+	public int appendTime()
+	{
+		builder.setLength(0);
+		return ConversionUtils.appendTime(builder, nextSecond()).length();
+	}
+
+	@Benchmark
+	public int formatTime()
+	{
+		return ConversionUtils.formatTime(nextSecond(), buffer);
+	}
+
+	@Benchmark
+	public String convertToFileName()
+	{
+		return ConversionUtils.convertToFileName(plain);
+	}
+
+	@Benchmark
+	public String convertToFileNameEscaped()
+	{
+		return ConversionUtils.convertToFileName(escaped);
+	}
+
+	@Benchmark
+	public String convertToFileExtension()
+	{
+		return ConversionUtils.convertToFileExtension(plain);
+	}
+}
@@ -0,0 +1,120 @@
+package mediaplayer.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * Collects the latencies of one kind of operation and reports their
+ * percentiles. Every sample is kept, so the percentiles are exact. Not
+ * thread-safe; each recorder is filled by one thread.
+ *
+ * @author Alex Hage
+ *
+ */
+public class LatencyRecorder
+{
+	private final String name;
+	private long[] samples = new long[1024];
+	private int count;
+
+	/**
+	 * Constructs an empty recorder.
+	 *
+	 * @param name
+	 *            the name of the operation, used in the report.
+	 */
+	public LatencyRecorder(String name)
+	{
+		this.name = name;
+	} //end ctor
+
+	/**
+	 * Records one latency.
+	 *
+	 * @param nanos
+	 *            the latency in nanoseconds.
+	 */
+	public void record(long nanos)
+	{
+		if(count == samples.length)
+		{
+			samples = Arrays.copyOf(samples, count * 2);
+		}
+		samples[count++] = nanos;
+	}
+
+	/**
+	 * Returns the number of latencies recorded.
+	 *
+	 * @return the sample count.
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Returns a percentile of the recorded latencies.
+	 *
+	 * @param percentile
+	 *            the percentile, between 0 and 100.
+	 * @return the latency in nanoseconds, 0 if nothing was recorded.
+	 */
+	public long getPercentile(double percentile)
+	{
+		if(count == 0)
+		{
+			return 0;
+		}
+		long[] sorted = Arrays.copyOf(samples, count);
+		Arrays.sort(sorted);
+		return at(sorted, percentile);
+	}
+
+	/**
+	 * Returns the number of latencies above a limit.
+	 *
+	 * @param nanos
+	 *            the limit in nanoseconds.
+	 * @return the count of slower samples.
+	 */
+	public int countAbove(long nanos)
+	{
+		int above = 0;
+		for(int i = 0; i < count; i++)
+		{
+			if(samples[i] > nanos)
+			{
+				above++;
+			}
+		}
+		return above;
+	}
+
+	/**
+	 * Formats the sample count and the p50, p90, p99, p99.9 and maximum
+	 * latencies in milliseconds.
+	 *
+	 * @return the report line.
+	 */
+	public String report()
+	{
+		if(count == 0)
+		{
+			return String.format("  %-16s %8s", name, "-");
+		}
+		long[] sorted = Arrays.copyOf(samples, count);
+		Arrays.sort(sorted);
+		return String.format("  %-16s %8d ops  p50 %9.3f  p90 %9.3f  p99 %9.3f  p99.9 %9.3f  max %9.3f ms",
+				name, count, at(sorted, 50) / 1e6, at(sorted, 90) / 1e6, at(sorted, 99) / 1e6,
+				at(sorted, 99.9) / 1e6, sorted[count - 1] / 1e6);
+	}
+
+	/**
+	 * Returns the nearest-rank percentile of sorted samples.
+	 */
+	private static long at(long[] sorted, double percentile)
+	{
+		int rank = (int)Math.ceil(percentile / 100 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+	}
+}
@@ -0,0 +1,78 @@
+package mediaplayer.benchmark;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.util.Duration;
+import mediaplayer.io.MediaImporter;
+import mediaplayer.model.MediaItem;
+
+/**
+ * Measures creating a MediaItem the ways the importer and the playlist
+ * reader do, and reading back its properties.
+ *
+ * @author Alex Hage
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MediaItemBenchmark
+{
+	private URI uri;
+	private Path path;
+	private Duration duration;
+
+	@Setup
+	public void setUp()
+	{
+		path = Paths.get("/home/user/Music/Some Artist/Some Album/01 Some Track.mp3");
+		uri = path.toUri();
+		duration = Duration.seconds(245);
+	}
+
+	@Benchmark
+	public MediaItem create()
+	{
+		return new MediaItem(uri);
+	}
+
+	@Benchmark
+	public MediaItem createFromPath()
+	{
+		return MediaImporter.createItem(path);
+	}
+
+	@Benchmark
+	public MediaItem createWithDuration()
+	{
+		MediaItem item = new MediaItem(uri);
+		item.setTitle("01 Some Track");
+		item.setDuration(duration);
+		return item;
+	}
+
+	@Benchmark
+	public String createAndReadTitle()
+	{
+		MediaItem item = new MediaItem(uri);
+		item.setTitle("01 Some Track");
+		return item.getTitleProperty().get();
+	}
+}
@@ -0,0 +1,165 @@
+package mediaplayer.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import javafx.util.Duration;
+import mediaplayer.model.CompactPlayList;
+import mediaplayer.model.MediaItem;
+import mediaplayer.model.TrigramIndex;
+import mediaplayer.playback.PlayOrder;
+import mediaplayer.playback.SimulatedPlaybackEngine;
+
+/**
+ * Soaks the playlist model and the playback sequencing without a display:
+ * the playlist, its search index and play order as set up by Main, played by
+ * a {@link SimulatedPlaybackEngine}. Measures track switches through
+ * <i>current</i> as the playlist window makes them, skips in shuffle mode,
+ * searches and sorts, then plays through hours of virtual time.
+ *
+ * @author Alex Hage
+ *
+ */
+class ModelSoak
+{
+	private static final int SEARCHES = 500;
+	private static final int SORTS = 3;
+
+	private final int size;
+	private final int switches;
+	private final int hours;
+	private final long seed;
+
+	ModelSoak(int size, int switches, int hours, long seed)
+	{
+		this.size = size;
+		this.switches = switches;
+		this.hours = hours;
+		this.seed = seed;
+	} //end ctor
+
+	void run()
+	{
+		Random random = new Random(seed);
+		long baseHeap = SoakHarness.usedHeapAfterGc();
+
+		List<MediaItem> items = SyntheticPlayList.generate(size, seed);
+		CompactPlayList playList = new CompactPlayList();
+		TrigramIndex index = new TrigramIndex(playList);
+		LatencyRecorder fill = new LatencyRecorder("fill");
+		long start = System.nanoTime();
+		playList.addAll(items);
+		fill.record(System.nanoTime() - start);
+		items = null;
+
+		IntegerProperty current = new SimpleIntegerProperty(0);
+		PlayOrder playOrder = new PlayOrder(playList, current, new Random(seed));
+		SimulatedPlaybackEngine engine = new SimulatedPlaybackEngine(playList, current, playOrder);
+		engine.playCurrent();
+		long filledHeap = SoakHarness.usedHeapAfterGc();
+
+		LatencyRecorder switching = new LatencyRecorder("switch");
+		long allocated = allocatedBytes();
+		for(int i = 0; i < switches; i++)
+		{
+			int target = random.nextInt(size);
+			start = System.nanoTime();
+			current.set(target);
+			switching.record(System.nanoTime() - start);
+		}
+		long switchAllocated = allocatedBytes() - allocated;
+
+		LatencyRecorder skipping = new LatencyRecorder("next (shuffle)");
+		playOrder.setShuffle(true);
+		for(int i = 0; i < switches; i++)
+		{
+			start = System.nanoTime();
+			engine.next();
+			skipping.record(System.nanoTime() - start);
+		}
+		playOrder.setShuffle(false);
+		long switchedHeap = SoakHarness.usedHeapAfterGc();
+
+		LatencyRecorder searching = new LatencyRecorder("search");
+		for(int i = 0; i < SEARCHES; i++)
+		{
+			String query = queryFrom(playList.get(random.nextInt(size)).getTitle(), random);
+			start = System.nanoTime();
+			index.search(query);
+			searching.record(System.nanoTime() - start);
+		}
+
+		LatencyRecorder sorting = new LatencyRecorder("sort by title");
+		for(int i = 0; i < SORTS; i++)
+		{
+			//Applied as a permutation, like a sort from the playlist view.
+			List<MediaItem> shuffled = new ArrayList<MediaItem>(playList);
+			Collections.shuffle(shuffled, random);
+			playList.setAll(shuffled);
+			start = System.nanoTime();
+			playList.sort((a, b) -> a.getTitle().compareTo(b.getTitle()));
+			sorting.record(System.nanoTime() - start);
+		}
+
+		long transitions = engine.getTransitionCount();
+		long hits = engine.getPrerollHits();
+		start = System.nanoTime();
+		engine.advance(Duration.hours(hours));
+		long playNanos = System.nanoTime() - start;
+		transitions = engine.getTransitionCount() - transitions;
+		hits = engine.getPrerollHits() - hits;
+		long endHeap = SoakHarness.usedHeapAfterGc();
+
+		System.out.println();
+		System.out.println("size " + size);
+		System.out.println(fill.report());
+		System.out.println(switching.report());
+		System.out.println(skipping.report());
+		System.out.println(searching.report());
+		System.out.println(sorting.report());
+		System.out.printf("  %-16s %8d transitions in %.0f ms (%.1f us each), %d pre-roll hits%n",
+				"virtual play", transitions, playNanos / 1e6, playNanos / 1e3 / Math.max(1, transitions), hits);
+		System.out.printf("  %-16s playlist %s (%d bytes per entry), growth over switches %s, at end %s%n",
+				"heap", SoakHarness.mb(filledHeap - baseHeap), (filledHeap - baseHeap) / size,
+				SoakHarness.mb(switchedHeap - filledHeap), SoakHarness.mb(endHeap - filledHeap));
+		if(switchAllocated >= 0)
+		{
+			System.out.printf("  %-16s %d bytes allocated per switch%n", "allocation",
+					switchAllocated / Math.max(1, switches));
+		}
+	}
+
+	/**
+	 * Picks a query of three to six characters out of a title.
+	 */
+	private static String queryFrom(String title, Random random)
+	{
+		if(title.length() <= 3)
+		{
+			return title;
+		}
+		int length = Math.min(title.length(), 3 + random.nextInt(4));
+		int from = random.nextInt(title.length() - length + 1);
+		return title.substring(from, from + length);
+	}
+
+	/**
+	 * Returns the bytes allocated by this thread so far, or -1 if the JVM
+	 * does not count them.
+	 */
+	private static long allocatedBytes()
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if(threads instanceof com.sun.management.ThreadMXBean)
+		{
+			return ((com.sun.management.ThreadMXBean)threads).getCurrentThreadAllocatedBytes();
+		}
+		return -1;
+	}
+}
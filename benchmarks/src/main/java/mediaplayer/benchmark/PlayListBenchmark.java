@@ -0,0 +1,152 @@
+package mediaplayer.benchmark;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.util.Duration;
+import mediaplayer.model.CompactPlayList;
+import mediaplayer.model.MediaItem;
+import mediaplayer.util.ConversionUtils;
+
+/**
+ * Measures the bulk operations on the playlist returned by
+ * <i>Main.getPlayList()</i>: adding an import batch, removing the entries of
+ * deleted files, clearing a range and sorting by title as the playlist view
+ * does. A MediaItem is bound to the list it is added to, so every invocation
+ * works on a freshly built list.
+ *
+ * @author Alex Hage
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class PlayListBenchmark
+{
+	/**
+	 * The seed of the generated names, fixed so runs compare.
+	 */
+	private static final long SEED = 42;
+
+	private static final Comparator<MediaItem> BY_TITLE = Comparator.comparing(MediaItem::getTitle);
+
+	@Param({"10000", "100000", "1000000"})
+	public int size;
+
+	private URI[] uris;
+	private String[] titles;
+
+	/**
+	 * Fresh items to add, not yet bound to a list.
+	 */
+	private List<MediaItem> batch;
+
+	/**
+	 * A list holding the items of {@link #uris}.
+	 */
+	private CompactPlayList list;
+
+	/**
+	 * Every tenth entry of {@link #list}.
+	 */
+	private List<MediaItem> toRemove;
+
+	@Setup(Level.Trial)
+	public void generate()
+	{
+		Random random = new Random(SEED);
+		uris = new URI[size];
+		titles = new String[size];
+		for(int i = 0; i < size; i++)
+		{
+			int artist = random.nextInt(Math.max(1, size / 50));
+			uris[i] = URI.create("file:/home/user/Music/Artist%20" + artist + "/Album%20" + (artist % 7)
+					+ "/" + Integer.toHexString(random.nextInt()) + "%20Track.mp3");
+			//Like imported files, most titles are the file name.
+			titles[i] = random.nextInt(4) == 0 ? "Title " + random.nextInt(size)
+					: ConversionUtils.convertToFileName(uris[i]);
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void build()
+	{
+		batch = newItems();
+		list = new CompactPlayList();
+		list.addAll(newItems());
+		toRemove = new ArrayList<MediaItem>(size / 10 + 1);
+		for(int i = 0; i < size; i += 10)
+		{
+			toRemove.add(list.get(i));
+		}
+	}
+
+	private List<MediaItem> newItems()
+	{
+		List<MediaItem> items = new ArrayList<MediaItem>(size);
+		for(int i = 0; i < size; i++)
+		{
+			MediaItem item = new MediaItem(uris[i]);
+			item.setTitle(titles[i]);
+			item.setDuration(Duration.seconds(i % 600));
+			items.add(item);
+		}
+		return items;
+	}
+
+	@Benchmark
+	public CompactPlayList addAll()
+	{
+		CompactPlayList empty = new CompactPlayList();
+		empty.addAll(batch);
+		return empty;
+	}
+
+	@Benchmark
+	public CompactPlayList appendToFull()
+	{
+		list.addAll(batch);
+		return list;
+	}
+
+	@Benchmark
+	public CompactPlayList removeAll()
+	{
+		list.removeAll(toRemove);
+		return list;
+	}
+
+	@Benchmark
+	public CompactPlayList removeFirstHalf()
+	{
+		list.subList(0, size / 2).clear();
+		return list;
+	}
+
+	@Benchmark
+	public CompactPlayList sortByTitle()
+	{
+		list.sort(BY_TITLE);
+		return list;
+	}
+}
@@ -0,0 +1,111 @@
+package mediaplayer.benchmark;
+
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.collections.ListChangeListener;
+import mediaplayer.model.CompactPlayList;
+import mediaplayer.model.MediaItem;
+import mediaplayer.model.SearchResultList;
+import mediaplayer.model.TrigramIndex;
+
+/**
+ * Measures the playlist search: a single lookup in the trigram index, and
+ * typing a query into the result list the playlist view shows, which reports
+ * the change of the results after every key to a listener in place of the
+ * table. Sampled, so that the report shows the percentiles the single-digit
+ * millisecond target applies to.
+ * <p>
+ * The queries cover a few matches in file names, matches in titles, the
+ * entries of a folder, and a word in every file name. The playlist is either
+ * in import order or sorted by title as the playlist view sorts it, which
+ * leaves storage order and list order apart.
+ * </p>
+ *
+ * @author Alex Hage
+ *
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class SearchBenchmark
+{
+	/**
+	 * The seed of the generated names, fixed so runs compare.
+	 */
+	private static final long SEED = 42;
+
+	@Param({"100000", "1000000"})
+	public int size;
+
+	@Param({"3fa9", "title 1234", "artist 1234/", "track"})
+	public String query;
+
+	@Param({"false", "true"})
+	public boolean sorted;
+
+	private TrigramIndex index;
+	private SearchResultList results;
+
+	/**
+	 * The ranges reported to the listener standing in for the table.
+	 */
+	private long reported;
+
+	@Setup
+	public void build()
+	{
+		CompactPlayList list = new CompactPlayList();
+		list.addAll(SyntheticPlayList.generate(size, SEED));
+		if(sorted)
+		{
+			list.sort(Comparator.comparing(MediaItem::getTitle));
+		}
+		index = new TrigramIndex(list);
+		results = new SearchResultList(index);
+		results.addListener((ListChangeListener<MediaItem>)change ->
+		{
+			while(change.next())
+			{
+				reported += change.getRemovedSize() + change.getAddedSize();
+			}
+		});
+	}
+
+	@Benchmark
+	public int[] search()
+	{
+		return index.search(query);
+	}
+
+	/**
+	 * Types the query from its first trigram on, then clears it.
+	 */
+	@Benchmark
+	public int type()
+	{
+		int found = 0;
+		for(int length = TrigramIndex.GRAM; length <= query.length(); length++)
+		{
+			results.setQuery(query.substring(0, length));
+			found += results.size();
+		}
+		results.setQuery("");
+		return found + (int)reported;
+	}
+}
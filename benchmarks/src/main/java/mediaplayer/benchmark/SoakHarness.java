@@ -0,0 +1,117 @@
+package mediaplayer.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds where the player breaks down as the playlist grows. Generates
+ * playlists of increasing size and drives track changes and playlist
+ * operations on them, reporting latency percentiles per operation and heap
+ * growth.
+ * <p>
+ * The model soak ({@link ModelSoak}) needs no display and no media: it plays
+ * on a {@link mediaplayer.playback.SimulatedPlaybackEngine}. The UI soak,
+ * which drives the real application, is built separately with the
+ * <i>ui-soak</i> profile and started on its own.
+ * </p>
+ * <pre>
+ * java -cp benchmarks.jar mediaplayer.benchmark.SoakHarness
+ *         [--sizes 10000,100000,1000000] [--switches 5000] [--hours 1000]
+ *         [--seed 42]
+ * </pre>
+ *
+ * @author Alex Hage
+ *
+ */
+public final class SoakHarness
+{
+	static final int[] DEFAULT_SIZES = {10000, 100000, 1000000};
+
+	/**
+	 * Not instantiable.
+	 */
+	private SoakHarness()
+	{
+
+	} //end ctor
+
+	public static void main(String[] args) throws Exception
+	{
+		int[] sizes = DEFAULT_SIZES;
+		int switches = 5000;
+		int hours = 1000;
+		long seed = 42;
+		for(int i = 0; i < args.length; i++)
+		{
+			switch(args[i])
+			{
+			case "--sizes":
+				sizes = parseSizes(args[++i]);
+				break;
+			case "--switches":
+				switches = Integer.parseInt(args[++i]);
+				break;
+			case "--hours":
+				hours = Integer.parseInt(args[++i]);
+				break;
+			case "--seed":
+				seed = Long.parseLong(args[++i]);
+				break;
+			default:
+				System.err.println("Unknown option " + args[i]);
+				System.exit(2);
+			}
+		}
+
+		System.out.println("Model soak, " + switches + " switches, " + hours + " virtual hours per size");
+		for(int size : sizes)
+		{
+			new ModelSoak(size, switches, hours, seed).run();
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Returns the used heap after a full collection.
+	 *
+	 * @return the used heap in bytes.
+	 */
+	static long usedHeapAfterGc()
+	{
+		for(int i = 0; i < 3; i++)
+		{
+			System.gc();
+			try
+			{
+				Thread.sleep(50);
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	/**
+	 * Formats a heap size in megabytes.
+	 */
+	static String mb(long bytes)
+	{
+		return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+	}
+
+	/**
+	 * Parses a comma separated list of playlist sizes.
+	 */
+	static int[] parseSizes(String list)
+	{
+		List<Integer> sizes = new ArrayList<Integer>();
+		for(String size : list.split(","))
+		{
+			sizes.add(Integer.parseInt(size.trim()));
+		}
+		return sizes.stream().mapToInt(Integer::intValue).toArray();
+	}
+}
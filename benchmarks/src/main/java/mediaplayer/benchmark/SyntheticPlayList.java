@@ -0,0 +1,78 @@
+package mediaplayer.benchmark;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javafx.util.Duration;
+import mediaplayer.model.MediaItem;
+import mediaplayer.util.ConversionUtils;
+
+/**
+ * Generates playlists for load tests: entries spread over artist and album
+ * folders, most titled by their file name, a part with a known duration. The
+ * same seed gives the same playlist.
+ *
+ * @author Alex Hage
+ *
+ */
+public final class SyntheticPlayList
+{
+	/**
+	 * Not instantiable.
+	 */
+	private SyntheticPlayList()
+	{
+
+	} //end ctor
+
+	/**
+	 * Generates entries pointing to files that do not exist.
+	 *
+	 * @param size
+	 *            the number of entries.
+	 * @param seed
+	 *            the seed of the names.
+	 * @return the new MediaItems, not yet in a list.
+	 */
+	public static List<MediaItem> generate(int size, long seed)
+	{
+		return generate(size, seed, null);
+	}
+
+	/**
+	 * Generates entries. When media files are given, the entries point to
+	 * them in turn, so that they can actually be opened; they keep their
+	 * generated titles.
+	 *
+	 * @param size
+	 *            the number of entries.
+	 * @param seed
+	 *            the seed of the names.
+	 * @param media
+	 *            the URIs of real media files, or <i>null</i>.
+	 * @return the new MediaItems, not yet in a list.
+	 */
+	public static List<MediaItem> generate(int size, long seed, URI[] media)
+	{
+		Random random = new Random(seed);
+		int artists = Math.max(1, size / 50);
+		List<MediaItem> items = new ArrayList<MediaItem>(size);
+		for(int i = 0; i < size; i++)
+		{
+			int artist = random.nextInt(artists);
+			URI uri = URI.create("file:/home/user/Music/Artist%20" + artist + "/Album%20" + (artist % 7)
+					+ "/" + Integer.toHexString(random.nextInt()) + "%20Track.mp3");
+			MediaItem item = new MediaItem(media != null ? media[i % media.length] : uri);
+			item.setTitle(random.nextInt(4) == 0 ? "Title " + random.nextInt(size)
+					: ConversionUtils.convertToFileName(uri));
+			if(random.nextBoolean())
+			{
+				item.setDuration(Duration.seconds(60 + random.nextInt(540)));
+			}
+			items.add(item);
+		}
+		return items;
+	}
+}
@@ -0,0 +1,450 @@
+package mediaplayer.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+import mediaplayer.Main;
+import mediaplayer.model.MediaItem;
+
+/**
+ * Soaks the running application. Starts {@link Main} on the headless Monocle
+ * platform, with its data directory in a temporary home, and drives the UI
+ * paths that depend on the playlist size: filling the playlist, opening the
+ * playlist window, scrolling and selecting in its table, which shows the
+ * media info, searching, and switching tracks through <i>current</i>.
+ * <p>
+ * The playlist entries point in turn to a few generated one-second WAV files,
+ * so that the real playback engine can open them. An operation's latency runs
+ * from its start on the FX thread until the following pulse has laid out the
+ * affected scene. Pulse times cover the animation, CSS and layout phases of
+ * every pulse during the soak.
+ * </p>
+ * <p>
+ * Not part of the default build, and unverified: it needs the native
+ * libraries JavaFX renders text with (pango, freetype, fontconfig), which the
+ * build machines lack. There it starts the application and shows the first
+ * frame, then stops when the first text is rendered, exiting with status 1,
+ * so it has never produced soak numbers. Build it with <i>-Pui-soak</i> and
+ * start it on its own:
+ * </p>
+ * <pre>
+ * java -cp benchmarks.jar mediaplayer.benchmark.UiSoak
+ *         [--sizes 10000,100000,1000000] [--switches 5000] [--seed 42]
+ * </pre>
+ *
+ * @author Alex Hage
+ *
+ */
+class UiSoak
+{
+	private static final int MEDIA_FILES = 8;
+	private static final int OPENS = 5;
+	private static final int SCROLLS = 200;
+	private static final int SELECTIONS = 200;
+	private static final int SEARCHES = 50;
+	private static final long TIMEOUT_SECONDS = 120;
+
+	/**
+	 * The pulse time above which a frame is dropped at 60 Hz.
+	 */
+	private static final long FRAME_NANOS = 16_666_667L;
+
+	private final int[] sizes;
+	private final int switches;
+	private final long seed;
+
+	private Main main;
+	private Scene playerScene;
+	private Scene playListScene;
+
+	/**
+	 * The pulse times of the current size. Only used on the FX thread.
+	 */
+	private LatencyRecorder pulses;
+	private long pulseStart;
+	private long layoutEnd;
+
+	/**
+	 * The latency waiting for the next layout of a scene, or <i>null</i>.
+	 */
+	private Scene awaitedScene;
+	private long awaitedStart;
+	private CompletableFuture<Long> awaited;
+
+	/**
+	 * The first exception thrown on the FX thread, or <i>null</i>.
+	 */
+	private volatile Throwable failure;
+
+	UiSoak(int[] sizes, int switches, long seed)
+	{
+		this.sizes = sizes;
+		this.switches = switches;
+		this.seed = seed;
+	} //end ctor
+
+	public static void main(String[] args) throws Exception
+	{
+		int[] sizes = SoakHarness.DEFAULT_SIZES;
+		int switches = 5000;
+		long seed = 42;
+		for(int i = 0; i < args.length; i++)
+		{
+			switch(args[i])
+			{
+			case "--sizes":
+				sizes = SoakHarness.parseSizes(args[++i]);
+				break;
+			case "--switches":
+				switches = Integer.parseInt(args[++i]);
+				break;
+			case "--seed":
+				seed = Long.parseLong(args[++i]);
+				break;
+			default:
+				System.err.println("Unknown option " + args[i]);
+				System.exit(2);
+			}
+		}
+
+		System.out.println("UI soak, " + switches + " switches per size");
+		System.exit(new UiSoak(sizes, switches, seed).run() ? 0 : 1);
+	}
+
+	/**
+	 * Starts the application and soaks every size.
+	 *
+	 * @return false if the FX thread failed and the soak stopped.
+	 */
+	boolean run() throws Exception
+	{
+		if(System.getProperty("glass.platform") == null)
+		{
+			System.setProperty("glass.platform", "Monocle");
+			System.setProperty("monocle.platform", "Headless");
+			System.setProperty("prism.order", "sw");
+		}
+		File home = Files.createTempDirectory("peamedia-soak").toFile();
+		System.setProperty("user.home", home.getPath());
+		URI[] media = writeMedia(new File(home, "media"));
+
+		CompletableFuture<Void> started = new CompletableFuture<Void>();
+		Platform.startup(() ->
+		{
+			Thread.currentThread().setUncaughtExceptionHandler((thread, e) -> failed(e));
+			try
+			{
+				main = new Main();
+				main.start(new Stage());
+				playerScene = main.getPrimaryStage().getScene();
+				playerScene.addPostLayoutPulseListener(() -> laidOut(playerScene));
+				new AnimationTimer()
+				{
+					@Override
+					public void handle(long now)
+					{
+						pulseStarted();
+					}
+				}.start();
+				started.complete(null);
+			}
+			catch(RuntimeException | Error e)
+			{
+				started.completeExceptionally(e);
+			}
+		});
+		try
+		{
+			started.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			for(int size : sizes)
+			{
+				soak(size, media);
+			}
+		}
+		catch(ExecutionException e)
+		{
+			System.out.println("UI soak stopped, the FX thread failed: " + e.getCause());
+			Platform.exit();
+			return false;
+		}
+		onFx(() ->
+		{
+			main.stop();
+			return null;
+		});
+		Platform.exit();
+		return true;
+	}
+
+	/**
+	 * Soaks one playlist size.
+	 */
+	private void soak(int size, URI[] media) throws Exception
+	{
+		Random random = new Random(seed);
+		List<MediaItem> items = SyntheticPlayList.generate(size, seed, media);
+		onFx(() ->
+		{
+			pulses = new LatencyRecorder("pulse");
+			return null;
+		});
+		long baseHeap = SoakHarness.usedHeapAfterGc();
+
+		LatencyRecorder fill = new LatencyRecorder("fill");
+		fill.record(measure(playerScene, () ->
+		{
+			main.getPlayList().clear();
+			main.getPlayList().addAll(items);
+		}));
+		items.clear();
+		long filledHeap = SoakHarness.usedHeapAfterGc();
+
+		LatencyRecorder opening = new LatencyRecorder("open playlist");
+		for(int i = 0; i < OPENS; i++)
+		{
+			if(playListScene != null)
+			{
+				onFx(() ->
+				{
+					((Stage)playListScene.getWindow()).hide();
+					return null;
+				});
+			}
+			opening.record(measure(playerScene, () -> main.showPlayListView()));
+			if(playListScene == null)
+			{
+				playListScene = onFx(() -> findPlayListScene());
+				onFx(() ->
+				{
+					playListScene.addPostLayoutPulseListener(() -> laidOut(playListScene));
+					return null;
+				});
+			}
+		}
+		@SuppressWarnings("unchecked")
+		TableView<MediaItem> table = (TableView<MediaItem>)playListScene.lookup("#playListTable");
+		TextField searchField = (TextField)playListScene.lookup("#searchField");
+
+		LatencyRecorder scrolling = new LatencyRecorder("scroll");
+		for(int i = 0; i < SCROLLS; i++)
+		{
+			int row = random.nextInt(size);
+			scrolling.record(measure(playListScene, () -> table.scrollTo(row)));
+		}
+
+		LatencyRecorder selecting = new LatencyRecorder("select");
+		for(int i = 0; i < SELECTIONS; i++)
+		{
+			int row = random.nextInt(size);
+			selecting.record(measure(playListScene, () ->
+			{
+				table.getSelectionModel().clearAndSelect(row);
+				table.scrollTo(row);
+			}));
+		}
+
+		LatencyRecorder searching = new LatencyRecorder("search");
+		for(int i = 0; i < SEARCHES; i++)
+		{
+			String title = onFx(() -> main.getPlayList().get(random.nextInt(size)).getTitle());
+			String query = title.substring(0, Math.min(title.length(), 5));
+			searching.record(measure(playListScene, () -> searchField.setText(query)));
+			measure(playListScene, () -> searchField.setText(""));
+		}
+
+		long switchHeap = SoakHarness.usedHeapAfterGc();
+		List<Long> heapSamples = new ArrayList<Long>();
+		LatencyRecorder switching = new LatencyRecorder("switch");
+		int sampleEvery = Math.max(1, switches / 10);
+		for(int i = 0; i < switches; i++)
+		{
+			int index = random.nextInt(size);
+			switching.record(measure(playerScene, () -> main.getCurrent().set(index)));
+			if((i + 1) % sampleEvery == 0)
+			{
+				heapSamples.add(SoakHarness.usedHeapAfterGc() - switchHeap);
+			}
+		}
+		LatencyRecorder pulseTimes = onFx(() -> pulses);
+
+		System.out.println();
+		System.out.println("size " + size);
+		System.out.println(fill.report());
+		System.out.println(opening.report());
+		System.out.println(scrolling.report());
+		System.out.println(selecting.report());
+		System.out.println(searching.report());
+		System.out.println(switching.report());
+		System.out.println(pulseTimes.report());
+		System.out.printf("  %-16s %d of %d pulses over a 60 Hz frame%n", "dropped frames",
+				pulseTimes.countAbove(FRAME_NANOS), pulseTimes.getCount());
+		StringBuilder growth = new StringBuilder();
+		for(long sample : heapSamples)
+		{
+			growth.append(growth.length() == 0 ? "" : ", ").append(SoakHarness.mb(sample));
+		}
+		System.out.printf("  %-16s playlist %s, growth during switches: %s%n", "heap",
+				SoakHarness.mb(filledHeap - baseHeap), growth);
+	}
+
+	/**
+	 * Runs an operation on the FX thread and waits for the next layout of a
+	 * scene.
+	 *
+	 * @return the latency in nanoseconds.
+	 */
+	private long measure(Scene scene, Runnable operation) throws Exception
+	{
+		if(failure != null)
+		{
+			throw new ExecutionException(failure);
+		}
+		CompletableFuture<Long> latency = new CompletableFuture<Long>();
+		Platform.runLater(() ->
+		{
+			awaitedStart = System.nanoTime();
+			try
+			{
+				operation.run();
+			}
+			catch(RuntimeException | Error e)
+			{
+				latency.completeExceptionally(e);
+				return;
+			}
+			awaitedScene = scene;
+			awaited = latency;
+			Platform.requestNextPulse();
+		});
+		return latency.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Runs a task on the FX thread and waits for its result.
+	 */
+	private static <T> T onFx(Callable<T> task) throws Exception
+	{
+		CompletableFuture<T> result = new CompletableFuture<T>();
+		Platform.runLater(() ->
+		{
+			try
+			{
+				result.complete(task.call());
+			}
+			catch(Exception e)
+			{
+				result.completeExceptionally(e);
+			}
+		});
+		return result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Fails the operation waiting for a layout. A pulse that throws does not
+	 * lay out, so the operation would wait for its timeout otherwise.
+	 */
+	private void failed(Throwable e)
+	{
+		if(failure == null)
+		{
+			failure = e;
+		}
+		if(awaited != null)
+		{
+			CompletableFuture<Long> latency = awaited;
+			awaited = null;
+			awaitedScene = null;
+			latency.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Records the start of a pulse and the time of the one before.
+	 */
+	private void pulseStarted()
+	{
+		if(pulses != null && layoutEnd > pulseStart && pulseStart > 0)
+		{
+			pulses.record(layoutEnd - pulseStart);
+		}
+		pulseStart = System.nanoTime();
+	}
+
+	/**
+	 * Notes the layout of a scene and completes a latency waiting for it.
+	 */
+	private void laidOut(Scene scene)
+	{
+		long now = System.nanoTime();
+		layoutEnd = now;
+		if(awaited != null && awaitedScene == scene)
+		{
+			CompletableFuture<Long> latency = awaited;
+			awaited = null;
+			awaitedScene = null;
+			latency.complete(now - awaitedStart);
+		}
+	}
+
+	/**
+	 * Returns the scene of the playlist window.
+	 */
+	private static Scene findPlayListScene()
+	{
+		for(Window window : Window.getWindows())
+		{
+			Scene scene = window.getScene();
+			if(scene != null && scene.lookup("#playListTable") != null)
+			{
+				return scene;
+			}
+		}
+		throw new IllegalStateException("The playlist window is not open");
+	}
+
+	/**
+	 * Writes short silent WAV files for the playlist entries to point to.
+	 *
+	 * @return the URIs of the files.
+	 */
+	private static URI[] writeMedia(File directory) throws IOException
+	{
+		directory.mkdirs();
+		AudioFormat format = new AudioFormat(8000, 16, 1, true, false);
+		byte[] silence = new byte[(int)format.getFrameRate() * format.getFrameSize()];
+		URI[] uris = new URI[MEDIA_FILES];
+		for(int i = 0; i < MEDIA_FILES; i++)
+		{
+			File file = new File(directory, "silence" + i + ".wav");
+			try(AudioInputStream in = new AudioInputStream(new ByteArrayInputStream(silence), format,
+					silence.length / format.getFrameSize()))
+			{
+				AudioSystem.write(in, AudioFileFormat.Type.WAVE, file);
+			}
+			uris[i] = file.toURI();
+		}
+		return uris;
+	}
+}